@@ -0,0 +1,105 @@
+package jp.co.sony.csl.dcoes.apis.main.app.gridmaster.main_loop;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jp.co.sony.csl.dcoes.apis.main.benchmark.BenchmarkVertx;
+import jp.co.sony.csl.dcoes.apis.main.benchmark.SyntheticGrid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the decision hot paths of {@link DealExecution} and {@link GlobalDataCalculation}.
+ * Placed in the same package to reach {@link DealExecution#sortDeals_(Vertx, JsonObject, List)}.
+ * @author OES Project
+ *          
+ * {@link DealExecution} と {@link GlobalDataCalculation} の判断処理のベンチマーク.
+ * {@link DealExecution#sortDeals_(Vertx, JsonObject, List)} を呼ぶため同じパッケージに置く.
+ * @author OES Project
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DealExecutionBenchmark {
+
+	@Param({"10", "100", "1000"}) public int units;
+	@Param({"1", "20", "200"}) public int deals;
+
+	private Vertx vertx_;
+	private JsonObject policy_;
+	private List<JsonObject> deals_;
+	private String perturbedUnitId_;
+	private int round_ = 0;
+
+	@Setup(Level.Trial) public void setUp() throws Exception {
+		vertx_ = BenchmarkVertx.get();
+		policy_ = SyntheticGrid.policy(units, false);
+		deals_ = SyntheticGrid.deals(units, deals);
+		DealExecution.unitDataCache.setJsonObject(SyntheticGrid.unitData(units, deals, 1L));
+		perturbedUnitId_ = SyntheticGrid.unitId(units - 1);
+	}
+	@TearDown(Level.Trial) public void tearDown() throws Exception {
+		BenchmarkVertx.close();
+	}
+
+	/**
+	 * Sort a fresh copy of the DEAL objects.
+	 * @return the sorted list
+	 *          
+	 * DEAL オブジェクトの新しいコピーを並び替える.
+	 * @return 並び替えたリスト
+	 */
+	@Benchmark public List<JsonObject> sortDeals() {
+		List<JsonObject> result = new ArrayList<>(deals_);
+		DealExecution.sortDeals_(vertx_, policy_, result);
+		return result;
+	}
+
+	/**
+	 * Calculate the global data while no unit data change.
+	 * @return the global data
+	 * @throws Exception if the calculation fails
+	 *          
+	 * ユニットデータが変化しない状態でグローバルデータを算出する.
+	 * @return グローバルデータ
+	 * @throws Exception 算出に失敗した場合
+	 */
+	@Benchmark public JsonObject globalDataCalculationUnchanged() throws Exception {
+		return BenchmarkVertx.awaitSuccess(h -> GlobalDataCalculation.execute(vertx_, h));
+	}
+	/**
+	 * Calculate the global data after a unit has been updated.
+	 * @return the global data
+	 * @throws Exception if the calculation fails
+	 *          
+	 * ユニットが一台更新された後にグローバルデータを算出する.
+	 * @return グローバルデータ
+	 * @throws Exception 算出に失敗した場合
+	 */
+	@Benchmark public JsonObject globalDataCalculationChanged() throws Exception {
+		JsonObject meter = DealExecution.unitDataCache.jsonObject().getJsonObject(perturbedUnitId_).getJsonObject("dcdc").getJsonObject("meter");
+		meter.put("ig", (float) (++round_ % 100) / 100F);
+		DealExecution.unitDataUpdated(perturbedUnitId_);
+		return BenchmarkVertx.awaitSuccess(h -> GlobalDataCalculation.execute(vertx_, h));
+	}
+
+}
@@ -0,0 +1,117 @@
+package jp.co.sony.csl.dcoes.apis.main.app.mediator.util;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jp.co.sony.csl.dcoes.apis.main.benchmark.SyntheticGrid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of {@link DealCodec} against the JSON text path.
+ * The values are what the encrypted cluster-wide map receives : JSON text for {@link DealCodec.Format#JSON} and a Base64 string for {@link DealCodec.Format#BINARY}.
+ * Each benchmark returns the total length of the values, which also compares their sizes.
+ * @author OES Project
+ *          
+ * JSON テキストの経路と比べた {@link DealCodec} のベンチマーク.
+ * 値は暗号化されたクラスタ全体のマップが受け取るもの : {@link DealCodec.Format#JSON} なら JSON テキスト, {@link DealCodec.Format#BINARY} なら Base64 文字列.
+ * 各ベンチマークは値の長さの合計を返すのでサイズの比較にもなる.
+ * @author OES Project
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DealCodecBenchmark {
+
+	@Param({"1", "20", "200"}) public int deals;
+
+	private List<JsonObject> deals_;
+	private List<String> jsons_;
+	private List<String> binaries_;
+
+	@Setup(Level.Trial) public void setUp() {
+		deals_ = SyntheticGrid.deals(2 * deals, deals);
+		jsons_ = new ArrayList<>(deals);
+		binaries_ = new ArrayList<>(deals);
+		for (JsonObject aDeal : deals_) {
+			aDeal.put("revision", 42L);
+			jsons_.add(aDeal.encode());
+			binaries_.add((String) DealCodec.toStored(aDeal, DealCodec.Format.BINARY, DealCodec.codec().latestVersion()));
+		}
+	}
+
+	/**
+	 * Encode DEAL objects to JSON text.
+	 * @return the total length
+	 *          
+	 * DEAL オブジェクトを JSON テキストにエンコードする.
+	 * @return 長さの合計
+	 */
+	@Benchmark public int encodeJson() {
+		int result = 0;
+		for (JsonObject aDeal : deals_) {
+			result += aDeal.encode().length();
+		}
+		return result;
+	}
+	/**
+	 * Decode DEAL objects from JSON text.
+	 * @return the total number of keys
+	 *          
+	 * JSON テキストから DEAL オブジェクトをデコードする.
+	 * @return キー数の合計
+	 */
+	@Benchmark public int decodeJson() {
+		int result = 0;
+		for (String aJson : jsons_) {
+			result += new JsonObject(aJson).size();
+		}
+		return result;
+	}
+	/**
+	 * Encode DEAL objects to the binary form.
+	 * @return the total length
+	 *          
+	 * DEAL オブジェクトをバイナリ形式にエンコードする.
+	 * @return 長さの合計
+	 */
+	@Benchmark public int encodeBinary() {
+		int result = 0;
+		for (JsonObject aDeal : deals_) {
+			result += ((String) DealCodec.toStored(aDeal, DealCodec.Format.BINARY, DealCodec.codec().latestVersion())).length();
+		}
+		return result;
+	}
+	/**
+	 * Decode DEAL objects from the binary form.
+	 * @return the total number of keys
+	 *          
+	 * バイナリ形式から DEAL オブジェクトをデコードする.
+	 * @return キー数の合計
+	 */
+	@Benchmark public int decodeBinary() {
+		int result = 0;
+		for (String aBinary : binaries_) {
+			result += DealCodec.fromStored(aBinary).size();
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,146 @@
+package jp.co.sony.csl.dcoes.apis.main.benchmark;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import jp.co.sony.csl.dcoes.apis.common.util.EncryptionUtil;
+import jp.co.sony.csl.dcoes.apis.common.util.vertx.VertxConfig;
+
+/**
+ * A Vert.x instance shared by benchmarks.
+ * Shared memory is accessed through cluster-wide maps, so the instance is clustered in the same way as {@code AbstractApisTest}.
+ * CONFIG is read from {@value #APIS_CONFIG_JSON} on the classpath.
+ * @author OES Project
+ *          
+ * ベンチマークで共有する Vert.x インスタンス.
+ * 共有メモリはクラスタ全体のマップ経由でアクセスするため {@code AbstractApisTest} と同じくクラスタモードで起動する.
+ * CONFIG はクラスパス上の {@value #APIS_CONFIG_JSON} から読む.
+ * @author OES Project
+ */
+public class BenchmarkVertx {
+
+	/**
+	 * The CONFIG file name.
+	 * Value: {@value}
+	 *          
+	 * CONFIG のファイル名.
+	 * 値は {@value}
+	 */
+	public static final String APIS_CONFIG_JSON = "sample-config.json";
+
+	private static final long TIMEOUT_SEC_ = 60L;
+
+	private static Vertx vertx_ = null;
+
+	private BenchmarkVertx() { }
+
+	/**
+	 * Get the shared Vert.x instance.
+	 * Start it if not yet started.
+	 * @return the Vert.x instance
+	 * @throws Exception if it cannot be started
+	 *          
+	 * 共有の Vert.x インスタンスを取得する.
+	 * まだ起動していなければ起動する.
+	 * @return Vert.x インスタンス
+	 * @throws Exception 起動できない場合
+	 */
+	public static synchronized Vertx get() throws Exception {
+		if (vertx_ == null) {
+			JsonObject config = readConfig_();
+			VertxConfig.config.setJsonObject(config);
+			CompletableFuture<Vertx> cf = new CompletableFuture<>();
+			EncryptionUtil.initialize(r -> {
+				if (r.succeeded()) {
+					Vertx.clusteredVertx(new VertxOptions(), rr -> {
+						if (rr.succeeded()) {
+							VertxConfig.config.setJsonObject(config);
+							cf.complete(rr.result());
+						} else {
+							cf.completeExceptionally(rr.cause());
+						}
+					});
+				} else {
+					cf.completeExceptionally(r.cause());
+				}
+			});
+			vertx_ = cf.get(TIMEOUT_SEC_, TimeUnit.SECONDS);
+		}
+		return vertx_;
+	}
+
+	/**
+	 * Close the shared Vert.x instance.
+	 * @throws Exception if it cannot be closed
+	 *          
+	 * 共有の Vert.x インスタンスを閉じる.
+	 * @throws Exception 閉じられない場合
+	 */
+	public static synchronized void close() throws Exception {
+		if (vertx_ != null) {
+			CompletableFuture<Void> cf = new CompletableFuture<>();
+			vertx_.close(r -> cf.complete(null));
+			cf.get(TIMEOUT_SEC_, TimeUnit.SECONDS);
+			vertx_ = null;
+		}
+	}
+
+	/**
+	 * Wait for the result of an asynchronous operation.
+	 * @param <T> the type of the result
+	 * @param operation an operation that receives a completion handler
+	 * @return the result of the operation, whether succeeded or failed
+	 * @throws Exception if the operation does not complete in time
+	 *          
+	 * 非同期処理の結果を待つ.
+	 * @param <T> 結果の型
+	 * @param operation completion handler を受け取る処理
+	 * @return 成功失敗にかかわらず処理の結果
+	 * @throws Exception 時間内に処理が終わらない場合
+	 */
+	public static <T> AsyncResult<T> await(Consumer<Handler<AsyncResult<T>>> operation) throws Exception {
+		CompletableFuture<AsyncResult<T>> cf = new CompletableFuture<>();
+		operation.accept(cf::complete);
+		return cf.get(TIMEOUT_SEC_, TimeUnit.SECONDS);
+	}
+	/**
+	 * Wait for the result of an asynchronous operation that must succeed.
+	 * @param <T> the type of the result
+	 * @param operation an operation that receives a completion handler
+	 * @return the result of the operation
+	 * @throws Exception if the operation fails or does not complete in time
+	 *          
+	 * 成功しなければならない非同期処理の結果を待つ.
+	 * @param <T> 結果の型
+	 * @param operation completion handler を受け取る処理
+	 * @return 処理の結果
+	 * @throws Exception 処理が失敗するか時間内に終わらない場合
+	 */
+	public static <T> T awaitSuccess(Consumer<Handler<AsyncResult<T>>> operation) throws Exception {
+		AsyncResult<T> result = await(operation);
+		if (result.failed()) throw new IllegalStateException(result.cause());
+		return result.result();
+	}
+
+	private static JsonObject readConfig_() throws IOException {
+		try (InputStream in = BenchmarkVertx.class.getClassLoader().getResourceAsStream(APIS_CONFIG_JSON)) {
+			if (in == null) throw new IOException("no " + APIS_CONFIG_JSON + " on classpath");
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			for (int n; 0 <= (n = in.read(buffer));) out.write(buffer, 0, n);
+			return new JsonObject(Buffer.buffer(out.toByteArray()));
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package jp.co.sony.csl.dcoes.apis.main.benchmark;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jp.co.sony.csl.dcoes.apis.main.app.HwConfigKeeping;
+import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.main_loop.DealExecution;
+import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.DealUtil;
+import jp.co.sony.csl.dcoes.apis.main.evaluation.safety.GlobalSafetyEvaluation;
+import jp.co.sony.csl.dcoes.apis.main.evaluation.safety.GridBranchCurrentCapacity;
+import jp.co.sony.csl.dcoes.apis.main.evaluation.safety.LocalSafetyEvaluation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the safety evaluations.
+ * The DEAL objects are stored in the shared memory during a trial, because {@link GlobalSafetyEvaluation} reads them from there.
+ * The results of checks are not asserted ; only the time taken is measured.
+ * @author OES Project
+ *          
+ * 安全性評価のベンチマーク.
+ * {@link GlobalSafetyEvaluation} は共有メモリから DEAL オブジェクトを読むため試行中は共有メモリに格納しておく.
+ * チェックの結果は問わず所要時間だけを測る.
+ * @author OES Project
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SafetyEvaluationBenchmark {
+
+	@Param({"10", "100", "1000"}) public int units;
+	@Param({"1", "20", "200"}) public int deals;
+	@Param({"false", "true"}) public boolean topologyBased;
+
+	private Vertx vertx_;
+	private JsonObject policy_;
+	private JsonObject unitData_;
+	private JsonObject aUnitData_;
+	private List<JsonObject> deals_;
+	private JsonObject newDeal_;
+
+	@Setup(Level.Trial) public void setUp() throws Exception {
+		vertx_ = BenchmarkVertx.get();
+		policy_ = SyntheticGrid.policy(units, topologyBased);
+		unitData_ = SyntheticGrid.unitData(units, deals, 1L);
+		aUnitData_ = unitData_.getJsonObject(SyntheticGrid.unitId(0));
+		deals_ = SyntheticGrid.deals(units, deals + 1);
+		newDeal_ = deals_.remove(deals);
+		DealExecution.unitDataCache.setJsonObject(unitData_);
+		HwConfigKeeping.CACHE.setJsonObject(SyntheticGrid.hwConfig());
+		for (JsonObject aDeal : deals_) {
+			BenchmarkVertx.<Void>awaitSuccess(h -> DealUtil.add(vertx_, aDeal, h));
+		}
+	}
+	@TearDown(Level.Trial) public void tearDown() throws Exception {
+		for (JsonObject aDeal : deals_) {
+			BenchmarkVertx.<JsonObject>await(h -> DealUtil.remove(vertx_, aDeal.getString("dealId"), true, h));
+		}
+		BenchmarkVertx.close();
+	}
+
+	/**
+	 * Judge whether or not a new interchange is possible.
+	 * @return {@code null} if possible, or the reason for failure otherwise
+	 *          
+	 * 新しい融通の可否を判定する.
+	 * @return 可なら {@code null}, 不可なら理由
+	 */
+	@Benchmark public String gridBranchCurrentCapacityCheckNewDeal() {
+		return GridBranchCurrentCapacity.checkNewDeal(vertx_, policy_, newDeal_, deals_);
+	}
+
+	/**
+	 * Perform a global safety check.
+	 * @return the result
+	 * @throws Exception if the check does not complete in time
+	 *          
+	 * グローバルな安全性をチェックする.
+	 * @return 結果
+	 * @throws Exception 時間内にチェックが終わらない場合
+	 */
+	@Benchmark public AsyncResult<Void> globalSafetyEvaluation() throws Exception {
+		return BenchmarkVertx.await(h -> GlobalSafetyEvaluation.check(vertx_, policy_, unitData_, h));
+	}
+
+	/**
+	 * Perform a local safety check.
+	 * @return the result
+	 * @throws Exception if the check does not complete in time
+	 *          
+	 * ローカルな安全性をチェックする.
+	 * @return 結果
+	 * @throws Exception 時間内にチェックが終わらない場合
+	 */
+	@Benchmark public AsyncResult<Void> localSafetyEvaluation() throws Exception {
+		return BenchmarkVertx.await(h -> LocalSafetyEvaluation.check(vertx_, policy_, aUnitData_, h));
+	}
+
+}
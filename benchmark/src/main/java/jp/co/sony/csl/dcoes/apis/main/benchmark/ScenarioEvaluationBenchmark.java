@@ -0,0 +1,88 @@
+package jp.co.sony.csl.dcoes.apis.main.benchmark;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DDCon;
+import jp.co.sony.csl.dcoes.apis.main.evaluation.scenario.impl.SimpleScenarioEvaluationImpl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of {@link SimpleScenarioEvaluationImpl#chooseAccept(Vertx, JsonObject, JsonObject, JsonObject, List, io.vertx.core.Handler)}.
+ * The selection is done in memory, so a local Vert.x instance is enough.
+ * @author OES Project
+ *          
+ * {@link SimpleScenarioEvaluationImpl#chooseAccept(Vertx, JsonObject, JsonObject, JsonObject, List, io.vertx.core.Handler)} のベンチマーク.
+ * 選択はメモリ上で完結するのでローカルな Vert.x インスタンスで足りる.
+ * @author OES Project
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ScenarioEvaluationBenchmark {
+
+	@Param({"1", "20", "200"}) public int accepts;
+	@Param({"amount", "pointAndAmount"}) public String strategy;
+
+	private final SimpleScenarioEvaluationImpl impl_ = new SimpleScenarioEvaluationImpl();
+	private Vertx vertx_;
+	private JsonObject scenario_;
+	private JsonObject unitData_;
+	private JsonObject request_;
+	private List<JsonObject> accepts_;
+
+	@Setup(Level.Trial) public void setUp() {
+		vertx_ = Vertx.vertx();
+		scenario_ = new JsonObject().put("acceptSelection", new JsonObject().put("strategy", strategy));
+		unitData_ = SyntheticGrid.aUnitData(0, DDCon.Mode.WAIT, new Random(1L));
+		request_ = new JsonObject().put("unitId", SyntheticGrid.unitId(0)).put("type", "charge").put("amountWh", 1000).put("pointPerWh", 10F);
+		accepts_ = new ArrayList<>(accepts);
+		for (int i = 0; i < accepts; i++) {
+			JsonObject anAccept = new JsonObject();
+			anAccept.put("unitId", SyntheticGrid.unitId(i + 1));
+			anAccept.put("type", "discharge");
+			anAccept.put("amountWh", 100 + (i * 37) % 900);
+			anAccept.put("pointPerWh", 5F + (i * 13) % 10);
+			accepts_.add(anAccept);
+		}
+	}
+	@TearDown(Level.Trial) public void tearDown() {
+		vertx_.close();
+	}
+
+	/**
+	 * Choose an accept.
+	 * @return the result
+	 *          
+	 * アクセプトを選ぶ.
+	 * @return 結果
+	 */
+	@Benchmark public AsyncResult<JsonObject> chooseAccept() {
+		@SuppressWarnings("unchecked") AsyncResult<JsonObject>[] result = new AsyncResult[1];
+		impl_.chooseAccept(vertx_, scenario_, unitData_, request_, accepts_, r -> result[0] = r);
+		return result[0];
+	}
+
+}
@@ -0,0 +1,219 @@
+package jp.co.sony.csl.dcoes.apis.main.benchmark;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DDCon;
+
+/**
+ * Generator of a synthetic grid for benchmarks.
+ * Unit data, DEAL objects, POLICY and HWCONFIG are generated deterministically from the number of units, the number of interchanges and a seed.
+ * Unit {@code 0} is the voltage reference and takes part in the master deal.
+ * Interchange {@code k} discharges from unit {@code 2k mod n} and charges unit {@code 2k+1 mod n}.
+ * @author OES Project
+ *          
+ * ベンチマーク用の合成グリッドの生成器.
+ * ユニット数, 融通数, シードからユニットデータ, DEAL オブジェクト, POLICY, HWCONFIG を決定的に生成する.
+ * ユニット {@code 0} が電圧リファレンスで master deal に参加する.
+ * 融通 {@code k} はユニット {@code 2k mod n} から放電しユニット {@code 2k+1 mod n} に充電する.
+ * @author OES Project
+ */
+public class SyntheticGrid {
+
+	private static final float GRID_VOLTAGE_V_ = 350F;
+	private static final float DEAL_GRID_CURRENT_A_ = 2F;
+	private static final String DATE_TIME_ = "2020/01/01-00:00:00";
+
+	private SyntheticGrid() { }
+
+	/**
+	 * Get the ID of the unit of the specified index.
+	 * @param i the index of the unit
+	 * @return the unit ID
+	 *          
+	 * 指定したインデクスのユニットの ID を取得する.
+	 * @param i ユニットのインデクス
+	 * @return ユニット ID
+	 */
+	public static String unitId(int i) {
+		return String.format("E%04d", i + 1);
+	}
+
+	/**
+	 * Generate the unit data of all units.
+	 * @param numberOfUnits the number of units
+	 * @param numberOfDeals the number of interchanges
+	 * @param seed the seed of random numbers
+	 * @return unit data of all units
+	 *          
+	 * 全ユニットのユニットデータを生成する.
+	 * @param numberOfUnits ユニット数
+	 * @param numberOfDeals 融通数
+	 * @param seed 乱数のシード
+	 * @return 全ユニットのユニットデータ
+	 */
+	public static JsonObject unitData(int numberOfUnits, int numberOfDeals, long seed) {
+		Random random = new Random(seed);
+		JsonObject result = new JsonObject();
+		for (int i = 0; i < numberOfUnits; i++) {
+			result.put(unitId(i), aUnitData(i, modeOf_(i, numberOfUnits, numberOfDeals), random));
+		}
+		return result;
+	}
+	/**
+	 * Generate the unit data of a unit.
+	 * @param i the index of the unit
+	 * @param mode the DDCon mode
+	 * @param random random numbers
+	 * @return unit data
+	 *          
+	 * ユニットのユニットデータを生成する.
+	 * @param i ユニットのインデクス
+	 * @param mode DDCon のモード
+	 * @param random 乱数
+	 * @return ユニットデータ
+	 */
+	public static JsonObject aUnitData(int i, DDCon.Mode mode, Random random) {
+		float dig = (DDCon.Mode.WAIT == mode || DDCon.Mode.VOLTAGE_REFERENCE == mode) ? 0F : DEAL_GRID_CURRENT_A_;
+		float ig = (DDCon.Mode.CHARGE == mode) ? -dig : dig;
+		ig += (random.nextFloat() - 0.5F) * 0.1F;
+		JsonObject status = new JsonObject().put("status", DDCon.codeFromMode(mode)).put("alarmState", "No alarm").put("operationMode", "Waiting");
+		JsonObject meter = new JsonObject().put("vg", GRID_VOLTAGE_V_ + random.nextFloat()).put("ig", ig).put("vb", 50F + random.nextFloat()).put("ib", ig * 7F).put("tmp", 30F + random.nextFloat() * 5F);
+		JsonObject dcdc = new JsonObject().put("status", status).put("meter", meter).put("vdis", new JsonObject().put("dvg", GRID_VOLTAGE_V_).put("drg", 0F)).put("param", new JsonObject().put("dig", dig));
+		JsonObject battery = new JsonObject().put("rsoc", 20F + random.nextFloat() * 70F).put("battery_operation_status", 3);
+		JsonObject apis = new JsonObject().put("remaining_capacity_wh", 500 + random.nextInt(4000));
+		return new JsonObject().put("oesunit", new JsonObject().put("id", unitId(i))).put("apis", apis).put("battery", battery).put("dcdc", dcdc);
+	}
+	private static DDCon.Mode modeOf_(int i, int numberOfUnits, int numberOfDeals) {
+		if (i == 0) return DDCon.Mode.VOLTAGE_REFERENCE;
+		int k = i / 2;
+		if (k < numberOfDeals && 2 * numberOfDeals <= numberOfUnits) {
+			return (i % 2 == 0) ? DDCon.Mode.DISCHARGE : DDCon.Mode.CHARGE;
+		}
+		return DDCon.Mode.WAIT;
+	}
+
+	/**
+	 * Generate DEAL objects.
+	 * The first one is the master deal.
+	 * Every tenth one is still ramping up, and every seventeenth one has a stop request.
+	 * @param numberOfUnits the number of units
+	 * @param numberOfDeals the number of interchanges
+	 * @return a list of DEAL objects
+	 *          
+	 * DEAL オブジェクトを生成する.
+	 * 最初のものが master deal.
+	 * 十個おきにランプアップ中, 十七個おきに停止要求を持つ.
+	 * @param numberOfUnits ユニット数
+	 * @param numberOfDeals 融通数
+	 * @return DEAL オブジェクトのリスト
+	 */
+	public static List<JsonObject> deals(int numberOfUnits, int numberOfDeals) {
+		List<JsonObject> result = new ArrayList<>(numberOfDeals);
+		for (int k = 0; k < numberOfDeals; k++) {
+			String dischargeUnitId = unitId((2 * k) % numberOfUnits);
+			String chargeUnitId = unitId((2 * k + 1) % numberOfUnits);
+			JsonObject aDeal = new JsonObject();
+			aDeal.put("dealId", "deal-" + k);
+			aDeal.put("type", "discharge");
+			aDeal.put("requestUnitId", dischargeUnitId);
+			aDeal.put("acceptUnitId", chargeUnitId);
+			aDeal.put("dischargeUnitId", dischargeUnitId);
+			aDeal.put("chargeUnitId", chargeUnitId);
+			aDeal.put("dealGridCurrentA", DEAL_GRID_CURRENT_A_);
+			aDeal.put("dealAmountWh", 100);
+			aDeal.put("createDateTime", DATE_TIME_);
+			aDeal.put("activateDateTime", DATE_TIME_);
+			aDeal.put("rampUpDateTime", DATE_TIME_);
+			if (k == 0) aDeal.put("isMaster", true);
+			if (k % 10 != 9) aDeal.put("startDateTime", DATE_TIME_);
+			if (k % 17 == 16) aDeal.put("needToStopReasons", new JsonArray().add("benchmark"));
+			result.add(aDeal);
+		}
+		return result;
+	}
+
+	/**
+	 * Generate a POLICY object.
+	 * Every tenth unit is a large capacity unit.
+	 * If {@code topologyBased} is {@code true}, the units are divided into four branches.
+	 * @param numberOfUnits the number of units
+	 * @param topologyBased whether or not to enable {@code safety.gridTopologyBasedEvaluation}
+	 * @return a POLICY object
+	 *          
+	 * POLICY オブジェクトを生成する.
+	 * 十台おきに大容量ユニットとする.
+	 * {@code topologyBased} が {@code true} ならユニットを四つのブランチに分ける.
+	 * @param numberOfUnits ユニット数
+	 * @param topologyBased {@code safety.gridTopologyBasedEvaluation} を有効にするか否か
+	 * @return POLICY オブジェクト
+	 */
+	public static JsonObject policy(int numberOfUnits, boolean topologyBased) {
+		JsonArray memberUnitIds = new JsonArray();
+		JsonArray largeCapacityUnitIds = new JsonArray();
+		for (int i = 0; i < numberOfUnits; i++) {
+			memberUnitIds.add(unitId(i));
+			if (i % 10 == 0) largeCapacityUnitIds.add(unitId(i));
+		}
+		JsonObject safety = new JsonObject();
+		safety.put("sumOfDealingUnitGridCurrentAllowancePerUnitA", 0.125F);
+		safety.put("sumOfDealGridCurrentMaxA", DEAL_GRID_CURRENT_A_ * numberOfUnits);
+		if (topologyBased) {
+			JsonArray branchIds = new JsonArray();
+			JsonObject capacities = new JsonObject();
+			JsonObject associations = new JsonObject();
+			for (int b = 0; b < 4; b++) {
+				String aBranchId = "branch" + b;
+				JsonArray forwardUnitIds = new JsonArray();
+				JsonArray backwardUnitIds = new JsonArray();
+				for (int i = 0; i < numberOfUnits; i++) {
+					if (i % 4 <= b) {
+						forwardUnitIds.add(unitId(i));
+					} else {
+						backwardUnitIds.add(unitId(i));
+					}
+				}
+				branchIds.add(aBranchId);
+				capacities.put(aBranchId, DEAL_GRID_CURRENT_A_ * numberOfUnits);
+				associations.put(aBranchId, new JsonObject().put("forwardUnitIds", forwardUnitIds).put("backwardUnitIds", backwardUnitIds));
+			}
+			safety.put("gridTopologyBasedEvaluation", new JsonObject().put("enabled", true).put("branchIds", branchIds).put("branchCurrentCapacityA", capacities).put("branchAssociation", associations));
+		}
+		JsonObject result = new JsonObject();
+		result.put("memberUnitIds", memberUnitIds);
+		result.put("largeCapacityUnitIds", largeCapacityUnitIds);
+		result.put("operationGridVoltageV", GRID_VOLTAGE_V_);
+		result.put("operationGridVoltageVRange", new JsonObject().put("min", 330F).put("max", 370F));
+		result.put("gridVoltageAllowanceV", 4F);
+		result.put("gridMaster", new JsonObject().put("voltageReferenceSide", "dischargeUnit"));
+		result.put("safety", safety);
+		return result;
+	}
+
+	/**
+	 * Generate a HWCONFIG object.
+	 * @return a HWCONFIG object
+	 *          
+	 * HWCONFIG オブジェクトを生成する.
+	 * @return HWCONFIG オブジェクト
+	 */
+	public static JsonObject hwConfig() {
+		JsonObject meter = new JsonObject();
+		meter.put("tmp", new JsonObject().put("min", -10F).put("max", 60F));
+		meter.put("vg", new JsonObject().put("min", -100F).put("max", 400F));
+		meter.put("vb", new JsonObject().put("min", -100F).put("max", 60F));
+		meter.put("ig", new JsonObject().put("min", -7F).put("max", 7F));
+		meter.put("ib", new JsonObject().put("min", -100F).put("max", 100F));
+		JsonObject result = new JsonObject();
+		result.put("batteryNominalCapacityWh", 4800F);
+		result.put("gridCurrentCapacityA", 10F);
+		result.put("gridCurrentAllowanceA", 0.125F);
+		result.put("safety", new JsonObject().put("range", new JsonObject().put("dcdc", new JsonObject().put("meter", meter))));
+		return result;
+	}
+
+}
@@ -14,12 +14,12 @@ import java.util.List;
 
 import jp.co.sony.csl.dcoes.apis.common.Error;
 import jp.co.sony.csl.dcoes.apis.common.ServiceAddress;
-import jp.co.sony.csl.dcoes.apis.common.util.vertx.EncryptedClusterWideMapUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectWrapper;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.VertxConfig;
 import jp.co.sony.csl.dcoes.apis.main.util.ApisConfig;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
 import jp.co.sony.csl.dcoes.apis.main.util.FileHandler;
+import jp.co.sony.csl.dcoes.apis.main.util.SharedMapUtil;
 
 /**
  * A Verticle that manages a POLICY.
@@ -236,7 +236,7 @@ public class PolicyKeeping extends AbstractVerticle {
 	 */
 	private void checkClusterPolicy(JsonObject policy, Handler<AsyncResult<Void>> completionHandler) {
 		String myValue = policy.encode();
-		EncryptedClusterWideMapUtil.<String, String>getEncryptedClusterWideMap(vertx, MAP_NAME, resMap -> {
+		SharedMapUtil.<String, String>getMap(vertx, MAP_NAME, resMap -> {
 			if (resMap.succeeded()) {
 				AsyncMap<String, String> theMap = resMap.result();
 				// If absent, try writing it
@@ -2,7 +2,6 @@ package jp.co.sony.csl.dcoes.apis.main.app;
 
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.AsyncResult;
-import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
@@ -17,20 +16,24 @@ import java.io.File;
 import jp.co.sony.csl.dcoes.apis.common.Error;
 import jp.co.sony.csl.dcoes.apis.common.ServiceAddress;
 import jp.co.sony.csl.dcoes.apis.common.util.StringUtil;
-import jp.co.sony.csl.dcoes.apis.common.util.vertx.EncryptedClusterWideMapUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.FileSystemUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.VertxConfig;
 import jp.co.sony.csl.dcoes.apis.main.util.ApisConfig;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
+import jp.co.sony.csl.dcoes.apis.main.util.SharedMapUtil;
 
 /**
  * A Verticle that manages various operating states.
  * Launched from the {@link jp.co.sony.csl.dcoes.apis.main.app.Apis} Verticle.
+ * The global interchange mode in shared memory is kept as an in-memory view on each node.
+ * Changes are published to {@link #OPERATION_MODE_CHANGED_ADDRESS}, and the view is reconciled with shared memory every {@code POLICY.operationModeReconciliationPeriodMsec} in case a notification is lost.
  * @author OES Project
  *
  * 各種動作状態を管理する Verticle.
  * {@link jp.co.sony.csl.dcoes.apis.main.app.Apis} Verticle から起動される.
+ * 共有メモリ上のグローバル融通モードは各ノードでメモリ上のビューとして保持する.
+ * 変更は {@link #OPERATION_MODE_CHANGED_ADDRESS} に publish し, 通知が失われた場合に備え {@code POLICY.operationModeReconciliationPeriodMsec} ごとにビューを共有メモリと突き合わせる.
  * @author OES Project
  */
 public class StateHandling extends AbstractVerticle {
@@ -44,6 +47,90 @@ public class StateHandling extends AbstractVerticle {
 	 * 値は {@value}.
 	 */
 	private static final JsonObjectUtil.DefaultString DEFAULT_FILE_FORMAT = new JsonObjectUtil.DefaultString(StringUtil.TMPDIR + "/apis/state/%s");
+	/**
+	 * Default value for the period of reconciling the global interchange mode view with shared memory [ms].
+	 * Value: {@value}.
+	 *
+	 * グローバル融通モードのビューを共有メモリと突き合わせる周期のデフォルト値 [ms].
+	 * 値は {@value}.
+	 */
+	private static final Long DEFAULT_OPERATION_MODE_RECONCILIATION_PERIOD_MSEC = 5000L;
+
+	/**
+	 * The address to which changes of the global interchange mode are published.
+	 * Message body: the new value in shared memory [{@link String}]. {@code null} if removed
+	 * Value: {@value}
+	 *
+	 * グローバル融通モードの変更を publish するアドレス.
+	 * メッセージボディ : 共有メモリの新しい値 [{@link String}]. 削除されたら {@code null}
+	 * 値は {@value}
+	 */
+	public static final String OPERATION_MODE_CHANGED_ADDRESS = "apis.main.StateHandling.operationModeChanged";
+
+	/**
+	 * Interchange modes.
+	 *
+	 * 融通モード.
+	 */
+	public enum OperationMode {
+		/**
+		 * Autonomous mode.
+		 *
+		 * 自律モード.
+		 */
+		AUTONOMOUS("autonomous"),
+		/**
+		 * Heteronomous mode.
+		 *
+		 * 他律モード.
+		 */
+		HETERONOMOUS("heteronomous"),
+		/**
+		 * Stop mode.
+		 *
+		 * 停止モード.
+		 */
+		STOP("stop"),
+		/**
+		 * Manual mode.
+		 *
+		 * マニュアルモード.
+		 */
+		MANUAL("manual");
+
+		private final String value;
+
+		private OperationMode(String value) {
+			this.value = value;
+		}
+
+		/**
+		 * Get the string value.
+		 * @return the string value
+		 *
+		 * 文字列の値を取得する.
+		 * @return 文字列の値
+		 */
+		public String value() {
+			return value;
+		}
+
+		/**
+		 * Get the interchange mode from a string value.
+		 * @param value the string value
+		 * @return the interchange mode, or {@code null} if {@code value} is {@code null} or not supported
+		 *
+		 * 文字列の値から融通モードを取得する.
+		 * @param value 文字列の値
+		 * @return 融通モード. {@code value} が {@code null} か未対応なら {@code null}
+		 */
+		public static OperationMode fromValue(String value) {
+			for (OperationMode aMode : values()) {
+				if (aMode.value.equals(value)) return aMode;
+			}
+			return null;
+		}
+	}
 
 	private static final String MAP_NAME = StateHandling.class.getName();
 	private static final String PATH_FORMAT;
@@ -57,6 +144,13 @@ public class StateHandling extends AbstractVerticle {
 	private static boolean started = false;
 	private static boolean stopping = false;
 
+	private static OperationMode globalOperationModeView = null;
+	private static boolean globalOperationModeViewValid = false;
+	private static long globalOperationModeViewGeneration = 0L;
+
+	private long reconciliationTimerId = 0L;
+	private boolean stopped = false;
+
 	/**
 	 * Called at startup.
 	 * Performs initialization processing.
@@ -78,8 +172,15 @@ public class StateHandling extends AbstractVerticle {
 					if (resGlobalOperationMode.succeeded()) {
 						startLocalOperationModeService(resLocalOperationMode -> {
 							if (resLocalOperationMode.succeeded()) {
-								LOGGER.trace("started : {}", deploymentID());
-								startFuture.complete();
+								startOperationModeChangedService(resOperationModeChanged -> {
+									if (resOperationModeChanged.succeeded()) {
+										reconciliationTimerHandler(0L);
+										LOGGER.trace("started : {}", deploymentID());
+										startFuture.complete();
+									} else {
+										startFuture.fail(resOperationModeChanged.cause());
+									}
+								});
 							} else {
 								startFuture.fail(resLocalOperationMode.cause());
 							}
@@ -96,13 +197,16 @@ public class StateHandling extends AbstractVerticle {
 
 	/**
 	 * Called when stopped.
+	 * Set a flag to stop the timer.
 	 * @throws Exception {@inheritDoc}
 	 *
 	 * 停止時に呼び出される.
+	 * タイマを止めるためのフラグを立てる.
 	 * @throws Exception {@inheritDoc}
 	 */
 	@Override
 	public void stop() throws Exception {
+		stopped = true;
 		LOGGER.trace("stopped : {}", deploymentID());
 	}
 
@@ -182,8 +286,7 @@ public class StateHandling extends AbstractVerticle {
 			String command = req.headers().get("command");
 			if ("set".equals(command)) {
 				String value = req.body();
-				if (value != null && !"autonomous".equals(value) && !"heteronomous".equals(value) &&
-						!"stop".equals(value) && !"manual".equals(value)) {
+				if (value != null && OperationMode.fromValue(value) == null) {
 					// Treated as null (unspecified) unless equal to "autonomous", "heteronomous", "stop" or "manual"
 					// "autonomous" でも "heteronomous" でも "stop" でも "manual" でもなければ null ( 無指定 ) として扱う
 					ErrorUtil.report(vertx, Error.Category.USER, Error.Extent.LOCAL, Error.Level.WARN,
@@ -193,6 +296,10 @@ public class StateHandling extends AbstractVerticle {
 				String result = value;
 				setToClusterWideMap(vertx, "operationMode", result, r -> {
 					if (r.succeeded()) {
+						// Reflect it locally first so that reads on this node that follow see the change without waiting for the message
+						// この後のこのノードでの読み出しがメッセージを待たずに変更を見るよう先にローカルに反映する
+						globalOperationModeChanged(OperationMode.fromValue(result));
+						vertx.eventBus().publish(OPERATION_MODE_CHANGED_ADDRESS, result);
 						LOGGER.info("global operationMode set to : {}", result);
 						req.reply(ApisConfig.unitId());
 					} else {
@@ -290,6 +397,134 @@ public class StateHandling extends AbstractVerticle {
 		}).completionHandler(completionHandler);
 	}
 
+	/**
+	 * Launch the {@link io.vertx.core.eventbus.EventBus} service.
+	 * Address: {@link #OPERATION_MODE_CHANGED_ADDRESS}
+	 * Scope: global
+	 * Function: Reflect a change of the global interchange mode to the view on this node.
+	 * Message body: the new value in shared memory [{@link String}]
+	 * Message header: none
+	 * Response: none
+	 * @param completionHandler the completion handler
+	 *
+	 * {@link io.vertx.core.eventbus.EventBus} サービス起動.
+	 * アドレス : {@link #OPERATION_MODE_CHANGED_ADDRESS}
+	 * 範囲 : グローバル
+	 * 処理 : グローバル融通モードの変更をこのノードのビューに反映する.
+	 * メッセージボディ : 共有メモリの新しい値 [{@link String}]
+	 * メッセージヘッダ : なし
+	 * レスポンス : なし
+	 * @param completionHandler the completion handler
+	 */
+	private void startOperationModeChangedService(Handler<AsyncResult<Void>> completionHandler) {
+		vertx.eventBus().<String>consumer(OPERATION_MODE_CHANGED_ADDRESS, req -> {
+			globalOperationModeChanged(validGlobalOperationMode(vertx, req.body()));
+		}).completionHandler(completionHandler);
+	}
+
+	/**
+	 * Set a timer to reconcile the global interchange mode view with shared memory.
+	 * The timeout duration is {@code POLICY.operationModeReconciliationPeriodMsec} (default: {@link #DEFAULT_OPERATION_MODE_RECONCILIATION_PERIOD_MSEC}).
+	 *
+	 * グローバル融通モードのビューを共有メモリと突き合わせるタイマ設定.
+	 * 待ち時間は {@code POLICY.operationModeReconciliationPeriodMsec} ( デフォルト値 {@link #DEFAULT_OPERATION_MODE_RECONCILIATION_PERIOD_MSEC} ).
+	 */
+	private void setReconciliationTimer() {
+		Long delay = PolicyKeeping.cache().getLong(DEFAULT_OPERATION_MODE_RECONCILIATION_PERIOD_MSEC, "operationModeReconciliationPeriodMsec");
+		reconciliationTimerId = vertx.setTimer(delay, this::reconciliationTimerHandler);
+	}
+
+	/**
+	 * Process the timer to reconcile the global interchange mode view with shared memory.
+	 * @param timerId timer ID
+	 *
+	 * グローバル融通モードのビューを共有メモリと突き合わせるタイマ処理.
+	 * @param timerId タイマ ID
+	 */
+	private void reconciliationTimerHandler(Long timerId) {
+		if (stopped) return;
+
+		if (null == timerId || timerId != reconciliationTimerId) {
+			ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.WARN,
+					"illegal timerId : " + timerId + ", reconciliationTimerId : " + reconciliationTimerId);
+			return;
+		}
+
+		readGlobalOperationModeView(vertx, res -> {
+			setReconciliationTimer();
+		});
+	}
+
+	/**
+	 * Reflect a change of the global interchange mode to the view on this node.
+	 * @param value the new value in shared memory
+	 *
+	 * グローバル融通モードの変更をこのノードのビューに反映する.
+	 * @param value 共有メモリの新しい値
+	 */
+	private static synchronized void globalOperationModeChanged(OperationMode value) {
+		// Reads in flight started before the change must not overwrite it
+		// 変更前に始まった読み出しが上書きしないようにする
+		globalOperationModeViewGeneration++;
+		globalOperationModeView = value;
+		globalOperationModeViewValid = true;
+	}
+
+	/**
+	 * Read the global interchange mode from shared memory into the view on this node.
+	 * Results are received with the {@link AsyncResult#result()} method of completionHandler.
+	 * @param vertx a vertx object
+	 * @param completionHandler the completion handler
+	 *
+	 * 共有メモリからグローバル融通モードをこのノードのビューに読み込む.
+	 * completionHandler の {@link AsyncResult#result()} で受け取る.
+	 * @param vertx vertx オブジェクト
+	 * @param completionHandler the completion handler
+	 */
+	private static void readGlobalOperationModeView(Vertx vertx, Handler<AsyncResult<OperationMode>> completionHandler) {
+		long generation;
+		synchronized (StateHandling.class) {
+			generation = globalOperationModeViewGeneration;
+		}
+		getFromClusterWideMap(vertx, "operationMode", res -> {
+			if (res.succeeded()) {
+				OperationMode result = validGlobalOperationMode(vertx, res.result());
+				synchronized (StateHandling.class) {
+					if (generation == globalOperationModeViewGeneration) {
+						if (globalOperationModeViewValid && globalOperationModeView != result) {
+							LOGGER.info("global operationMode reconciled : {} -> {}", globalOperationModeView, result);
+						}
+						globalOperationModeView = result;
+						globalOperationModeViewValid = true;
+					}
+				}
+				completionHandler.handle(Future.succeededFuture(result));
+			} else {
+				completionHandler.handle(Future.failedFuture(res.cause()));
+			}
+		});
+	}
+
+	/**
+	 * Validate a global interchange mode value in shared memory.
+	 * @param vertx a vertx object
+	 * @param value a value in shared memory
+	 * @return the interchange mode, or {@code null} if {@code value} is {@code null} or not supported
+	 *
+	 * 共有メモリのグローバル融通モードの値を検証する.
+	 * @param vertx vertx オブジェクト
+	 * @param value 共有メモリの値
+	 * @return 融通モード. {@code value} が {@code null} か未対応なら {@code null}
+	 */
+	private static OperationMode validGlobalOperationMode(Vertx vertx, String value) {
+		OperationMode result = OperationMode.fromValue(value);
+		if (value != null && result == null) {
+			ErrorUtil.report(vertx, Error.Category.USER, Error.Extent.LOCAL, Error.Level.WARN,
+					"global operationMode '" + value + "' not supported, follow policy");
+		}
+		return result;
+	}
+
 	/**
 	 * Retrieve the global interchange mode.
 	 * The value is one of the following.
@@ -318,40 +553,76 @@ public class StateHandling extends AbstractVerticle {
 	 * @param completionHandler the completion handler
 	 */
 	public static void globalOperationMode(Vertx vertx, Handler<AsyncResult<String>> completionHandler) {
-		getFromClusterWideMap(vertx, "operationMode", res -> {
+		globalOperationModeAsEnum(vertx, res -> {
 			if (res.succeeded()) {
-				String result = res.result();
-				if (result != null && !"autonomous".equals(result) && !"heteronomous".equals(result) &&
-						!"stop".equals(result) && !"manual".equals(result)) {
-					ErrorUtil.report(vertx, Error.Category.USER, Error.Extent.LOCAL, Error.Level.WARN,
-							"global operationMode '" + result + "' not supported, follow policy");
-					result = null;
-				}
-				if (result == null) {
-					// Fall back to the POLICY setting if the value is strange
-					// おかしな値だったら POLICY の設定値に落ちる
-					result = PolicyKeeping.cache().getString("operationMode");
-					if (result != null && !"autonomous".equals(result) && !"heteronomous".equals(result) &&
-							!"stop".equals(result) && !"manual".equals(result)) {
-						ErrorUtil.report(vertx, Error.Category.USER, Error.Extent.LOCAL, Error.Level.WARN,
-								"policy operationMode '" + result + "' not supported, default to null");
-						result = null;
-					}
-				}
-				if (result == null) {
-					// If the value is still strange, fall back to "stop"
-					// それでもおかしな値だったら "stop" に落ちる
-					ErrorUtil.report(vertx, Error.Category.USER, Error.Extent.LOCAL, Error.Level.WARN,
-							"global operationMode is null, default to 'stop'");
-					result = "stop";
-				}
-				completionHandler.handle(Future.succeededFuture(result));
+				completionHandler.handle(Future.succeededFuture(res.result().value()));
 			} else {
 				completionHandler.handle(Future.failedFuture(res.cause()));
 			}
 		});
 	}
 
+	/**
+	 * Retrieve the global interchange mode as {@link OperationMode}.
+	 * Returns the correct value from the view of shared memory on this node, if present.
+	 * The view is read from shared memory only if it has not been read yet.
+	 * Returns the correct value from POLICY, if present.
+	 * If neither are present, {@link OperationMode#STOP}.
+	 * Results are received with the {@link AsyncResult#result()} method of completionHandler.
+	 * @param vertx a vertx object
+	 * @param completionHandler the completion handler
+	 *
+	 * グローバル融通モードを {@link OperationMode} で取得する.
+	 * このノードの共有メモリのビューに正しい値があればそれを返す.
+	 * ビューはまだ読み込んでいない場合だけ共有メモリから読み込む.
+	 * POLICY に正しい値があればそれを返す.
+	 * いずれも無ければ {@link OperationMode#STOP}.
+	 * completionHandler の {@link AsyncResult#result()} で受け取る.
+	 * @param vertx vertx オブジェクト
+	 * @param completionHandler the completion handler
+	 */
+	public static void globalOperationModeAsEnum(Vertx vertx, Handler<AsyncResult<OperationMode>> completionHandler) {
+		boolean valid;
+		OperationMode view;
+		synchronized (StateHandling.class) {
+			valid = globalOperationModeViewValid;
+			view = globalOperationModeView;
+		}
+		if (valid) {
+			completionHandler.handle(Future.succeededFuture(resolveGlobalOperationMode(vertx, view)));
+		} else {
+			readGlobalOperationModeView(vertx, res -> {
+				if (res.succeeded()) {
+					completionHandler.handle(Future.succeededFuture(resolveGlobalOperationMode(vertx, res.result())));
+				} else {
+					completionHandler.handle(Future.failedFuture(res.cause()));
+				}
+			});
+		}
+	}
+
+	private static OperationMode resolveGlobalOperationMode(Vertx vertx, OperationMode value) {
+		OperationMode result = value;
+		if (result == null) {
+			// Fall back to the POLICY setting if the value is strange
+			// おかしな値だったら POLICY の設定値に落ちる
+			String policyValue = PolicyKeeping.cache().getString("operationMode");
+			result = OperationMode.fromValue(policyValue);
+			if (policyValue != null && result == null) {
+				ErrorUtil.report(vertx, Error.Category.USER, Error.Extent.LOCAL, Error.Level.WARN,
+						"policy operationMode '" + policyValue + "' not supported, default to null");
+			}
+		}
+		if (result == null) {
+			// If the value is still strange, fall back to "stop"
+			// それでもおかしな値だったら "stop" に落ちる
+			ErrorUtil.report(vertx, Error.Category.USER, Error.Extent.LOCAL, Error.Level.WARN,
+					"global operationMode is null, default to 'stop'");
+			result = OperationMode.STOP;
+		}
+		return result;
+	}
+
 	/**
 	 * Retrieve the local interchange mode.
 	 * The value is one of the following.
@@ -376,6 +647,10 @@ public class StateHandling extends AbstractVerticle {
 	 * @param completionHandler the completion handler
 	 */
 	public static void localOperationMode(Vertx vertx, Handler<AsyncResult<String>> completionHandler) {
+		completionHandler.handle(Future.succeededFuture(localOperationMode(vertx)));
+	}
+
+	private static String localOperationMode(Vertx vertx) {
 		String result = operationMode;
 		if (result != null && !"heteronomous".equals(result) && !"stop".equals(result)) {
 			// Treated as null (unspecified) unless equal to "heteronomous" or "stop"
@@ -384,7 +659,7 @@ public class StateHandling extends AbstractVerticle {
 					"local operationMode '" + result + "' not supported, default to null");
 			result = null;
 		}
-		completionHandler.handle(Future.succeededFuture(result));
+		return result;
 	}
 
 	/**
@@ -433,46 +708,46 @@ public class StateHandling extends AbstractVerticle {
 	 * @param completionHandler the completion handler
 	 */
 	public static void operationModes(Vertx vertx, Handler<AsyncResult<JsonObject>> completionHandler) {
-		Future<String> globalFuture = Future.future();
-		Future<String> localFuture = Future.future();
-		globalOperationMode(vertx, globalFuture);
-		localOperationMode(vertx, localFuture);
-		CompositeFuture.<String, String>all(globalFuture, localFuture).setHandler(ar -> {
-			if (ar.succeeded()) {
-				String global = ar.result().resultAt(0);
-				String local = ar.result().resultAt(1);
-				String effective = null;
-
-				if (local == null) {
-					effective = global;
-				} else if ("autonomous".equals(global)) {
-					effective = local;
-				} else if ("heteronomous".equals(global)) {
-					effective = local;
-				} else if ("stop".equals(global)) {
-					effective = global;
-				} else if ("manual".equals(global)) {
-					effective = global;
-				}
-
-				if (effective == null) {
-					ErrorUtil.report(vertx, Error.Category.USER, Error.Extent.LOCAL, Error.Level.WARN,
-							"illegal operationModes; global : " + global + ", local : " + local + "; use 'stop'");
-					effective = "stop";
-				}
-
+		globalOperationModeAsEnum(vertx, res -> {
+			if (res.succeeded()) {
+				OperationMode global = res.result();
+				String local = localOperationMode(vertx);
+				OperationMode effective = effectiveOperationMode(vertx, global, local);
 				JsonObject result = new JsonObject()
-						.put("global", global)
+						.put("global", global.value())
 						.put("local", local)
-						.put("effective", effective);
+						.put("effective", effective.value());
 
 				completionHandler.handle(Future.succeededFuture(result));
 			} else {
-				completionHandler.handle(Future.failedFuture(ar.cause()));
+				completionHandler.handle(Future.failedFuture(res.cause()));
 			}
 		});
 	}
 
+	private static OperationMode effectiveOperationMode(Vertx vertx, OperationMode global, String local) {
+		OperationMode effective = null;
+
+		if (local == null) {
+			effective = global;
+		} else if (OperationMode.AUTONOMOUS == global) {
+			effective = OperationMode.fromValue(local);
+		} else if (OperationMode.HETERONOMOUS == global) {
+			effective = OperationMode.fromValue(local);
+		} else if (OperationMode.STOP == global) {
+			effective = global;
+		} else if (OperationMode.MANUAL == global) {
+			effective = global;
+		}
+
+		if (effective == null) {
+			ErrorUtil.report(vertx, Error.Category.USER, Error.Extent.LOCAL, Error.Level.WARN,
+					"illegal operationModes; global : " + global.value() + ", local : " + local + "; use 'stop'");
+			effective = OperationMode.STOP;
+		}
+		return effective;
+	}
+
 	/**
 	 * Retrieve the effective interchange mode.
 	 * Extract and return the {@code "effective"} element in the results returned by {@link #operationModes(Vertx, Handler)}.
@@ -487,9 +762,30 @@ public class StateHandling extends AbstractVerticle {
 	 * @param completionHandler the completion handler
 	 */
 	public static void operationMode(Vertx vertx, Handler<AsyncResult<String>> completionHandler) {
-		operationModes(vertx, res -> {
+		operationModeAsEnum(vertx, res -> {
+			if (res.succeeded()) {
+				completionHandler.handle(Future.succeededFuture(res.result().value()));
+			} else {
+				completionHandler.handle(Future.failedFuture(res.cause()));
+			}
+		});
+	}
+
+	/**
+	 * Retrieve the effective interchange mode as {@link OperationMode}.
+	 * Results are received with the {@link AsyncResult#result()} method of completionHandler.
+	 * @param vertx a vertx object
+	 * @param completionHandler the completion handler
+	 *
+	 * 実効融通モードを {@link OperationMode} で取得する.
+	 * completionHandler の {@link AsyncResult#result()} で受け取る.
+	 * @param vertx vertx オブジェクト
+	 * @param completionHandler the completion handler
+	 */
+	public static void operationModeAsEnum(Vertx vertx, Handler<AsyncResult<OperationMode>> completionHandler) {
+		globalOperationModeAsEnum(vertx, res -> {
 			if (res.succeeded()) {
-				completionHandler.handle(Future.succeededFuture(res.result().getString("effective")));
+				completionHandler.handle(Future.succeededFuture(effectiveOperationMode(vertx, res.result(), localOperationMode(vertx))));
 			} else {
 				completionHandler.handle(Future.failedFuture(res.cause()));
 			}
@@ -563,7 +859,7 @@ public class StateHandling extends AbstractVerticle {
 	 * @param completionHandler the completion handler
 	 */
 	private static void setToClusterWideMap(Vertx vertx, String key, String value, Handler<AsyncResult<Void>> completionHandler) {
-		EncryptedClusterWideMapUtil.<String, String>getEncryptedClusterWideMap(vertx, MAP_NAME, resMap -> {
+		SharedMapUtil.<String, String>getMap(vertx, MAP_NAME, resMap -> {
 			if (resMap.succeeded()) {
 				AsyncMap<String, String> map = resMap.result();
 				if (value != null) {
@@ -571,8 +867,7 @@ public class StateHandling extends AbstractVerticle {
 						if (resPut.succeeded()) {
 							completionHandler.handle(Future.succeededFuture());
 						} else {
-							ErrorUtil.reportAndFail(vertx, Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR,
-									"Communication failed on SharedData", resPut.cause(), completionHandler);
+							SharedMapUtil.reportAndFail(vertx, Error.Extent.LOCAL, resPut.cause(), completionHandler);
 						}
 					});
 				} else {
@@ -580,14 +875,12 @@ public class StateHandling extends AbstractVerticle {
 						if (resRemove.succeeded()) {
 							completionHandler.handle(Future.succeededFuture());
 						} else {
-							ErrorUtil.reportAndFail(vertx, Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR,
-									"Communication failed on SharedData", resRemove.cause(), completionHandler);
+							SharedMapUtil.reportAndFail(vertx, Error.Extent.LOCAL, resRemove.cause(), completionHandler);
 						}
 					});
 				}
 			} else {
-				ErrorUtil.reportAndFail(vertx, Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR,
-						"Communication failed on SharedData", resMap.cause(), completionHandler);
+				SharedMapUtil.reportAndFail(vertx, Error.Extent.LOCAL, resMap.cause(), completionHandler);
 			}
 		});
 	}
@@ -606,20 +899,18 @@ public class StateHandling extends AbstractVerticle {
 	 * @param completionHandler the completion handler
 	 */
 	private static void getFromClusterWideMap(Vertx vertx, String key, Handler<AsyncResult<String>> completionHandler) {
-		EncryptedClusterWideMapUtil.<String, String>getEncryptedClusterWideMap(vertx, MAP_NAME, resMap -> {
+		SharedMapUtil.<String, String>getMap(vertx, MAP_NAME, resMap -> {
 			if (resMap.succeeded()) {
 				AsyncMap<String, String> map = resMap.result();
 				map.get(key, resGet -> {
 					if (resGet.succeeded()) {
 						completionHandler.handle(Future.succeededFuture(resGet.result()));
 					} else {
-						ErrorUtil.reportAndFail(vertx, Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR,
-								"Communication failed on SharedData", resGet.cause(), completionHandler);
+						SharedMapUtil.reportAndFail(vertx, Error.Extent.LOCAL, resGet.cause(), completionHandler);
 					}
 				});
 			} else {
-				ErrorUtil.reportAndFail(vertx, Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR,
-						"Communication failed on SharedData", resMap.cause(), completionHandler);
+				SharedMapUtil.reportAndFail(vertx, Error.Extent.LOCAL, resMap.cause(), completionHandler);
 			}
 		});
 	}
@@ -6,8 +6,10 @@ import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.http.HttpClient;
+import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
@@ -17,8 +19,14 @@ import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 import jp.co.sony.csl.dcoes.apis.common.Error;
 import jp.co.sony.csl.dcoes.apis.common.ServiceAddress;
@@ -29,6 +37,9 @@ import jp.co.sony.csl.dcoes.apis.common.util.vertx.LocalExclusiveLock;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.VertxConfig;
 import jp.co.sony.csl.dcoes.apis.main.app.HwConfigKeeping;
 import jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverCircuitBreaker;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverConnection;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverResponseParser;
 import jp.co.sony.csl.dcoes.apis.main.app.StateHandling;
 import jp.co.sony.csl.dcoes.apis.main.app.mediator.Interlocking;
 import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.InterlockUtil;
@@ -81,6 +92,14 @@ public abstract class DataAcquisition extends AbstractVerticle {
 	 * 値は {@value}.
 	 */
 	private static final Integer DEFAULT_RETRY_LIMIT = 3;
+	/**
+	 * Default refresh cycle of the {@code oesunit} attributes [ms].
+	 * Value: {@value}.
+	 *          
+	 * {@code oesunit} 属性の更新周期のデフォルト値 [ms].
+	 * 値は {@value}.
+	 */
+	private static final Long DEFAULT_OESUNIT_REFRESHING_PERIOD_MSEC = 60000L;
 
 	private static final LocalExclusiveLock exclusiveLock_ = new LocalExclusiveLock(DataAcquisition.class.getName());
 	/**
@@ -115,14 +134,25 @@ public abstract class DataAcquisition extends AbstractVerticle {
 	 */
 	public static final JsonObjectWrapper cache = new JsonObjectWrapper();
 
+	private final Map<HttpClient, Map<String, List<Handler<AsyncResult<JsonObject>>>>> inFlightRequests_ = new IdentityHashMap<>();
+
 	private long dataAcquisitionTimerId_ = 0L;
+	private long oesunitRefreshingTimerId_ = 0L;
+	// Never modified once cached; a copy is attached to each unit data
+	// キャッシュしたら変更しない. ユニットデータごとにコピーを付ける
+	private JsonObject oesunit_ = null;
 	private long lastDataAcquisitionMillis_ = 0L;
 	private boolean stopped_ = false;
+	// The latest pushed unit data waiting for the one being processed
+	// 処理中のものを待っている最新のプッシュされたユニットデータ
+	private JsonObject pendingPushedData_ = null;
+	private boolean processingPushedData_ = false;
 
 	/**
 	 * Called at startup.
 	 * Perform various initialization processes.
 	 * Launches the {@link io.vertx.core.eventbus.EventBus} service.
+	 * The {@code oesunit} attributes are cached first, and a timer to refresh them is started.
 	 * Start a timer for periodic acquisition of unit data and cache updates.
 	 * @param startFuture {@inheritDoc}
 	 * @throws Exception {@inheritDoc}
@@ -130,42 +160,52 @@ public abstract class DataAcquisition extends AbstractVerticle {
 	 * 起動時に呼び出される.
 	 * 各種初期化処理を実行する.
 	 * {@link io.vertx.core.eventbus.EventBus} サービスを起動する.
+	 * まず {@code oesunit} 属性をキャッシュし, 更新するタイマを起動する.
 	 * 定期的にユニットデータを取得しキャッシュを更新するタイマを起動する.
 	 * @param startFuture {@inheritDoc}
 	 * @throws Exception {@inheritDoc}
 	 */
 	@Override public void start(Future<Void> startFuture) throws Exception {
-		init(resInit -> {
-			if (resInit.succeeded()) {
-				startInternalUrgentUnitDataService_(resInternalUrgentUnitData -> {
-					if (resInternalUrgentUnitData.succeeded()) {
-						startInternalUrgentUnitDeviceStatusService_(resInternalUrgentUnitDeviceStatus -> {
-							if (resInternalUrgentUnitDeviceStatus.succeeded()) {
-								startResetLocalService_(resResetLocal -> {
-									if (resResetLocal.succeeded()) {
-										startResetAllService_(resResetAll -> {
-											if (resResetAll.succeeded()) {
-												dataAcquisitionTimerHandler_(0L);
-												if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
-												startFuture.complete();
+		// Cache the oesunit attributes before anything can complete unit data : init() may open a push stream and the services answer with unit data
+		// ユニットデータを仕上げうる処理より先に oesunit 属性をキャッシュする : init() がプッシュストリームを開くかもしれずサービスはユニットデータを返す
+		refreshOesunit_(resRefreshOesunit -> {
+			if (resRefreshOesunit.succeeded()) {
+				init(resInit -> {
+					if (resInit.succeeded()) {
+						startInternalUrgentUnitDataService_(resInternalUrgentUnitData -> {
+							if (resInternalUrgentUnitData.succeeded()) {
+								startInternalUrgentUnitDeviceStatusService_(resInternalUrgentUnitDeviceStatus -> {
+									if (resInternalUrgentUnitDeviceStatus.succeeded()) {
+										startResetLocalService_(resResetLocal -> {
+											if (resResetLocal.succeeded()) {
+												startResetAllService_(resResetAll -> {
+													if (resResetAll.succeeded()) {
+														setOesunitRefreshingTimer_();
+														dataAcquisitionTimerHandler_(0L);
+														if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
+														startFuture.complete();
+													} else {
+														startFuture.fail(resResetAll.cause());
+													}
+												});
 											} else {
-												startFuture.fail(resResetAll.cause());
+												startFuture.fail(resResetLocal.cause());
 											}
 										});
 									} else {
-										startFuture.fail(resResetLocal.cause());
+										startFuture.fail(resInternalUrgentUnitDeviceStatus.cause());
 									}
 								});
 							} else {
-								startFuture.fail(resInternalUrgentUnitDeviceStatus.cause());
+								startFuture.fail(resInternalUrgentUnitData.cause());
 							}
 						});
 					} else {
-						startFuture.fail(resInternalUrgentUnitData.cause());
+						startFuture.fail(resInit.cause());
 					}
 				});
 			} else {
-				startFuture.fail(resInit.cause());
+				startFuture.fail(resRefreshOesunit.cause());
 			}
 		});
 	}
@@ -229,6 +269,51 @@ public abstract class DataAcquisition extends AbstractVerticle {
 	 */
 	protected abstract JsonObject mergeDeviceStatus(JsonObject value);
 
+	/**
+	 * Accept unit data pushed by the driver.
+	 * For the implementations which subscribe to a driver-side push stream.
+	 * {@code data} has the same content as the result of {@link #getData(Handler)} and is processed the same way : the cache is updated and the safety checks run.
+	 * A sample updates the time of the last data acquisition, so the periodic acquisition does not poll while samples keep arriving and resumes by itself when they stop.
+	 * Samples arriving while one is being processed are coalesced and only the latest one is processed next.
+	 * @param data unit data from the driver
+	 *          
+	 * ドライバがプッシュしたユニットデータを受け付ける.
+	 * ドライバ側のプッシュストリームを購読する実装向け.
+	 * {@code data} の内容は {@link #getData(Handler)} の結果と同じで, 同じように処理する : キャッシュを更新し安全チェックを実行する.
+	 * サンプルは前回のデータ取得時刻を更新するので, サンプルが届き続ける間は定期的なデータ取得がポーリングせず, 途切れたら自ずと再開する.
+	 * 処理中に届いたサンプルはまとめて最新の一つだけを次に処理する.
+	 * @param data ドライバからのユニットデータ
+	 */
+	protected void acceptPushedData(JsonObject data) {
+		if (stopped_) return;
+		if (processingPushedData_) {
+			pendingPushedData_ = data;
+			return;
+		}
+		processingPushedData_ = true;
+		long ts = System.currentTimeMillis();
+		// Exclusive with the device control as the periodic acquisition is
+		// 定期的なデータ取得と同様にデバイス制御と排他する
+		acquireExclusiveLock(vertx, resExclusiveLock -> {
+			if (resExclusiveLock.succeeded()) {
+				LocalExclusiveLock.Lock lock = resExclusiveLock.result();
+				completeData_(ts, data, resCompleteData -> {
+					lock.release();
+					pushedDataProcessed_();
+				});
+			} else {
+				ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.WARN, resExclusiveLock.cause());
+				pushedDataProcessed_();
+			}
+		});
+	}
+	private void pushedDataProcessed_() {
+		processingPushedData_ = false;
+		JsonObject pending = pendingPushedData_;
+		pendingPushedData_ = null;
+		if (pending != null) acceptPushedData(pending);
+	}
+
 	////
 
 	/**
@@ -430,6 +515,66 @@ public abstract class DataAcquisition extends AbstractVerticle {
 		getData_(completionHandler);
 	}
 
+	/**
+	 * {@code oesunit} refresh timer setting.
+	 * The timeout duration is {@code CONFIG.oesunit.refreshingPeriodMsec} (default: {@link #DEFAULT_OESUNIT_REFRESHING_PERIOD_MSEC}).
+	 *          
+	 * {@code oesunit} 更新タイマ設定.
+	 * 待ち時間は {@code CONFIG.oesunit.refreshingPeriodMsec} ( デフォルト値 {@link #DEFAULT_OESUNIT_REFRESHING_PERIOD_MSEC} ).
+	 */
+	private void setOesunitRefreshingTimer_() {
+		Long delay = VertxConfig.config.getLong(DEFAULT_OESUNIT_REFRESHING_PERIOD_MSEC, "oesunit", "refreshingPeriodMsec");
+		oesunitRefreshingTimerId_ = vertx.setTimer(delay, this::oesunitRefreshingTimerHandler_);
+	}
+	/**
+	 * {@code oesunit} refresh timer processing.
+	 * @param timerId timer ID
+	 *          
+	 * {@code oesunit} 更新タイマ処理.
+	 * @param timerId タイマ ID
+	 */
+	private void oesunitRefreshingTimerHandler_(Long timerId) {
+		if (stopped_) return;
+		if (null == timerId || timerId.longValue() != oesunitRefreshingTimerId_) {
+			ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.WARN, "illegal timerId : " + timerId + ", oesunitRefreshingTimerId_ : " + oesunitRefreshingTimerId_);
+			return;
+		}
+		refreshOesunit_(resRefreshOesunit -> {
+			if (resRefreshOesunit.failed()) {
+				ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.WARN, resRefreshOesunit.cause());
+			}
+			setOesunitRefreshingTimer_();
+		});
+	}
+	/**
+	 * Rebuild the cached {@code oesunit} attributes.
+	 * Scanning the network interfaces takes system calls, so it is done on a worker thread.
+	 * @param completionHandler the completion handler
+	 *          
+	 * キャッシュしている {@code oesunit} 属性を作り直す.
+	 * ネットワークインタフェイスの走査はシステムコールを伴うのでワーカスレッドで行う.
+	 * @param completionHandler the completion handler
+	 */
+	private void refreshOesunit_(Handler<AsyncResult<Void>> completionHandler) {
+		vertx.<JsonObject>executeBlocking(future -> {
+			JsonObject result = new JsonObject();
+			doConfig_(result);
+			doNetwork_(result);
+			future.complete(result);
+		}, false, res -> {
+			if (res.succeeded()) {
+				JsonObject oesunit = res.result();
+				if (oesunit_ != null && !oesunit_.equals(oesunit)) {
+					if (log.isInfoEnabled()) log.info("oesunit changed : " + oesunit_ + " -> " + oesunit);
+				}
+				oesunit_ = oesunit;
+				completionHandler.handle(Future.succeededFuture());
+			} else {
+				completionHandler.handle(Future.failedFuture(res.cause()));
+			}
+		});
+	}
+
 	////
 
 	////
@@ -446,17 +591,43 @@ public abstract class DataAcquisition extends AbstractVerticle {
 	private void getData_(Handler<AsyncResult<JsonObject>> completionHandler) {
 		                                      // Record the start time of the data acquisition process
 		long ts = System.currentTimeMillis(); // データ取得処理開始時刻を記録しておく
-		Future<JsonObject> getDataFuture = Future.future();
-		Future<JsonObject> getOesunitFuture = Future.future();
-		                        // Call the actual implementation of the subclass for each driver
-		getData(getDataFuture); // ドライバごとのサブクラスの実実装を呼ぶ
-		getOesunit_(getOesunitFuture);
-		CompositeFuture.<JsonObject, JsonObject>all(getDataFuture, getOesunitFuture).setHandler(ar -> {
+		// Call the actual implementation of the subclass for each driver
+		// ドライバごとのサブクラスの実実装を呼ぶ
+		getData(res -> {
+			if (res.succeeded()) {
+				completeData_(ts, res.result(), completionHandler);
+			} else if (DriverCircuitBreaker.isAnyOpen()) {
+				// No unit data arrives while a breaker is open, so evaluate the breakers directly
+				// ブレーカが開いている間はユニットデータが届かないのでブレーカを直接評価する
+				LocalSafetyEvaluation.checkDriverCircuitBreaker(vertx, resSafetyEvaluation -> {
+					completionHandler.handle(Future.failedFuture(res.cause()));
+				});
+			} else {
+				completionHandler.handle(Future.failedFuture(res.cause()));
+			}
+		});
+	}
+	/**
+	 * Complete unit data from the driver and update the cache.
+	 * Common to the polled and the pushed unit data.
+	 * Receive the results with the {@link AsyncResult#result()} method of completionHandler.
+	 * @param ts the start time of the data acquisition process [ms]
+	 * @param result unit data from the driver. Completed in place
+	 * @param completionHandler the completion handler
+	 *          
+	 * ドライバからのユニットデータを仕上げキャッシュを更新する.
+	 * ポーリングしたユニットデータとプッシュされたユニットデータで共通.
+	 * completionHandler の {@link AsyncResult#result()} で結果を受け取る.
+	 * @param ts データ取得処理開始時刻 [ms]
+	 * @param result ドライバからのユニットデータ. そのまま仕上げる
+	 * @param completionHandler the completion handler
+	 */
+	private void completeData_(long ts, JsonObject result, Handler<AsyncResult<JsonObject>> completionHandler) {
+		getOesunit_(ar -> {
 			if (ar.succeeded()) {
 				                                 // Update the data acquisition process start time
 				lastDataAcquisitionMillis_ = ts; // データ取得処理開始時刻を更新する
-				JsonObject result = ar.result().resultAt(0);
-				JsonObject oesunit = ar.result().resultAt(1);
+				JsonObject oesunit = ar.result();
 				result.put("oesunit", oesunit);
 				getApisData_(result, res -> {
 					if (res.succeeded()) {
@@ -484,18 +655,29 @@ public abstract class DataAcquisition extends AbstractVerticle {
 
 	/**
 	 * This information is also mostly for the old BUDO system.
+	 * Returns a copy of the attributes cached by {@link #refreshOesunit_(Handler)}, because the caller modifies it.
+	 * Builds them first if they have not been cached yet.
 	 * Receive the results with the {@link AsyncResult#result()} method of completionHandler.
 	 * @param completionHandler the completion handler
 	 *          
 	 * このへんもいにしえの BUDO システム用の情報がメイン.
+	 * 呼び出し側が変更するので {@link #refreshOesunit_(Handler)} がキャッシュした属性のコピーを返す.
+	 * まだキャッシュされていなければ先に作る.
 	 * completionHandler の {@link AsyncResult#result()} で結果を受け取る.
 	 * @param completionHandler the completion handler
 	 */
 	private void getOesunit_(Handler<AsyncResult<JsonObject>> completionHandler) {
-		JsonObject result = new JsonObject();
-		doConfig_(result);
-		doNetwork_(result);
-		completionHandler.handle(Future.succeededFuture(result));
+		if (oesunit_ != null) {
+			completionHandler.handle(Future.succeededFuture(oesunit_.copy()));
+		} else {
+			refreshOesunit_(res -> {
+				if (res.succeeded()) {
+					completionHandler.handle(Future.succeededFuture(oesunit_.copy()));
+				} else {
+					completionHandler.handle(Future.failedFuture(res.cause()));
+				}
+			});
+		}
 	}
 	private void doConfig_(JsonObject oesunit) {
 		oesunit.put("communityId", VertxConfig.communityId());
@@ -590,6 +772,10 @@ public abstract class DataAcquisition extends AbstractVerticle {
 		}
 		int dealInterlockCapacity = Interlocking.dealInterlockCapacity(vertx);
 		result.put("deal_interlock_capacity", dealInterlockCapacity);
+		JsonObject driverCircuitBreakers = DriverCircuitBreaker.toJsonObject();
+		if (!driverCircuitBreakers.isEmpty()) {
+			result.put("driver_circuit_breaker", driverCircuitBreakers);
+		}
 		Future<String> getGridMasterUnitIdFuture = Future.future();
 		Future<Collection<String>> getDealIdsFuture = Future.future();
 		Future<JsonObject> getOperationModesFuture = Future.future();
@@ -641,22 +827,74 @@ public abstract class DataAcquisition extends AbstractVerticle {
 
 	/**
 	 * Send out an external HTTP GET request and return the response.
+	 * All requests here only read from the device, so a request identical to one still in flight is not sent but waits for the result of the one in flight.
+	 * Each waiter receives its own copy of the result because the subclasses modify it.
 	 * Receive the results with the {@link AsyncResult#result()} method of completionHandler.
 	 * @param client an httpclient object
 	 * @param uri the request URI
 	 * @param completionHandler the completion handler
 	 *          
 	 * HTTP GET で外部にリクエストを送信しレスポンスを返す.
+	 * ここでのリクエストはどれもデバイスから読むだけなので, 実行中のものと同じリクエストは送らず実行中のものの結果を待つ.
+	 * サブクラスが結果を変更するので待っていたものはそれぞれ結果のコピーを受け取る.
 	 * completionHandler の {@link AsyncResult#result()} で結果を受け取る.
 	 * @param client httpclient オブジェクト
 	 * @param uri リクエストの URI
 	 * @param completionHandler the completion handler
 	 */
 	protected void send(HttpClient client, String uri, Handler<AsyncResult<JsonObject>> completionHandler) {
+		send(client, uri, null, completionHandler);
+	}
+	/**
+	 * Send out an external HTTP GET request and return the response decoded by {@code decoder}.
+	 * Used to decode a driver response with {@link DriverResponseParser} instead of {@link JsonObject#JsonObject(Buffer)}.
+	 * The same URI is assumed to be always decoded with the same decoder, because identical requests in flight are coalesced.
+	 * A decoding failure counts as a failure of the request, and is retried.
+	 * Receive the results with the {@link AsyncResult#result()} method of completionHandler.
+	 * @param client an httpclient object
+	 * @param uri the request URI
+	 * @param decoder the decoder of the response body. {@code null} to decode as a plain {@link JsonObject}
+	 * @param completionHandler the completion handler
+	 *          
+	 * HTTP GET で外部にリクエストを送信し {@code decoder} でデコードしたレスポンスを返す.
+	 * ドライバのレスポンスを {@link JsonObject#JsonObject(Buffer)} ではなく {@link DriverResponseParser} でデコードするために使う.
+	 * 実行中の同じリクエストはまとめられるので, 同じ URI は常に同じ decoder でデコードされるものとする.
+	 * デコードの失敗はリクエストの失敗として扱いリトライする.
+	 * completionHandler の {@link AsyncResult#result()} で結果を受け取る.
+	 * @param client httpclient オブジェクト
+	 * @param uri リクエストの URI
+	 * @param decoder レスポンスボディのデコーダ. 単なる {@link JsonObject} としてデコードするなら {@code null}
+	 * @param completionHandler the completion handler
+	 */
+	protected void send(HttpClient client, String uri, Function<Buffer, JsonObject> decoder, Handler<AsyncResult<JsonObject>> completionHandler) {
+		Map<String, List<Handler<AsyncResult<JsonObject>>>> requests = inFlightRequests_.computeIfAbsent(client, k -> new HashMap<>());
+		List<Handler<AsyncResult<JsonObject>>> waiters = requests.get(uri);
+		if (waiters != null) {
+			// The same request is in flight → Wait for its result
+			// 同じリクエストが実行中 → その結果を待つ
+			if (log.isDebugEnabled()) log.debug("coalesced ; uri : " + uri);
+			waiters.add(completionHandler);
+			return;
+		}
+		waiters = new ArrayList<>();
+		waiters.add(completionHandler);
+		requests.put(uri, waiters);
 		// Number of retries: POLICY.controller.retryLimit [{@link Integer}]
 		// リトライ回数 : POLICY.controller.retryLimit [{@link Integer}]
 		Integer retryLimit = PolicyKeeping.cache().getInteger(DEFAULT_RETRY_LIMIT, "controller", "retryLimit");
-		new Sender_(retryLimit, client, uri).execute_(completionHandler);
+		new Sender_(retryLimit, client, uri, decoder).execute_(r -> {
+			List<Handler<AsyncResult<JsonObject>>> toNotify = requests.remove(uri);
+			// Make the copies before any waiter modifies the result
+			// どれかが結果を変更する前にコピーを作っておく
+			List<AsyncResult<JsonObject>> results = new ArrayList<>(toNotify.size());
+			results.add(r);
+			for (int i = 1; i < toNotify.size(); i++) {
+				results.add((r.succeeded() && r.result() != null) ? Future.succeededFuture(r.result().copy()) : r);
+			}
+			for (int i = 0; i < toNotify.size(); i++) {
+				toNotify.get(i).handle(results.get(i));
+			}
+		});
 	}
 
 	////
@@ -674,11 +912,16 @@ public abstract class DataAcquisition extends AbstractVerticle {
 		private int retryLimit_;
 		private HttpClient client_;
 		private String uri_;
+		private Function<Buffer, JsonObject> decoder_;
+		private DriverCircuitBreaker circuitBreaker_;
+		private int retry_ = 0;
 		private boolean completed_ = false;
-		private Sender_(Integer retryLimit, HttpClient client, String uri) {
+		private Sender_(Integer retryLimit, HttpClient client, String uri, Function<Buffer, JsonObject> decoder) {
 			retryLimit_ = retryLimit;
 			client_ = client;
 			uri_ = uri;
+			decoder_ = decoder;
+			circuitBreaker_ = DriverCircuitBreaker.of(client);
 		}
 		/**
 		 * Perform HTTP GET processing.
@@ -703,21 +946,34 @@ public abstract class DataAcquisition extends AbstractVerticle {
 		}
 		/**
 		 * Perform HTTP GET processing.
-		 * Retry if fails.
+		 * Retry if fails after a delay computed by {@link DriverConnection#retryDelayMsec(int)}.
+		 * Fail immediately while the {@link DriverCircuitBreaker} of the driver is open.
 		 * @param completionHandler the completion handler
 		 *          
 		 * HTTP GET 処理実行.
-		 * 失敗してもリトライする.
+		 * 失敗しても {@link DriverConnection#retryDelayMsec(int)} で計算した時間だけ待ってリトライする.
+		 * ドライバの {@link DriverCircuitBreaker} が開いている間は即座に失敗する.
 		 * @param completionHandler the completion handler
 		 */
 		private void executeWithRetry_(Handler<AsyncResult<JsonObject>> completionHandler) {
+			DriverCircuitBreaker.Permit permit = (circuitBreaker_ != null) ? circuitBreaker_.allowRequest() : null;
+			if (circuitBreaker_ != null && permit == null) {
+				ErrorExceptionUtil.logAndFail(Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.WARN, "Device Driver circuit breaker open ; driver : " + circuitBreaker_.name(), completionHandler);
+				return;
+			}
 			send_(client_, uri_, r -> {
+				if (circuitBreaker_ != null) circuitBreaker_.record(vertx, permit, r.succeeded());
 				if (r.succeeded()) {
 					completionHandler.handle(r);
 				} else {
 					if (0 < --retryLimit_) {
 						ErrorUtil.report(vertx, Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.WARN, "Communication failed with Device Driver", r.cause());
-						executeWithRetry_(completionHandler);
+						long delayMsec = DriverConnection.retryDelayMsec(retry_++);
+						if (0L < delayMsec) {
+							vertx.setTimer(delayMsec, v -> executeWithRetry_(completionHandler));
+						} else {
+							executeWithRetry_(completionHandler);
+						}
 					} else {
 						ErrorUtil.reportAndFail(vertx, Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.ERROR, "Communication failed with Device Driver", r.cause(), completionHandler);
 					}
@@ -757,7 +1013,18 @@ public abstract class DataAcquisition extends AbstractVerticle {
 			client.get(uri, resGet -> {
 				if (200 == resGet.statusCode()) {
 					resGet.bodyHandler(body -> {
-						JsonObjectUtil.toJsonObject(body, completionHandler);
+						if (decoder_ != null) {
+							JsonObject result;
+							try {
+								result = decoder_.apply(body);
+							} catch (DecodeException e) {
+								completionHandler.handle(Future.failedFuture(e));
+								return;
+							}
+							completionHandler.handle(Future.succeededFuture(result));
+						} else {
+							JsonObjectUtil.toJsonObject(body, completionHandler);
+						}
 					}).exceptionHandler(t -> {
 						completionHandler.handle(Future.failedFuture(t));
 					});
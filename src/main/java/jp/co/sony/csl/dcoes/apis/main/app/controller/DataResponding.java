@@ -4,7 +4,9 @@ import io.vertx.core.AbstractVerticle;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
@@ -13,10 +15,12 @@ import jp.co.sony.csl.dcoes.apis.common.ServiceAddress;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.LocalExclusiveLock;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.ReplyFailureUtil;
 import jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping;
+import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.DataCollection;
 import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.InterlockUtil;
 import jp.co.sony.csl.dcoes.apis.main.util.ApisConfig;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorExceptionUtil;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
+import jp.co.sony.csl.dcoes.apis.main.util.UnitDataDelta;
 
 /**
  * Data response service object Verticle.
@@ -34,6 +38,8 @@ import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
 public abstract class DataResponding extends AbstractVerticle {
 	private static final Logger log = LoggerFactory.getLogger(DataResponding.class);
 
+	private final UnitDataDelta.Sender unitDataDelta_ = new UnitDataDelta.Sender();
+
 	/**
 	 * Called at startup.
 	 * Launch the {@link io.vertx.core.eventbus.EventBus} service.
@@ -293,6 +299,9 @@ public abstract class DataResponding extends AbstractVerticle {
 	 * 　　　　　　　　     - {@code "false"}: Return cached data that is updated periodically
 	 * 　　　　　　　　   - {@code "gridMasterUnitId"}: GridMaster unit ID
 	 * 　　　　　　　　   - {@code "replyAddress"}: Address to which data is to be sent back
+	 * 　　　　　　　　   - {@code "deltaSession"}: Session ID of the GridMaster side. If specified, only the changed field groups are sent (see {@link UnitDataDelta})
+	 * 　　　　　　　　   - {@code "deltaResync"}: List of unit IDs from which the whole unit data is requested in delta mode
+	 * 　　　　　　　　   - {@link DataCollection#HEADER_ROUND}: Data collection round number. Returned as it is in the reply header
 	 * Response: none
 	 * @param completionHandler the completion handler
 	 *          
@@ -312,6 +321,9 @@ public abstract class DataResponding extends AbstractVerticle {
 	 * 　　　　　　　　     - {@code "false"} : 定期的にリフレッシュしてあるキャッシュデータを返す
 	 * 　　　　　　　　   - {@code "gridMasterUnitId"} : GridMaster ユニット ID
 	 * 　　　　　　　　   - {@code "replyAddress"} : データを送り返すアドレス
+	 * 　　　　　　　　   - {@code "deltaSession"} : GridMaster 側のセッション ID. 指定があれば変化したフィールドグループだけを送る ( {@link UnitDataDelta} 参照 )
+	 * 　　　　　　　　   - {@code "deltaResync"} : 差分モードでユニットデータ全体を要求するユニット ID のリスト
+	 * 　　　　　　　　   - {@link DataCollection#HEADER_ROUND} : データ収集ラウンド番号. 返信ヘッダにそのまま載せて返す
 	 * レスポンス : なし
 	 * @param completionHandler the completion handler
 	 */
@@ -327,7 +339,19 @@ public abstract class DataResponding extends AbstractVerticle {
 //						if (log.isInfoEnabled()) log.info("DataResponding:" + replyAddress + " getting data");
 						getData_(req, resGetData -> {
 							if (resGetData.succeeded()) {
-								vertx.eventBus().send(replyAddress, resGetData.result());
+								// Return the data collection round number so that GridMaster can tell late replies
+								// GridMaster が遅れた返信を見分けられるようデータ収集ラウンド番号を返す
+								DeliveryOptions options = new DeliveryOptions();
+								String round = req.headers().get(DataCollection.HEADER_ROUND);
+								if (round != null) options.addHeader(DataCollection.HEADER_ROUND, round);
+								String deltaSession = req.headers().get(UnitDataDelta.HEADER_SESSION);
+								if (deltaSession != null) {
+									// In delta mode, send only the field groups changed since the last reply to the same GridMaster session
+									// 差分モードなら同じ GridMaster セッションへの前回の返信以降に変化したフィールドグループだけを送る
+									sendDelta_(replyAddress, options, resGetData.result(), deltaSession, req.headers().get(UnitDataDelta.HEADER_RESYNC));
+								} else {
+									vertx.eventBus().send(replyAddress, resGetData.result(), options);
+								}
 //								if (log.isInfoEnabled()) log.info("DataResponding:" + replyAddress + " replied");
 							} else {
 								log.error(resGetData.cause());
@@ -343,6 +367,45 @@ public abstract class DataResponding extends AbstractVerticle {
 
 	////
 
+	/**
+	 * Send the unit data in delta mode.
+	 * If this unit is listed in resync, or the list cannot be parsed, send the whole unit data.
+	 * @param replyAddress address to which data is sent back
+	 * @param options delivery options of the reply
+	 * @param unitData unit data
+	 * @param session session ID of the GridMaster side
+	 * @param resync list of unit IDs from which the whole unit data is requested. JSON string. May be {@code null}
+	 *          
+	 * 差分モードでユニットデータを送る.
+	 * 自ユニットが resync に含まれている場合やリストが解釈できない場合はユニットデータ全体を送る.
+	 * @param replyAddress データを送り返すアドレス
+	 * @param options 返信の配送オプション
+	 * @param unitData ユニットデータ
+	 * @param session GridMaster 側のセッション ID
+	 * @param resync ユニットデータ全体を要求するユニット ID のリスト. JSON 文字列. {@code null} 可
+	 */
+	private void sendDelta_(String replyAddress, DeliveryOptions options, JsonObject unitData, String session, String resync) {
+		boolean needToResync = false;
+		if (resync != null) {
+			try {
+				needToResync = new JsonArray(resync).contains(ApisConfig.unitId());
+			} catch (Exception e) {
+				ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.WARN, "illegal deltaResync in request header : " + resync, e);
+				needToResync = true;
+			}
+		}
+		UnitDataDelta.Delta delta = unitDataDelta_.build(unitData, session, needToResync);
+		options
+				.addHeader(UnitDataDelta.HEADER_UNIT_ID, ApisConfig.unitId())
+				.addHeader(UnitDataDelta.HEADER_EPOCH, delta.epoch())
+				.addHeader(UnitDataDelta.HEADER_BASE_REVISION, String.valueOf(delta.baseRevision()))
+				.addHeader(UnitDataDelta.HEADER_REVISION, String.valueOf(delta.revision()))
+				.addHeader(UnitDataDelta.HEADER_FULL, String.valueOf(delta.isFull()))
+				.addHeader(UnitDataDelta.HEADER_REMOVED, delta.removed().encode());
+		if (log.isDebugEnabled()) log.debug("delta ; full : " + delta.isFull() + " , revision : " + delta.revision() + " , groups : " + delta.body().fieldNames());
+		vertx.eventBus().send(replyAddress, delta.body(), options);
+	}
+
 	/**
 	 * Check the GridMaster interlock.
 	 * Before that, also check for inclusion in the cluster members listed in POLICY.
@@ -362,7 +425,7 @@ public abstract class DataResponding extends AbstractVerticle {
 		String reqGridMasterUnitId = req.headers().get("gridMasterUnitId");
 		if (reqGridMasterUnitId != null) {
 			if (PolicyKeeping.isMember(reqGridMasterUnitId)) {
-				InterlockUtil.getGridMasterUnitId(vertx, resGridMasterUnitId -> {
+				InterlockUtil.getGridMasterUnitId(vertx, reqGridMasterUnitId, resGridMasterUnitId -> {
 					if (resGridMasterUnitId.succeeded()) {
 						String interlockedGridMasterUnitId = resGridMasterUnitId.result();
 						if (interlockedGridMasterUnitId != null) {
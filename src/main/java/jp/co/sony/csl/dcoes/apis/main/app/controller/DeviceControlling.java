@@ -15,6 +15,8 @@ import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.LocalExclusiveLock;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.ReplyFailureUtil;
 import jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverCircuitBreaker;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverConnection;
 import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.InterlockUtil;
 import jp.co.sony.csl.dcoes.apis.main.util.ApisConfig;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorExceptionUtil;
@@ -401,7 +403,7 @@ public abstract class DeviceControlling extends AbstractVerticle {
 		String reqGridMasterUnitId = req.headers().get("gridMasterUnitId");
 		if (reqGridMasterUnitId != null) {
 			if (PolicyKeeping.isMember(reqGridMasterUnitId)) {
-				InterlockUtil.getGridMasterUnitId(vertx, resGridMasterUnitId -> {
+				InterlockUtil.getGridMasterUnitId(vertx, reqGridMasterUnitId, resGridMasterUnitId -> {
 					if (resGridMasterUnitId.succeeded()) {
 						String interlockedGridMasterUnitId = resGridMasterUnitId.result();
 						if (interlockedGridMasterUnitId != null) {
@@ -439,10 +441,30 @@ public abstract class DeviceControlling extends AbstractVerticle {
 	 * @param completionHandler the completion handler
 	 */
 	protected void send(HttpClient client, String uri, Handler<AsyncResult<JsonObject>> completionHandler) {
+		send(client, uri, false, completionHandler);
+	}
+	/**
+	 * Send out an external HTTP GET request and return the response.
+	 * A safety command such as a stop or a scram is sent with {@code bypassCircuitBreaker} set to {@code true} : it is sent even while the {@link DriverCircuitBreaker} is open and retries immediately without a backoff, so that it is never delayed.
+	 * Receive the results with the {@link AsyncResult#result()} method of completionHandler.
+	 * @param client an httpclient object
+	 * @param uri the request URI
+	 * @param bypassCircuitBreaker {@code true} to bypass the circuit breaker and the retry backoff
+	 * @param completionHandler the completion handler
+	 *          
+	 * HTTP GET で外部にリクエストを送信しレスポンスを返す.
+	 * 停止や緊急停止などの安全のためのコマンドは {@code bypassCircuitBreaker} を {@code true} にして送る : 遅れることがないよう {@link DriverCircuitBreaker} が開いていても送り, バックオフなしで即座にリトライする.
+	 * completionHandler の {@link AsyncResult#result()} で結果を受け取る.
+	 * @param client httpclient オブジェクト
+	 * @param uri リクエストの URI
+	 * @param bypassCircuitBreaker サーキットブレーカとリトライのバックオフを迂回するなら {@code true}
+	 * @param completionHandler the completion handler
+	 */
+	protected void send(HttpClient client, String uri, boolean bypassCircuitBreaker, Handler<AsyncResult<JsonObject>> completionHandler) {
 		// Number of retries: POLICY.controller.retryLimit [{@link Integer}]
 		// リトライ回数 : POLICY.controller.retryLimit [{@link Integer}]
 		Integer retryLimit = PolicyKeeping.cache().getInteger(DEFAULT_RETRY_LIMIT, "controller", "retryLimit");
-		new Sender_(retryLimit, client, uri).execute_(completionHandler);
+		new Sender_(retryLimit, client, uri, bypassCircuitBreaker).execute_(completionHandler);
 	}
 
 	////
@@ -460,11 +482,16 @@ public abstract class DeviceControlling extends AbstractVerticle {
 		private int retryLimit_;
 		private HttpClient client_;
 		private String uri_;
+		private DriverCircuitBreaker circuitBreaker_;
+		private boolean bypassCircuitBreaker_;
+		private int retry_ = 0;
 		private boolean completed_ = false;
-		private Sender_(Integer retryLimit, HttpClient client, String uri) {
+		private Sender_(Integer retryLimit, HttpClient client, String uri, boolean bypassCircuitBreaker) {
 			retryLimit_ = retryLimit;
 			client_ = client;
 			uri_ = uri;
+			circuitBreaker_ = DriverCircuitBreaker.of(client);
+			bypassCircuitBreaker_ = bypassCircuitBreaker;
 		}
 		/**
 		 * Perform HTTP GET processing.
@@ -489,15 +516,23 @@ public abstract class DeviceControlling extends AbstractVerticle {
 		}
 		/**
 		 * Perform HTTP GET processing.
-		 * Retry if fails.
+		 * Retry if fails after a delay computed by {@link DriverConnection#retryDelayMsec(int)}.
+		 * Fail immediately while the {@link DriverCircuitBreaker} of the driver is open.
 		 * @param completionHandler the completion handler
 		 *          
 		 * HTTP GET 処理実行.
-		 * 失敗してもリトライする.
+		 * 失敗しても {@link DriverConnection#retryDelayMsec(int)} で計算した時間だけ待ってリトライする.
+		 * ドライバの {@link DriverCircuitBreaker} が開いている間は即座に失敗する.
 		 * @param completionHandler the completion handler
 		 */
 		private void executeWithRetry_(Handler<AsyncResult<JsonObject>> completionHandler) {
+			DriverCircuitBreaker.Permit permit = (!bypassCircuitBreaker_ && circuitBreaker_ != null) ? circuitBreaker_.allowRequest() : null;
+			if (!bypassCircuitBreaker_ && circuitBreaker_ != null && permit == null) {
+				ErrorExceptionUtil.logAndFail(Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.WARN, "Device Driver circuit breaker open ; driver : " + circuitBreaker_.name(), completionHandler);
+				return;
+			}
 			send_(client_, uri_, r -> {
+				if (circuitBreaker_ != null) circuitBreaker_.record(vertx, permit, r.succeeded());
 				if (r.succeeded()) {
 					JsonObject data = r.result();
 					                                // Bidirectionally merge with unit data cache
@@ -506,7 +541,12 @@ public abstract class DeviceControlling extends AbstractVerticle {
 				} else {
 					if (0 < --retryLimit_) {
 						ErrorUtil.report(vertx, Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.WARN, "Communication failed with Device Driver", r.cause());
-						executeWithRetry_(completionHandler);
+						long delayMsec = (bypassCircuitBreaker_) ? 0L : DriverConnection.retryDelayMsec(retry_++);
+						if (0L < delayMsec) {
+							vertx.setTimer(delayMsec, v -> executeWithRetry_(completionHandler));
+						} else {
+							executeWithRetry_(completionHandler);
+						}
 					} else {
 						ErrorUtil.reportAndFail(vertx, Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.ERROR, "Communication failed with Device Driver", r.cause(), completionHandler);
 					}
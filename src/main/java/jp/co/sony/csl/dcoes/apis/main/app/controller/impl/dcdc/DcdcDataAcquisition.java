@@ -4,6 +4,8 @@ import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
 import io.vertx.core.json.JsonObject;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.DataAcquisition;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.BatteryStatus;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DcdcStatus;
 
 /**
  * Data acquisition service object Verticle for the DCDC system.
@@ -12,6 +14,8 @@ import jp.co.sony.csl.dcoes.apis.main.app.controller.DataAcquisition;
  * - {@link jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.emulator.DcdcEmulatorDataAcquisition}
  * - {@link jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.v1.DcdcV1DataAcquisition}
  * - {@link jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.v2.DcdcV2DataAcquisition}
+ * - {@link jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.emulator.DcdcEmulatorPushDataAcquisition}
+ * - {@link jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.v2.DcdcV2PushDataAcquisition}
  * @author OES Project
  *          
  * DCDC システム向けデータ取得サービスの親玉 Verticle.
@@ -20,10 +24,33 @@ import jp.co.sony.csl.dcoes.apis.main.app.controller.DataAcquisition;
  * - {@link jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.emulator.DcdcEmulatorDataAcquisition}
  * - {@link jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.v1.DcdcV1DataAcquisition}
  * - {@link jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.v2.DcdcV2DataAcquisition}
+ * - {@link jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.emulator.DcdcEmulatorPushDataAcquisition}
+ * - {@link jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.v2.DcdcV2PushDataAcquisition}
  * @author OES Project
  */
 public abstract class DcdcDataAcquisition extends DataAcquisition {
 
+	/**
+	 * Typed record of the {@code dcdc} part of the latest unit data.
+	 * Filled by {@link jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverResponseParser} in {@link #getData(Handler)} and reused.
+	 * Only accessed from the context of this Verticle.
+	 *          
+	 * 最新のユニットデータのうち {@code dcdc} 部分の型付きレコード.
+	 * {@link #getData(Handler)} で {@link jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverResponseParser} が埋め使い回す.
+	 * この Verticle のコンテキストからのみアクセスする.
+	 */
+	public static final DcdcStatus dcdcStatus = new DcdcStatus();
+	/**
+	 * Typed record of the battery part of the latest unit data.
+	 * Filled by {@link jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverResponseParser} in {@link #getData(Handler)} and reused.
+	 * Only accessed from the context of this Verticle.
+	 *          
+	 * 最新のユニットデータのうちバッテリ部分の型付きレコード.
+	 * {@link #getData(Handler)} で {@link jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverResponseParser} が埋め使い回す.
+	 * この Verticle のコンテキストからのみアクセスする.
+	 */
+	public static final BatteryStatus batteryStatus = new BatteryStatus();
+
 	/**
 	 * {@inheritDoc}
 	 */
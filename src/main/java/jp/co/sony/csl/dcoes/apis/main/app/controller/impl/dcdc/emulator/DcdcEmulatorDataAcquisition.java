@@ -4,11 +4,12 @@ import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.http.HttpClient;
-import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.json.JsonObject;
-import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.VertxConfig;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.DcdcDataAcquisition;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverCircuitBreaker;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverConnection;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverResponseParser;
 import jp.co.sony.csl.dcoes.apis.main.util.ApisConfig;
 
 /**
@@ -45,7 +46,7 @@ public class DcdcEmulatorDataAcquisition extends DcdcDataAcquisition {
 		String host = VertxConfig.config.getString("connection", "emulator", "host");
 		Integer port = VertxConfig.config.getInteger("connection", "emulator", "port");
 		if (host != null && port != null) {
-			client_ = vertx.createHttpClient(new HttpClientOptions().setDefaultHost(host).setDefaultPort(port));
+			client_ = DriverConnection.createHttpClient(vertx, "emulator", host, port);
 			dataUri_ = "/get/unit/" + ApisConfig.unitId();
 			statusUri_ = "/get/dcdc/status/" + ApisConfig.unitId();
 			completionHandler.handle(Future.succeededFuture());
@@ -53,28 +54,55 @@ public class DcdcEmulatorDataAcquisition extends DcdcDataAcquisition {
 			completionHandler.handle(Future.failedFuture("invalid connection.emulator.host and/or connection.emulator.port value in config : " + VertxConfig.config.jsonObject()));
 		}
 	}
+	/**
+	 * {@inheritDoc}
+	 * Unregister the HTTP client from its {@link DriverCircuitBreaker}.
+	 * @throws Exception {@inheritDoc}
+	 *          
+	 * {@inheritDoc}
+	 * HTTP クライアントの {@link DriverCircuitBreaker} への登録を解除する.
+	 * @throws Exception {@inheritDoc}
+	 */
+	@Override public void stop() throws Exception {
+		DriverCircuitBreaker.unregister(client_);
+		super.stop();
+	}
 
 	/**
 	 * {@inheritDoc}
 	 * Data obtained from the emulator is returned after performing the following conversion process.
 	 * - Set {@code emu.rsoc} to {@code battery.rsoc}
 	 * - Set {@code emu.battery_operation_status} to {@code battery.battery_operation_status}
+	 * The response is decoded by {@link DriverResponseParser} with {@link DriverResponseParser.Layout#UNIT}.
 	 *          
 	 * {@inheritDoc}
 	 * emulator から取得したデータに対し以下のコンバート処理をして返す.
 	 * - {@code emu.rsoc} を {@code battery.rsoc} にセットする
 	 * - {@code emu.battery_operation_status} を {@code battery.battery_operation_status} にセットする
+	 * レスポンスは {@link DriverResponseParser} が {@link DriverResponseParser.Layout#UNIT} でデコードする.
 	 */
 	@Override protected void getData(Handler<AsyncResult<JsonObject>> completionHandler) {
-		send(client_, dataUri_, res -> {
+		send(client_, dataUri_, body -> DriverResponseParser.parse(body, DriverResponseParser.Layout.UNIT, dcdcStatus, batteryStatus), res -> {
 			if (res.succeeded()) {
-				JsonObject result = res.result();
-				JsonObject battery = new JsonObject().put("rsoc", JsonObjectUtil.getValue(result, "emu", "rsoc")).put("battery_operation_status", JsonObjectUtil.getValue(result, "emu", "battery_operation_status"));
-				result.put("battery", battery);
+				toData(res.result());
 			}
 			completionHandler.handle(res);
 		});
 	}
+	/**
+	 * Build unit data from a decoded emulator response.
+	 * Also used for the samples pushed by the emulator.
+	 * @param unit the response decoded with {@link DriverResponseParser.Layout#UNIT}. Modified in place
+	 * @return unit data
+	 *          
+	 * デコードした emulator のレスポンスからユニットデータを作る.
+	 * emulator がプッシュするサンプルにも使う.
+	 * @param unit {@link DriverResponseParser.Layout#UNIT} でデコードしたレスポンス. そのまま変更する
+	 * @return ユニットデータ
+	 */
+	JsonObject toData(JsonObject unit) {
+		return unit.put("battery", batteryStatus.jsonObject());
+	}
 
 	/**
 	 * {@inheritDoc}
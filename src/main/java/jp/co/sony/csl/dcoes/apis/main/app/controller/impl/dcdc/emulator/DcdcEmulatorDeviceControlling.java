@@ -4,11 +4,12 @@ import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.http.HttpClient;
-import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.json.JsonObject;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.VertxConfig;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.DcdcDeviceControlling;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DDCon;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverCircuitBreaker;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverConnection;
 import jp.co.sony.csl.dcoes.apis.main.util.ApisConfig;
 
 /**
@@ -39,17 +40,38 @@ public class DcdcEmulatorDeviceControlling extends DcdcDeviceControlling {
 		String host = VertxConfig.config.getString("connection", "emulator", "host");
 		Integer port = VertxConfig.config.getInteger("connection", "emulator", "port");
 		if (host != null && port != null) {
-			client_ = vertx.createHttpClient(new HttpClientOptions().setDefaultHost(host).setDefaultPort(port));
+			client_ = DriverConnection.createHttpClient(vertx, "emulator", host, port);
 			completionHandler.handle(Future.succeededFuture());
 		} else {
 			completionHandler.handle(Future.failedFuture("no connection.emulator.host and/or connection.emulator.port value in config : " + VertxConfig.config.jsonObject()));
 		}
 	}
+	/**
+	 * {@inheritDoc}
+	 * Unregister the HTTP client from its {@link DriverCircuitBreaker} after the device has been stopped.
+	 * @throws Exception {@inheritDoc}
+	 *          
+	 * {@inheritDoc}
+	 * デバイスを停止した後で HTTP クライアントの {@link DriverCircuitBreaker} への登録を解除する.
+	 * @throws Exception {@inheritDoc}
+	 */
+	@Override public void stop(Future<Void> stopFuture) throws Exception {
+		// Stopping the device still sends to the driver
+		// デバイスの停止はまだドライバに送る
+		Future<Void> future = Future.future();
+		future.setHandler(r -> {
+			DriverCircuitBreaker.unregister(client_);
+			stopFuture.handle(r);
+		});
+		super.stop(future);
+	}
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override protected void doSetDcdcMode(DDCon.Mode mode, Number gridVoltageV, Number gridCurrentA, Number droopRatio, Handler<AsyncResult<JsonObject>> completionHandler) {
-		send(client_, setModeUri_(mode, gridVoltageV, gridCurrentA, droopRatio), completionHandler);
+		// Stop and scram set WAIT mode; never hold them back with the circuit breaker or the retry backoff
+		// 停止と緊急停止は WAIT モードにする. サーキットブレーカやリトライのバックオフで遅らせない
+		send(client_, setModeUri_(mode, gridVoltageV, gridCurrentA, droopRatio), DDCon.Mode.WAIT == mode, completionHandler);
 	}
 	/**
 	 * {@inheritDoc}
@@ -0,0 +1,79 @@
+package jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.emulator;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import jp.co.sony.csl.dcoes.apis.common.Error;
+import jp.co.sony.csl.dcoes.apis.common.util.vertx.VertxConfig;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverConnection;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverResponseParser;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverTelemetryStream;
+import jp.co.sony.csl.dcoes.apis.main.util.ApisConfig;
+import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
+
+/**
+ * Data acquisition service Verticle for the DCDC system's emulator environment which subscribes to the telemetry pushed by the emulator.
+ * Launched from the {@link jp.co.sony.csl.dcoes.apis.main.app.controller.Controller} Verticle when {@code CONFIG.connection.emulator.telemetry.enabled} is {@code true}.
+ * Each sample has the same content as the response to {@code /get/unit/<unitId>} and updates the unit data as soon as it arrives.
+ * While no sample arrives, the unit data is polled as with {@link DcdcEmulatorDataAcquisition}.
+ * @author OES Project
+ *          
+ * emulator がプッシュするテレメトリを購読する DCDC システムの emulator 環境向けデータ取得サービス Verticle.
+ * {@code CONFIG.connection.emulator.telemetry.enabled} が {@code true} のとき {@link jp.co.sony.csl.dcoes.apis.main.app.controller.Controller} Verticle から起動される.
+ * 各サンプルの内容は {@code /get/unit/<unitId>} のレスポンスと同じで, 届き次第ユニットデータを更新する.
+ * サンプルが届かない間は {@link DcdcEmulatorDataAcquisition} と同様にユニットデータをポーリングする.
+ * @author OES Project
+ */
+public class DcdcEmulatorPushDataAcquisition extends DcdcEmulatorDataAcquisition {
+
+	private DriverTelemetryStream telemetryStream_;
+
+	/**
+	 * {@inheritDoc}
+	 * Then subscribe to the telemetry.
+	 * - CONFIG.connection.emulator.telemetry.uri: the URI of the stream [{@link String}]. Default: {@code /subscribe/unit/<unitId>}
+	 *          
+	 * {@inheritDoc}
+	 * その後テレメトリを購読する.
+	 * - CONFIG.connection.emulator.telemetry.uri : ストリームの URI [{@link String}]. デフォルト : {@code /subscribe/unit/<unitId>}
+	 */
+	@Override protected void init(Handler<AsyncResult<Void>> completionHandler) {
+		super.init(res -> {
+			if (res.succeeded()) {
+				String host = VertxConfig.config.getString("connection", "emulator", "host");
+				Integer port = VertxConfig.config.getInteger("connection", "emulator", "port");
+				telemetryStream_ = DriverConnection.createTelemetryStream(vertx, "emulator", host, port, "/subscribe/unit/" + ApisConfig.unitId()).handler(this::telemetryHandler_);
+				telemetryStream_.open();
+			}
+			completionHandler.handle(res);
+		});
+	}
+
+	/**
+	 * Called when stopped.
+	 * Stop the subscription.
+	 * @throws Exception {@inheritDoc}
+	 *          
+	 * 停止時に呼び出される.
+	 * 購読を停止する.
+	 * @throws Exception {@inheritDoc}
+	 */
+	@Override public void stop() throws Exception {
+		if (telemetryStream_ != null) telemetryStream_.close();
+		super.stop();
+	}
+
+	private void telemetryHandler_(Buffer body) {
+		JsonObject unit;
+		try {
+			unit = DriverResponseParser.parse(body, DriverResponseParser.Layout.UNIT, dcdcStatus, batteryStatus);
+		} catch (DecodeException e) {
+			ErrorUtil.report(vertx, Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.WARN, "invalid telemetry sample ; driver : emulator ; " + e.getMessage());
+			return;
+		}
+		acceptPushedData(toData(unit));
+	}
+
+}
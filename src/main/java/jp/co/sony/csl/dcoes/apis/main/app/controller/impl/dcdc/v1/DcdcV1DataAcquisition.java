@@ -5,7 +5,6 @@ import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.http.HttpClient;
-import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.json.JsonObject;
 
 import java.time.LocalDateTime;
@@ -13,6 +12,9 @@ import java.time.LocalDateTime;
 import jp.co.sony.csl.dcoes.apis.common.util.DateTimeUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.VertxConfig;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.DcdcDataAcquisition;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverCircuitBreaker;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverConnection;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverResponseParser;
 
 /**
  * Data acquisition service Verticle for the DCDC system's dcdc_controller & EMU-Driver.
@@ -50,13 +52,13 @@ public class DcdcV1DataAcquisition extends DcdcDataAcquisition {
 		String host = VertxConfig.config.getString("connection", "dcdc_controller", "host");
 		Integer port = VertxConfig.config.getInteger("connection", "dcdc_controller", "port");
 		if (host != null && port != null) {
-			controllerClient_ = vertx.createHttpClient(new HttpClientOptions().setDefaultHost(host).setDefaultPort(port));
+			controllerClient_ = DriverConnection.createHttpClient(vertx, "dcdc_controller", host, port);
 			controllerDataUri_ = "/remote/get";
 			controllerStatusUri_ = "/remote/get/status";
 			host = VertxConfig.config.getString("connection", "emu_driver", "host");
 			port = VertxConfig.config.getInteger("connection", "emu_driver", "port");
 			if (host != null && port != null) {
-				emuDriverClient_ = vertx.createHttpClient(new HttpClientOptions().setDefaultHost(host).setDefaultPort(port));
+				emuDriverClient_ = DriverConnection.createHttpClient(vertx, "emu_driver", host, port);
 				emuDriverDataUri_ = "/1/log/data";
 				completionHandler.handle(Future.succeededFuture());
 			} else {
@@ -66,6 +68,20 @@ public class DcdcV1DataAcquisition extends DcdcDataAcquisition {
 			completionHandler.handle(Future.failedFuture("invalid connection.dcdc_controller.host and/or connection.dcdc_controller.port value in config : " + VertxConfig.config.jsonObject()));
 		}
 	}
+	/**
+	 * {@inheritDoc}
+	 * Unregister the HTTP clients from their {@link DriverCircuitBreaker}.
+	 * @throws Exception {@inheritDoc}
+	 *          
+	 * {@inheritDoc}
+	 * HTTP クライアントの {@link DriverCircuitBreaker} への登録を解除する.
+	 * @throws Exception {@inheritDoc}
+	 */
+	@Override public void stop() throws Exception {
+		DriverCircuitBreaker.unregister(controllerClient_);
+		DriverCircuitBreaker.unregister(emuDriverClient_);
+		super.stop();
+	}
 
 	/**
 	 * {@inheritDoc}
@@ -75,6 +91,7 @@ public class DcdcV1DataAcquisition extends DcdcDataAcquisition {
 	 * - Set {@code emu.rsoc} to {@code battery.rsoc}
 	 * - Set {@code emu.battery_operation_status} to {@code battery.battery_operation_status}
 	 * - Set the current time in {@code time} as a text string in the standard format of the APIS program
+	 * The responses are decoded by {@link DriverResponseParser} with {@link DriverResponseParser.Layout#DCDC} and {@link DriverResponseParser.Layout#BATTERY}.
 	 *          
 	 * {@inheritDoc}
 	 * dcdc_controller および EMU-Driver から取得したデータに対し以下の処理をして返す.
@@ -83,6 +100,7 @@ public class DcdcV1DataAcquisition extends DcdcDataAcquisition {
 	 * - {@code emu.rsoc} を {@code battery.rsoc} にセットする
 	 * - {@code emu.battery_operation_status} を {@code battery.battery_operation_status} にセットする
 	 * - 現在日時を APIS プログラムの標準フォーマットの文字列で {@code time} にセットする
+	 * レスポンスは {@link DriverResponseParser} が {@link DriverResponseParser.Layout#DCDC} と {@link DriverResponseParser.Layout#BATTERY} でデコードする.
 	 */
 	@Override protected void getData(Handler<AsyncResult<JsonObject>> completionHandler) {
 		Future<JsonObject> getDcdcFuture = Future.future();
@@ -93,7 +111,7 @@ public class DcdcV1DataAcquisition extends DcdcDataAcquisition {
 			if (ar.succeeded()) {
 				JsonObject dcdc = ar.result().resultAt(0);
 				JsonObject emu = ar.result().resultAt(1);
-				JsonObject battery = new JsonObject().put("rsoc", emu.getValue("rsoc")).put("battery_operation_status", emu.getValue("battery_operation_status"));
+				JsonObject battery = batteryStatus.jsonObject();
 				String time = DateTimeUtil.toString(LocalDateTime.now());
 				JsonObject result = new JsonObject().put("dcdc", dcdc).put("emu", emu).put("battery", battery).put("time", time);
 				completionHandler.handle(Future.succeededFuture(result));
@@ -113,11 +131,11 @@ public class DcdcV1DataAcquisition extends DcdcDataAcquisition {
 	////
 
 	private void getDcdc_(Handler<AsyncResult<JsonObject>> completionHandler) {
-		send(controllerClient_, controllerDataUri_, completionHandler);
+		send(controllerClient_, controllerDataUri_, body -> DriverResponseParser.parse(body, DriverResponseParser.Layout.DCDC, dcdcStatus, batteryStatus), completionHandler);
 	}
 
 	private void getEmu_(Handler<AsyncResult<JsonObject>> completionHandler) {
-		send(emuDriverClient_, emuDriverDataUri_, completionHandler);
+		send(emuDriverClient_, emuDriverDataUri_, body -> DriverResponseParser.parse(body, DriverResponseParser.Layout.BATTERY, dcdcStatus, batteryStatus), completionHandler);
 	}
 
 }
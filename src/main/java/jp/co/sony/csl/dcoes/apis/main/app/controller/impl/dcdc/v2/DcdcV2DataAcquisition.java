@@ -4,7 +4,6 @@ import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.http.HttpClient;
-import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.json.JsonObject;
 
 import java.time.LocalDateTime;
@@ -15,6 +14,9 @@ import jp.co.sony.csl.dcoes.apis.common.util.DateTimeUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.VertxConfig;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.DcdcDataAcquisition;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverCircuitBreaker;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverConnection;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverResponseParser;
 
 /**
  * Data acquisition service Verticle for the DCDC system's dcdc_batt_comm environment.
@@ -60,7 +62,7 @@ public class DcdcV2DataAcquisition extends DcdcDataAcquisition {
 		String host = VertxConfig.config.getString("connection", "dcdc_controller", "host");
 		Integer port = VertxConfig.config.getInteger("connection", "dcdc_controller", "port");
 		if (host != null && port != null) {
-			client_ = vertx.createHttpClient(new HttpClientOptions().setDefaultHost(host).setDefaultPort(port));
+			client_ = DriverConnection.createHttpClient(vertx, "dcdc_controller", host, port);
 			dataUri_ = "/all/get";
 			statusUri_ = "/dcdc/get/status";
 			negotiateInterfaceVersion_(completionHandler);
@@ -68,6 +70,19 @@ public class DcdcV2DataAcquisition extends DcdcDataAcquisition {
 			completionHandler.handle(Future.failedFuture("invalid connection.dcdc_controller.host and/or connection.dcdc_controller.port value in config : " + VertxConfig.config.jsonObject()));
 		}
 	}
+	/**
+	 * {@inheritDoc}
+	 * Unregister the HTTP client from its {@link DriverCircuitBreaker}.
+	 * @throws Exception {@inheritDoc}
+	 *          
+	 * {@inheritDoc}
+	 * HTTP クライアントの {@link DriverCircuitBreaker} への登録を解除する.
+	 * @throws Exception {@inheritDoc}
+	 */
+	@Override public void stop() throws Exception {
+		DriverCircuitBreaker.unregister(client_);
+		super.stop();
+	}
 	/**
 	 * Check the integrity of the interface version.
 	 * @param completionHandler the completion handler
@@ -110,6 +125,7 @@ public class DcdcV2DataAcquisition extends DcdcDataAcquisition {
 	 * - Data obtained from dcdc_batt_comm is set in {@code dcdc}
 	 * - Delete {@code dcdc.rsoc} and set it to {@code battery.rsoc}
 	 * - Delete {@code dcdc.battery_operation_status} and set it to {@code battery.battery_operation_status}
+	 * The response is decoded by {@link DriverResponseParser} with {@link DriverResponseParser.Layout#DCDC_WITH_BATTERY}, which does the two deletions while decoding.
 	 * - Set the current time in {@code time} as a text string in the standard format of the APIS program
 	 *          
 	 * {@inheritDoc}
@@ -117,21 +133,34 @@ public class DcdcV2DataAcquisition extends DcdcDataAcquisition {
 	 * - dcdc_batt_comm から取得したデータを {@code dcdc} にセットする
 	 * - {@code dcdc.rsoc} を削除し {@code battery.rsoc} にセットする
 	 * - {@code dcdc.battery_operation_status} を削除し {@code battery.battery_operation_status} にセットする
+	 * レスポンスは {@link DriverResponseParser} が {@link DriverResponseParser.Layout#DCDC_WITH_BATTERY} でデコードし, 二つの削除はデコード中に行う.
 	 * - 現在日時を APIS プログラムの標準フォーマットの文字列で {@code time} にセットする
 	 */
 	@Override protected void getData(Handler<AsyncResult<JsonObject>> completionHandler) {
-		send(client_, dataUri_, res -> {
+		send(client_, dataUri_, body -> DriverResponseParser.parse(body, DriverResponseParser.Layout.DCDC_WITH_BATTERY, dcdcStatus, batteryStatus), res -> {
 			if (res.succeeded()) {
-				JsonObject dcdc = res.result();
-				JsonObject battery = new JsonObject().put("rsoc", dcdc.remove("rsoc")).put("battery_operation_status", dcdc.remove("battery_operation_status"));
-				String time = DateTimeUtil.toString(LocalDateTime.now());
-				JsonObject result = new JsonObject().put("dcdc", dcdc).put("battery", battery).put("time", time);
-				completionHandler.handle(Future.succeededFuture(result));
+				completionHandler.handle(Future.succeededFuture(toData(res.result())));
 			} else {
 				completionHandler.handle(res);
 			}
 		});
 	}
+	/**
+	 * Build unit data from a decoded dcdc_batt_comm response.
+	 * Also used for the samples pushed by dcdc_batt_comm.
+	 * @param dcdc the response decoded with {@link DriverResponseParser.Layout#DCDC_WITH_BATTERY}
+	 * @return unit data
+	 *          
+	 * デコードした dcdc_batt_comm のレスポンスからユニットデータを作る.
+	 * dcdc_batt_comm がプッシュするサンプルにも使う.
+	 * @param dcdc {@link DriverResponseParser.Layout#DCDC_WITH_BATTERY} でデコードしたレスポンス
+	 * @return ユニットデータ
+	 */
+	JsonObject toData(JsonObject dcdc) {
+		JsonObject battery = batteryStatus.jsonObject();
+		String time = DateTimeUtil.toString(LocalDateTime.now());
+		return new JsonObject().put("dcdc", dcdc).put("battery", battery).put("time", time);
+	}
 
 	/**
 	 * {@inheritDoc}
@@ -0,0 +1,78 @@
+package jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.v2;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import jp.co.sony.csl.dcoes.apis.common.Error;
+import jp.co.sony.csl.dcoes.apis.common.util.vertx.VertxConfig;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverConnection;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverResponseParser;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverTelemetryStream;
+import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
+
+/**
+ * Data acquisition service Verticle for the DCDC system's dcdc_batt_comm environment which subscribes to the telemetry pushed by dcdc_batt_comm.
+ * Launched from the {@link jp.co.sony.csl.dcoes.apis.main.app.controller.Controller} Verticle when {@code CONFIG.connection.dcdc_controller.telemetry.enabled} is {@code true}.
+ * Each sample has the same content as the response to {@code /all/get} and updates the unit data as soon as it arrives.
+ * While no sample arrives, the unit data is polled as with {@link DcdcV2DataAcquisition}.
+ * @author OES Project
+ *          
+ * dcdc_batt_comm がプッシュするテレメトリを購読する DCDC システムの dcdc_batt_comm 環境向けデータ取得サービス Verticle.
+ * {@code CONFIG.connection.dcdc_controller.telemetry.enabled} が {@code true} のとき {@link jp.co.sony.csl.dcoes.apis.main.app.controller.Controller} Verticle から起動される.
+ * 各サンプルの内容は {@code /all/get} のレスポンスと同じで, 届き次第ユニットデータを更新する.
+ * サンプルが届かない間は {@link DcdcV2DataAcquisition} と同様にユニットデータをポーリングする.
+ * @author OES Project
+ */
+public class DcdcV2PushDataAcquisition extends DcdcV2DataAcquisition {
+
+	private DriverTelemetryStream telemetryStream_;
+
+	/**
+	 * {@inheritDoc}
+	 * Then subscribe to the telemetry.
+	 * - CONFIG.connection.dcdc_controller.telemetry.uri: the URI of the stream [{@link String}]. Default: {@code /all/subscribe}
+	 *          
+	 * {@inheritDoc}
+	 * その後テレメトリを購読する.
+	 * - CONFIG.connection.dcdc_controller.telemetry.uri : ストリームの URI [{@link String}]. デフォルト : {@code /all/subscribe}
+	 */
+	@Override protected void init(Handler<AsyncResult<Void>> completionHandler) {
+		super.init(res -> {
+			if (res.succeeded()) {
+				String host = VertxConfig.config.getString("connection", "dcdc_controller", "host");
+				Integer port = VertxConfig.config.getInteger("connection", "dcdc_controller", "port");
+				telemetryStream_ = DriverConnection.createTelemetryStream(vertx, "dcdc_controller", host, port, "/all/subscribe").handler(this::telemetryHandler_);
+				telemetryStream_.open();
+			}
+			completionHandler.handle(res);
+		});
+	}
+
+	/**
+	 * Called when stopped.
+	 * Stop the subscription.
+	 * @throws Exception {@inheritDoc}
+	 *          
+	 * 停止時に呼び出される.
+	 * 購読を停止する.
+	 * @throws Exception {@inheritDoc}
+	 */
+	@Override public void stop() throws Exception {
+		if (telemetryStream_ != null) telemetryStream_.close();
+		super.stop();
+	}
+
+	private void telemetryHandler_(Buffer body) {
+		JsonObject dcdc;
+		try {
+			dcdc = DriverResponseParser.parse(body, DriverResponseParser.Layout.DCDC_WITH_BATTERY, dcdcStatus, batteryStatus);
+		} catch (DecodeException e) {
+			ErrorUtil.report(vertx, Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.WARN, "invalid telemetry sample ; driver : dcdc_controller ; " + e.getMessage());
+			return;
+		}
+		acceptPushedData(toData(dcdc));
+	}
+
+}
@@ -0,0 +1,118 @@
+package jp.co.sony.csl.dcoes.apis.main.app.controller.util;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Typed record of the battery part of a driver response.
+ * Filled by {@link DriverResponseParser} while it decodes the response, and reused from one poll to the next.
+ * The JSON view for the {@code battery} attribute of the unit data is built only when {@link #jsonObject()} is called.
+ * @author OES Project
+ *          
+ * ドライバのレスポンスのうちバッテリ部分の型付きレコード.
+ * {@link DriverResponseParser} がレスポンスをデコードしながら埋め, ポーリングをまたいで使い回す.
+ * ユニットデータの {@code battery} 属性用の JSON ビューは {@link #jsonObject()} が呼ばれたときにだけ作る.
+ * @author OES Project
+ */
+public class BatteryStatus {
+
+	private float rsoc_;
+	private int batteryOperationStatus_;
+	private boolean hasBatteryOperationStatus_;
+	// The values as received, so that the JSON view encodes exactly as the driver sent them
+	// JSON ビューがドライバの送ったとおりにエンコードされるよう受け取ったままの値
+	private Object rsocValue_;
+	private Object batteryOperationStatusValue_;
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public BatteryStatus() {
+		reset();
+	}
+
+	/**
+	 * Clear all the values.
+	 *          
+	 * 全ての値を消去する.
+	 */
+	public void reset() {
+		rsoc_ = Float.NaN;
+		batteryOperationStatus_ = 0;
+		hasBatteryOperationStatus_ = false;
+		rsocValue_ = null;
+		batteryOperationStatusValue_ = null;
+	}
+
+	/**
+	 * Get {@code rsoc}.
+	 * @return the relative state of charge [%]. {@link Float#NaN} if absent
+	 *          
+	 * {@code rsoc} を取得する.
+	 * @return 相対残容量 [%]. 存在しなければ {@link Float#NaN}
+	 */
+	public float rsoc() {
+		return rsoc_;
+	}
+	/**
+	 * Find out if {@code rsoc} is present.
+	 * @return {@code true} if present
+	 *          
+	 * {@code rsoc} が存在するか否かを取得する.
+	 * @return 存在すれば {@code true}
+	 */
+	public boolean hasRsoc() {
+		return !Float.isNaN(rsoc_);
+	}
+	/**
+	 * Get {@code battery_operation_status}.
+	 * @return the battery operation status. {@code 0} if absent
+	 *          
+	 * {@code battery_operation_status} を取得する.
+	 * @return バッテリ運転状態. 存在しなければ {@code 0}
+	 */
+	public int batteryOperationStatus() {
+		return batteryOperationStatus_;
+	}
+	/**
+	 * Find out if {@code battery_operation_status} is present.
+	 * @return {@code true} if present
+	 *          
+	 * {@code battery_operation_status} が存在するか否かを取得する.
+	 * @return 存在すれば {@code true}
+	 */
+	public boolean hasBatteryOperationStatus() {
+		return hasBatteryOperationStatus_;
+	}
+	/**
+	 * Build the JSON view.
+	 * A new object is built on each call, with {@code rsoc} and {@code battery_operation_status} as received ( {@code null} if absent ).
+	 * @return the {@code battery} attribute of the unit data
+	 *          
+	 * JSON ビューを作る.
+	 * 呼ぶたびに受け取ったままの {@code rsoc} と {@code battery_operation_status} ( 存在しなければ {@code null} ) で新しいオブジェクトを作る.
+	 * @return ユニットデータの {@code battery} 属性
+	 */
+	public JsonObject jsonObject() {
+		return new JsonObject().put("rsoc", rsocValue_).put("battery_operation_status", batteryOperationStatusValue_);
+	}
+
+	////
+
+	boolean set(String key, Object value) {
+		if ("rsoc".equals(key)) {
+			rsocValue_ = value;
+			rsoc_ = DriverResponseParser.toFloat(value);
+			return true;
+		} else if ("battery_operation_status".equals(key)) {
+			batteryOperationStatusValue_ = value;
+			float f = DriverResponseParser.toFloat(value);
+			hasBatteryOperationStatus_ = !Float.isNaN(f);
+			batteryOperationStatus_ = (hasBatteryOperationStatus_) ? (int) f : 0;
+			return true;
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,226 @@
+package jp.co.sony.csl.dcoes.apis.main.app.controller.util;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Arrays;
+
+/**
+ * Typed record of the DCDC converter part of a driver response.
+ * Filled by {@link DriverResponseParser} while it decodes the response, and reused from one poll to the next.
+ * Numeric values are kept as primitives. An absent or non-numeric value is {@link Float#NaN}.
+ * The JSON view is the {@code dcdc} object decoded in the same pass, which is what goes into the unit data.
+ * @author OES Project
+ *          
+ * ドライバのレスポンスのうち DCDC コンバータ部分の型付きレコード.
+ * {@link DriverResponseParser} がレスポンスをデコードしながら埋め, ポーリングをまたいで使い回す.
+ * 数値はプリミティブで保持する. 存在しないか数値でない値は {@link Float#NaN}.
+ * JSON ビューは同じ走査でデコードされた {@code dcdc} オブジェクトであり, それがユニットデータに入る.
+ * @author OES Project
+ */
+public class DcdcStatus {
+
+	/**
+	 * Numeric values held by a {@link DcdcStatus}.
+	 *          
+	 * {@link DcdcStatus} が保持する数値.
+	 */
+	public enum Value {
+		/**
+		 * {@code meter.wg}
+		 */
+		METER_WG("meter", "wg"),
+		/**
+		 * {@code meter.tmp}
+		 */
+		METER_TMP("meter", "tmp"),
+		/**
+		 * {@code meter.vb}
+		 */
+		METER_VB("meter", "vb"),
+		/**
+		 * {@code meter.wb}
+		 */
+		METER_WB("meter", "wb"),
+		/**
+		 * {@code meter.vg}
+		 */
+		METER_VG("meter", "vg"),
+		/**
+		 * {@code meter.ib}
+		 */
+		METER_IB("meter", "ib"),
+		/**
+		 * {@code meter.ig}
+		 */
+		METER_IG("meter", "ig"),
+		/**
+		 * {@code vdis.dvg}
+		 */
+		VDIS_DVG("vdis", "dvg"),
+		/**
+		 * {@code vdis.drg}
+		 */
+		VDIS_DRG("vdis", "drg"),
+		/**
+		 * {@code param.dig}
+		 */
+		PARAM_DIG("param", "dig"),
+		;
+		private static final Value[] VALUES = values();
+		private final String section_;
+		private final String key_;
+		private Value(String section, String key) {
+			section_ = section;
+			key_ = key;
+		}
+		/**
+		 * Get the value for a section and a key.
+		 * @param section the section. e.g. {@code meter}
+		 * @param key the key. e.g. {@code vg}
+		 * @return the value. {@code null} if not held by {@link DcdcStatus}
+		 *          
+		 * セクションとキーに対応する値を取得する.
+		 * @param section セクション. 例えば {@code meter}
+		 * @param key キー. 例えば {@code vg}
+		 * @return 値. {@link DcdcStatus} が保持しないものなら {@code null}
+		 */
+		public static Value of(String section, String key) {
+			for (Value aValue : VALUES) {
+				if (aValue.key_.equals(key) && aValue.section_.equals(section)) return aValue;
+			}
+			return null;
+		}
+	}
+
+	private final float[] values_ = new float[Value.VALUES.length];
+	private String status_;
+	private String alarmState_;
+	private String operationMode_;
+	private JsonObject jsonObject_;
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public DcdcStatus() {
+		reset();
+	}
+
+	/**
+	 * Clear all the values.
+	 *          
+	 * 全ての値を消去する.
+	 */
+	public void reset() {
+		Arrays.fill(values_, Float.NaN);
+		status_ = null;
+		alarmState_ = null;
+		operationMode_ = null;
+		jsonObject_ = null;
+	}
+
+	/**
+	 * Get a numeric value.
+	 * @param value the value to get
+	 * @return the value. {@link Float#NaN} if absent
+	 *          
+	 * 数値を取得する.
+	 * @param value 取得する値
+	 * @return 値. 存在しなければ {@link Float#NaN}
+	 */
+	public float get(Value value) {
+		return values_[value.ordinal()];
+	}
+	/**
+	 * Find out if a numeric value is present.
+	 * @param value the value to check
+	 * @return {@code true} if present
+	 *          
+	 * 数値が存在するか否かを取得する.
+	 * @param value 確認する値
+	 * @return 存在すれば {@code true}
+	 */
+	public boolean has(Value value) {
+		return !Float.isNaN(values_[value.ordinal()]);
+	}
+	/**
+	 * Get {@code status.status}.
+	 * @return the mode code. {@code null} if absent
+	 *          
+	 * {@code status.status} を取得する.
+	 * @return モードのコード. 存在しなければ {@code null}
+	 */
+	public String status() {
+		return status_;
+	}
+	/**
+	 * Get {@code status.alarmState}.
+	 * @return the alarm state code. {@code null} if absent
+	 *          
+	 * {@code status.alarmState} を取得する.
+	 * @return アラーム状態のコード. 存在しなければ {@code null}
+	 */
+	public String alarmState() {
+		return alarmState_;
+	}
+	/**
+	 * Get {@code status.operationMode}.
+	 * @return the operation mode code. {@code null} if absent
+	 *          
+	 * {@code status.operationMode} を取得する.
+	 * @return 運転モードのコード. 存在しなければ {@code null}
+	 */
+	public String operationMode() {
+		return operationMode_;
+	}
+	/**
+	 * Get the JSON view.
+	 * @return the {@code dcdc} object decoded along with this record. {@code null} if not decoded yet
+	 *          
+	 * JSON ビューを取得する.
+	 * @return このレコードと一緒にデコードされた {@code dcdc} オブジェクト. まだデコードされていなければ {@code null}
+	 */
+	public JsonObject jsonObject() {
+		return jsonObject_;
+	}
+	/**
+	 * Find out if this record was decoded along with a {@code dcdc} object.
+	 * The values of this record then are those of the object as it was received from the driver.
+	 * @param dcdc a {@code dcdc} object
+	 * @return {@code true} if {@code dcdc} is the JSON view of this record
+	 *          
+	 * このレコードが {@code dcdc} オブジェクトと一緒にデコードされたか否かを取得する.
+	 * その場合このレコードの値はドライバから受け取った時点のそのオブジェクトの値である.
+	 * @param dcdc {@code dcdc} オブジェクト
+	 * @return {@code dcdc} がこのレコードの JSON ビューなら {@code true}
+	 */
+	public boolean isViewedAs(JsonObject dcdc) {
+		return jsonObject_ != null && jsonObject_ == dcdc;
+	}
+
+	////
+
+	void set(String section, String key, Object value) {
+		if ("status".equals(section)) {
+			if (value instanceof String) {
+				if ("status".equals(key)) {
+					status_ = (String) value;
+				} else if ("alarmState".equals(key)) {
+					alarmState_ = (String) value;
+				} else if ("operationMode".equals(key)) {
+					operationMode_ = (String) value;
+				}
+			}
+		} else {
+			Value aValue = Value.of(section, key);
+			if (aValue != null) {
+				values_[aValue.ordinal()] = DriverResponseParser.toFloat(value);
+			}
+		}
+	}
+	void setJsonObject(JsonObject jsonObject) {
+		jsonObject_ = jsonObject;
+	}
+
+}
@@ -0,0 +1,295 @@
+package jp.co.sony.csl.dcoes.apis.main.app.controller.util;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jp.co.sony.csl.dcoes.apis.common.Error;
+import jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping;
+import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
+
+/**
+ * A circuit breaker for each device driver.
+ * There is one breaker for each connection name such as {@code dcdc_controller}, shared by all the HTTP clients created by {@link DriverConnection#createHttpClient(Vertx, String, String, int)} with that name.
+ * - {@link State#CLOSED}: requests are sent. Opens after {@code POLICY.controller.circuitBreaker.failureThreshold} consecutive failures
+ * - {@link State#OPEN}: requests fail fast. Becomes {@link State#HALF_OPEN} after {@code POLICY.controller.circuitBreaker.openMsec}
+ * - {@link State#HALF_OPEN}: a single trial request is sent. Closes if it succeeds and opens again if it fails
+ * A request is sent with the {@link Permit} returned by {@link #allowRequest()}, which is passed back to {@link #record(Vertx, Permit, boolean)}.
+ * @author OES Project
+ *          
+ * デバイスドライバごとのサーキットブレーカ.
+ * {@code dcdc_controller} などの接続名ごとに一つあり, その名前で {@link DriverConnection#createHttpClient(Vertx, String, String, int)} が生成した全ての HTTP クライアントが共有する.
+ * - {@link State#CLOSED} : リクエストを送る. {@code POLICY.controller.circuitBreaker.failureThreshold} 回連続で失敗したら開く
+ * - {@link State#OPEN} : リクエストを即座に失敗させる. {@code POLICY.controller.circuitBreaker.openMsec} 経ったら {@link State#HALF_OPEN} になる
+ * - {@link State#HALF_OPEN} : 試しのリクエストを一つだけ送る. 成功したら閉じ失敗したら再び開く
+ * リクエストは {@link #allowRequest()} が返す {@link Permit} で送り, それを {@link #record(Vertx, Permit, boolean)} に渡す.
+ * @author OES Project
+ */
+public class DriverCircuitBreaker {
+	private static final Logger log = LoggerFactory.getLogger(DriverCircuitBreaker.class);
+
+	/**
+	 * Default number of consecutive failures which opens the breaker.
+	 * Value: {@value}.
+	 *          
+	 * ブレーカを開く連続失敗回数のデフォルト値.
+	 * 値は {@value}.
+	 */
+	private static final Integer DEFAULT_FAILURE_THRESHOLD = 5;
+	/**
+	 * Default duration [ms] for which the breaker stays open.
+	 * Value: {@value}.
+	 *          
+	 * ブレーカが開いている時間のデフォルト値 [ms].
+	 * 値は {@value}.
+	 */
+	private static final Long DEFAULT_OPEN_MSEC = 10000L;
+
+	/**
+	 * The state of a breaker.
+	 *          
+	 * ブレーカの状態.
+	 */
+	public enum State {
+		/**
+		 * Requests are sent.
+		 *          
+		 * リクエストを送る.
+		 */
+		CLOSED,
+		/**
+		 * Requests fail fast.
+		 *          
+		 * リクエストを即座に失敗させる.
+		 */
+		OPEN,
+		/**
+		 * A single trial request is sent.
+		 *          
+		 * 試しのリクエストを一つだけ送る.
+		 */
+		HALF_OPEN,
+	}
+
+	/**
+	 * A permission to send a request.
+	 * Tells the trial request in {@link State#HALF_OPEN} from the others.
+	 *          
+	 * リクエストを送る許可.
+	 * {@link State#HALF_OPEN} での試しのリクエストをそれ以外と見分ける.
+	 */
+	public static final class Permit {
+		private Permit() { }
+	}
+	private static final Permit ORDINARY_PERMIT_ = new Permit();
+
+	private static final Map<String, DriverCircuitBreaker> breakers_ = new LinkedHashMap<>();
+	private static final Map<HttpClient, DriverCircuitBreaker> breakersByClient_ = new IdentityHashMap<>();
+
+	private final String name_;
+	private State state_ = State.CLOSED;
+	private int failures_ = 0;
+	private long openedMillis_ = 0L;
+	// The permit of the trial request in flight ; null if none
+	// 送信中の試しのリクエストの許可. なければ null
+	private Permit trial_ = null;
+
+	private DriverCircuitBreaker(String name) {
+		name_ = name;
+	}
+
+	/**
+	 * Register an HTTP client to the breaker of a connection name.
+	 * @param client an httpclient object
+	 * @param name the connection name
+	 *          
+	 * HTTP クライアントを接続名のブレーカに登録する.
+	 * @param client httpclient オブジェクト
+	 * @param name 接続名
+	 */
+	static synchronized void register(HttpClient client, String name) {
+		DriverCircuitBreaker breaker = breakers_.get(name);
+		if (breaker == null) {
+			breaker = new DriverCircuitBreaker(name);
+			breakers_.put(name, breaker);
+		}
+		breakersByClient_.put(client, breaker);
+	}
+	/**
+	 * Unregister an HTTP client.
+	 * To be called when the verticle which created the client stops.
+	 * The breaker of the connection name is discarded when no client is registered to it any more.
+	 * @param client an httpclient object. Ignored if {@code null}
+	 *          
+	 * HTTP クライアントの登録を解除する.
+	 * クライアントを生成した Verticle の停止時に呼ぶこと.
+	 * 接続名のブレーカは登録されたクライアントがなくなったら捨てる.
+	 * @param client httpclient オブジェクト. {@code null} なら無視する
+	 */
+	public static synchronized void unregister(HttpClient client) {
+		if (client == null) return;
+		DriverCircuitBreaker breaker = breakersByClient_.remove(client);
+		if (breaker != null && !breakersByClient_.containsValue(breaker)) {
+			breakers_.remove(breaker.name_);
+		}
+	}
+	/**
+	 * Discard all the breakers.
+	 * For testing.
+	 *          
+	 * 全てのブレーカを捨てる.
+	 * テスト用.
+	 */
+	static synchronized void reset() {
+		breakersByClient_.clear();
+		breakers_.clear();
+	}
+	/**
+	 * Get the breaker of an HTTP client.
+	 * @param client an httpclient object
+	 * @return the breaker. {@code null} if the client was not created by {@link DriverConnection#createHttpClient(Vertx, String, String, int)}
+	 *          
+	 * HTTP クライアントのブレーカを取得する.
+	 * @param client httpclient オブジェクト
+	 * @return ブレーカ. クライアントが {@link DriverConnection#createHttpClient(Vertx, String, String, int)} で生成されたものでなければ {@code null}
+	 */
+	public static synchronized DriverCircuitBreaker of(HttpClient client) {
+		return breakersByClient_.get(client);
+	}
+	/**
+	 * Get the states of all the breakers as a {@link JsonObject}.
+	 * Keyed by the connection name.
+	 * - state: the state ( see {@link State} )
+	 * - failures: the number of consecutive failures
+	 * @return the states
+	 *          
+	 * 全てのブレーカの状態を {@link JsonObject} で取得する.
+	 * 接続名がキー.
+	 * - state : 状態 ( {@link State} 参照 )
+	 * - failures : 連続失敗回数
+	 * @return 状態
+	 */
+	public static synchronized JsonObject toJsonObject() {
+		JsonObject result = new JsonObject();
+		for (DriverCircuitBreaker aBreaker : breakers_.values()) {
+			synchronized (aBreaker) {
+				result.put(aBreaker.name_, new JsonObject().put("state", aBreaker.state_.name()).put("failures", aBreaker.failures_));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find out if any breaker is open.
+	 * @return {@code true} if any breaker is {@link State#OPEN}
+	 *          
+	 * 開いているブレーカがあるか否かを取得する.
+	 * @return {@link State#OPEN} のブレーカがあれば {@code true}
+	 */
+	public static synchronized boolean isAnyOpen() {
+		for (DriverCircuitBreaker aBreaker : breakers_.values()) {
+			if (State.OPEN == aBreaker.state()) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Get the connection name.
+	 * @return the connection name
+	 *          
+	 * 接続名を取得する.
+	 * @return 接続名
+	 */
+	public String name() {
+		return name_;
+	}
+	/**
+	 * Get the state.
+	 * @return the state
+	 *          
+	 * 状態を取得する.
+	 * @return 状態
+	 */
+	public synchronized State state() {
+		return state_;
+	}
+
+	/**
+	 * Ask for a permission to send a request.
+	 * Moves from {@link State#OPEN} to {@link State#HALF_OPEN} once the open duration has passed.
+	 * @return the permit to be passed to {@link #record(Vertx, Permit, boolean)}. {@code null} if the request may not be sent
+	 *          
+	 * リクエストを送る許可を求める.
+	 * 開いている時間が過ぎたら {@link State#OPEN} から {@link State#HALF_OPEN} に移る.
+	 * @return {@link #record(Vertx, Permit, boolean)} に渡す許可. 送ってはいけなければ {@code null}
+	 */
+	public synchronized Permit allowRequest() {
+		if (State.OPEN == state_) {
+			Long openMsec = PolicyKeeping.cache().getLong(DEFAULT_OPEN_MSEC, "controller", "circuitBreaker", "openMsec");
+			if (System.currentTimeMillis() < openedMillis_ + openMsec) return null;
+			if (log.isInfoEnabled()) log.info("circuit breaker half-open ; driver : " + name_);
+			state_ = State.HALF_OPEN;
+		}
+		if (State.HALF_OPEN == state_) {
+			// Only one trial request at a time
+			// 試しのリクエストは一度に一つだけ
+			if (trial_ != null) return null;
+			trial_ = new Permit();
+			return trial_;
+		}
+		return ORDINARY_PERMIT_;
+	}
+	/**
+	 * Record the result of a request.
+	 * Only the result of the trial request ends the trial ; that of a request sent without asking, such as in WAIT mode, does not.
+	 * In {@link State#HALF_OPEN}, only the result of the trial request changes the state.
+	 * Reports an error when the breaker opens.
+	 * @param vertx a vertx object
+	 * @param permit the permit returned by {@link #allowRequest()}. {@code null} if sent without asking
+	 * @param succeeded {@code true} if the request succeeded
+	 *          
+	 * リクエストの結果を記録する.
+	 * 試しのリクエストの結果だけが試しを終わらせる. WAIT モードなど許可を求めずに送ったリクエストの結果は終わらせない.
+	 * {@link State#HALF_OPEN} では試しのリクエストの結果だけが状態を変える.
+	 * ブレーカが開いたらエラーを送出する.
+	 * @param vertx vertx オブジェクト
+	 * @param permit {@link #allowRequest()} が返した許可. 許可を求めずに送ったなら {@code null}
+	 * @param succeeded リクエストが成功したら {@code true}
+	 */
+	public void record(Vertx vertx, Permit permit, boolean succeeded) {
+		boolean opened = false;
+		synchronized (this) {
+			if (permit != null && permit == trial_) {
+				trial_ = null;
+			} else if (State.HALF_OPEN == state_) {
+				// Wait for the result of the trial
+				// 試しの結果を待つ
+				if (log.isDebugEnabled()) log.debug("circuit breaker half-open ; result of a request other than the trial ignored ; driver : " + name_);
+				return;
+			}
+			if (succeeded) {
+				if (State.CLOSED != state_ && log.isInfoEnabled()) log.info("circuit breaker closed ; driver : " + name_);
+				state_ = State.CLOSED;
+				failures_ = 0;
+			} else {
+				failures_++;
+				Integer failureThreshold = PolicyKeeping.cache().getInteger(DEFAULT_FAILURE_THRESHOLD, "controller", "circuitBreaker", "failureThreshold");
+				if (State.HALF_OPEN == state_ || (State.CLOSED == state_ && failureThreshold <= failures_)) {
+					state_ = State.OPEN;
+					openedMillis_ = System.currentTimeMillis();
+					opened = true;
+				}
+			}
+		}
+		if (opened) {
+			ErrorUtil.report(vertx, Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.ERROR, "Device Driver circuit breaker opened ; driver : " + name_);
+		}
+	}
+
+}
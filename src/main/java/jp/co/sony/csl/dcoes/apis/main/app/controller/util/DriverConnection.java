@@ -0,0 +1,248 @@
+package jp.co.sony.csl.dcoes.apis.main.app.controller.util;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
+import jp.co.sony.csl.dcoes.apis.common.util.vertx.VertxConfig;
+import jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping;
+
+/**
+ * Connection settings of the HTTP clients to the device drivers.
+ * Persistent connections are used explicitly so that the periodic data acquisition and the device control do not open a new connection to the driver for every request.
+ * Each setting is read from {@code CONFIG.connection.<name>} where {@code <name>} is the connection name such as {@code dcdc_controller}.
+ * - keepAlive: whether to keep connections open [{@link Boolean}]. Default: {@link #DEFAULT_KEEP_ALIVE}
+ * - keepAliveTimeoutSec: how long an idle connection is kept [s] [{@link Integer}]. Default: {@link #DEFAULT_KEEP_ALIVE_TIMEOUT_SEC}
+ * - maxPoolSize: the maximum number of connections [{@link Integer}]. Default: {@link #DEFAULT_MAX_POOL_SIZE}
+ * - pipelining: whether to pipeline requests on a connection [{@link Boolean}]. Default: {@link #DEFAULT_PIPELINING}
+ * - pipeliningLimit: the maximum number of pipelined requests on a connection [{@link Integer}]. Default: {@link #DEFAULT_PIPELINING_LIMIT}
+ * Retries of failed requests wait for a delay read from {@code POLICY.controller.retryBackoff}.
+ * - initialMsec: the base delay before the first retry [ms] [{@link Long}]. Doubled on each retry. {@code 0} retries immediately. Default: {@link #DEFAULT_RETRY_BACKOFF_INITIAL_MSEC}
+ * - maxMsec: the upper limit of the base delay [ms] [{@link Long}]. Default: {@link #DEFAULT_RETRY_BACKOFF_MAX_MSEC}
+ * The push-mode telemetry subscription is read from {@code CONFIG.connection.<name>.telemetry}.
+ * - enabled: whether to subscribe to the telemetry pushed by the driver [{@link Boolean}]. Default: {@link #DEFAULT_TELEMETRY_ENABLED}
+ * - uri: the URI of the WebSocket stream [{@link String}]. Default: depends on the driver
+ * - reconnectDelayMsec: the delay before reconnecting [ms] [{@link Long}]. Default: {@link #DEFAULT_TELEMETRY_RECONNECT_DELAY_MSEC}
+ * - staleMsec: the duration without a sample after which the stream is reconnected [ms] [{@link Long}]. Default: {@link #DEFAULT_TELEMETRY_STALE_MSEC}
+ * @author OES Project
+ *          
+ * デバイスドライバへの HTTP クライアントの接続設定.
+ * 定期的なデータ取得とデバイス制御がリクエストごとにドライバへの接続を開かないよう明示的に持続的接続を使う.
+ * 各設定は {@code CONFIG.connection.<name>} から読む. {@code <name>} は {@code dcdc_controller} などの接続名.
+ * - keepAlive : 接続を維持するか否か [{@link Boolean}]. デフォルト : {@link #DEFAULT_KEEP_ALIVE}
+ * - keepAliveTimeoutSec : アイドル状態の接続を維持する時間 [s] [{@link Integer}]. デフォルト : {@link #DEFAULT_KEEP_ALIVE_TIMEOUT_SEC}
+ * - maxPoolSize : 接続数の上限 [{@link Integer}]. デフォルト : {@link #DEFAULT_MAX_POOL_SIZE}
+ * - pipelining : 一つの接続でリクエストをパイプライン化するか否か [{@link Boolean}]. デフォルト : {@link #DEFAULT_PIPELINING}
+ * - pipeliningLimit : 一つの接続でパイプライン化するリクエスト数の上限 [{@link Integer}]. デフォルト : {@link #DEFAULT_PIPELINING_LIMIT}
+ * 失敗したリクエストの再試行は {@code POLICY.controller.retryBackoff} から読んだ時間だけ待つ.
+ * - initialMsec : 最初の再試行前の基準待ち時間 [ms] [{@link Long}]. 再試行ごとに倍になる. {@code 0} なら即座に再試行する. デフォルト : {@link #DEFAULT_RETRY_BACKOFF_INITIAL_MSEC}
+ * - maxMsec : 基準待ち時間の上限 [ms] [{@link Long}]. デフォルト : {@link #DEFAULT_RETRY_BACKOFF_MAX_MSEC}
+ * プッシュ型のテレメトリ購読は {@code CONFIG.connection.<name>.telemetry} から読む.
+ * - enabled : ドライバがプッシュするテレメトリを購読するか否か [{@link Boolean}]. デフォルト : {@link #DEFAULT_TELEMETRY_ENABLED}
+ * - uri : WebSocket ストリームの URI [{@link String}]. デフォルト : ドライバによる
+ * - reconnectDelayMsec : 再接続までの待ち時間 [ms] [{@link Long}]. デフォルト : {@link #DEFAULT_TELEMETRY_RECONNECT_DELAY_MSEC}
+ * - staleMsec : この時間サンプルが届かなければストリームを再接続する [ms] [{@link Long}]. デフォルト : {@link #DEFAULT_TELEMETRY_STALE_MSEC}
+ * @author OES Project
+ */
+public class DriverConnection {
+
+	/**
+	 * Default value of keepAlive.
+	 * Value: {@value}
+	 *          
+	 * keepAlive のデフォルト値.
+	 * 値は {@value}
+	 */
+	public static final Boolean DEFAULT_KEEP_ALIVE = Boolean.TRUE;
+	/**
+	 * Default value of keepAliveTimeoutSec [s].
+	 * Value: {@value}
+	 *          
+	 * keepAliveTimeoutSec のデフォルト値 [s].
+	 * 値は {@value}
+	 */
+	public static final Integer DEFAULT_KEEP_ALIVE_TIMEOUT_SEC = 60;
+	/**
+	 * Default value of maxPoolSize.
+	 * The drivers are small embedded processes, so only a few connections are kept.
+	 * Value: {@value}
+	 *          
+	 * maxPoolSize のデフォルト値.
+	 * ドライバは小さな組込みプロセスなので少数の接続だけを維持する.
+	 * 値は {@value}
+	 */
+	public static final Integer DEFAULT_MAX_POOL_SIZE = 2;
+	/**
+	 * Default value of pipelining.
+	 * Disabled because not every driver handles pipelined requests.
+	 * Value: {@value}
+	 *          
+	 * pipelining のデフォルト値.
+	 * 全てのドライバがパイプライン化されたリクエストを扱えるとは限らないので無効.
+	 * 値は {@value}
+	 */
+	public static final Boolean DEFAULT_PIPELINING = Boolean.FALSE;
+	/**
+	 * Default value of pipeliningLimit.
+	 * Value: {@value}
+	 *          
+	 * pipeliningLimit のデフォルト値.
+	 * 値は {@value}
+	 */
+	public static final Integer DEFAULT_PIPELINING_LIMIT = 4;
+	/**
+	 * Default value of retryBackoff.initialMsec [ms].
+	 * Value: {@value}
+	 *          
+	 * retryBackoff.initialMsec のデフォルト値 [ms].
+	 * 値は {@value}
+	 */
+	public static final Long DEFAULT_RETRY_BACKOFF_INITIAL_MSEC = 100L;
+	/**
+	 * Default value of retryBackoff.maxMsec [ms].
+	 * Value: {@value}
+	 *          
+	 * retryBackoff.maxMsec のデフォルト値 [ms].
+	 * 値は {@value}
+	 */
+	public static final Long DEFAULT_RETRY_BACKOFF_MAX_MSEC = 2000L;
+	/**
+	 * Default value of telemetry.enabled.
+	 * Disabled because not every driver pushes telemetry.
+	 * Value: {@value}
+	 *          
+	 * telemetry.enabled のデフォルト値.
+	 * 全てのドライバがテレメトリをプッシュするとは限らないので無効.
+	 * 値は {@value}
+	 */
+	public static final Boolean DEFAULT_TELEMETRY_ENABLED = Boolean.FALSE;
+	/**
+	 * Default value of telemetry.reconnectDelayMsec [ms].
+	 * Value: {@value}
+	 *          
+	 * telemetry.reconnectDelayMsec のデフォルト値 [ms].
+	 * 値は {@value}
+	 */
+	public static final Long DEFAULT_TELEMETRY_RECONNECT_DELAY_MSEC = 5000L;
+	/**
+	 * Default value of telemetry.staleMsec [ms].
+	 * Value: {@value}
+	 *          
+	 * telemetry.staleMsec のデフォルト値 [ms].
+	 * 値は {@value}
+	 */
+	public static final Long DEFAULT_TELEMETRY_STALE_MSEC = 15000L;
+
+	private DriverConnection() { }
+
+	/**
+	 * Create the options of an HTTP client to a device driver.
+	 * @param name the connection name. e.g. {@code dcdc_controller}
+	 * @param host the host name
+	 * @param port the port number
+	 * @return an httpclientoptions object
+	 *          
+	 * デバイスドライバへの HTTP クライアントのオプションを生成する.
+	 * @param name 接続名. 例えば {@code dcdc_controller}
+	 * @param host ホスト名
+	 * @param port ポート番号
+	 * @return httpclientoptions オブジェクト
+	 */
+	public static HttpClientOptions httpClientOptions(String name, String host, int port) {
+		return new HttpClientOptions()
+				.setDefaultHost(host)
+				.setDefaultPort(port)
+				.setKeepAlive(VertxConfig.config.getBoolean(DEFAULT_KEEP_ALIVE, "connection", name, "keepAlive"))
+				.setKeepAliveTimeout(VertxConfig.config.getInteger(DEFAULT_KEEP_ALIVE_TIMEOUT_SEC, "connection", name, "keepAliveTimeoutSec"))
+				.setMaxPoolSize(VertxConfig.config.getInteger(DEFAULT_MAX_POOL_SIZE, "connection", name, "maxPoolSize"))
+				.setPipelining(VertxConfig.config.getBoolean(DEFAULT_PIPELINING, "connection", name, "pipelining"))
+				.setPipeliningLimit(VertxConfig.config.getInteger(DEFAULT_PIPELINING_LIMIT, "connection", name, "pipeliningLimit"));
+	}
+
+	/**
+	 * Create an HTTP client to a device driver.
+	 * The client is registered to the {@link DriverCircuitBreaker} of the connection name.
+	 * @param vertx a vertx object
+	 * @param name the connection name. e.g. {@code dcdc_controller}
+	 * @param host the host name
+	 * @param port the port number
+	 * @return an httpclient object
+	 *          
+	 * デバイスドライバへの HTTP クライアントを生成する.
+	 * クライアントは接続名の {@link DriverCircuitBreaker} に登録される.
+	 * @param vertx vertx オブジェクト
+	 * @param name 接続名. 例えば {@code dcdc_controller}
+	 * @param host ホスト名
+	 * @param port ポート番号
+	 * @return httpclient オブジェクト
+	 */
+	public static HttpClient createHttpClient(Vertx vertx, String name, String host, int port) {
+		HttpClient result = vertx.createHttpClient(httpClientOptions(name, host, port));
+		DriverCircuitBreaker.register(result, name);
+		return result;
+	}
+
+	/**
+	 * Find out if the push-mode telemetry subscription is enabled.
+	 * @param name the connection name. e.g. {@code dcdc_controller}
+	 * @return {@code true} if enabled
+	 *          
+	 * プッシュ型のテレメトリ購読が有効か否かを取得する.
+	 * @param name 接続名. 例えば {@code dcdc_controller}
+	 * @return 有効なら {@code true}
+	 */
+	public static boolean isTelemetryEnabled(String name) {
+		return VertxConfig.config.getBoolean(DEFAULT_TELEMETRY_ENABLED, "connection", name, "telemetry", "enabled");
+	}
+	/**
+	 * Create a subscription to the telemetry pushed by a device driver.
+	 * The stream uses its own HTTP client, so that it does not hold a connection of the pool used for the requests.
+	 * @param vertx a vertx object
+	 * @param name the connection name. e.g. {@code dcdc_controller}
+	 * @param host the host name
+	 * @param port the port number
+	 * @param defaultUri the URI of the stream used when {@code telemetry.uri} is not set
+	 * @return the subscription. Not opened yet
+	 *          
+	 * デバイスドライバがプッシュするテレメトリの購読を生成する.
+	 * リクエスト用のプールの接続を占有しないようストリームは専用の HTTP クライアントを使う.
+	 * @param vertx vertx オブジェクト
+	 * @param name 接続名. 例えば {@code dcdc_controller}
+	 * @param host ホスト名
+	 * @param port ポート番号
+	 * @param defaultUri {@code telemetry.uri} が設定されていない場合のストリームの URI
+	 * @return 購読. まだ開始していない
+	 */
+	public static DriverTelemetryStream createTelemetryStream(Vertx vertx, String name, String host, int port, String defaultUri) {
+		HttpClient client = vertx.createHttpClient(new HttpClientOptions().setDefaultHost(host).setDefaultPort(port));
+		String uri = VertxConfig.config.getString(new JsonObjectUtil.DefaultString(defaultUri), "connection", name, "telemetry", "uri");
+		Long reconnectDelayMsec = VertxConfig.config.getLong(DEFAULT_TELEMETRY_RECONNECT_DELAY_MSEC, "connection", name, "telemetry", "reconnectDelayMsec");
+		Long staleMsec = VertxConfig.config.getLong(DEFAULT_TELEMETRY_STALE_MSEC, "connection", name, "telemetry", "staleMsec");
+		return new DriverTelemetryStream(vertx, client, uri, reconnectDelayMsec, staleMsec);
+	}
+
+	/**
+	 * Compute the delay before a retry.
+	 * Exponential backoff with full jitter : a random value between {@code 0} and {@code min(maxMsec, initialMsec * 2^retry)}.
+	 * The jitter keeps the data acquisition and the device control from retrying against a recovering driver in lockstep.
+	 * @param retry the number of retries already made
+	 * @return the delay [ms]. {@code 0} means retrying immediately
+	 *          
+	 * 再試行前の待ち時間を計算する.
+	 * 完全ジッタ付きの指数バックオフ : {@code 0} から {@code min(maxMsec, initialMsec * 2^retry)} までの乱数.
+	 * ジッタによりデータ取得とデバイス制御が復旧中のドライバに対し揃って再試行しないようにする.
+	 * @param retry 既に行った再試行の回数
+	 * @return 待ち時間 [ms]. {@code 0} なら即座に再試行する
+	 */
+	public static long retryDelayMsec(int retry) {
+		long initialMsec = PolicyKeeping.cache().getLong(DEFAULT_RETRY_BACKOFF_INITIAL_MSEC, "controller", "retryBackoff", "initialMsec");
+		long maxMsec = PolicyKeeping.cache().getLong(DEFAULT_RETRY_BACKOFF_MAX_MSEC, "controller", "retryBackoff", "maxMsec");
+		if (initialMsec <= 0L || maxMsec <= 0L) return 0L;
+		long baseMsec = (retry < 31) ? Math.min(maxMsec, initialMsec << retry) : maxMsec;
+		return ThreadLocalRandom.current().nextLong(baseMsec + 1L);
+	}
+
+}
@@ -0,0 +1,261 @@
+package jp.co.sony.csl.dcoes.apis.main.app.controller.util;
+
+import io.netty.buffer.ByteBufInputStream;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streaming parser of the device driver responses.
+ * Reads the response body once with a Jackson streaming parser, straight from the received buffer.
+ * The same pass builds the JSON objects for the unit data and fills the reusable {@link DcdcStatus} and {@link BatteryStatus}.
+ * No intermediate tree is built and then reshaped.
+ * The values in the JSON objects have the same types as with {@link JsonObject#JsonObject(Buffer)}.
+ * @author OES Project
+ *          
+ * デバイスドライバのレスポンスのストリーミングパーサ.
+ * 受け取ったバッファから直接 Jackson のストリーミングパーサでレスポンスボディを一度だけ読む.
+ * 同じ走査でユニットデータ用の JSON オブジェクトを作り, 使い回しの {@link DcdcStatus} と {@link BatteryStatus} を埋める.
+ * 中間のツリーを作ってから組み替えることはしない.
+ * JSON オブジェクト中の値の型は {@link JsonObject#JsonObject(Buffer)} と同じ.
+ * @author OES Project
+ */
+public class DriverResponseParser {
+
+	// Comments are allowed as with Vert.x's own decoding
+	// Vert.x 自身のデコードと同様にコメントを許す
+	private static final JsonFactory JSON_FACTORY = new JsonFactory().configure(JsonParser.Feature.ALLOW_COMMENTS, true);
+
+	/**
+	 * Layouts of the driver responses.
+	 *          
+	 * ドライバのレスポンスのレイアウト.
+	 */
+	public enum Layout {
+		/**
+		 * The root is the {@code dcdc} object.
+		 * e.g. dcdc_controller of the v1 system
+		 *          
+		 * ルートが {@code dcdc} オブジェクト.
+		 * 例えば v1 システムの dcdc_controller
+		 */
+		DCDC,
+		/**
+		 * The root holds {@code rsoc} and {@code battery_operation_status}.
+		 * e.g. EMU-Driver of the v1 system
+		 *          
+		 * ルートが {@code rsoc} と {@code battery_operation_status} を持つ.
+		 * 例えば v1 システムの EMU-Driver
+		 */
+		BATTERY,
+		/**
+		 * The root is the {@code dcdc} object which also holds {@code rsoc} and {@code battery_operation_status}.
+		 * These two are taken out of the {@code dcdc} object into {@link BatteryStatus}.
+		 * e.g. dcdc_batt_comm of the v2 system
+		 *          
+		 * ルートが {@code dcdc} オブジェクトで {@code rsoc} と {@code battery_operation_status} も持つ.
+		 * この二つは {@code dcdc} オブジェクトから外し {@link BatteryStatus} に入れる.
+		 * 例えば v2 システムの dcdc_batt_comm
+		 */
+		DCDC_WITH_BATTERY,
+		/**
+		 * The root is a unit holding the {@code dcdc} object and the {@code emu} object.
+		 * e.g. the emulator
+		 *          
+		 * ルートが {@code dcdc} オブジェクトと {@code emu} オブジェクトを持つユニット.
+		 * 例えば emulator
+		 */
+		UNIT,
+	}
+
+	private enum Section_ {
+		NONE(null), UNIT(null), DCDC(null), DCDC_WITH_BATTERY(null), BATTERY(null), STATUS("status"), METER("meter"), VDIS("vdis"), PARAM("param");
+		private final String key_;
+		private Section_(String key) {
+			key_ = key;
+		}
+	}
+
+	private DriverResponseParser() { }
+
+	/**
+	 * Decode a driver response.
+	 * Resets and fills {@code dcdcStatus} and/or {@code batteryStatus} depending on {@code layout}.
+	 * @param body the response body
+	 * @param layout the layout of the response
+	 * @param dcdcStatus the record to fill with the {@code dcdc} part
+	 * @param batteryStatus the record to fill with the battery part
+	 * @return the decoded response. With {@link Layout#DCDC_WITH_BATTERY}, {@code rsoc} and {@code battery_operation_status} are not included
+	 * @throws DecodeException if the body is not a JSON object
+	 *          
+	 * ドライバのレスポンスをデコードする.
+	 * {@code layout} に応じて {@code dcdcStatus} と {@code batteryStatus} の一方または両方をリセットして埋める.
+	 * @param body レスポンスボディ
+	 * @param layout レスポンスのレイアウト
+	 * @param dcdcStatus {@code dcdc} 部分を入れるレコード
+	 * @param batteryStatus バッテリ部分を入れるレコード
+	 * @return デコードしたレスポンス. {@link Layout#DCDC_WITH_BATTERY} なら {@code rsoc} と {@code battery_operation_status} は含まない
+	 * @throws DecodeException ボディが JSON オブジェクトでない場合
+	 */
+	public static JsonObject parse(Buffer body, Layout layout, DcdcStatus dcdcStatus, BatteryStatus batteryStatus) throws DecodeException {
+		Section_ root;
+		switch (layout) {
+		case DCDC:
+			root = Section_.DCDC;
+			dcdcStatus.reset();
+			break;
+		case BATTERY:
+			root = Section_.BATTERY;
+			batteryStatus.reset();
+			break;
+		case DCDC_WITH_BATTERY:
+			root = Section_.DCDC_WITH_BATTERY;
+			dcdcStatus.reset();
+			batteryStatus.reset();
+			break;
+		default:
+			root = Section_.UNIT;
+			dcdcStatus.reset();
+			batteryStatus.reset();
+			break;
+		}
+		try (JsonParser parser = JSON_FACTORY.createParser((InputStream) new ByteBufInputStream(body.getByteBuf()))) {
+			if (JsonToken.START_OBJECT != parser.nextToken()) {
+				throw new DecodeException("Failed to decode : not a JSON object");
+			}
+			JsonObject result = readObject_(parser, root, dcdcStatus, batteryStatus);
+			if (parser.nextToken() != null) {
+				throw new DecodeException("Failed to decode : unexpected content after the JSON object");
+			}
+			return result;
+		} catch (IOException e) {
+			throw new DecodeException("Failed to decode : " + e.getMessage());
+		}
+	}
+
+	////
+
+	/**
+	 * Convert a decoded value to a {@code float}.
+	 * Numbers and numeric strings are converted, as {@code JsonObjectUtil.getFloat()} does.
+	 * @param value the value
+	 * @return the converted value. {@link Float#NaN} if {@code value} is not numeric
+	 *          
+	 * デコードした値を {@code float} に変換する.
+	 * {@code JsonObjectUtil.getFloat()} と同様に数値と数値の文字列を変換する.
+	 * @param value 値
+	 * @return 変換した値. {@code value} が数値でなければ {@link Float#NaN}
+	 */
+	static float toFloat(Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).floatValue();
+		} else if (value instanceof String) {
+			try {
+				return Float.parseFloat((String) value);
+			} catch (NumberFormatException e) {
+				return Float.NaN;
+			}
+		}
+		return Float.NaN;
+	}
+
+	private static JsonObject readObject_(JsonParser parser, Section_ section, DcdcStatus dcdcStatus, BatteryStatus batteryStatus) throws IOException {
+		JsonObject result = new JsonObject();
+		if (Section_.DCDC == section || Section_.DCDC_WITH_BATTERY == section) {
+			dcdcStatus.setJsonObject(result);
+		}
+		Map<String, Object> map = result.getMap();
+		JsonToken token;
+		while (JsonToken.FIELD_NAME == (token = parser.nextToken())) {
+			String name = parser.getCurrentName();
+			JsonToken valueToken = parser.nextToken();
+			Object value;
+			if (JsonToken.START_OBJECT == valueToken) {
+				value = readObject_(parser, child_(section, name), dcdcStatus, batteryStatus);
+			} else if (JsonToken.START_ARRAY == valueToken) {
+				value = readArray_(parser);
+			} else {
+				value = readScalar_(parser, valueToken);
+				if (section.key_ != null) {
+					dcdcStatus.set(section.key_, name, value);
+				} else if (Section_.BATTERY == section) {
+					batteryStatus.set(name, value);
+				} else if (Section_.DCDC_WITH_BATTERY == section && batteryStatus.set(name, value)) {
+					// Moved to the battery part → Not kept in the dcdc object
+					// バッテリ部分に移した → dcdc オブジェクトには残さない
+					continue;
+				}
+			}
+			map.put(name, value);
+		}
+		if (JsonToken.END_OBJECT != token) {
+			throw new DecodeException("Failed to decode : unexpected token " + token);
+		}
+		return result;
+	}
+
+	private static JsonArray readArray_(JsonParser parser) throws IOException {
+		JsonArray result = new JsonArray();
+		List<Object> list = result.getList();
+		JsonToken token;
+		while (JsonToken.END_ARRAY != (token = parser.nextToken())) {
+			if (token == null) {
+				throw new DecodeException("Failed to decode : unexpected end of input");
+			} else if (JsonToken.START_OBJECT == token) {
+				list.add(readObject_(parser, Section_.NONE, null, null));
+			} else if (JsonToken.START_ARRAY == token) {
+				list.add(readArray_(parser));
+			} else {
+				list.add(readScalar_(parser, token));
+			}
+		}
+		return result;
+	}
+
+	private static Object readScalar_(JsonParser parser, JsonToken token) throws IOException {
+		switch (token) {
+		case VALUE_STRING:
+			return parser.getText();
+		case VALUE_NUMBER_INT:
+		case VALUE_NUMBER_FLOAT:
+			return parser.getNumberValue();
+		case VALUE_TRUE:
+			return Boolean.TRUE;
+		case VALUE_FALSE:
+			return Boolean.FALSE;
+		case VALUE_NULL:
+			return null;
+		default:
+			throw new DecodeException("Failed to decode : unexpected token " + token);
+		}
+	}
+
+	private static Section_ child_(Section_ section, String name) {
+		switch (section) {
+		case UNIT:
+			if ("dcdc".equals(name)) return Section_.DCDC;
+			if ("emu".equals(name)) return Section_.BATTERY;
+			return Section_.NONE;
+		case DCDC:
+		case DCDC_WITH_BATTERY:
+			if ("status".equals(name)) return Section_.STATUS;
+			if ("meter".equals(name)) return Section_.METER;
+			if ("vdis".equals(name)) return Section_.VDIS;
+			if ("param".equals(name)) return Section_.PARAM;
+			return Section_.NONE;
+		default:
+			return Section_.NONE;
+		}
+	}
+
+}
@@ -0,0 +1,188 @@
+package jp.co.sony.csl.dcoes.apis.main.app.controller.util;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.WebSocket;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * A subscription to the telemetry pushed by a device driver over a WebSocket.
+ * Each message is one sample with the same content as the response to the corresponding polling request.
+ * Reconnects after {@code reconnectDelayMsec} when the connection fails or is closed.
+ * Closes the connection when no message has arrived for {@code staleMsec}, so that a silent driver is treated as a lost stream.
+ * The data acquisition falls back to polling by itself while no sample arrives.
+ * Only accessed from the context of the Verticle which created it.
+ * @author OES Project
+ *          
+ * デバイスドライバが WebSocket でプッシュするテレメトリの購読.
+ * 各メッセージが一つのサンプルで, 内容は対応するポーリングのレスポンスと同じ.
+ * 接続に失敗したり接続が閉じられたりしたら {@code reconnectDelayMsec} 後に再接続する.
+ * {@code staleMsec} の間メッセージが届かなければ接続を閉じ, 黙ってしまったドライバを途切れたストリームとして扱う.
+ * サンプルが届かない間はデータ取得が自らポーリングに戻る.
+ * 生成した Verticle のコンテキストからのみアクセスする.
+ * @author OES Project
+ */
+public class DriverTelemetryStream {
+	private static final Logger log = LoggerFactory.getLogger(DriverTelemetryStream.class);
+
+	private final Vertx vertx_;
+	private final HttpClient client_;
+	private final String uri_;
+	private final long reconnectDelayMsec_;
+	private final long staleMsec_;
+	private Handler<Buffer> handler_;
+	private WebSocket webSocket_ = null;
+	private long timerId_ = 0L;
+	private long lastMessageMillis_ = 0L;
+	private boolean opened_ = false;
+
+	/**
+	 * Create an instance.
+	 * Does not connect until {@link #open()} is called.
+	 * @param vertx a vertx object
+	 * @param client an httpclient object to the driver
+	 * @param uri the URI of the stream
+	 * @param reconnectDelayMsec the delay before reconnecting [ms]
+	 * @param staleMsec the duration without a message after which the connection is closed [ms]. {@code 0} disables it
+	 *          
+	 * インスタンスを生成する.
+	 * {@link #open()} が呼ばれるまで接続しない.
+	 * @param vertx vertx オブジェクト
+	 * @param client ドライバへの httpclient オブジェクト
+	 * @param uri ストリームの URI
+	 * @param reconnectDelayMsec 再接続までの待ち時間 [ms]
+	 * @param staleMsec この時間メッセージが届かなければ接続を閉じる [ms]. {@code 0} なら閉じない
+	 */
+	public DriverTelemetryStream(Vertx vertx, HttpClient client, String uri, long reconnectDelayMsec, long staleMsec) {
+		vertx_ = vertx;
+		client_ = client;
+		uri_ = uri;
+		reconnectDelayMsec_ = reconnectDelayMsec;
+		staleMsec_ = staleMsec;
+	}
+
+	/**
+	 * Set the handler of the samples.
+	 * @param handler the handler which receives each message as a {@link Buffer}
+	 * @return this object
+	 *          
+	 * サンプルのハンドラを設定する.
+	 * @param handler 各メッセージを {@link Buffer} で受け取るハンドラ
+	 * @return このオブジェクト
+	 */
+	public DriverTelemetryStream handler(Handler<Buffer> handler) {
+		handler_ = handler;
+		return this;
+	}
+
+	/**
+	 * Start the subscription.
+	 *          
+	 * 購読を開始する.
+	 */
+	public void open() {
+		if (opened_) return;
+		opened_ = true;
+		connect_();
+	}
+	/**
+	 * Stop the subscription.
+	 * Closes the connection and stops reconnecting.
+	 *          
+	 * 購読を停止する.
+	 * 接続を閉じ再接続をやめる.
+	 */
+	public void close() {
+		opened_ = false;
+		vertx_.cancelTimer(timerId_);
+		if (webSocket_ != null) {
+			WebSocket webSocket = webSocket_;
+			webSocket_ = null;
+			webSocket.close();
+		}
+	}
+
+	/**
+	 * Find out if connected.
+	 * @return {@code true} if connected
+	 *          
+	 * 接続しているか否かを取得する.
+	 * @return 接続していれば {@code true}
+	 */
+	public boolean isConnected() {
+		return webSocket_ != null;
+	}
+	/**
+	 * Get the time when the last message arrived.
+	 * @return the time [ms]. {@code 0} if no message has arrived yet
+	 *          
+	 * 最後にメッセージが届いた時刻を取得する.
+	 * @return 時刻 [ms]. まだ届いていなければ {@code 0}
+	 */
+	public long lastMessageMillis() {
+		return lastMessageMillis_;
+	}
+
+	////
+
+	private void connect_() {
+		if (!opened_) return;
+		client_.websocket(uri_, webSocket -> {
+			if (!opened_) {
+				webSocket.close();
+				return;
+			}
+			if (log.isInfoEnabled()) log.info("telemetry stream connected ; uri : " + uri_);
+			webSocket_ = webSocket;
+			lastMessageMillis_ = System.currentTimeMillis();
+			webSocket.textMessageHandler(text -> message_(webSocket, Buffer.buffer(text)));
+			webSocket.binaryMessageHandler(body -> message_(webSocket, body));
+			webSocket.exceptionHandler(t -> {
+				if (log.isWarnEnabled()) log.warn("telemetry stream error ; uri : " + uri_ + " ; " + t);
+				webSocket.close();
+			});
+			webSocket.closeHandler(v -> disconnected_(webSocket));
+			setStaleCheckTimer_(webSocket, staleMsec_);
+		}, t -> {
+			if (log.isWarnEnabled()) log.warn("telemetry stream connection failed ; uri : " + uri_ + " ; " + t);
+			setReconnectTimer_();
+		});
+	}
+
+	private void message_(WebSocket webSocket, Buffer body) {
+		if (webSocket != webSocket_) return;
+		lastMessageMillis_ = System.currentTimeMillis();
+		if (handler_ != null) handler_.handle(body);
+	}
+
+	private void disconnected_(WebSocket webSocket) {
+		if (webSocket != webSocket_) return;
+		if (log.isWarnEnabled()) log.warn("telemetry stream disconnected ; uri : " + uri_);
+		webSocket_ = null;
+		vertx_.cancelTimer(timerId_);
+		setReconnectTimer_();
+	}
+
+	private void setReconnectTimer_() {
+		if (!opened_) return;
+		timerId_ = vertx_.setTimer(Math.max(1L, reconnectDelayMsec_), timerId -> connect_());
+	}
+
+	private void setStaleCheckTimer_(WebSocket webSocket, long delay) {
+		if (staleMsec_ <= 0L) return;
+		timerId_ = vertx_.setTimer(Math.max(1L, delay), timerId -> {
+			if (webSocket != webSocket_) return;
+			long millisAfterLastMessage = System.currentTimeMillis() - lastMessageMillis_;
+			if (staleMsec_ <= millisAfterLastMessage) {
+				if (log.isWarnEnabled()) log.warn("telemetry stream stale ; uri : " + uri_ + " ; no message for " + millisAfterLastMessage + " ms");
+				webSocket.close();
+			} else {
+				setStaleCheckTimer_(webSocket, staleMsec_ - millisAfterLastMessage);
+			}
+		});
+	}
+
+}
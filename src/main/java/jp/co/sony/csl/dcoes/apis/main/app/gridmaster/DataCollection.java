@@ -4,12 +4,21 @@ import io.vertx.core.AbstractVerticle;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
 import io.vertx.core.eventbus.DeliveryOptions;
-import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import jp.co.sony.csl.dcoes.apis.common.Error;
@@ -18,20 +27,26 @@ import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectWrapper;
 import jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DDCon;
+import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.main_loop.DealExecution;
 import jp.co.sony.csl.dcoes.apis.main.util.ApisConfig;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
+import jp.co.sony.csl.dcoes.apis.main.util.ReplyLatencyEstimator;
+import jp.co.sony.csl.dcoes.apis.main.util.UnitDataDelta;
+import jp.co.sony.csl.dcoes.apis.main.util.UnitDataTable;
 
 /**
  * A Verticle that collects the unit data of all units.
  * Launched from {@link GridMaster}.
  * Periodically broadcast a date collection request to all units.
  * Receive and retain the returned unit data.
+ * If {@code POLICY.gridMaster.dataCollectionAdaptive.enabled} is {@code true}, the waiting time is adapted to the observed reply latency of each unit.
  * @author OES Project
  *          
  * 全ユニットのユニットデータを収集する Verticle.
  * {@link GridMaster} から起動される.
  * 定期的に全ユニットに対しデータ収集要求をブロードキャストする.
  * 返ってきたユニットデータを受信し保持する.
+ * {@code POLICY.gridMaster.dataCollectionAdaptive.enabled} が {@code true} なら観測したユニットごとの返信レイテンシに合わせて待ち時間を調整する.
  * @author OES Project
  */
 public class DataCollection extends AbstractVerticle {
@@ -53,6 +68,46 @@ public class DataCollection extends AbstractVerticle {
 	 * 値は {@value}.
 	 */
 	private static final Long DEFAULT_DATA_COLLECTION_TIMEOUT_MSEC = 2000L;
+	/**
+	 * Default percentile of the estimated reply latencies used as the deadline in adaptive mode.
+	 * Value: {@value}.
+	 *          
+	 * 適応モードで締切として使う返信レイテンシ推定値のパーセンタイルのデフォルト値.
+	 * 値は {@value}.
+	 */
+	private static final Float DEFAULT_ADAPTIVE_PERCENTILE = 95F;
+	/**
+	 * Default ratio of units not involved in interchanges that must reply before the round ends in adaptive mode.
+	 * Value: {@value}.
+	 *          
+	 * 適応モードでラウンドを終えるまでに返信が必要な融通に参加していないユニットの割合のデフォルト値.
+	 * 値は {@value}.
+	 */
+	private static final Float DEFAULT_ADAPTIVE_QUORUM_RATIO = 0.8F;
+	/**
+	 * Default minimum deadline in adaptive mode [ms].
+	 * Value: {@value}.
+	 *          
+	 * 適応モードの締切の最小値のデフォルト値 [ms].
+	 * 値は {@value}.
+	 */
+	private static final Long DEFAULT_ADAPTIVE_MIN_DEADLINE_MSEC = 200L;
+	/**
+	 * Default number of consecutive rounds for which the unit data of a unit that missed the deadline is carried over as stale in adaptive mode.
+	 * Value: {@value}.
+	 *          
+	 * 適応モードで締切に間に合わなかったユニットのユニットデータを stale として引き継ぐ連続ラウンド数のデフォルト値.
+	 * 値は {@value}.
+	 */
+	private static final Integer DEFAULT_ADAPTIVE_MAX_STALE_ROUNDS = 3;
+	/**
+	 * Number of ended rounds kept to receive late replies.
+	 * Value: {@value}.
+	 *          
+	 * 遅れた返信を受け取るために保持しておく終わったラウンドの数.
+	 * 値は {@value}.
+	 */
+	private static final int CLOSED_ROUNDS_KEPT = 8;
 
 	/**
 	 * A cache that retains unit data for all units.
@@ -62,21 +117,49 @@ public class DataCollection extends AbstractVerticle {
 	 * {@link jp.co.sony.csl.dcoes.apis.main.app.gridmaster.main_loop.DealExecution#unitDataCache} とは独立.
 	 */
 	public static final JsonObjectWrapper cache = new JsonObjectWrapper();
+	private static volatile UnitDataTable cacheTable_ = null;
+
+	/**
+	 * Header name for the data collection round number.
+	 * Value: {@value}.
+	 *          
+	 * データ収集ラウンド番号のヘッダ名.
+	 * 値は {@value}.
+	 */
+	public static final String HEADER_ROUND = "dataCollectionRound";
+	/**
+	 * Key added to the unit data carried over from the previous round in adaptive mode.
+	 * The value is the number of consecutive rounds the unit has missed [{@link Integer}].
+	 * Value: {@value}.
+	 *          
+	 * 適応モードで前回のラウンドから引き継いだユニットデータに付けるキー.
+	 * 値はそのユニットが連続して間に合わなかったラウンド数 [{@link Integer}].
+	 * 値は {@value}.
+	 */
+	public static final String KEY_STALE = "stale";
 
 	private long dataCollectionTimerId_ = 0L;
 	private long lastDataCollectionMillis_ = 0L;
 	private boolean stopped_ = false;
-	private Future<Void> stopFuture_ = Future.succeededFuture();
+	private String replyAddress_ = null;
+	private long lastRound_ = 0L;
+	private final Map<Long, DataCollection_> rounds_ = new HashMap<>();
+	private final Map<Long, DataCollection_> closedRounds_ = new LinkedHashMap<>();
+	private UnitDataDelta.Receiver unitDataDelta_ = new UnitDataDelta.Receiver();
+	private final ReplyLatencyEstimator replyLatency_ = new ReplyLatencyEstimator();
+	private final Map<String, Integer> staleRounds_ = new HashMap<>();
 
 	/**
 	 * Called at startup.
 	 * Launches the {@link io.vertx.core.eventbus.EventBus} service.
+	 * Opens the reply address used throughout the life of this Verticle.
 	 * Launches a timer that periodically updates the cache by collecting unit data from all units.
 	 * @param startFuture {@inheritDoc}
 	 * @throws Exception {@inheritDoc}
 	 *          
 	 * 起動時に呼び出される.
 	 * {@link io.vertx.core.eventbus.EventBus} サービスを起動する.
+	 * この Verticle が動いている間使い続ける返信用アドレスを開く.
 	 * 定期的に全ユニットのユニットデータを収集しキャッシュを更新するタイマを起動する.
 	 * @param startFuture {@inheritDoc}
 	 * @throws Exception {@inheritDoc}
@@ -84,9 +167,15 @@ public class DataCollection extends AbstractVerticle {
 	@Override public void start(Future<Void> startFuture) throws Exception {
 		startInternalUnitDatasService_(resInternalUnitDatas -> {
 			if (resInternalUnitDatas.succeeded()) {
-				dataCollectionTimerHandler_(0L);
-				if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
-				startFuture.complete();
+				startReplyService_(resReply -> {
+					if (resReply.succeeded()) {
+						dataCollectionTimerHandler_(0L);
+						if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
+						startFuture.complete();
+					} else {
+						startFuture.fail(resReply.cause());
+					}
+				});
 			} else {
 				startFuture.fail(resInternalUnitDatas.cause());
 			}
@@ -96,55 +185,17 @@ public class DataCollection extends AbstractVerticle {
 	/**
 	 * Called when stopped.
 	 * Set a flag to stop the timer.
-	 * Use {@link #stopFuture_} to perform exclusion control so that {@link #stop(Future)} does not complete during propagation of the {@link io.vertx.core.eventbus.EventBus} service created during the process of periodically collecting unit data from all units.
-	 * @param stopFuture {@inheritDoc}
+	 * The reply address is closed by Vert.x at undeploy.
 	 * @throws Exception {@inheritDoc}
 	 *          
 	 * 停止時に呼び出される.
 	 * タイマを止めるためのフラグを立てる.
-	 * 定期的に全ユニットのユニットデータを収集する処理中に作成する {@link io.vertx.core.eventbus.EventBus} サービスの伝搬中に {@link #stop(Future)} が完了しないよう {@link #stopFuture_} を使って排他制御する.
-	 * @param stopFuture {@inheritDoc}
+	 * 返信用アドレスは undeploy 時に Vert.x が閉じる.
 	 * @throws Exception {@inheritDoc}
 	 */
-	@Override public void stop(Future<Void> stopFuture) throws Exception {
+	@Override public void stop() throws Exception {
 		stopped_ = true;
-		/**
-		 * We use the following trick to avoid conflicts with the data collection process.
-		 * If an undeploy occurs while propagating the data collection address, a Vert.x error will occur.
-		 * So don't complete() stopFuture while propagation is in progress.
-		 *          
-		 * 以下データ収集処理との競合を避けるための細工.
-		 * データ収集用アドレスの伝搬中に undeploy が起きると Vert.x 的にエラーになる.
-		 * なので伝搬中は stopFuture を complete() しないようにする.
-		 */
-		// The stopFuture_ object is updated each time data is collected, and is referenced by the variable f
-		// データ収集の都度 stopFuture_ オブジェクトが新しくなるため f で参照しておく
-		Future<Void> f = this.stopFuture_;
-		// Set a timeout
-		// タイムアウトを仕込む
-		long timerId = vertx.setTimer(DEFAULT_DATA_COLLECTION_PERIOD_MSEC, t -> {
-			if (!f.isComplete()) {
-				// If it is still not complete, raise an error and fail()
-				// まだ complete でなければエラーを出して fail() させる
-				ErrorUtil.reportAndFail(vertx, Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.ERROR, "stopFuture_ timed out", f);
-			}
-		});
-		/**
-		 * Called immediately if the data collection address is not being propagated.
-		 * Otherwise wait until propagation is complete.
-		 * Or call with a timeout.
-		 *          
-		 * データ収集用アドレスの伝搬中でなければ即座に呼ばれる.
-		 * 伝搬中なら伝搬が終わったところで呼ばれる.
-		 * あるいはタイムアウトで呼ばれる.
-		*/
-		f.setHandler(ar -> {
-			// Cancel the timeout timer that was set above
-			// 上で仕込んだタイムアウト用タイマをキャンセルする
-			vertx.cancelTimer(timerId);
-			if (log.isTraceEnabled()) log.trace("stopped : " + deploymentID());
-			stopFuture.complete();
-		});
+		if (log.isTraceEnabled()) log.trace("stopped : " + deploymentID());
 	}
 
 	////
@@ -200,6 +251,50 @@ public class DataCollection extends AbstractVerticle {
 		}).completionHandler(completionHandler);
 	}
 
+	/**
+	 * Open the reply address for data collection.
+	 * The address is generated once per deployment and used for every data collection round.
+	 * Replies are passed to the round specified by the {@link #HEADER_ROUND} header.
+	 * Replies to a round that has already ended are not collected, but their latencies are recorded and their deltas are applied ( see {@code DataCollection_#receiveLate_(Message)} ).
+	 * Replies to a round older than that are discarded.
+	 * @param completionHandler the completion handler
+	 *          
+	 * データ収集の返信用アドレスを開く.
+	 * アドレスはデプロイごとに一度だけ生成し全てのデータ収集ラウンドで使う.
+	 * 返信は {@link #HEADER_ROUND} ヘッダで指定されたラウンドに渡す.
+	 * 既に終わったラウンドへの返信は収集しないが, レイテンシを記録し差分を適用する ( {@code DataCollection_#receiveLate_(Message)} 参照 ).
+	 * それより古いラウンドへの返信は破棄する.
+	 * @param completionHandler the completion handler
+	 */
+	private void startReplyService_(Handler<AsyncResult<Void>> completionHandler) {
+		replyAddress_ = UUID.randomUUID().toString();
+		vertx.eventBus().<JsonObject>consumer(replyAddress_, rep -> {
+			DataCollection_ collection = null;
+			DataCollection_ closedCollection = null;
+			String round = rep.headers().get(HEADER_ROUND);
+			if (round != null) {
+				try {
+					collection = rounds_.get(Long.valueOf(round));
+					closedCollection = closedRounds_.get(Long.valueOf(round));
+				} catch (NumberFormatException e) {
+					ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.WARN, "illegal " + HEADER_ROUND + " in reply header : " + round);
+					return;
+				}
+			} else {
+				// A unit which does not return the round number; pass it to the latest round
+				// ラウンド番号を返さないユニット. 最新のラウンドに渡す
+				collection = rounds_.get(lastRound_);
+			}
+			if (collection != null) {
+				collection.receive_(rep);
+			} else if (closedCollection != null) {
+				closedCollection.receiveLate_(rep);
+			} else {
+				if (log.isDebugEnabled()) log.debug("late unit data discarded ; round : " + round + " , latest round : " + lastRound_);
+			}
+		}).completionHandler(completionHandler);
+	}
+
 	/**
 	 * Set a data collection timer.
 	 * The timeout duration is {@code POLICY.gridMaster.dataCollectionPeriodMsec} (default: {@link #DEFAULT_DATA_COLLECTION_PERIOD_MSEC}).
@@ -267,6 +362,9 @@ public class DataCollection extends AbstractVerticle {
 				// Keep in cache
 				// キャッシュしておく
 				cache.setJsonObject(res.result());
+				// Index the cache by DDCon mode at the same time
+				// 同時にキャッシュを DDCon のモードで索引しておく
+				cacheTable_ = UnitDataTable.build(res.result());
 				if (log.isInfoEnabled()) log.info(res.result().size() + " unit data collected");
 			}
 			completionHandler.handle(res);
@@ -283,132 +381,337 @@ public class DataCollection extends AbstractVerticle {
 	 * @author OES Project
 	 */
 	private class DataCollection_ {
+		private final long round_;
+		private final JsonObject result_ = new JsonObject();
+		private final int numberOfMembers_ = PolicyKeeping.numberOfMembers();
+		private final boolean delta_ = isDeltaEnabled_();
+		private final JsonObject adaptive_ = adaptivePolicy_();
+		private Handler<AsyncResult<JsonObject>> completionHandler_;
 		private long timeoutTimerId_ = 0L;
+		private long startedMillis_ = 0L;
+		private long deadlineTimerId_ = 0L;
+		private boolean deadlinePassed_ = false;
+		private final Set<String> requiredUnitIds_ = new HashSet<>();
+		private int quorum_ = 0;
 		/**
 		 * Make an instance.
+		 * Assign a new round number.
 		 *          
 		 * インスタンス作成.
+		 * 新しいラウンド番号を割り当てる.
 		 */
 		private DataCollection_() {
+			round_ = ++lastRound_;
 		}
 		private void execute_(Handler<AsyncResult<JsonObject>> completionHandler) {
-			// Generate a disposable reply address
-			// 使い捨ての返信用アドレスを生成する
-			String replyAddress = UUID.randomUUID().toString();
-			JsonObject result = new JsonObject();
-			int numberOfMembers = PolicyKeeping.numberOfMembers();
-			// Set up a minor fix (stopFuture_) to ensure that the Verticle body does not stop during address expansion.
-			// アドレス展開中に Verticle 本体が stop するのを防ぐための小細工 ( stopFuture_ ) を仕込む
-			Future<Void> registerFuture = Future.future();
-			stopFuture_ = registerFuture;
-//			if (log.isInfoEnabled()) log.info("DataCollection:" + replyAddress + " begin");
-			// Open up an EventBus connection with a disposable address
-			// 使い捨てのアドレスで EventBus の口を開く
-			MessageConsumer<JsonObject> dataConsumer = vertx.eventBus().<JsonObject>consumer(replyAddress);
-			// Register a receiver process
-			// 受信処理を登録する
-			dataConsumer.handler(rep -> {
-				// When a message is received
-				// メッセージを受け取ったら
-				JsonObject aData = rep.body();
-				// Check the unit ID to see whether or not it is a member defined in POLICY
-				// ユニット ID を確認して POLICY で定義されているメンバかどうか確認する
-				String unitId = JsonObjectUtil.getString(aData, "oesunit", "id");
-				boolean isMember = PolicyKeeping.isMember(unitId);
-				if (!isMember) {
-					ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.WARN, "unit data received from illegal unit : " + unitId + " ; unit data : " + aData);
+			completionHandler_ = completionHandler;
+			if (delta_) {
+				List<String> memberUnitIds = PolicyKeeping.memberUnitIds();
+				if (memberUnitIds != null) unitDataDelta_.retainAll(memberUnitIds);
+			} else {
+				unitDataDelta_ = new UnitDataDelta.Receiver();
+			}
+			// Register this round so that the replies are passed here
+			// 返信がここに渡されるようこのラウンドを登録する
+			rounds_.put(round_, this);
+			// Specify the persistent reply address and the round number
+			// 常設の返信用アドレスとラウンド番号を指定して
+			DeliveryOptions options = new DeliveryOptions().addHeader("replyAddress", replyAddress_).addHeader("gridMasterUnitId", ApisConfig.unitId()).addHeader(HEADER_ROUND, String.valueOf(round_));
+			if (delta_) {
+				// In delta mode, tell the session ID and the units from which the whole unit data is needed
+				// 差分モードならセッション ID とユニットデータ全体が必要なユニットを伝える
+				options.addHeader(UnitDataDelta.HEADER_SESSION, unitDataDelta_.session()).addHeader(UnitDataDelta.HEADER_RESYNC, unitDataDelta_.resync().encode());
+			}
+			// Publish a unit data collection request
+			// ユニットデータ収集要求を publish する
+			startedMillis_ = System.currentTimeMillis();
+			vertx.eventBus().publish(ServiceAddress.Controller.unitDatas(), null, options);
+			Long dataCollectionTimeoutMsec = PolicyKeeping.cache().getLong(DEFAULT_DATA_COLLECTION_TIMEOUT_MSEC, "gridMaster", "dataCollectionTimeoutMsec");
+			if (adaptive_ != null) {
+				// In adaptive mode, set a deadline shorter than the timeout
+				// 適応モードならタイムアウトより短い締切を仕込む
+				setDeadline_(dataCollectionTimeoutMsec);
+			}
+			// Set a timeout
+			// タイムアウトを仕込む
+			// The timeout duration is {@code POLICY.gridMaster.dataCollectionTimeoutMsec} (default: {@link #DEFAULT_DATA_COLLECTION_TIMEOUT_MSEC}).
+			// 待ち時間は {@code POLICY.gridMaster.dataCollectionTimeoutMsec} ( デフォルト値 {@link #DEFAULT_DATA_COLLECTION_TIMEOUT_MSEC} ).
+			timeoutTimerId_ = vertx.setTimer(dataCollectionTimeoutMsec, t -> {
+				// If a timeout occurs
+				// タイムアウトしたら
+				// End this round
+				// このラウンドを終わらせる
+				vertx.cancelTimer(deadlineTimerId_);
+				close_();
+				if (!result_.isEmpty()) {
+					// Assume no problem if at least one item of data is returned
+					// データが一件でも返ってきていたらまあ問題なし
+					// Return the results
+					// 結果を返す
+					complete_();
 				} else {
-//					if (log.isInfoEnabled()) log.info("DataCollection:" + replyAddress + " received from : " + unitId);
-					result.put(unitId, aData);
-					if (numberOfMembers <= result.size()) {
-						// When the number of members defined in POLICY has been collected, end immediately
-						// POLICY で定義されているメンバの数だけ集まったら即座に終了する
-						// Cancel the timer for the timeout
-						// タイムアウト用のタイマをキャンセルし
-						if (vertx.cancelTimer(timeoutTimerId_)) {
-							// Close the connection
-							// 開いた口を閉じる
-							dataConsumer.unregister(resUnregister -> {
-								if (resUnregister.succeeded()) {
-//									if (log.isInfoEnabled()) log.info("DataCollection:" + replyAddress + " end");
-									// Return the results
-									// 結果を返す
-									completionHandler.handle(Future.succeededFuture(result));
-								} else {
-									ErrorUtil.reportAndFail(vertx, Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR, resUnregister.cause(), completionHandler);
-								}
-							});
-						}
+					// If no data is returned at all, then this is a major problem
+					// 一件も返ってこなければ一大事
+					String msg = "no unit data collected";
+					if (stopped_) {
+						// In fact, the Verticle has stopped
+						// 実は Verticle が stop していた
+						// → No problem
+						// → 問題なし
+						ErrorUtil.reportAndFail(vertx, Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.WARN, msg, completionHandler_);
+					} else {
+						// This is a GLOBAL ERROR
+						// これは GLOBAL ERROR !
+						ErrorUtil.reportAndFail(vertx, Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, msg, completionHandler_);
 					}
 				}
-			}).exceptionHandler(t -> {
-				dataConsumer.unregister(resUnregister -> {
-					if (resUnregister.succeeded()) {
-						// nop
+			});
+		}
+		/**
+		 * Receive a reply to this round.
+		 * @param rep the reply
+		 *          
+		 * このラウンドへの返信を受け取る.
+		 * @param rep 返信
+		 */
+		/**
+		 * Receive a reply to this round after it has ended.
+		 * The unit data is not collected, but the latency is recorded against the start of this round so that the deadline can grow for a slow unit,
+		 * and the delta is applied so that the next delta from the unit matches its base.
+		 * @param rep the reply
+		 *          
+		 * 終わった後にこのラウンドへの返信を受け取る.
+		 * ユニットデータは収集しないが, 遅いユニットの締切が延びるようこのラウンドの開始時刻に対するレイテンシを記録し,
+		 * そのユニットからの次の差分が基準と一致するよう差分を適用する.
+		 * @param rep 返信
+		 */
+		private void receiveLate_(Message<JsonObject> rep) {
+			String unitId = rep.headers().get(UnitDataDelta.HEADER_UNIT_ID);
+			if (unitId == null) unitId = JsonObjectUtil.getString(rep.body(), "oesunit", "id");
+			if (!PolicyKeeping.isMember(unitId)) return;
+			if (adaptive_ != null) replyLatency_.record(unitId, System.currentTimeMillis() - startedMillis_);
+			if (delta_ && rep.headers().get(UnitDataDelta.HEADER_EPOCH) != null && !isSuperseded_(unitId, rep.headers())) {
+				applyDelta_(unitId, rep.body(), rep.headers());
+			}
+			if (log.isDebugEnabled()) log.debug("late unit data not collected ; unit : " + unitId + " , round : " + round_ + " , latest round : " + lastRound_);
+		}
+		private void receive_(Message<JsonObject> rep) {
+			JsonObject aData = rep.body();
+			// Check the unit ID to see whether or not it is a member defined in POLICY
+			// ユニット ID を確認して POLICY で定義されているメンバかどうか確認する
+			String unitId = rep.headers().get(UnitDataDelta.HEADER_UNIT_ID);
+			if (unitId == null) unitId = JsonObjectUtil.getString(aData, "oesunit", "id");
+			boolean isMember = PolicyKeeping.isMember(unitId);
+			if (isMember && delta_ && rep.headers().get(UnitDataDelta.HEADER_EPOCH) != null) {
+				// In delta mode, merge the received field groups into the unit data held here
+				// 差分モードなら受け取ったフィールドグループをここで保持しているユニットデータにマージする
+				aData = applyDelta_(unitId, aData, rep.headers());
+			}
+			if (!isMember) {
+				ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.WARN, "unit data received from illegal unit : " + unitId + " ; unit data : " + aData);
+			} else if (aData == null) {
+				// The delta could not be merged; the whole unit data will be requested next time
+				// 差分がマージできなかった. 次回はユニットデータ全体を要求する
+				if (log.isInfoEnabled()) log.info("unit data delta discarded : " + unitId);
+			} else {
+				result_.put(unitId, aData);
+				if (adaptive_ != null) replyLatency_.record(unitId, System.currentTimeMillis() - startedMillis_);
+				if (numberOfMembers_ <= result_.size()) {
+					// When the number of members defined in POLICY has been collected, end immediately
+					// POLICY で定義されているメンバの数だけ集まったら即座に終了する
+					finish_();
+				} else if (deadlinePassed_ && isQuorumReached_()) {
+					// In adaptive mode, end as soon as the quorum is reached after the deadline
+					// 適応モードなら締切後は定足数に達した時点で終了する
+					finish_();
+				}
+			}
+		}
+		/**
+		 * End this round before the timeout.
+		 *          
+		 * タイムアウト前にこのラウンドを終わらせる.
+		 */
+		private void finish_() {
+			// Cancel the timer for the timeout
+			// タイムアウト用のタイマをキャンセルし
+			if (vertx.cancelTimer(timeoutTimerId_)) {
+				vertx.cancelTimer(deadlineTimerId_);
+				// End this round
+				// このラウンドを終わらせる
+				close_();
+				// Return the results
+				// 結果を返す
+				complete_();
+			}
+		}
+		private void close_() {
+			rounds_.remove(round_);
+			// Keep a few ended rounds for late replies
+			// 遅れた返信のために終わったラウンドをいくつか保持しておく
+			closedRounds_.put(round_, this);
+			Iterator<Long> it = closedRounds_.keySet().iterator();
+			while (CLOSED_ROUNDS_KEPT < closedRounds_.size() && it.hasNext()) {
+				it.next();
+				it.remove();
+			}
+		}
+		private void complete_() {
+			if (adaptive_ != null) carryOverStaleUnitData_();
+			completionHandler_.handle(Future.succeededFuture(result_));
+		}
+		/**
+		 * Set the deadline of adaptive mode.
+		 * The units involved in interchanges must reply by the end of the round.
+		 * A ratio {@code POLICY.gridMaster.dataCollectionAdaptive.quorumRatio} (default: {@link #DEFAULT_ADAPTIVE_QUORUM_RATIO}) of the other units is the quorum.
+		 * The deadline is the {@code POLICY.gridMaster.dataCollectionAdaptive.percentile} (default: {@link #DEFAULT_ADAPTIVE_PERCENTILE}) percentile of the estimated reply latencies of the members,
+		 * and not less than {@code POLICY.gridMaster.dataCollectionAdaptive.minDeadlineMsec} (default: {@link #DEFAULT_ADAPTIVE_MIN_DEADLINE_MSEC}).
+		 * No deadline is set if it is not shorter than the timeout.
+		 * @param timeoutMsec the timeout of this round [ms]
+		 *          
+		 * 適応モードの締切を仕込む.
+		 * 融通に参加しているユニットはラウンドの終了までに返信が必要.
+		 * それ以外のユニットの {@code POLICY.gridMaster.dataCollectionAdaptive.quorumRatio} ( デフォルト値 {@link #DEFAULT_ADAPTIVE_QUORUM_RATIO} ) の割合を定足数とする.
+		 * 締切はメンバの返信レイテンシ推定値の {@code POLICY.gridMaster.dataCollectionAdaptive.percentile} ( デフォルト値 {@link #DEFAULT_ADAPTIVE_PERCENTILE} ) パーセンタイルで
+		 * {@code POLICY.gridMaster.dataCollectionAdaptive.minDeadlineMsec} ( デフォルト値 {@link #DEFAULT_ADAPTIVE_MIN_DEADLINE_MSEC} ) 以上.
+		 * タイムアウトより短くならなければ締切は仕込まない.
+		 * @param timeoutMsec このラウンドのタイムアウト時間 [ms]
+		 */
+		private void setDeadline_(long timeoutMsec) {
+			List<String> memberUnitIds = PolicyKeeping.memberUnitIds();
+			if (memberUnitIds == null) return;
+			replyLatency_.retainAll(memberUnitIds);
+			staleRounds_.keySet().retainAll(memberUnitIds);
+			for (String aUnitId : DealExecution.dealUnitIds()) {
+				if (memberUnitIds.contains(aUnitId)) requiredUnitIds_.add(aUnitId);
+			}
+			float quorumRatio = JsonObjectUtil.getFloat(adaptive_, DEFAULT_ADAPTIVE_QUORUM_RATIO, "quorumRatio");
+			quorum_ = (int) Math.ceil((memberUnitIds.size() - requiredUnitIds_.size()) * quorumRatio);
+			float percentile = JsonObjectUtil.getFloat(adaptive_, DEFAULT_ADAPTIVE_PERCENTILE, "percentile");
+			long minDeadlineMsec = JsonObjectUtil.getLong(adaptive_, DEFAULT_ADAPTIVE_MIN_DEADLINE_MSEC, "minDeadlineMsec");
+			long deadlineMsec = Math.max(replyLatency_.percentileMsec(memberUnitIds, percentile, timeoutMsec), minDeadlineMsec);
+			if (log.isDebugEnabled()) log.debug("data collection deadline : " + deadlineMsec + " ; required : " + requiredUnitIds_ + " , quorum : " + quorum_);
+			if (deadlineMsec < timeoutMsec) {
+				deadlineTimerId_ = vertx.setTimer(deadlineMsec, t -> {
+					deadlinePassed_ = true;
+					if (isQuorumReached_()) finish_();
+				});
+			}
+		}
+		/**
+		 * Find out whether all the units involved in interchanges and the quorum of the other units have replied.
+		 * @return {@code true} if reached
+		 *          
+		 * 融通に参加している全ユニットとそれ以外のユニットの定足数が返信したか否か.
+		 * @return 達していれば {@code true}
+		 */
+		private boolean isQuorumReached_() {
+			for (String aUnitId : requiredUnitIds_) {
+				if (!result_.containsKey(aUnitId)) return false;
+			}
+			return quorum_ <= result_.size() - requiredUnitIds_.size();
+		}
+		/**
+		 * Carry over the unit data of the members that did not reply in this round from the previous result, marking it with {@link #KEY_STALE}.
+		 * The units involved in interchanges are not carried over so that missing data is noticed by interchange processing as before.
+		 * A unit is dropped after missing more than {@code POLICY.gridMaster.dataCollectionAdaptive.maxStaleRounds} (default: {@link #DEFAULT_ADAPTIVE_MAX_STALE_ROUNDS}) consecutive rounds.
+		 *          
+		 * このラウンドで返信しなかったメンバのユニットデータを {@link #KEY_STALE} を付けて前回の結果から引き継ぐ.
+		 * 融通に参加しているユニットはデータの欠落がこれまで通り融通処理で検知されるよう引き継がない.
+		 * {@code POLICY.gridMaster.dataCollectionAdaptive.maxStaleRounds} ( デフォルト値 {@link #DEFAULT_ADAPTIVE_MAX_STALE_ROUNDS} ) を超えて連続で返信しなかったユニットは落とす.
+		 */
+		private void carryOverStaleUnitData_() {
+			List<String> memberUnitIds = PolicyKeeping.memberUnitIds();
+			if (memberUnitIds == null) return;
+			int maxStaleRounds = JsonObjectUtil.getInteger(adaptive_, DEFAULT_ADAPTIVE_MAX_STALE_ROUNDS, "maxStaleRounds");
+			JsonObject previous = cache.jsonObject();
+			for (String aUnitId : memberUnitIds) {
+				if (result_.containsKey(aUnitId)) {
+					staleRounds_.remove(aUnitId);
+				} else if (!requiredUnitIds_.contains(aUnitId)) {
+					Integer rounds = staleRounds_.get(aUnitId);
+					rounds = (rounds != null) ? rounds + 1 : 1;
+					staleRounds_.put(aUnitId, rounds);
+					JsonObject aPreviousData = (previous != null) ? previous.getJsonObject(aUnitId) : null;
+					if (aPreviousData != null && rounds <= maxStaleRounds) {
+						if (log.isInfoEnabled()) log.info("stale unit data carried over : " + aUnitId + " ; rounds : " + rounds);
+						result_.put(aUnitId, aPreviousData.copy().put(KEY_STALE, rounds));
 					} else {
-						ErrorUtil.report(vertx, Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR, resUnregister.cause());
+						if (log.isInfoEnabled()) log.info("no unit data from : " + aUnitId + " ; rounds : " + rounds);
 					}
-					ErrorUtil.reportAndFail(vertx, Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR, t, completionHandler);
-				});
-			}).completionHandler(res -> {
-				// When finished opening the connection (eventBus address has finished propagating)
-				// 口を開け終わった ( EventBus アドレスの伝搬が終わった ) ら
-				// Once the propagation of the EventBus address has finished, release the block with Verticle#stop().
-				// EventBus アドレスの伝搬が終わったのでもう Verticle#stop() の阻止を解除する
-				registerFuture.complete();
-				if (res.succeeded()) {
-					// Prepare a disposable address for the reply
-					// 返信用の使い捨てアドレスを仕込んで
-					DeliveryOptions options = new DeliveryOptions().addHeader("replyAddress", replyAddress).addHeader("gridMasterUnitId", ApisConfig.unitId());
-//					if (log.isInfoEnabled()) log.info("DataCollection:" + replyAddress + " requested");
-					// Publish a unit data collection request
-					// ユニットデータ収集要求を publish する
-					vertx.eventBus().publish(ServiceAddress.Controller.unitDatas(), null, options);
-					Long dataCollectionTimeoutMsec = PolicyKeeping.cache().getLong(DEFAULT_DATA_COLLECTION_TIMEOUT_MSEC, "gridMaster", "dataCollectionTimeoutMsec");
-					// Set a timeout
-					// タイムアウトを仕込む
-					// The timeout duration is {@code POLICY.gridMaster.dataCollectionTimeoutMsec} (default: {@link #DEFAULT_DATA_COLLECTION_TIMEOUT_MSEC}).
-					// 待ち時間は {@code POLICY.gridMaster.dataCollectionTimeoutMsec} ( デフォルト値 {@link #DEFAULT_DATA_COLLECTION_TIMEOUT_MSEC} ).
-					timeoutTimerId_ = vertx.setTimer(dataCollectionTimeoutMsec, t -> {
-						// If a timeout occurs
-						// タイムアウトしたら
-						// Close the connection
-						// 開いた口を閉じる
-						dataConsumer.unregister(resUnregister -> {
-							if (resUnregister.succeeded()) {
-								if (!result.isEmpty()) {
-									// Assume no problem if at least one item of data is returned
-									// データが一件でも返ってきていたらまあ問題なし
-//									log.error("DataCollection:" + replyAddress + " end ( " + result.size() + " )");
-									// Return the results
-									// 結果を返す
-									completionHandler.handle(Future.succeededFuture(result));
-								} else {
-									// If no data is returned at all, then this is a major problem
-									// 一件も返ってこなければ一大事
-//									log.error("DataCollection:" + replyAddress + " end ( 0 )");
-									String msg = "no unit data collected";
-									if (stopped_) {
-										// In fact, the Verticle has stopped
-										// 実は Verticle が stop していた
-										// → No problem
-										// → 問題なし
-										ErrorUtil.reportAndFail(vertx, Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.WARN, msg, completionHandler);
-									} else {
-										// This is a GLOBAL ERROR
-										// これは GLOBAL ERROR !
-										ErrorUtil.reportAndFail(vertx, Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, msg, completionHandler);
-									}
-								}
-							} else {
-								ErrorUtil.reportAndFail(vertx, Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR, resUnregister.cause(), completionHandler);
-							}
-						});
-					});
-				} else {
-					ErrorUtil.reportAndFail(vertx, Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR, res.cause(), completionHandler);
 				}
-			});
+			}
+		}
+	}
+
+	/**
+	 * Find out whether delta collection mode is enabled.
+	 * Defined in {@code POLICY.gridMaster.dataCollectionDelta.enabled} (default: {@code false}).
+	 * @return {@code true} if enabled
+	 *          
+	 * 差分収集モードが有効か否か.
+	 * {@code POLICY.gridMaster.dataCollectionDelta.enabled} で定義する ( デフォルト値 {@code false} ).
+	 * @return 有効なら {@code true}
+	 */
+	private boolean isDeltaEnabled_() {
+		return JsonObjectUtil.getBoolean(PolicyKeeping.cache().jsonObject(), Boolean.FALSE, "gridMaster", "dataCollectionDelta", "enabled");
+	}
+	/**
+	 * Get the settings of adaptive mode.
+	 * Defined in {@code POLICY.gridMaster.dataCollectionAdaptive}.
+	 * @return the settings. {@code null} if {@code POLICY.gridMaster.dataCollectionAdaptive.enabled} is not {@code true}
+	 *          
+	 * 適応モードの設定を取得する.
+	 * {@code POLICY.gridMaster.dataCollectionAdaptive} で定義する.
+	 * @return 設定. {@code POLICY.gridMaster.dataCollectionAdaptive.enabled} が {@code true} でなければ {@code null}
+	 */
+	private JsonObject adaptivePolicy_() {
+		JsonObject result = JsonObjectUtil.getJsonObject(PolicyKeeping.cache().jsonObject(), "gridMaster", "dataCollectionAdaptive");
+		return (result != null && JsonObjectUtil.getBoolean(result, Boolean.FALSE, "enabled")) ? result : null;
+	}
+	/**
+	 * Merge the delta received from a unit into the unit data held for that unit.
+	 * @param unitId unit ID
+	 * @param body received body
+	 * @param headers received headers
+	 * @return merged unit data. {@code null} if it cannot be merged
+	 *          
+	 * ユニットから受け取った差分をそのユニットについて保持しているユニットデータにマージする.
+	 * @param unitId ユニット ID
+	 * @param body 受け取ったボディ
+	 * @param headers 受け取ったヘッダ
+	 * @return マージしたユニットデータ. マージできなければ {@code null}
+	 */
+	/**
+	 * Find out whether the unit data held for a unit is already newer than the received delta.
+	 * @param unitId unit ID
+	 * @param headers received headers
+	 * @return {@code true} if already newer
+	 *          
+	 * ユニットについて保持しているユニットデータが受け取った差分より既に新しいか否か.
+	 * @param unitId ユニット ID
+	 * @param headers 受け取ったヘッダ
+	 * @return 既に新しければ {@code true}
+	 */
+	private boolean isSuperseded_(String unitId, MultiMap headers) {
+		try {
+			return unitDataDelta_.isSuperseded(unitId, headers.get(UnitDataDelta.HEADER_EPOCH), Long.parseLong(headers.get(UnitDataDelta.HEADER_REVISION)));
+		} catch (Exception e) {
+			ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.WARN, "illegal unit data delta received from : " + unitId, e);
+			return true;
+		}
+	}
+	private JsonObject applyDelta_(String unitId, JsonObject body, MultiMap headers) {
+		try {
+			String epoch = headers.get(UnitDataDelta.HEADER_EPOCH);
+			long baseRevision = Long.parseLong(headers.get(UnitDataDelta.HEADER_BASE_REVISION));
+			long revision = Long.parseLong(headers.get(UnitDataDelta.HEADER_REVISION));
+			boolean full = Boolean.valueOf(headers.get(UnitDataDelta.HEADER_FULL));
+			String removed = headers.get(UnitDataDelta.HEADER_REMOVED);
+			return unitDataDelta_.apply(unitId, body, epoch, baseRevision, revision, full, (removed != null) ? new JsonArray(removed) : null);
+		} catch (Exception e) {
+			ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.WARN, "illegal unit data delta received from : " + unitId, e);
+			return null;
 		}
 	}
 
@@ -430,20 +733,17 @@ public class DataCollection extends AbstractVerticle {
 	 *         データがまだキャッシュされていない場合も {@code null}.
 	 */
 	public static String voltageReferenceUnitId() {
-		JsonObject unitData = cache.jsonObject();
+		UnitDataTable unitData = cacheTable_;
 		if (unitData != null) {
-			for (String aUnitId : unitData.fieldNames()) {
-				JsonObject aUnitData = unitData.getJsonObject(aUnitId);
-				DDCon.Mode aMode = DDCon.modeFromCode(JsonObjectUtil.getString(aUnitData, "dcdc", "status", "status"));
-				if (DDCon.Mode.VOLTAGE_REFERENCE == aMode) {
-					if (log.isInfoEnabled()) log.info("voltage reference unit : " + aUnitId);
-					return aUnitId;
-				}
+			int i = unitData.firstOrdinalOf(DDCon.Mode.VOLTAGE_REFERENCE);
+			if (0 <= i) {
+				if (log.isDebugEnabled()) log.debug("voltage reference unit : " + unitData.unitId(i));
+				return unitData.unitId(i);
 			}
 		} else {
 			if (log.isInfoEnabled()) log.info("no unit data");
 		}
-		if (log.isInfoEnabled()) log.info("no voltage reference unit found");
+		if (log.isDebugEnabled()) log.debug("no voltage reference unit found");
 		return null;
 	}
 
@@ -15,6 +15,7 @@ import jp.co.sony.csl.dcoes.apis.main.app.StateHandling;
 import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.main_loop.DealExecution;
 import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.main_loop.ErrorHandling;
 import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.main_loop.GlobalDataCalculation;
+import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.main_loop.MainLoopStatistics;
 import jp.co.sony.csl.dcoes.apis.main.evaluation.safety.GlobalSafetyEvaluation;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
 
@@ -27,6 +28,7 @@ import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
  * 3. {@link GlobalSafetyEvaluation#check(Vertx, io.vertx.core.json.JsonObject, io.vertx.core.json.JsonObject, Handler)}
  * 4. {@link GlobalDataCalculation#execute(Vertx, Handler)}
  * 5. {@link ErrorHandling#execute(Vertx, Handler)}
+ * The elapsed time of each process is recorded in {@link MainLoopStatistics}.
  * @author OES Project
  *          
  * 融通処理やエラー対応などの主業務を定期的に実行する Verticle.
@@ -37,6 +39,7 @@ import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
  * 3. {@link GlobalSafetyEvaluation#check(Vertx, io.vertx.core.json.JsonObject, io.vertx.core.json.JsonObject, Handler)}
  * 4. {@link GlobalDataCalculation#execute(Vertx, Handler)}
  * 5. {@link ErrorHandling#execute(Vertx, Handler)}
+ * 各処理の所要時間は {@link MainLoopStatistics} に記録する.
  * @author OES Project
  */
 public class MainLoop extends AbstractVerticle {
@@ -91,24 +94,45 @@ public class MainLoop extends AbstractVerticle {
 		exclusiveLock_.reset(vertx);
 	}
 
+	/**
+	 * Default duration of the main loop statistics logging cycle [ms].
+	 * Value: {@value}.
+	 *          
+	 * メインループ統計のログ出力周期のデフォルト値 [ms].
+	 * 値は {@value}.
+	 */
+	private static final Long DEFAULT_STATISTICS_LOGGING_PERIOD_MSEC = 60000L;
+
 	private long mainLoopTimerId_ = 0L;
+	private long statisticsLoggingTimerId_ = 0L;
 	private boolean stopped_ = false;
 
 	/**
 	 * Called at startup.
+	 * Launches the {@link io.vertx.core.eventbus.EventBus} service.
 	 * Start a timer that executes processing periodically.
+	 * Start a timer that periodically logs the main loop statistics.
 	 * @param startFuture {@inheritDoc}
 	 * @throws Exception {@inheritDoc}
 	 *          
 	 * 起動時に呼び出される.
+	 * {@link io.vertx.core.eventbus.EventBus} サービスを起動する.
 	 * 定期的に処理を実行するタイマを起動する.
+	 * 定期的にメインループ統計をログ出力するタイマを起動する.
 	 * @param startFuture {@inheritDoc}
 	 * @throws Exception {@inheritDoc}
 	 */
 	@Override public void start(Future<Void> startFuture) throws Exception {
-		mainLoopTimerHandler_(0L);
-		if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
-		startFuture.complete();
+		startStatisticsService_(resStatistics -> {
+			if (resStatistics.succeeded()) {
+				mainLoopTimerHandler_(0L);
+				setStatisticsLoggingTimer_();
+				if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
+				startFuture.complete();
+			} else {
+				startFuture.fail(resStatistics.cause());
+			}
+		});
 	}
 
 	/**
@@ -127,6 +151,60 @@ public class MainLoop extends AbstractVerticle {
 
 	////
 
+	/**
+	 * Launch the {@link io.vertx.core.eventbus.EventBus} service.
+	 * Address: {@link MainLoopStatistics#ADDRESS}
+	 * Scope: local
+	 * Function: Get the timing statistics of the main loop.
+	 * Message body: Reset flag [{@link Boolean}]. If {@code true}, the statistics are cleared after being returned
+	 * Message header: none
+	 * Response: Statistics [{@link io.vertx.core.json.JsonObject}] ( see {@link MainLoopStatistics#toJsonObject()} )
+	 * @param completionHandler the completion handler
+	 *          
+	 * {@link io.vertx.core.eventbus.EventBus} サービス起動.
+	 * アドレス : {@link MainLoopStatistics#ADDRESS}
+	 * 範囲 : ローカル
+	 * 処理 : メインループの時間統計を取得する.
+	 * メッセージボディ : リセットフラグ [{@link Boolean}]. {@code true} なら返した後で統計を消去する
+	 * メッセージヘッダ : なし
+	 * レスポンス : 統計値 [{@link io.vertx.core.json.JsonObject}] ( {@link MainLoopStatistics#toJsonObject()} 参照 )
+	 * @param completionHandler the completion handler
+	 */
+	private void startStatisticsService_(Handler<AsyncResult<Void>> completionHandler) {
+		vertx.eventBus().<Boolean>localConsumer(MainLoopStatistics.ADDRESS, req -> {
+			req.reply(MainLoopStatistics.toJsonObject());
+			if (Boolean.TRUE.equals(req.body())) MainLoopStatistics.reset();
+		}).completionHandler(completionHandler);
+	}
+
+	/**
+	 * Sets the main loop statistics logging timer.
+	 * The timeout duration is {@code POLICY.gridMaster.mainLoopStatistics.loggingPeriodMsec} (default: {@link #DEFAULT_STATISTICS_LOGGING_PERIOD_MSEC}).
+	 *          
+	 * メインループ統計ログ出力タイマ設定.
+	 * 待ち時間は {@code POLICY.gridMaster.mainLoopStatistics.loggingPeriodMsec} ( デフォルト値 {@link #DEFAULT_STATISTICS_LOGGING_PERIOD_MSEC} ).
+	 */
+	private void setStatisticsLoggingTimer_() {
+		Long delay = PolicyKeeping.cache().getLong(DEFAULT_STATISTICS_LOGGING_PERIOD_MSEC, "gridMaster", "mainLoopStatistics", "loggingPeriodMsec");
+		statisticsLoggingTimerId_ = vertx.setTimer(delay, this::statisticsLoggingTimerHandler_);
+	}
+	/**
+	 * Main loop statistics logging timer processing.
+	 * @param timerId timer ID
+	 *          
+	 * メインループ統計ログ出力タイマ処理.
+	 * @param timerId タイマ ID
+	 */
+	private void statisticsLoggingTimerHandler_(Long timerId) {
+		if (stopped_) return;
+		if (null == timerId || timerId.longValue() != statisticsLoggingTimerId_) {
+			ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.WARN, "illegal timerId : " + timerId + ", statisticsLoggingTimerId_ : " + statisticsLoggingTimerId_);
+			return;
+		}
+		if (log.isInfoEnabled()) log.info("main loop statistics : " + MainLoopStatistics.toJsonObject().encode());
+		setStatisticsLoggingTimer_();
+	}
+
 	/**
 	 * Sets the GridMaster main loop execution timer
 	 * The timeout duration is {@code POLICY.gridMaster.mainLoopPeriodMsec} (default: {@link #DEFAULT_MAIN_LOOP_PERIOD_MSEC}).
@@ -166,13 +244,16 @@ public class MainLoop extends AbstractVerticle {
 			// まだ起動中なのでスルーしタイマだけ再設定
 			setMainLoopTimer_();
 		} else {
+			long cycleStartNanos = System.nanoTime();
 			// Acquire an exclusive lock to prevent the GM from stopping during MainLoop execution
 			// MainLoop 実行中に GM 停止が起きないよう排他ロックを獲得
 			acquireExclusiveLock(vertx, resExclusiveLock -> {
+				MainLoopStatistics.recordPhase("exclusiveLock", cycleStartNanos);
 				if (resExclusiveLock.succeeded()) {
 					LocalExclusiveLock.Lock lock = resExclusiveLock.result();
 					doMainLoopWithExclusiveLock_(resDoMainLoopWithExclusiveLock -> {
 						lock.release();
+						MainLoopStatistics.recordCycle(cycleStartNanos, PolicyKeeping.cache().getLong(DEFAULT_MAIN_LOOP_PERIOD_MSEC, "gridMaster", "mainLoopPeriodMsec"));
 						setMainLoopTimer_();
 					});
 				} else {
@@ -186,16 +267,33 @@ public class MainLoop extends AbstractVerticle {
 		if (stopped_) {
 			completionHandler.handle(Future.succeededFuture());
 		} else {
+			// Record the elapsed time of each phase
+			// 各フェーズの所要時間を記録する
+			long errorHandlingBeforeStartNanos = System.nanoTime();
 			ErrorHandling.execute(vertx, resErrorHandling_before -> {
+				MainLoopStatistics.recordPhase("errorHandlingBefore", errorHandlingBeforeStartNanos);
+				long dealExecutionStartNanos = System.nanoTime();
 				DealExecution.execute(vertx, resDealExecution -> {
+					MainLoopStatistics.recordPhase("dealExecution", dealExecutionStartNanos);
+					long globalSafetyEvaluationStartNanos = System.nanoTime();
 					GlobalSafetyEvaluation.check(vertx, PolicyKeeping.cache().jsonObject(), DealExecution.unitDataCache.jsonObject(), resSafetyEvaluation -> {
+						MainLoopStatistics.recordPhase("globalSafetyEvaluation", globalSafetyEvaluationStartNanos);
+						long globalDataCalculationStartNanos = System.nanoTime();
 						GlobalDataCalculation.execute(vertx, resGlobalDataCalculation -> {
+							MainLoopStatistics.recordPhase("globalDataCalculation", globalDataCalculationStartNanos);
 							// Finally perform error handling again
 							// 最後にエラー処理をもう一度実行
+							long errorHandlingAfterStartNanos = System.nanoTime();
 							ErrorHandling.execute(vertx, resErrorHandling_after -> {
+								MainLoopStatistics.recordPhase("errorHandlingAfter", errorHandlingAfterStartNanos);
 								// Relocate the GridMaster appropriately since the state might change due to interchange processing and the like
 								// 融通処理などで状況が変わっているだろうから GridMaster を適切に配置し直す
-								vertx.eventBus().send(ServiceAddress.Mediator.gridMasterEnsuring(), null);
+								// The main loop does not wait for the result; the reply is used only to measure the elapsed time
+								// メインループは結果を待たない. 返信は所要時間の計測にだけ使う
+								long gridMasterEnsuringStartNanos = System.nanoTime();
+								vertx.eventBus().send(ServiceAddress.Mediator.gridMasterEnsuring(), null, repGridMasterEnsuring -> {
+									MainLoopStatistics.recordPhase("gridMasterEnsuring", gridMasterEnsuringStartNanos);
+								});
 								completionHandler.handle(Future.succeededFuture());
 							});
 						});
@@ -21,6 +21,8 @@ import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.ReplyFailureUtil;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DDCon;
 import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.main_loop.DealExecution;
+import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.main_loop.MainLoopStatistics;
+import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.DealIndex;
 import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.DealUtil;
 import jp.co.sony.csl.dcoes.apis.main.util.ApisConfig;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorExceptionUtil;
@@ -45,6 +47,7 @@ public abstract class AbstractDealExecution {
 	protected JsonObject policy_;
 	protected JsonObject deal_;
 	protected List<JsonObject> otherDeals_;
+	private DealIndex.OtherDeals indexedOtherDeals_;
 
 	protected String dealId_;
 	protected String dischargeUnitId_;
@@ -60,19 +63,20 @@ public abstract class AbstractDealExecution {
 	 * @param vertx a vertx object
 	 * @param policy a POLICY object. To prevent changes from taking effect while running, a copy is passed at startup to {@link jp.co.sony.csl.dcoes.apis.main.app.gridmaster.main_loop.DealExecution DealExecution}.
 	 * @param deal the DEAL object to be processed
-	 * @param otherDeals a list of other DEAL objects that exist at the same time
+	 * @param otherDeals a list of other DEAL objects that exist at the same time. Lookups use its index if it is a {@link DealIndex.OtherDeals}
 	 *          
 	 * インスタンスを生成する.
 	 * @param vertx vertx オブジェクト
 	 * @param policy POLICY オブジェクト. 処理中に変更されても影響しないように {@link jp.co.sony.csl.dcoes.apis.main.app.gridmaster.main_loop.DealExecution DealExecution} 開始時にコピーしたものが渡される.
 	 * @param deal 処理対象 DEAL オブジェクト
-	 * @param otherDeals 同時に存在している他の DEAL オブジェクトのリスト
+	 * @param otherDeals 同時に存在している他の DEAL オブジェクトのリスト. {@link DealIndex.OtherDeals} なら検索にその索引を使う
 	 */
 	public AbstractDealExecution(Vertx vertx, JsonObject policy, JsonObject deal, List<JsonObject> otherDeals) {
 		vertx_ = vertx;
 		policy_ = policy;
 		deal_ = deal;
 		otherDeals_ = otherDeals;
+		indexedOtherDeals_ = DealIndex.otherDeals(otherDeals);
 	}
 	/**
 	 * Create an instance.
@@ -90,6 +94,7 @@ public abstract class AbstractDealExecution {
 		policy_ = other.policy_;
 		deal_ = other.deal_;
 		otherDeals_ = other.otherDeals_;
+		indexedOtherDeals_ = other.indexedOtherDeals_;
 
 		dealId_ = other.dealId_;
 		dischargeUnitId_ = other.dischargeUnitId_;
@@ -155,10 +160,7 @@ public abstract class AbstractDealExecution {
 	 */
 	protected JsonObject masterDeal_() {
 		if (Deal.isMaster(deal_)) return deal_;
-		for (JsonObject aDeal : otherDeals_) {
-			if (Deal.isMaster(aDeal)) return aDeal;
-		}
-		return null;
+		return indexedOtherDeals_.master();
 	}
 
 	/**
@@ -171,13 +173,7 @@ public abstract class AbstractDealExecution {
 	 * @return {@code unitId} で指定したユニットが参加している DEAL のうち処理対象の DEAL を除くリスト
 	 */
 	protected List<JsonObject> otherDeals_(String unitId) {
-		List<JsonObject> result = new ArrayList<>();
-		for (JsonObject aDeal : otherDeals_) {
-			if (Deal.isInvolved(aDeal, unitId)) {
-				result.add(aDeal);
-			}
-		}
-		return result;
+		return indexedOtherDeals_.withUnitId(unitId);
 	}
 	/**
 	 * Fetch the total value of the interchange currents of DEAL objects in which the unit specified by {@code unitId} participates, except for the DEAL object to be processed.
@@ -318,6 +314,7 @@ public abstract class AbstractDealExecution {
 		// Main cache for interchange processing
 		// 融通処理のメインキャッシュ
 		DealExecution.unitDataCache.mergeIn(dcdc, unitId, "dcdc");
+		DealExecution.unitDataUpdated(unitId);
 		if (unitId.equals(dischargeUnitId_)) {
 			// Discharge unit cache
 			// 送電側キャッシュ
@@ -360,6 +357,15 @@ public abstract class AbstractDealExecution {
 	 * @param completionHandler the completion handler
 	 */
 	public void execute(Handler<AsyncResult<Void>> completionHandler) {
+		long startNanos = System.nanoTime();
+		execute_(res -> {
+			// Record the elapsed time for each interchange processing class
+			// 融通処理クラスごとに所要時間を記録する
+			MainLoopStatistics.recordDealExecution(getClass().getSimpleName(), startNanos);
+			completionHandler.handle(res);
+		});
+	}
+	private void execute_(Handler<AsyncResult<Void>> completionHandler) {
 		if (!initialized_) {
 			// Start with initialization
 			// まず初期化する
@@ -372,6 +378,9 @@ public abstract class AbstractDealExecution {
 					// Substitute the contents of a locally retained DEAL object
 					// ローカルに保持している DEAL オブジェクトの中身を置き換える
 					deal_.clear().mergeIn(res.result());
+					// If the changes are batched, the content read here is the expected value when committing
+					// 変更をバッチで書き込むならここで読んだ内容が書き込み時の期待値になる
+					DealUtil.track(deal_);
 					// Generate various internal states
 					// 各種内部状態を生成する
 					dischargeUnitId_ = Deal.dischargeUnitId(deal_);
@@ -391,6 +400,8 @@ public abstract class AbstractDealExecution {
 							// 融通処理のメインキャッシュを取得したユニットデータで更新する
 							DealExecution.unitDataCache.mergeIn(dischargeUnitData_, dischargeUnitId_);
 							DealExecution.unitDataCache.mergeIn(chargeUnitData_, chargeUnitId_);
+							DealExecution.unitDataUpdated(dischargeUnitId_);
+							DealExecution.unitDataUpdated(chargeUnitId_);
 							masterSide_ = masterSide_();
 							if (log.isInfoEnabled()) log.info("master side : " + masterSide_);
 							referenceSide_ = Policy.dealReferenceSide(policy_);
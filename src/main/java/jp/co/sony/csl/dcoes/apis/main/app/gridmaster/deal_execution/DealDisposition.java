@@ -11,6 +11,8 @@ import java.util.List;
 import jp.co.sony.csl.dcoes.apis.common.Error;
 import jp.co.sony.csl.dcoes.apis.common.ServiceAddress;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.ReplyFailureUtil;
+import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.DealUtil;
+import jp.co.sony.csl.dcoes.apis.main.util.ErrorExceptionUtil;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
 
 /**
@@ -57,6 +59,17 @@ public class DealDisposition extends AbstractDealExecution {
 	}
 
 	private void disposeDeal_(Handler<AsyncResult<Void>> completionHandler) {
+		// Write the changes staged by the batch commit first, so that the disposal and the deal log see them
+		// 破棄と融通ログが見られるようバッチ書き込みで溜めた変更を先に書き込む
+		DealUtil.flush(vertx_, deal_, resFlush -> {
+			if (resFlush.succeeded()) {
+				sendDealDisposition_(completionHandler);
+			} else {
+				ErrorExceptionUtil.reportIfNeedAndHandle(vertx_, resFlush, completionHandler);
+			}
+		});
+	}
+	private void sendDealDisposition_(Handler<AsyncResult<Void>> completionHandler) {
 		vertx_.eventBus().<JsonObject>send(ServiceAddress.Mediator.dealDisposition(), dealId_, repDealDisposition -> {
 			if (repDealDisposition.succeeded()) {
 				completionHandler.handle(Future.succeededFuture());
@@ -1,6 +1,7 @@
 package jp.co.sony.csl.dcoes.apis.main.app.gridmaster.main_loop;
 
 import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
@@ -10,7 +11,10 @@ import io.vertx.core.logging.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import jp.co.sony.csl.dcoes.apis.common.Deal;
 import jp.co.sony.csl.dcoes.apis.common.Error;
@@ -22,6 +26,7 @@ import jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping;
 import jp.co.sony.csl.dcoes.apis.main.app.StateHandling;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DDCon;
 import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.ErrorCollection;
+import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.MainLoop;
 import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.deal_execution.AbstractDealExecution;
 import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.deal_execution.DealAbortion;
 import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.deal_execution.DealActivation;
@@ -32,10 +37,13 @@ import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.deal_execution.DealDisposit
 import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.deal_execution.DealMasterAuthorization;
 import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.deal_execution.DealRampingUp;
 import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.DealNeedToStopUtil;
+import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.DealBatch;
+import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.DealIndex;
 import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.DealUtil;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorExceptionUtil;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
 import jp.co.sony.csl.dcoes.apis.main.util.Policy;
+import jp.co.sony.csl.dcoes.apis.main.util.UnitDataTable;
 
 /**
  * Perform interchange control.
@@ -97,6 +105,10 @@ public class DealExecution {
 	public static final JsonObjectWrapper unitDataCache = new JsonObjectWrapper();
 
 	private static long lastDealExecutionMillis_ = 0L;
+	private static Future<JsonObject> prefetch_ = null;
+	private static long prefetchStartedMillis_ = 0L;
+	private static final Set<String> updatedUnitIdsSincePrefetch_ = new HashSet<>();
+	private static volatile Set<String> dealUnitIds_ = Collections.emptySet();
 
 	private DealExecution() { }
 
@@ -166,6 +178,7 @@ public class DealExecution {
 					if (resAll.succeeded()) {
 						List<JsonObject> deals = resAll.result();
 						if (log.isDebugEnabled()) log.debug("deals : " + deals);
+						updateDealUnitIds_(deals);
 						if (!deals.isEmpty()) {
 							// Copy the received interchange stop request to the DEAL object
 							// 受信した融通停止要求を DEAL オブジェクトに転記する
@@ -173,17 +186,20 @@ public class DealExecution {
 								if (resCopyNeedToStop.succeeded()) {
 									// Check the global interchange mode
 									// グローバル融通モードを確認
-									StateHandling.globalOperationMode(vertx, resOperationMode -> {
+									StateHandling.globalOperationModeAsEnum(vertx, resOperationMode -> {
 										if (resOperationMode.succeeded()) {
-											String result = resOperationMode.result();
-											if ("stop".equals(result) || "manual".equals(result)) {
+											StateHandling.OperationMode result = resOperationMode.result();
+											if (StateHandling.OperationMode.STOP == result || StateHandling.OperationMode.MANUAL == result) {
 												// If the interchange is in "stop" or "manual" mode → Raise an error
 												// stop または manual なのに融通がある → エラーにする
-												ErrorUtil.reportAndFail(vertx, Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "operationMode is '" + result + "' but deal exists", completionHandler);
+												ErrorUtil.reportAndFail(vertx, Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "operationMode is '" + result.value() + "' but deal exists", completionHandler);
 											} else {
+												// Index the DEAL objects once for this cycle
+												// このサイクルのために DEAL オブジェクトを一度だけ索引する
+												DealIndex index = new DealIndex(deals);
 												// If a master deal must exist in this state, check that one exists
 												// master deal が存在していなければならない状況なら存在していることを確認する
-												if (checkMasterDealExistence_(deals)) {
+												if (checkMasterDealExistence_(deals, index)) {
 													// Acquire a POLICY object to avoid changes taking effect while processing
 													// 処理中に変わっても影響しないよう POLICY オブジェクトを確保し
 													JsonObject policy = PolicyKeeping.cache().jsonObject();
@@ -193,7 +209,7 @@ public class DealExecution {
 													if (log.isDebugEnabled()) log.debug("sorted deals : " + deals);
 													// START INTERCHANGE PROCESSING
 													// 融通処理開始！
-													new DealExecution_(vertx, policy, deals).doLoop_(completionHandler);
+													new DealExecution_(vertx, policy, deals, index).doLoop_(completionHandler);
 												} else {
 													// If a master deal must exist in this state, raise an error if this is not so
 													// master deal が存在していなければならない状況なのに存在していなかったらエラー
@@ -223,24 +239,48 @@ public class DealExecution {
 
 	/**
 	 * Collect unit data.
+	 * If {@code POLICY.gridMaster.mainLoopPipelining.enabled} is {@code true}, use the unit data prefetched during the previous cycle and start prefetching for the next cycle.
 	 * @param vertx a vertx object
 	 * @param completionHandler the completion handler
 	 *          
 	 * ユニットデータを収集する.
+	 * {@code POLICY.gridMaster.mainLoopPipelining.enabled} が {@code true} なら前回のサイクル中に先読みしたユニットデータを使い次のサイクルのための先読みを開始する.
 	 * @param vertx vertx オブジェクト
 	 * @param completionHandler the completion handler
 	 */
 	private static void getUnitData_(Vertx vertx, Handler<AsyncResult<Void>> completionHandler) {
-		// Send the time at which the last interchange processing was completed
-		// 前回の融通処理が終わった時刻を送る
-		// If data collection is performed after this time, the cached value is returned instead of collecting data again.
-		// この時刻より後にデータ収集が行われていれば新たにデータ収集しなおすことなくキャッシュ値が返ってくる
-		vertx.eventBus().<JsonObject>send(ServiceAddress.GridMaster.urgentUnitDatas(), lastDealExecutionMillis_, rep -> {
+		if (isPipeliningEnabled_()) {
+			takePrefetchedUnitData_(vertx, res -> {
+				if (res.succeeded()) {
+					setUnitData_(vertx, res.result());
+					// Start collecting the unit data for the next cycle while this cycle is being processed
+					// このサイクルを処理している間に次のサイクルのユニットデータ収集を始めておく
+					prefetchUnitData_(vertx);
+					completionHandler.handle(Future.succeededFuture());
+				} else {
+					completionHandler.handle(Future.failedFuture(res.cause()));
+				}
+			});
+		} else {
+			prefetch_ = null;
+			// Send the time at which the last interchange processing was completed
+			// 前回の融通処理が終わった時刻を送る
+			// If data collection is performed after this time, the cached value is returned instead of collecting data again.
+			// この時刻より後にデータ収集が行われていれば新たにデータ収集しなおすことなくキャッシュ値が返ってくる
+			collectUnitData_(vertx, lastDealExecutionMillis_, res -> {
+				if (res.succeeded()) {
+					setUnitData_(vertx, res.result());
+					completionHandler.handle(Future.succeededFuture());
+				} else {
+					completionHandler.handle(Future.failedFuture(res.cause()));
+				}
+			});
+		}
+	}
+	private static void collectUnitData_(Vertx vertx, long noNeedToRefreshIfNewerThan, Handler<AsyncResult<JsonObject>> completionHandler) {
+		vertx.eventBus().<JsonObject>send(ServiceAddress.GridMaster.urgentUnitDatas(), noNeedToRefreshIfNewerThan, rep -> {
 			if (rep.succeeded()) {
-				// Keep in cache
-				// キャッシュしておく
-				unitDataCache.setJsonObject(rep.result().body());
-				completionHandler.handle(Future.succeededFuture());
+				completionHandler.handle(Future.succeededFuture(rep.result().body()));
 			} else {
 				if (ReplyFailureUtil.isRecipientFailure(rep)) {
 					completionHandler.handle(Future.failedFuture(rep.cause()));
@@ -250,44 +290,155 @@ public class DealExecution {
 			}
 		});
 	}
-	private static boolean checkMasterDealExistence_(List<JsonObject> deals) {
-		boolean noActiveDeal = true;
+	/**
+	 * Remember the IDs of the units involved in interchanges.
+	 * @param deals a list of DEAL objects
+	 *          
+	 * 融通に参加しているユニットの ID を覚えておく.
+	 * @param deals DEAL オブジェクトのリスト
+	 */
+	private static void updateDealUnitIds_(List<JsonObject> deals) {
+		Set<String> result = new HashSet<>();
 		for (JsonObject aDeal : deals) {
-			if (Deal.masterSideUnitMustBeActive(aDeal)) {
-				noActiveDeal = false;
-				break;
-			}
+			String requestUnitId = Deal.requestUnitId(aDeal);
+			String acceptUnitId = Deal.acceptUnitId(aDeal);
+			if (requestUnitId != null) result.add(requestUnitId);
+			if (acceptUnitId != null) result.add(acceptUnitId);
+		}
+		dealUnitIds_ = Collections.unmodifiableSet(result);
+	}
+	/**
+	 * Get the IDs of the units involved in interchanges at the latest cycle.
+	 * @return an unmodifiable set of unit IDs
+	 *          
+	 * 直近のサイクルで融通に参加していたユニットの ID を取得する.
+	 * @return ユニット ID の変更不可な集合
+	 */
+	public static Set<String> dealUnitIds() {
+		return dealUnitIds_;
+	}
+
+	private static void setUnitData_(Vertx vertx, JsonObject unitData) {
+		// Keep in cache
+		// キャッシュしておく
+		unitDataCache.setJsonObject(unitData);
+		// Build the table once per cycle
+		// テーブルはサイクルごとに一度だけ構築する
+		UnitDataTable table = unitDataTable();
+		// The mode index is built at the same time, so check that there is at most one voltage reference
+		// モードの索引も同時に構築されるので電圧リファレンスが高々一つであることを確認する
+		if (table != null && 1 < table.countOf(DDCon.Mode.VOLTAGE_REFERENCE)) {
+			ErrorUtil.report(vertx, Error.Category.HARDWARE, Error.Extent.GLOBAL, Error.Level.WARN, "multiple voltage reference units : " + table.unitIdsOf(DDCon.Mode.VOLTAGE_REFERENCE));
+		}
+	}
+
+	/**
+	 * Find out whether the pipelined main loop is enabled.
+	 * Defined in {@code POLICY.gridMaster.mainLoopPipelining.enabled} (default: {@code false}).
+	 * @return {@code true} if enabled
+	 *          
+	 * メインループのパイプライン化が有効か否か.
+	 * {@code POLICY.gridMaster.mainLoopPipelining.enabled} で定義する ( デフォルト値 {@code false} ).
+	 * @return 有効なら {@code true}
+	 */
+	private static boolean isPipeliningEnabled_() {
+		return JsonObjectUtil.getBoolean(PolicyKeeping.cache().jsonObject(), Boolean.FALSE, "gridMaster", "mainLoopPipelining", "enabled");
+	}
+	/**
+	 * Start collecting the unit data for the next cycle.
+	 * The result is kept separately from {@link #unitDataCache} and is not touched until the next cycle starts.
+	 * @param vertx a vertx object
+	 *          
+	 * 次のサイクルのためのユニットデータ収集を開始する.
+	 * 結果は {@link #unitDataCache} とは別に保持し次のサイクルが始まるまで触らない.
+	 * @param vertx vertx オブジェクト
+	 */
+	private static void prefetchUnitData_(Vertx vertx) {
+		Future<JsonObject> prefetch = Future.future();
+		prefetch_ = prefetch;
+		prefetchStartedMillis_ = System.currentTimeMillis();
+		updatedUnitIdsSincePrefetch_.clear();
+		// Send the current time so that the data is always collected anew
+		// 必ず新たにデータ収集されるよう現在時刻を送る
+		collectUnitData_(vertx, prefetchStartedMillis_, prefetch);
+	}
+	/**
+	 * Get the unit data prefetched during the previous cycle.
+	 * If there is no prefetch, or it is older than twice {@code POLICY.gridMaster.mainLoopPeriodMsec}, or it failed, collect the unit data now.
+	 * The {@code dcdc} of units updated by interchange processing after the prefetch started is taken over from {@link #unitDataCache} so that the result of a control command is not rolled back by older data.
+	 * @param vertx a vertx object
+	 * @param completionHandler the completion handler
+	 *          
+	 * 前回のサイクル中に先読みしたユニットデータを取得する.
+	 * 先読みがない場合, {@code POLICY.gridMaster.mainLoopPeriodMsec} の二倍より古い場合, 失敗した場合はその場でユニットデータを収集する.
+	 * 先読み開始後に融通処理で更新したユニットの {@code dcdc} は制御命令の結果が古いデータで巻き戻らないよう {@link #unitDataCache} から引き継ぐ.
+	 * @param vertx vertx オブジェクト
+	 * @param completionHandler the completion handler
+	 */
+	private static void takePrefetchedUnitData_(Vertx vertx, Handler<AsyncResult<JsonObject>> completionHandler) {
+		Future<JsonObject> prefetch = prefetch_;
+		prefetch_ = null;
+		Long period = PolicyKeeping.cache().getLong(MainLoop.DEFAULT_MAIN_LOOP_PERIOD_MSEC, "gridMaster", "mainLoopPeriodMsec");
+		if (prefetch == null || prefetchStartedMillis_ + period * 2 < System.currentTimeMillis()) {
+			if (log.isDebugEnabled()) log.debug("no prefetched unit data available");
+			collectUnitData_(vertx, lastDealExecutionMillis_, completionHandler);
+		} else {
+			prefetch.setHandler(res -> {
+				if (res.succeeded()) {
+					JsonObject unitData = res.result();
+					JsonObject current = unitDataCache.jsonObject();
+					if (current != null) {
+						for (String aUnitId : updatedUnitIdsSincePrefetch_) {
+							JsonObject aDcdc = JsonObjectUtil.getJsonObject(current, aUnitId, "dcdc");
+							JsonObject aUnitData = unitData.getJsonObject(aUnitId);
+							if (aDcdc != null && aUnitData != null) {
+								aUnitData.put("dcdc", aDcdc.copy());
+							}
+						}
+					}
+					updatedUnitIdsSincePrefetch_.clear();
+					completionHandler.handle(Future.succeededFuture(unitData));
+				} else {
+					if (log.isWarnEnabled()) log.warn("prefetching unit data failed ; " + res.cause());
+					collectUnitData_(vertx, lastDealExecutionMillis_, completionHandler);
+				}
+			});
 		}
-		if (noActiveDeal) {
-			// OK if there are no interchanges running
-			// 動いている融通がなければ OK
+	}
+
+	private static boolean checkMasterDealExistence_(List<JsonObject> deals, DealIndex index) {
+		if (index.master() != null) {
+			// OK if there is a master deal
+			// master deal があれば OK
 			return true;
 		}
-		// If there is an interchange running
-		// 動いている融通があったら
+		// If there is no master deal
+		// master deal がなかったら
 		for (JsonObject aDeal : deals) {
-			if (Deal.isMaster(aDeal)) {
-				// OK if there is a master deal
-				// master deal があれば OK
-				return true;
+			if (Deal.masterSideUnitMustBeActive(aDeal)) {
+				// NG if there is an interchange running but no master deal
+				// 動いている融通があるのに master deal がないのは NG
+				return false;
 			}
 		}
-		// NG if there is an interchange running but no master deal
-		// 動いている融通があるのに master deal がないのは NG
-		return false;
+		// OK if there are no interchanges running
+		// 動いている融通がなければ OK
+		return true;
 	}
 	/**
 	 * Sort multiple interchanges into a suitable order for processing.
+	 * Package-private so that it can be measured by benchmarks.
 	 * @param vertx a vertx object
 	 * @param policy a POLICY object
 	 * @param deals a list of DEAL objects
 	 *          
 	 * 複数の融通を適切な順序で処理されるよう並び替える.
+	 * ベンチマークで計測できるようパッケージプライベートにしてある.
 	 * @param vertx vertx オブジェクト
 	 * @param policy POLICY オブジェクト
 	 * @param deals DEAL オブジェクトのリスト
 	 */
-	private static void sortDeals_(Vertx vertx, JsonObject policy, List<JsonObject> deals) {
+	static void sortDeals_(Vertx vertx, JsonObject policy, List<JsonObject> deals) {
 		if (1 < deals.size()) {
 			List<JsonObject> sorted = new ArrayList<>(deals);
 			List<String> largeCapacityUnitIds = Policy.largeCapacityUnitIds(policy);
@@ -390,23 +541,47 @@ public class DealExecution {
 	 *         データがまだキャッシュされていない場合も {@code null}.
 	 */
 	public static String voltageReferenceUnitId() {
-		JsonObject unitData = unitDataCache.jsonObject();
+		UnitDataTable unitData = unitDataTable();
 		if (unitData != null) {
-			for (String aUnitId : unitData.fieldNames()) {
-				JsonObject aUnitData = unitData.getJsonObject(aUnitId);
-				DDCon.Mode aMode = DDCon.modeFromCode(JsonObjectUtil.getString(aUnitData, "dcdc", "status", "status"));
-				if (DDCon.Mode.VOLTAGE_REFERENCE == aMode) {
-					if (log.isInfoEnabled()) log.info("voltage reference unit : " + aUnitId);
-					return aUnitId;
-				}
+			int i = unitData.firstOrdinalOf(DDCon.Mode.VOLTAGE_REFERENCE);
+			if (0 <= i) {
+				if (log.isDebugEnabled()) log.debug("voltage reference unit : " + unitData.unitId(i));
+				return unitData.unitId(i);
 			}
 		} else {
 			if (log.isWarnEnabled()) log.warn("no unit data");
 		}
-		if (log.isInfoEnabled()) log.info("no voltage reference unit found");
+		if (log.isDebugEnabled()) log.debug("no voltage reference unit found");
 		return null;
 	}
 
+	/**
+	 * Get the typed table of {@link #unitDataCache}.
+	 * The table is built only once for the same unit data collected in {@link #getUnitData_(Vertx, Handler)}.
+	 * @return the table. {@code null} if the data has not yet been cached
+	 *          
+	 * {@link #unitDataCache} の型付きテーブルを取得する.
+	 * {@link #getUnitData_(Vertx, Handler)} で収集した同じユニットデータに対しては一度だけ構築する.
+	 * @return テーブル. データがまだキャッシュされていない場合は {@code null}
+	 */
+	public static UnitDataTable unitDataTable() {
+		return UnitDataTable.of(unitDataCache.jsonObject());
+	}
+	/**
+	 * Notify that a unit in {@link #unitDataCache} has been updated in place.
+	 * Reflect it to the table, and remember it so that the update is not overwritten by the prefetched unit data.
+	 * @param unitId the unit ID
+	 *          
+	 * {@link #unitDataCache} のユニットがその場で更新されたことを通知する.
+	 * テーブルに反映し, 先読みしたユニットデータで上書きされないよう覚えておく.
+	 * @param unitId ユニット ID
+	 */
+	public static void unitDataUpdated(String unitId) {
+		UnitDataTable unitData = unitDataTable();
+		if (unitData != null) unitData.refresh(unitId);
+		if (prefetch_ != null) updatedUnitIdsSincePrefetch_.add(unitId);
+	}
+
 	/**
 	 * Find out which side of an interchange pair sets the voltage reference.
 	 * The default is the POLICY.gridMaster.voltageReferenceSide setting value, but this could be reversed by the functions of a large capacity unit, so a decision is made based on where the voltage reference actually exists.
@@ -464,25 +639,33 @@ public class DealExecution {
 		private Vertx vertx_;
 		private JsonObject policy_;
 		private List<JsonObject> deals_;
+		private DealIndex index_;
 		private List<JsonObject> dealsForLoop_;
 		private List<String> activeDealIdsBeforeLoop_;
+		private boolean parallel_;
+		private DealBatch batch_;
 		/**
 		 * Make an instance.
 		 * @param vertx a vertx object
 		 * @param policy a POLICY object
 		 * @param deals a list of DEAL objects
+		 * @param index the index over {@code deals}
 		 *          
 		 * インスタンスを作成する.
 		 * @param vertx vertx オブジェクト
 		 * @param policy POLICY オブジェクト
 		 * @param deals DEAL オブジェクトのリスト
+		 * @param index {@code deals} に対する索引
 		 */
-		private DealExecution_(Vertx vertx, JsonObject policy, List<JsonObject> deals) {
+		private DealExecution_(Vertx vertx, JsonObject policy, List<JsonObject> deals, DealIndex index) {
 			vertx_ = vertx;
 			policy_ = policy;
 			deals_ = deals;
+			index_ = index;
 			dealsForLoop_ = new ArrayList<JsonObject>(deals_);
 			activeDealIdsBeforeLoop_ = activeDealIds_();
+			parallel_ = JsonObjectUtil.getBoolean(policy_, Boolean.FALSE, "gridMaster", "parallelDealExecution", "enabled");
+			batch_ = (JsonObjectUtil.getBoolean(policy_, Boolean.FALSE, "gridMaster", "dealBatchCommit", "enabled")) ? DealUtil.beginBatch() : null;
 		}
 		private void doLoop_(Handler<AsyncResult<Void>> completionHandler) {
 			if (ErrorCollection.hasErrors()) {
@@ -490,100 +673,245 @@ public class DealExecution {
 //				GLOBAL ERROR が出ているのなら融通処理を続ける必要はないだろう
 				String msg = "global error exists";
 				if (log.isInfoEnabled()) log.info(msg);
-				completionHandler.handle(Future.failedFuture(msg));
+				endBatch_(resEndBatch -> completionHandler.handle(Future.failedFuture(msg)));
 			} else if (dealsForLoop_.isEmpty()) {
 				// Interchange loop has ended
 				// 融通ループが終わった
-				if (Policy.gridVoltageOptimizationEnabled(policy_)) {
-					// If POLICY.gridMaster.gridVoltageOptimization.enabled is true, perform grid voltage optimIzation processing
-					// POLICY.gridMaster.gridVoltageOptimization.enabled が true ならグリッド電圧最適化処理を行う
-					doGridVoltageOptimization_(vertx_, completionHandler);
-				} else {
-					completionHandler.handle(Future.succeededFuture());
-				}
-			} else {
-				// Extract one DEAL object
-				// DEAL オブジェクトを一つ取り出し
-				JsonObject aDeal = dealsForLoop_.remove(0);
-				List<JsonObject> otherDeals = new ArrayList<JsonObject>(deals_);
-				otherDeals.remove(aDeal);
-				// Allocate processing according to the state of this DEAL object
-				// DEAL オブジェクトの状態に応じた処理を割り当て
-				final AbstractDealExecution exec;
-				if (Deal.isDeactivated(aDeal)) {
-					// Perform deletion processing if finished
-					// 終了済みなら削除処理
-					exec = new DealDisposition(vertx_, policy_, aDeal, otherDeals);
-				} else if (Deal.isStopped(aDeal)) {
-					// If stopped, end processing
-					// 停止済みなら終了処理
-					exec = new DealDeactivation(vertx_, policy_, aDeal, otherDeals);
-				} else if (Deal.isNeedToStop(aDeal)) {
-					// Perform abnormal termination processing if there is a stop request
-					// 停止要求を持っていれば異常終了処理
-					exec = new DealAbortion(vertx_, policy_, aDeal, otherDeals, Deal.needToStopReasons(aDeal).encode());
-				} else if (Deal.isStarted(aDeal)) {
-					// Perform summing process if started
-					// 開始済みなら積算処理
-					exec = new DealCumulation(vertx_, policy_, aDeal, otherDeals);
-				} else if (Deal.isActivated(aDeal)) {
-					// If started
-					// 起動済みなら
-					if (Deal.isMaster(aDeal)) {
-						// If this is a master
-						// マスタなら
-						if (Deal.isRampedUp(aDeal)) {
-							// If the voltage has been ramped up, perform the voltage reference privilege acquisition process
-							// 電圧ランプアップ済みなら電圧リファレンス権限取得処理
-							exec = new DealMasterAuthorization(vertx_, policy_, aDeal, otherDeals);
-						} else {
-							// If the voltage is still ramping up, perform the voltage ramp-up stand-by process
-							// 電圧ランプアップ中なら電圧ランプアップ待ち処理
-							exec = new DealRampingUp(vertx_, policy_, aDeal, otherDeals);
-						}
+				endBatch_(resEndBatch -> {
+					if (Policy.gridVoltageOptimizationEnabled(policy_)) {
+						// If POLICY.gridMaster.gridVoltageOptimization.enabled is true, perform grid voltage optimIzation processing
+						// POLICY.gridMaster.gridVoltageOptimization.enabled が true ならグリッド電圧最適化処理を行う
+						doGridVoltageOptimization_(vertx_, completionHandler);
 					} else {
-						// If this is not a master, perform current compensation processing
-						// マスタじゃなければ電流コンペンセイション処理
-						exec = new DealCompensation(vertx_, policy_, aDeal, otherDeals);
+						completionHandler.handle(Future.succeededFuture());
 					}
-				} else {
-					// Since this is brand new, perform start-up processing
-					// まっさらなので起動処理
-					exec = new DealActivation(vertx_, policy_, aDeal, otherDeals);
+				});
+			} else {
+				// Extract the DEAL objects to be processed next
+				// 次に処理する DEAL オブジェクトを取り出し
+				List<JsonObject> batch = (parallel_) ? takeBatch_() : Collections.singletonList(dealsForLoop_.remove(0));
+				if (1 < batch.size() && log.isDebugEnabled()) log.debug("executing " + batch.size() + " deals concurrently");
+				@SuppressWarnings("rawtypes") List<Future> futures = new ArrayList<>(batch.size());
+				for (JsonObject aDeal : batch) {
+					Future<Void> future = Future.future();
+					futures.add(future);
+					executeDeal_(aDeal, future);
 				}
-				// Execute processing
-				// 処理を実行する
-				exec.execute(resExec -> {
-					if (resExec.succeeded()) {
-						// If there is no problem, proceed to the next DEAL object
-						// 問題なければ次の DEAL オブジェクトに進む
-						doLoop_(completionHandler);
+				// When all of them have finished, proceed to the next DEAL objects
+				// 全て終わったら次の DEAL オブジェクトに進む
+				CompositeFuture.all(futures).setHandler(resAll -> {
+					if (batch_ != null && batch_.hasStagedTransitions()) {
+						// Write state transitions before proceeding, because devices have already been controlled accordingly
+						// 機器はすでにそれに応じて制御されているので状態遷移は進む前に書き込む
+						commitBatch_(resCommitBatch -> doLoop_(completionHandler));
 					} else {
-						// If a problem has occurred, perform abnormal termination of the DEAL object
-						// 問題が起きたらその DEAL オブジェクトを異常終了処理する
-						new DealAbortion(exec, resExec.cause().getMessage()).execute(resAbort -> {
-							if (resAbort.succeeded()) {
-								// OK if abnormal termination is successful
-								// 異常終了が成功したら OK
-							} else {
-								// If the abnormal termination fails
-								// 異常終了が失敗したら
-								String msg = "deal abortion failed";
-								// Perform error processing by sending a local error to the units at both ends
-								// 両端ユニットに対しローカルエラーを送りつけエラー処理させる
-								// → Forcibly stop at the worst timeout
-								// → 最悪タイムアウトで強制的に止まる
-								ErrorUtil.report(vertx_, Deal.chargeUnitId(aDeal), Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.ERROR, msg);
-								ErrorUtil.report(vertx_, Deal.dischargeUnitId(aDeal), Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.ERROR, msg);
-							}
-							// Proceed to the next DEAL object
-							// 次の DEAL オブジェクトに進む
-							doLoop_(completionHandler);
-						});
+						doLoop_(completionHandler);
 					}
 				});
 			}
 		}
+		/**
+		 * Commit the changes to DEAL objects staged in {@link #batch_}.
+		 * Failures of DEAL objects are reported as errors ; the completion handler always succeeds.
+		 * @param completionHandler the completion handler
+		 *          
+		 * {@link #batch_} に溜めた DEAL オブジェクトの変更を書き込む.
+		 * DEAL オブジェクトの失敗はエラーとして報告する. completion handler は常に成功する.
+		 * @param completionHandler the completion handler
+		 */
+		private void commitBatch_(Handler<AsyncResult<Void>> completionHandler) {
+			if (batch_ == null) {
+				completionHandler.handle(Future.succeededFuture());
+				return;
+			}
+			if (log.isDebugEnabled()) log.debug("committing " + batch_.numberOfStaged() + " deals");
+			DealUtil.commitBatch(vertx_, res -> {
+				handleBatchResults_(res);
+				completionHandler.handle(Future.succeededFuture());
+			});
+		}
+		/**
+		 * Commit the changes to DEAL objects staged in {@link #batch_} and close it.
+		 * The completion handler always succeeds.
+		 * @param completionHandler the completion handler
+		 *          
+		 * {@link #batch_} に溜めた DEAL オブジェクトの変更を書き込みバッチを閉じる.
+		 * completion handler は常に成功する.
+		 * @param completionHandler the completion handler
+		 */
+		private void endBatch_(Handler<AsyncResult<Void>> completionHandler) {
+			if (batch_ == null) {
+				completionHandler.handle(Future.succeededFuture());
+				return;
+			}
+			if (log.isDebugEnabled()) log.debug("committing " + batch_.numberOfStaged() + " deals");
+			DealUtil.endBatch(vertx_, res -> {
+				batch_ = null;
+				handleBatchResults_(res);
+				completionHandler.handle(Future.succeededFuture());
+			});
+		}
+		private void handleBatchResults_(AsyncResult<Map<String, AsyncResult<Void>>> res) {
+			if (res.succeeded()) {
+				for (AsyncResult<Void> aResult : res.result().values()) {
+					if (aResult.failed()) ErrorExceptionUtil.reportIfNeed(vertx_, aResult.cause());
+				}
+			} else {
+				ErrorExceptionUtil.reportIfNeed(vertx_, res.cause());
+			}
+		}
+		/**
+		 * Extract the DEAL objects that can be processed concurrently from the beginning of {@link #dealsForLoop_}.
+		 * The order determined by {@link DealExecution#sortDeals_(Vertx, JsonObject, List)} is kept; extraction stops at the first DEAL object that cannot be added.
+		 * Only DEAL objects that are running normally ( see {@link #isParallelizable_(JsonObject, String)} ) and do not share any unit with each other are processed concurrently.
+		 * Any other DEAL object is processed alone.
+		 * @return a list of DEAL objects. Contains at least one
+		 *          
+		 * {@link #dealsForLoop_} の先頭から同時に処理できる DEAL オブジェクトを取り出す.
+		 * {@link DealExecution#sortDeals_(Vertx, JsonObject, List)} で決めた順序は守り, 追加できない DEAL オブジェクトが現れたらそこで止める.
+		 * 普通に融通中 ( {@link #isParallelizable_(JsonObject, String)} 参照 ) でかつ互いにユニットを共有しない DEAL オブジェクトだけを同時に処理する.
+		 * それ以外の DEAL オブジェクトは単独で処理する.
+		 * @return DEAL オブジェクトのリスト. 少なくとも一つ含む
+		 */
+		private List<JsonObject> takeBatch_() {
+			List<JsonObject> result = new ArrayList<>();
+			JsonObject first = dealsForLoop_.remove(0);
+			result.add(first);
+			// The voltage reference may have been moved by the previous processing, so look it up every time
+			// 直前の処理で電圧リファレンスが移動しているかもしれないので毎回調べる
+			String voltageReferenceUnitId = voltageReferenceUnitId();
+			if (isParallelizable_(first, voltageReferenceUnitId)) {
+				Set<String> unitIds = new HashSet<>();
+				unitIds.add(Deal.dischargeUnitId(first));
+				unitIds.add(Deal.chargeUnitId(first));
+				while (!dealsForLoop_.isEmpty()) {
+					JsonObject aDeal = dealsForLoop_.get(0);
+					if (!isParallelizable_(aDeal, voltageReferenceUnitId) || unitIds.contains(Deal.dischargeUnitId(aDeal)) || unitIds.contains(Deal.chargeUnitId(aDeal))) break;
+					unitIds.add(Deal.dischargeUnitId(aDeal));
+					unitIds.add(Deal.chargeUnitId(aDeal));
+					result.add(dealsForLoop_.remove(0));
+				}
+			}
+			return result;
+		}
+		/**
+		 * Find out whether or not a DEAL object may be processed concurrently with others.
+		 * Only a DEAL object running normally ( processed by {@link DealCumulation} ) which is not the master deal and does not include the voltage reference unit may.
+		 * Processing that moves the voltage reference or measures the current of the voltage reference unit ( activation, compensation, deactivation and so on ) must not overlap with other processing.
+		 * @param deal a DEAL object
+		 * @param voltageReferenceUnitId the ID of the voltage reference unit. May be {@code null}
+		 * @return {@code true} if yes
+		 *          
+		 * DEAL オブジェクトを他と同時に処理してよいか否か.
+		 * master deal ではなく電圧リファレンスユニットを含まない普通に融通中 ( {@link DealCumulation} で処理される ) の DEAL オブジェクトだけがよい.
+		 * 電圧リファレンスを移動させたり電圧リファレンスユニットの電流を測ったりする処理 ( 起動, コンペンセイション, 終了など ) は他の処理と重なってはいけない.
+		 * @param deal DEAL オブジェクト
+		 * @param voltageReferenceUnitId 電圧リファレンスユニットの ID. {@code null} 可
+		 * @return よければ {@code true}
+		 */
+		private boolean isParallelizable_(JsonObject deal, String voltageReferenceUnitId) {
+			if (Deal.isMaster(deal)) return false;
+			if (Deal.isDeactivated(deal) || Deal.isStopped(deal) || Deal.isNeedToStop(deal) || !Deal.isStarted(deal)) return false;
+			String dischargeUnitId = Deal.dischargeUnitId(deal);
+			String chargeUnitId = Deal.chargeUnitId(deal);
+			if (dischargeUnitId == null || chargeUnitId == null) return false;
+			return (voltageReferenceUnitId == null || (!voltageReferenceUnitId.equals(dischargeUnitId) && !voltageReferenceUnitId.equals(chargeUnitId)));
+		}
+		/**
+		 * Process a DEAL object according to its state.
+		 * If the processing fails, perform abnormal termination of the DEAL object.
+		 * The completion handler always succeeds.
+		 * @param aDeal a DEAL object
+		 * @param completionHandler the completion handler
+		 *          
+		 * DEAL オブジェクトをその状態に応じて処理する.
+		 * 処理が失敗したらその DEAL オブジェクトを異常終了処理する.
+		 * completion handler は常に成功する.
+		 * @param aDeal DEAL オブジェクト
+		 * @param completionHandler the completion handler
+		 */
+		private void executeDeal_(JsonObject aDeal, Handler<AsyncResult<Void>> completionHandler) {
+			// A view sharing the index of this cycle instead of a copy of the list
+			// リストのコピーではなくこのサイクルの索引を共有するビュー
+			List<JsonObject> otherDeals = index_.otherDeals(aDeal);
+			// Allocate processing according to the state of this DEAL object
+			// DEAL オブジェクトの状態に応じた処理を割り当て
+			final AbstractDealExecution exec;
+			if (Deal.isDeactivated(aDeal)) {
+				// Perform deletion processing if finished
+				// 終了済みなら削除処理
+				exec = new DealDisposition(vertx_, policy_, aDeal, otherDeals);
+			} else if (Deal.isStopped(aDeal)) {
+				// If stopped, end processing
+				// 停止済みなら終了処理
+				exec = new DealDeactivation(vertx_, policy_, aDeal, otherDeals);
+			} else if (Deal.isNeedToStop(aDeal)) {
+				// Perform abnormal termination processing if there is a stop request
+				// 停止要求を持っていれば異常終了処理
+				exec = new DealAbortion(vertx_, policy_, aDeal, otherDeals, Deal.needToStopReasons(aDeal).encode());
+			} else if (Deal.isStarted(aDeal)) {
+				// Perform summing process if started
+				// 開始済みなら積算処理
+				exec = new DealCumulation(vertx_, policy_, aDeal, otherDeals);
+			} else if (Deal.isActivated(aDeal)) {
+				// If started
+				// 起動済みなら
+				if (Deal.isMaster(aDeal)) {
+					// If this is a master
+					// マスタなら
+					if (Deal.isRampedUp(aDeal)) {
+						// If the voltage has been ramped up, perform the voltage reference privilege acquisition process
+						// 電圧ランプアップ済みなら電圧リファレンス権限取得処理
+						exec = new DealMasterAuthorization(vertx_, policy_, aDeal, otherDeals);
+					} else {
+						// If the voltage is still ramping up, perform the voltage ramp-up stand-by process
+						// 電圧ランプアップ中なら電圧ランプアップ待ち処理
+						exec = new DealRampingUp(vertx_, policy_, aDeal, otherDeals);
+					}
+				} else {
+					// If this is not a master, perform current compensation processing
+					// マスタじゃなければ電流コンペンセイション処理
+					exec = new DealCompensation(vertx_, policy_, aDeal, otherDeals);
+				}
+			} else {
+				// Since this is brand new, perform start-up processing
+				// まっさらなので起動処理
+				exec = new DealActivation(vertx_, policy_, aDeal, otherDeals);
+			}
+			// Execute processing
+			// 処理を実行する
+			exec.execute(resExec -> {
+				index_.reindex(aDeal);
+				if (resExec.succeeded()) {
+					// If there is no problem, proceed to the next DEAL object
+					// 問題なければ次の DEAL オブジェクトに進む
+					completionHandler.handle(Future.succeededFuture());
+				} else {
+					// If a problem has occurred, perform abnormal termination of the DEAL object
+					// 問題が起きたらその DEAL オブジェクトを異常終了処理する
+					new DealAbortion(exec, resExec.cause().getMessage()).execute(resAbort -> {
+						if (resAbort.succeeded()) {
+							// OK if abnormal termination is successful
+							// 異常終了が成功したら OK
+						} else {
+							// If the abnormal termination fails
+							// 異常終了が失敗したら
+							String msg = "deal abortion failed";
+							// Perform error processing by sending a local error to the units at both ends
+							// 両端ユニットに対しローカルエラーを送りつけエラー処理させる
+							// → Forcibly stop at the worst timeout
+							// → 最悪タイムアウトで強制的に止まる
+							ErrorUtil.report(vertx_, Deal.chargeUnitId(aDeal), Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.ERROR, msg);
+							ErrorUtil.report(vertx_, Deal.dischargeUnitId(aDeal), Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.ERROR, msg);
+						}
+						index_.reindex(aDeal);
+						// Proceed to the next DEAL object
+						// 次の DEAL オブジェクトに進む
+						completionHandler.handle(Future.succeededFuture());
+					});
+				}
+			});
+		}
 		/**
 		 * Get a list of working interchange IDs.
 		 * Used to judge whether or not there are any interchanges whose state has changed after performing an entire round of interchange processing.
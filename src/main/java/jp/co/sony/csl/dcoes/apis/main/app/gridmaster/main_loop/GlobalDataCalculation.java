@@ -4,17 +4,15 @@ import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
-import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 
-import java.util.Arrays;
-
 import jp.co.sony.csl.dcoes.apis.common.Error;
-import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectWrapper;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
+import jp.co.sony.csl.dcoes.apis.main.util.UnitDataStatistics;
+import jp.co.sony.csl.dcoes.apis.main.util.UnitDataTable;
 
 /**
  * Calculate the state of the entire grid.
@@ -26,6 +24,9 @@ import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
  * - averageRsocNumberOfUnits: The number of units used to calculate averageRsoc (should be the same as numberOfUnits, but there may be some units that do not have an rsoc value)
  * - averageRemainingCapacityWh: The average remaining battery capacity of all units
  * - averageRemainingCapacityWhNumberOfUnits: The number of units used to calculate averageRemainingCapacityWh (should be the same as numberOfUnits, but there may be some units that do not have a remaining battery capacity value)
+ * - statistics: Totals, min/max, standard deviations and percentiles of rsoc, remaining capacity, grid current and grid power ( see {@link UnitDataStatistics#update(UnitDataTable)} )
+ * All values are calculated in a single pass over {@link UnitDataTable}, and the previous result is kept as it is if no value has changed.
+ * The result is shared, so it must not be modified.
  * @author OES Project
  *          
  * グリッド全体の状態を計算する.
@@ -37,6 +38,9 @@ import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
  * - averageRsocNumberOfUnits : averageRsoc 算出に用いたユニット数 ( numberOfUnits と同じはずであるが rsoc 値を持たないユニットがある可能性があるため )
  * - averageRemainingCapacityWh : バッテリ残量の全ユニット平均値
  * - averageRemainingCapacityWhNumberOfUnits : averageRemainingCapacityWh 算出に用いたユニット数 ( numberOfUnits と同じはずであるがバッテリ残量値を持たないユニットがある可能性があるため )
+ * - statistics : rsoc, バッテリ残量, グリッド電流, グリッド電力の合計値, 最小最大値, 標準偏差, パーセンタイル ( {@link UnitDataStatistics#update(UnitDataTable)} 参照 )
+ * 全ての値を {@link UnitDataTable} の一度の走査で算出し値が変化していなければ前回の結果をそのまま保持する.
+ * 結果は共有されるので変更してはならない.
  * @author OES Project
  */
 public class GlobalDataCalculation {
@@ -49,6 +53,9 @@ public class GlobalDataCalculation {
 	 */
 	public static final JsonObjectWrapper cache = new JsonObjectWrapper();
 
+	private static final UnitDataStatistics statistics_ = new UnitDataStatistics();
+	private static JsonObject lastStatistics_ = null;
+
 	private GlobalDataCalculation() { }
 
 	/**
@@ -60,6 +67,7 @@ public class GlobalDataCalculation {
 	 * - averageRsocNumberOfUnits: The number of units used to calculate averageRsoc (should be the same as numberOfUnits, but there may be some units that do not have an rsoc value)
 	 * - averageRemainingCapacityWh: The average remaining battery capacity of all units
 	 * - averageRemainingCapacityWhNumberOfUnits: The number of units used to calculate averageRemainingCapacityWh (should be the same as numberOfUnits, but there may be some units that do not have a remaining battery capacity value)
+	 * - statistics: Totals, min/max, standard deviations and percentiles of rsoc, remaining capacity, grid current and grid power ( see {@link UnitDataStatistics#update(UnitDataTable)} )
 	 * @param vertx a vertx object
 	 * @param completionHandler the completion handler
 	 *          
@@ -71,17 +79,35 @@ public class GlobalDataCalculation {
 	 * - averageRsocNumberOfUnits : averageRsoc 算出に用いたユニット数 ( numberOfUnits と同じはずであるが rsoc 値を持たないユニットがある可能性があるため )
 	 * - averageRemainingCapacityWh : バッテリ残量の全ユニット平均値
 	 * - averageRemainingCapacityWhNumberOfUnits : averageRemainingCapacityWh 算出に用いたユニット数 ( numberOfUnits と同じはずであるがバッテリ残量値を持たないユニットがある可能性があるため )
+	 * - statistics : rsoc, バッテリ残量, グリッド電流, グリッド電力の合計値, 最小最大値, 標準偏差, パーセンタイル ( {@link UnitDataStatistics#update(UnitDataTable)} 参照 )
 	 * @param vertx vertx オブジェクト
 	 * @param completionHandler the completion handler
 	 */
 	public static void execute(Vertx vertx, Handler<AsyncResult<JsonObject>> completionHandler) {
-		JsonObject unitData = DealExecution.unitDataCache.jsonObject();
+		UnitDataTable unitData = DealExecution.unitDataTable();
 		if (unitData != null) {
-			JsonObject globalData = new JsonObject();
-			doBasic_(vertx, unitData, globalData);
-			doRsoc_(vertx, unitData, globalData);
-			doRemainingCapacity_(vertx, unitData, globalData);
-			cache.setJsonObject(globalData);
+			JsonObject statistics = statistics_.update(unitData);
+			if (statistics != lastStatistics_ || cache.isEmpty()) {
+				// Build a new result only when something has changed
+				// 何か変化した時だけ新しい結果を作る
+				JsonObject globalData = new JsonObject();
+				globalData.put("numberOfUnits", unitData.size());
+				// The unit IDs are already sorted in the table
+				// テーブルのユニット ID はソート済み
+				globalData.put("unitIds", statistics.getJsonArray("unitIds"));
+				JsonObject rsoc = statistics.getJsonObject("rsoc");
+				globalData.put("averageRsoc", rsoc.getFloat("average"));
+				globalData.put("averageRsocNumberOfUnits", rsoc.getInteger("count"));
+				JsonObject remainingCapacityWh = statistics.getJsonObject("remainingCapacityWh");
+				globalData.put("averageRemainingCapacityWh", remainingCapacityWh.getFloat("average"));
+				globalData.put("averageRemainingCapacityWhNumberOfUnits", remainingCapacityWh.getInteger("count"));
+				globalData.put("statistics", statistics);
+				cache.setJsonObject(globalData);
+				lastStatistics_ = statistics;
+			}
+			// Look for the units without values only when some are missing
+			// 値を持たないユニットは欠けている時だけ探す
+			reportMissingValues_(vertx, unitData, statistics);
 		}
 		if (log.isDebugEnabled()) log.debug("global data : " + cache.jsonObject());
 		completionHandler.handle(Future.succeededFuture(cache.jsonObject()));
@@ -89,47 +115,21 @@ public class GlobalDataCalculation {
 
 	////
 
-	private static void doBasic_(Vertx vertx, JsonObject unitData, JsonObject result) {
-		result.put("numberOfUnits", unitData.size());
-		String[] unitIds = unitData.fieldNames().toArray(new String[unitData.size()]);
-		Arrays.sort(unitIds);
-		result.put("unitIds", new JsonArray(Arrays.asList(unitIds)));
-	}
-
-	private static void doRsoc_(Vertx vertx, JsonObject unitData, JsonObject result) {
-		float sum = 0;
-		int n = 0;
-		for (String aUnitId : unitData.fieldNames()) {
-			JsonObject aUnitData = unitData.getJsonObject(aUnitId);
-			Float value = JsonObjectUtil.getFloat(aUnitData, "battery", "rsoc");
-			if (value != null) {
-				sum += value;
-				n++;
-			} else {
-				ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.WARN, "no battery.rsoc value; unitId : " + aUnitId);
+	private static void reportMissingValues_(Vertx vertx, UnitDataTable unitData, JsonObject statistics) {
+		if (statistics.getJsonObject("rsoc").getInteger("count") < unitData.size()) {
+			for (int i = 0; i < unitData.size(); i++) {
+				if (Float.isNaN(unitData.rsoc(i))) {
+					ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.WARN, "no battery.rsoc value; unitId : " + unitData.unitId(i));
+				}
 			}
 		}
-		float average = sum / n;
-		result.put("averageRsoc", average);
-		result.put("averageRsocNumberOfUnits", n);
-	}
-
-	private static void doRemainingCapacity_(Vertx vertx, JsonObject unitData, JsonObject result) {
-		float sum = 0;
-		int n = 0;
-		for (String aUnitId : unitData.fieldNames()) {
-			JsonObject aUnitData = unitData.getJsonObject(aUnitId);
-			Float value = JsonObjectUtil.getFloat(aUnitData, "apis", "remaining_capacity_wh");
-			if (value != null) {
-				sum += value;
-				n++;
-			} else {
-				ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.WARN, "no apis.remaining_capacity_wh value; unitId : " + aUnitId);
+		if (statistics.getJsonObject("remainingCapacityWh").getInteger("count") < unitData.size()) {
+			for (int i = 0; i < unitData.size(); i++) {
+				if (Float.isNaN(unitData.remainingCapacityWh(i))) {
+					ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.WARN, "no apis.remaining_capacity_wh value; unitId : " + unitData.unitId(i));
+				}
 			}
 		}
-		float average = sum / n;
-		result.put("averageRemainingCapacityWh", average);
-		result.put("averageRemainingCapacityWhNumberOfUnits", n);
 	}
 
 }
@@ -0,0 +1,134 @@
+package jp.co.sony.csl.dcoes.apis.main.app.gridmaster.main_loop;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jp.co.sony.csl.dcoes.apis.main.util.LatencyHistogram;
+
+/**
+ * Timing statistics of the GridMaster main loop.
+ * Keep a {@link LatencyHistogram} for each phase of {@link jp.co.sony.csl.dcoes.apis.main.app.gridmaster.MainLoop} and for each interchange processing class, and count cycles that overrun {@code POLICY.gridMaster.mainLoopPeriodMsec}.
+ * @author OES Project
+ *          
+ * GridMaster メインループの時間統計.
+ * {@link jp.co.sony.csl.dcoes.apis.main.app.gridmaster.MainLoop} の各フェーズと融通処理クラスごとに {@link LatencyHistogram} を保持し {@code POLICY.gridMaster.mainLoopPeriodMsec} を超過したサイクルを数える.
+ * @author OES Project
+ */
+public class MainLoopStatistics {
+	private static final Logger log = LoggerFactory.getLogger(MainLoopStatistics.class);
+
+	/**
+	 * EventBus address of the statistics service.
+	 * Scope: local
+	 * Value: {@value}
+	 *          
+	 * 統計サービスの EventBus アドレス.
+	 * 範囲 : ローカル
+	 * 値は {@value}
+	 */
+	public static final String ADDRESS = "apis.main.GridMaster.mainLoopStatistics";
+
+	private static final Map<String, LatencyHistogram> phases_ = new LinkedHashMap<>();
+	private static final Map<String, LatencyHistogram> deals_ = new LinkedHashMap<>();
+	private static long cycles_ = 0L;
+	private static long overruns_ = 0L;
+
+	private MainLoopStatistics() { }
+
+	/**
+	 * Record the elapsed time of a main loop phase.
+	 * @param phase the name of the phase
+	 * @param startNanos the start time of the phase obtained by {@link System#nanoTime()}
+	 *          
+	 * メインループのフェーズの所要時間を記録する.
+	 * @param phase フェーズ名
+	 * @param startNanos {@link System#nanoTime()} で取得したフェーズの開始時刻
+	 */
+	public static void recordPhase(String phase, long startNanos) {
+		histogram_(phases_, phase).record(System.nanoTime() - startNanos);
+	}
+	/**
+	 * Record the elapsed time of an interchange processing.
+	 * @param dealExecution the name of the interchange processing class
+	 * @param startNanos the start time of the processing obtained by {@link System#nanoTime()}
+	 *          
+	 * 融通処理の所要時間を記録する.
+	 * @param dealExecution 融通処理クラス名
+	 * @param startNanos {@link System#nanoTime()} で取得した処理の開始時刻
+	 */
+	public static void recordDealExecution(String dealExecution, long startNanos) {
+		histogram_(deals_, dealExecution).record(System.nanoTime() - startNanos);
+	}
+	/**
+	 * Record the elapsed time of a whole cycle and count it if it overruns the period.
+	 * @param startNanos the start time of the cycle obtained by {@link System#nanoTime()}
+	 * @param periodMsec the period of the main loop [ms]
+	 *          
+	 * サイクル全体の所要時間を記録し周期を超過していたら数える.
+	 * @param startNanos {@link System#nanoTime()} で取得したサイクルの開始時刻
+	 * @param periodMsec メインループの周期 [ms]
+	 */
+	public static void recordCycle(long startNanos, long periodMsec) {
+		long nanos = System.nanoTime() - startNanos;
+		histogram_(phases_, "cycle").record(nanos);
+		synchronized (MainLoopStatistics.class) {
+			cycles_++;
+			if (periodMsec * 1000000L < nanos) {
+				overruns_++;
+				if (log.isWarnEnabled()) log.warn("main loop overrun ; " + (nanos / 1000000L) + " msec > period " + periodMsec + " msec");
+			}
+		}
+	}
+	private static synchronized LatencyHistogram histogram_(Map<String, LatencyHistogram> map, String name) {
+		LatencyHistogram result = map.get(name);
+		if (result == null) {
+			result = new LatencyHistogram();
+			map.put(name, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Get the statistics as a {@link JsonObject}.
+	 * - cycles: the number of cycles
+	 * - overruns: the number of cycles that overran the period
+	 * - phases: statistics of each phase ( see {@link LatencyHistogram#toJsonObject()} )
+	 * - dealExecutions: statistics of each interchange processing class ( see {@link LatencyHistogram#toJsonObject()} )
+	 * @return the statistics
+	 *          
+	 * 統計値を {@link JsonObject} で取得する.
+	 * - cycles : サイクル数
+	 * - overruns : 周期を超過したサイクル数
+	 * - phases : フェーズごとの統計値 ( {@link LatencyHistogram#toJsonObject()} 参照 )
+	 * - dealExecutions : 融通処理クラスごとの統計値 ( {@link LatencyHistogram#toJsonObject()} 参照 )
+	 * @return 統計値
+	 */
+	public static synchronized JsonObject toJsonObject() {
+		JsonObject phases = new JsonObject();
+		for (Map.Entry<String, LatencyHistogram> anEntry : phases_.entrySet()) {
+			phases.put(anEntry.getKey(), anEntry.getValue().toJsonObject());
+		}
+		JsonObject deals = new JsonObject();
+		for (Map.Entry<String, LatencyHistogram> anEntry : deals_.entrySet()) {
+			deals.put(anEntry.getKey(), anEntry.getValue().toJsonObject());
+		}
+		return new JsonObject().put("cycles", cycles_).put("overruns", overruns_).put("phases", phases).put("dealExecutions", deals);
+	}
+
+	/**
+	 * Clear all statistics.
+	 *          
+	 * 統計を全て消去する.
+	 */
+	public static synchronized void reset() {
+		phases_.clear();
+		deals_.clear();
+		cycles_ = 0L;
+		overruns_ = 0L;
+	}
+
+}
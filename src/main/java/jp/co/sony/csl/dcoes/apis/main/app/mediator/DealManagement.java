@@ -21,6 +21,7 @@ import jp.co.sony.csl.dcoes.apis.common.ServiceAddress;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.ReplyFailureUtil;
 import jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.DataAcquisition;
+import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.DealCache;
 import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.DealNeedToStopUtil;
 import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.DealUtil;
 import jp.co.sony.csl.dcoes.apis.main.util.ApisConfig;
@@ -78,8 +79,14 @@ public class DealManagement extends AbstractVerticle {
 											if (resResetLocal.succeeded()) {
 												startResetAllService_(resResetAll -> {
 													if (resResetAll.succeeded()) {
-														if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
-														startFuture.complete();
+														startDealChangedService_(resDealChanged -> {
+															if (resDealChanged.succeeded()) {
+																if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
+																startFuture.complete();
+															} else {
+																startFuture.fail(resDealChanged.cause());
+															}
+														});
 													} else {
 														startFuture.fail(resResetAll.cause());
 													}
@@ -585,6 +592,34 @@ public class DealManagement extends AbstractVerticle {
 			doReset_(req);
 		}).completionHandler(completionHandler);
 	}
+	/**
+	 * Launch the {@link io.vertx.core.eventbus.EventBus} service.
+	 * Address: {@link DealCache#ADDRESS}
+	 * Scope: global
+	 * Function: Reflect a change of interchange information to the near-cache on this node.
+	 * Message body: the changed dealIds and the version [{@link JsonObject}] ( see {@link DealCache#ADDRESS} )
+	 * Message header: none
+	 * Response: none
+	 * @param completionHandler the completion handler
+	 *          
+	 * {@link io.vertx.core.eventbus.EventBus} サービス起動.
+	 * アドレス : {@link DealCache#ADDRESS}
+	 * 範囲 : グローバル
+	 * 処理 : 融通情報の変更をこのノードのキャッシュに反映する.
+	 * メッセージボディ : 変更された dealId たちとバージョン [{@link JsonObject}] ( {@link DealCache#ADDRESS} 参照 )
+	 * メッセージヘッダ : なし
+	 * レスポンス : なし
+	 * @param completionHandler the completion handler
+	 */
+	private void startDealChangedService_(Handler<AsyncResult<Void>> completionHandler) {
+		vertx.eventBus().<JsonObject>consumer(DealCache.ADDRESS, req -> {
+			JsonObject message = req.body();
+			if (message != null) {
+				DealUtil.cache().notified(message);
+			}
+		}).completionHandler(completionHandler);
+	}
+
 	private void doReset_(Message<?> message) {
 //		resetExclusiveLock(vertx);
 		DealUtil.resetExclusiveLock(vertx);
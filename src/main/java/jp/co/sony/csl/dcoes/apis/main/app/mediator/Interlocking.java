@@ -56,8 +56,14 @@ public class Interlocking extends AbstractVerticle {
 							if (resResetLocal.succeeded()) {
 								startResetAllService_(resResetAll -> {
 									if (resResetAll.succeeded()) {
-										if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
-										startFuture.complete();
+										startGridMasterInterlockChangedService_(resGridMasterInterlockChanged -> {
+											if (resGridMasterInterlockChanged.succeeded()) {
+												if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
+												startFuture.complete();
+											} else {
+												startFuture.fail(resGridMasterInterlockChanged.cause());
+											}
+										});
 									} else {
 										startFuture.fail(resResetAll.cause());
 									}
@@ -353,6 +359,30 @@ public class Interlocking extends AbstractVerticle {
 			});
 		}).completionHandler(completionHandler);
 	}
+	/**
+	 * Launch the {@link io.vertx.core.eventbus.EventBus} service.
+	 * Address: {@link InterlockUtil#GRID_MASTER_UNIT_ID_CHANGED_ADDRESS}
+	 * Scope: global
+	 * Function: Discard the GridMaster interlock value cached on this node.
+	 * Message body: none
+	 * Message header: none
+	 * Response: none
+	 * @param completionHandler the completion handler
+	 *          
+	 * {@link io.vertx.core.eventbus.EventBus} サービス起動.
+	 * アドレス : {@link InterlockUtil#GRID_MASTER_UNIT_ID_CHANGED_ADDRESS}
+	 * 範囲 : グローバル
+	 * 処理 : このノードでキャッシュした GridMaster インタロック値を捨てる.
+	 * メッセージボディ : なし
+	 * メッセージヘッダ : なし
+	 * レスポンス : なし
+	 * @param completionHandler the completion handler
+	 */
+	private void startGridMasterInterlockChangedService_(Handler<AsyncResult<Void>> completionHandler) {
+		vertx.eventBus().<Void>consumer(InterlockUtil.GRID_MASTER_UNIT_ID_CHANGED_ADDRESS, req -> {
+			InterlockUtil.gridMasterUnitIdChanged();
+		}).completionHandler(completionHandler);
+	}
 	private void doResetLocalDealId_(Handler<AsyncResult<Void>> completionHandler) {
 		DealUtil.withUnitId(vertx, ApisConfig.unitId(), resDeals -> {
 			if (resDeals.succeeded()) {
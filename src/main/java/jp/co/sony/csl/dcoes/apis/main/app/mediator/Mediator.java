@@ -4,10 +4,13 @@ import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import jp.co.sony.csl.dcoes.apis.main.util.SharedMapProfiler;
+import jp.co.sony.csl.dcoes.apis.main.util.SharedMapUtil;
 
 /**
  * Mediator sevice object Verticle.
  * Launched from the {@link jp.co.sony.csl.dcoes.apis.main.app.Apis} Verticle.
+ * Starts the statistics service of the shared maps ( see {@link SharedMapUtil#startStatisticsService(io.vertx.core.Vertx, io.vertx.core.Handler)} ) and the profiler if enabled ( see {@link SharedMapProfiler} ).
  * Launches the following Verticles.
  * - {@link Interlocking}: A Verticle that manages interlocks
  * - {@link GridMasterManagement}: A Verticle that manages a GridMaster
@@ -19,6 +22,7 @@ import io.vertx.core.logging.LoggerFactory;
  *          
  * Mediator サービスの親玉 Verticle.
  * {@link jp.co.sony.csl.dcoes.apis.main.app.Apis} Verticle から起動される.
+ * 共有マップの統計サービスと, 有効ならプロファイラを起動する ( {@link SharedMapUtil#startStatisticsService(io.vertx.core.Vertx, io.vertx.core.Handler)}, {@link SharedMapProfiler} 参照 ).
  * 以下の Verticle を起動する.
  * - {@link Interlocking} : インタロックを管理する Verticle
  * - {@link GridMasterManagement} : GridMaster を管理する Verticle
@@ -33,6 +37,7 @@ public class Mediator extends AbstractVerticle {
 
 	/**
 	 * Called at startup.
+	 * Starts the statistics service of the shared maps and the profiler if enabled.
 	 * Launches the following Verticles.
 	 * - {@link Interlocking}: A Verticle that manages interlocks
 	 * - {@link GridMasterManagement}: A Verticle that manages a GridMaster
@@ -44,6 +49,7 @@ public class Mediator extends AbstractVerticle {
 	 * @throws Exception {@inheritDoc}
 	 *          
 	 * 起動時に呼び出される.
+	 * 共有マップの統計サービスと, 有効ならプロファイラを起動する.
 	 * 以下の Verticle を起動する.
 	 * - {@link Interlocking} : インタロックを管理する Verticle
 	 * - {@link GridMasterManagement} : GridMaster を管理する Verticle
@@ -55,42 +61,54 @@ public class Mediator extends AbstractVerticle {
 	 * @throws Exception {@inheritDoc}
 	 */
 	@Override public void start(Future<Void> startFuture) throws Exception {
-		vertx.deployVerticle(new Interlocking(), resInterlocking -> {
-			if (resInterlocking.succeeded()) {
-				vertx.deployVerticle(new GridMasterManagement(), resGridMasterManagement -> {
-					if (resGridMasterManagement.succeeded()) {
-						vertx.deployVerticle(new DealManagement(), resDealManagement -> {
-							if (resDealManagement.succeeded()) {
-								vertx.deployVerticle(new DealLogging(), resDealLogging -> {
-									if (resDealLogging.succeeded()) {
-										vertx.deployVerticle(new ExternalRequestHandling(), resExternalRequestHandling -> {
-											if (resExternalRequestHandling.succeeded()) {
-												vertx.deployVerticle(new InternalRequestHandling(), resInternalRequestHandling -> {
-													if (resInternalRequestHandling.succeeded()) {
-														if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
-														startFuture.complete();
+		SharedMapUtil.startStatisticsService(vertx, resStatistics -> {
+			if (resStatistics.succeeded()) {
+				SharedMapProfiler.start(vertx, resProfiler -> {
+					if (resProfiler.succeeded()) {
+						vertx.deployVerticle(new Interlocking(), resInterlocking -> {
+							if (resInterlocking.succeeded()) {
+								vertx.deployVerticle(new GridMasterManagement(), resGridMasterManagement -> {
+									if (resGridMasterManagement.succeeded()) {
+										vertx.deployVerticle(new DealManagement(), resDealManagement -> {
+											if (resDealManagement.succeeded()) {
+												vertx.deployVerticle(new DealLogging(), resDealLogging -> {
+													if (resDealLogging.succeeded()) {
+														vertx.deployVerticle(new ExternalRequestHandling(), resExternalRequestHandling -> {
+															if (resExternalRequestHandling.succeeded()) {
+																vertx.deployVerticle(new InternalRequestHandling(), resInternalRequestHandling -> {
+																	if (resInternalRequestHandling.succeeded()) {
+																		if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
+																		startFuture.complete();
+																	} else {
+																		startFuture.fail(resInternalRequestHandling.cause());
+																	}
+																});
+															} else {
+																startFuture.fail(resExternalRequestHandling.cause());
+															}
+														});
 													} else {
-														startFuture.fail(resInternalRequestHandling.cause());
+														startFuture.fail(resDealLogging.cause());
 													}
 												});
 											} else {
-												startFuture.fail(resExternalRequestHandling.cause());
+												startFuture.fail(resDealManagement.cause());
 											}
 										});
 									} else {
-										startFuture.fail(resDealLogging.cause());
+										startFuture.fail(resGridMasterManagement.cause());
 									}
 								});
 							} else {
-								startFuture.fail(resDealManagement.cause());
+								startFuture.fail(resInterlocking.cause());
 							}
 						});
 					} else {
-						startFuture.fail(resGridMasterManagement.cause());
+						startFuture.fail(resProfiler.cause());
 					}
 				});
 			} else {
-				startFuture.fail(resInterlocking.cause());
+				startFuture.fail(resStatistics.cause());
 			}
 		});
 	}
@@ -0,0 +1,155 @@
+package jp.co.sony.csl.dcoes.apis.main.app.mediator.util;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A set of changes to DEAL objects to be committed to shared memory at once.
+ * Opened by {@link DealUtil#beginBatch()}.
+ * While open, {@link DealUtil#update(io.vertx.core.Vertx, JsonObject, io.vertx.core.Handler)} of a DEAL object tracked by {@link DealUtil#track(JsonObject)} only stages the change.
+ * Staged changes are written by {@link DealUtil#commitBatch(io.vertx.core.Vertx, io.vertx.core.Handler)} with a compare-and-set against the value read when tracked.
+ * DEAL objects are identified by identity, so a DEAL object read separately ( by SCRAM for example ) is updated immediately as before.
+ * @author OES Project
+ *          
+ * 共有メモリに一度に書き込む DEAL オブジェクトの変更の集まり.
+ * {@link DealUtil#beginBatch()} で開く.
+ * 開いている間は {@link DealUtil#track(JsonObject)} で追跡している DEAL オブジェクトの {@link DealUtil#update(io.vertx.core.Vertx, JsonObject, io.vertx.core.Handler)} は変更を溜めるだけになる.
+ * 溜めた変更は {@link DealUtil#commitBatch(io.vertx.core.Vertx, io.vertx.core.Handler)} で追跡時に読んだ値との compare-and-set で書き込む.
+ * DEAL オブジェクトは同一性で識別するので別に読み出した DEAL オブジェクト ( SCRAM など ) はこれまで通りすぐに更新される.
+ * @author OES Project
+ */
+public class DealBatch {
+
+	/**
+	 * Keys that change when interchange power is added up, and the revision.
+	 * A change of only these keys is not a state transition.
+	 *          
+	 * 融通電力の積算で変わるキーとリビジョン.
+	 * これらだけの変更は状態遷移ではない.
+	 */
+	private static final String[] NON_TRANSITION_KEYS_ = new String[] {"cumulateDateTime", "cumulateAmountWh", "revision"};
+
+	private final Map<JsonObject, Entry_> entries_ = new IdentityHashMap<>();
+
+	DealBatch() { }
+
+	/**
+	 * Find out whether or not any of the staged changes is a state transition.
+	 * Changes other than adding up interchange power should be committed without waiting for the end of the pass.
+	 * @return {@code true} if yes
+	 *          
+	 * 溜めた変更に状態遷移が含まれるか否か.
+	 * 融通電力の積算以外の変更はひと回しの終わりを待たずに書き込むべきである.
+	 * @return 含まれれば {@code true}
+	 */
+	public synchronized boolean hasStagedTransitions() {
+		for (Entry_ anEntry : entries_.values()) {
+			if (anEntry.staged_ && isTransition_(anEntry.expected_, anEntry.deal_)) return true;
+		}
+		return false;
+	}
+	/**
+	 * Get the number of staged changes.
+	 * @return the number of staged changes
+	 *          
+	 * 溜めた変更の数を取得する.
+	 * @return 溜めた変更の数
+	 */
+	public synchronized int numberOfStaged() {
+		int result = 0;
+		for (Entry_ anEntry : entries_.values()) {
+			if (anEntry.staged_) result++;
+		}
+		return result;
+	}
+
+	////
+
+	synchronized void track_(JsonObject deal) {
+		entries_.put(deal, new Entry_(deal));
+	}
+	synchronized boolean stage_(JsonObject deal) {
+		Entry_ entry = entries_.get(deal);
+		if (entry == null) return false;
+		entry.staged_ = true;
+		return true;
+	}
+	/**
+	 * Take the staged changes.
+	 * Each element is a pair of the expected value and a snapshot of the new value.
+	 * @return a list of {@code [expected, update]}
+	 *          
+	 * 溜めた変更を取り出す.
+	 * 各要素は期待値と新しい値のスナップショットの組.
+	 * @return {@code [expected, update]} のリスト
+	 */
+	synchronized List<JsonObject[]> takeStaged_() {
+		List<JsonObject[]> result = new ArrayList<>();
+		for (Entry_ anEntry : entries_.values()) {
+			if (anEntry.staged_) {
+				result.add(new JsonObject[] {anEntry.expected_, anEntry.deal_.copy()});
+				anEntry.staged_ = false;
+			}
+		}
+		return result;
+	}
+	/**
+	 * Stop tracking a DEAL object and take its staged change.
+	 * @param deal a DEAL object
+	 * @return {@code [expected, update]}. {@code null} if {@code deal} is not tracked or has no staged change
+	 *          
+	 * DEAL オブジェクトの追跡をやめ溜めた変更を取り出す.
+	 * @param deal DEAL オブジェクト
+	 * @return {@code [expected, update]}. {@code deal} を追跡していないか溜めた変更がなければ {@code null}
+	 */
+	synchronized JsonObject[] untrack_(JsonObject deal) {
+		Entry_ entry = entries_.remove(deal);
+		if (entry == null || !entry.staged_) return null;
+		return new JsonObject[] {entry.expected_, entry.deal_.copy()};
+	}
+	/**
+	 * Reflect the result of committing a change.
+	 * If it succeeded, the committed value becomes the expected value of the next commit, and its revision is copied to the tracked DEAL object.
+	 * @param expected the expected value that was committed against
+	 * @param committed the committed value
+	 *          
+	 * 変更の書き込み結果を反映する.
+	 * 成功したら書き込んだ値を次の書き込みの期待値にし, そのリビジョンを追跡中の DEAL オブジェクトに写す.
+	 * @param expected 書き込みに用いた期待値
+	 * @param committed 書き込んだ値
+	 */
+	synchronized void committed_(JsonObject expected, JsonObject committed) {
+		for (Entry_ anEntry : entries_.values()) {
+			if (anEntry.expected_ == expected) {
+				anEntry.expected_ = committed;
+				anEntry.deal_.put("revision", DealUtil.revision(committed));
+				return;
+			}
+		}
+	}
+
+	private static boolean isTransition_(JsonObject expected, JsonObject deal) {
+		JsonObject a = expected.copy();
+		JsonObject b = deal.copy();
+		for (String aKey : NON_TRANSITION_KEYS_) {
+			a.remove(aKey);
+			b.remove(aKey);
+		}
+		return !a.equals(b);
+	}
+
+	private static class Entry_ {
+		private final JsonObject deal_;
+		private JsonObject expected_;
+		private boolean staged_ = false;
+		private Entry_(JsonObject deal) {
+			deal_ = deal;
+			expected_ = deal.copy();
+		}
+	}
+
+}
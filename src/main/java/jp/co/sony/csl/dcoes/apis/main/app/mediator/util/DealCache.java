@@ -0,0 +1,489 @@
+package jp.co.sony.csl.dcoes.apis.main.app.mediator.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.shareddata.AsyncMap;
+import io.vertx.core.shareddata.Counter;
+import jp.co.sony.csl.dcoes.apis.common.Deal;
+import jp.co.sony.csl.dcoes.apis.common.Error;
+import jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping;
+import jp.co.sony.csl.dcoes.apis.main.util.SharedMapUtil;
+
+/**
+ * A near-cache of the decrypted DEAL objects in shared memory, local to this node.
+ * Every change to the map increments a cluster-wide counter and publishes the changed dealIds to {@link #ADDRESS}.
+ * A read first gets the counter.
+ * - If it has not changed since the last read, the cached DEAL objects are returned without touching the map.
+ * - If all the changes up to the counter have been notified, only the changed DEAL objects are fetched again.
+ * - Otherwise, for example if a notification has been lost, all DEAL objects are fetched again.
+ * Enabled by {@code POLICY.mediator.dealCache.enabled} (default: {@code false}).
+ * Changes are always notified regardless of the setting, because other nodes may have it enabled.
+ * Copies are returned so that callers can modify them as before.
+ * The cached DEAL objects are indexed by {@link DealIndex}, so that a lookup by unit or of the Master Deal only copies the DEAL objects found.
+ * @author OES Project
+ *          
+ * 共有メモリ上の DEAL オブジェクトを復号したものをこのノードでキャッシュする.
+ * マップへの変更のたびにクラスタ全体のカウンタを増やし変更された dealId たちを {@link #ADDRESS} に publish する.
+ * 読み出し時はまずカウンタを取得し,
+ * - 前回の読み出しから変わっていなければマップに触れずにキャッシュした DEAL オブジェクトを返す.
+ * - カウンタまでの変更が全て通知済みなら変更された DEAL オブジェクトだけを取得し直す.
+ * - 通知が失われた場合などそれ以外は全ての DEAL オブジェクトを取得し直す.
+ * {@code POLICY.mediator.dealCache.enabled} で有効になる ( デフォルト {@code false} ).
+ * 他のノードで有効になっている可能性があるため設定にかかわらず変更は常に通知する.
+ * 呼び出し側がこれまで通り変更できるようコピーを返す.
+ * キャッシュした DEAL オブジェクトは {@link DealIndex} で索引するので, ユニットによる検索や Master Deal の取得では見つかった DEAL オブジェクトだけをコピーする.
+ * @author OES Project
+ */
+public class DealCache {
+	private static final Logger log = LoggerFactory.getLogger(DealCache.class);
+
+	/**
+	 * The address to which changes are published.
+	 * Message body: the changed dealIds and the value of the counter [{@link JsonObject}]
+	 * - dealIds: the interchange IDs [{@link JsonArray}]
+	 * - version: the value of the counter after the change [{@link Long}]. Absent if the counter could not be incremented
+	 * Value: {@value}
+	 *          
+	 * 変更を publish するアドレス.
+	 * メッセージボディ : 変更された dealId たちとカウンタの値 [{@link JsonObject}]
+	 * - dealIds : 融通 ID のリスト [{@link JsonArray}]
+	 * - version : 変更後のカウンタの値 [{@link Long}]. カウンタを増やせなかった場合はない
+	 * 値は {@value}
+	 */
+	public static final String ADDRESS = "apis.main.Mediator.dealChanged";
+
+	private final String mapName_;
+	private final String counterName_;
+	private volatile Counter counter_ = null;
+
+	private final Map<String, JsonObject> deals_ = new LinkedHashMap<>();
+	private boolean valid_ = false;
+	private long generation_ = 0L;
+	private long cachedVersion_ = -1L;
+	private long notifiedVersion_ = -1L;
+	private final TreeSet<Long> pendingVersions_ = new TreeSet<>();
+	// dealId -> the latest version in which it was notified as changed
+	// dealId -> 変更が通知された最新の version
+	private final Map<String, Long> dirtyDealIds_ = new HashMap<>();
+	private DealIndex index_ = null;
+
+	/**
+	 * Create an instance.
+	 * @param mapName the name of the shared map of DEAL objects
+	 *          
+	 * インスタンスを生成する.
+	 * @param mapName DEAL オブジェクトの共有マップの名前
+	 */
+	public DealCache(String mapName) {
+		mapName_ = mapName;
+		counterName_ = mapName + ".version";
+	}
+	/**
+	 * Create an instance with the counter given.
+	 * For testing.
+	 * @param mapName the name of the shared map of DEAL objects
+	 * @param counter the counter of changes
+	 *          
+	 * 与えたカウンタでインスタンスを生成する.
+	 * テスト用.
+	 * @param mapName DEAL オブジェクトの共有マップの名前
+	 * @param counter 変更のカウンタ
+	 */
+	DealCache(String mapName, Counter counter) {
+		this(mapName);
+		counter_ = counter;
+	}
+
+	/**
+	 * Get all DEAL objects.
+	 * Read through the cache if {@code POLICY.mediator.dealCache.enabled} is {@code true}.
+	 * Results are received with the {@link AsyncResult#result()} method of completionHandler.
+	 * @param vertx a vertx object
+	 * @param completionHandler the completion handler
+	 *          
+	 * 全ての DEAL オブジェクトを取得する.
+	 * {@code POLICY.mediator.dealCache.enabled} が {@code true} ならキャッシュ経由で読む.
+	 * completionHandler の {@link AsyncResult#result()} で受け取る.
+	 * @param vertx vertx オブジェクト
+	 * @param completionHandler the completion handler
+	 */
+	public void values(Vertx vertx, Handler<AsyncResult<List<JsonObject>>> completionHandler) {
+		select_(vertx, DealIndex::all, completionHandler);
+	}
+	/**
+	 * Get the DEAL objects in which the unit specified by {@code unitId} participates.
+	 * Read through the cache if {@code POLICY.mediator.dealCache.enabled} is {@code true}.
+	 * Results are received with the {@link AsyncResult#result()} method of completionHandler.
+	 * @param vertx a vertx object
+	 * @param unitId the unit ID
+	 * @param completionHandler the completion handler
+	 *          
+	 * {@code unitId} で指定したユニットが参加している DEAL オブジェクトを取得する.
+	 * {@code POLICY.mediator.dealCache.enabled} が {@code true} ならキャッシュ経由で読む.
+	 * completionHandler の {@link AsyncResult#result()} で受け取る.
+	 * @param vertx vertx オブジェクト
+	 * @param unitId ユニット ID
+	 * @param completionHandler the completion handler
+	 */
+	public void withUnitId(Vertx vertx, String unitId, Handler<AsyncResult<List<JsonObject>>> completionHandler) {
+		select_(vertx, index -> index.withUnitId(unitId), completionHandler);
+	}
+	/**
+	 * Get the Master Deal.
+	 * Read through the cache if {@code POLICY.mediator.dealCache.enabled} is {@code true}.
+	 * Results are received with the {@link AsyncResult#result()} method of completionHandler ; {@code null} if none.
+	 * @param vertx a vertx object
+	 * @param completionHandler the completion handler
+	 *          
+	 * Master Deal を取得する.
+	 * {@code POLICY.mediator.dealCache.enabled} が {@code true} ならキャッシュ経由で読む.
+	 * completionHandler の {@link AsyncResult#result()} で受け取る. なければ {@code null}.
+	 * @param vertx vertx オブジェクト
+	 * @param completionHandler the completion handler
+	 */
+	public void master(Vertx vertx, Handler<AsyncResult<JsonObject>> completionHandler) {
+		select_(vertx, index -> {
+			JsonObject master = index.master();
+			return (master != null) ? Collections.singletonList(master) : Collections.emptyList();
+		}, resSelect -> {
+			if (resSelect.succeeded()) {
+				List<JsonObject> result = resSelect.result();
+				completionHandler.handle(Future.succeededFuture((result.isEmpty()) ? null : result.get(0)));
+			} else {
+				completionHandler.handle(Future.failedFuture(resSelect.cause()));
+			}
+		});
+	}
+	private void select_(Vertx vertx, Function<DealIndex, List<JsonObject>> selector, Handler<AsyncResult<List<JsonObject>>> completionHandler) {
+		DealCodec.getMap(vertx, mapName_, resMap -> {
+			if (resMap.succeeded()) {
+				if (isEnabled_()) {
+					valuesThroughCache_(vertx, resMap.result(), selector, completionHandler);
+				} else {
+					valuesFromMap_(resMap.result(), selector, completionHandler);
+				}
+			} else {
+				SharedMapUtil.fail(Error.Extent.GLOBAL, resMap.cause(), completionHandler);
+			}
+		});
+	}
+
+	/**
+	 * Notify other nodes that a DEAL object has been changed.
+	 * To be called after the map has been changed and before completing the change, so that reads that follow see the change.
+	 * Never fails ; if the counter cannot be incremented, all nodes discard their caches.
+	 * @param vertx a vertx object
+	 * @param dealId the changed interchange ID
+	 * @param completionHandler the completion handler
+	 *          
+	 * DEAL オブジェクトが変更されたことを他のノードに通知する.
+	 * 続く読み出しが変更を見るようマップを変更した後で変更を完了する前に呼ぶこと.
+	 * 失敗しない. カウンタを増やせなかった場合は全てのノードがキャッシュを捨てる.
+	 * @param vertx vertx オブジェクト
+	 * @param dealId 変更された融通 ID
+	 * @param completionHandler the completion handler
+	 */
+	public void changed(Vertx vertx, String dealId, Handler<AsyncResult<Void>> completionHandler) {
+		changed(vertx, Collections.singletonList(dealId), completionHandler);
+	}
+	/**
+	 * Notify other nodes that DEAL objects have been changed.
+	 * The counter is incremented only once for all of them.
+	 * To be called after the map has been changed and before completing the change, so that reads that follow see the change.
+	 * Never fails ; if the counter cannot be incremented, this node discards its cache at once so that its next read fetches all DEAL objects, and the other nodes are asked to do the same.
+	 * @param vertx a vertx object
+	 * @param dealIds the changed interchange IDs
+	 * @param completionHandler the completion handler
+	 *          
+	 * DEAL オブジェクトたちが変更されたことを他のノードに通知する.
+	 * カウンタは全部で一度だけ増やす.
+	 * 続く読み出しが変更を見るようマップを変更した後で変更を完了する前に呼ぶこと.
+	 * 失敗しない. カウンタを増やせなかった場合はこのノードは次の読み出しで全ての DEAL オブジェクトを取得するよう直ちにキャッシュを捨て, 他のノードにも同様に依頼する.
+	 * @param vertx vertx オブジェクト
+	 * @param dealIds 変更された融通 ID のリスト
+	 * @param completionHandler the completion handler
+	 */
+	public void changed(Vertx vertx, Collection<String> dealIds, Handler<AsyncResult<Void>> completionHandler) {
+		counter_(vertx, resCounter -> {
+			if (resCounter.succeeded()) {
+				resCounter.result().incrementAndGet(resIncrementAndGet -> {
+					Long version = (resIncrementAndGet.succeeded()) ? resIncrementAndGet.result() : null;
+					if (version == null) {
+						if (log.isWarnEnabled()) log.warn("failed to increment " + counterName_ + " : " + resIncrementAndGet.cause());
+						invalidateLocally_();
+					}
+					publish_(vertx, dealIds, version);
+					completionHandler.handle(Future.succeededFuture());
+				});
+			} else {
+				if (log.isWarnEnabled()) log.warn("failed to get " + counterName_ + " : " + resCounter.cause());
+				invalidateLocally_();
+				publish_(vertx, dealIds, null);
+				completionHandler.handle(Future.succeededFuture());
+			}
+		});
+	}
+	private synchronized void invalidateLocally_() {
+		// Does not depend on the delivery of the message
+		// メッセージの配送に依存しない
+		invalidate_();
+	}
+	private void publish_(Vertx vertx, Collection<String> dealIds, Long version) {
+		JsonObject message = new JsonObject().put("dealIds", new JsonArray(new ArrayList<>(dealIds))).put("version", version);
+		// Reflect it locally first so that reads on this node that follow see the change without waiting for the message
+		// この後のこのノードでの読み出しがメッセージを待たずに変更を見るよう先にローカルに反映する
+		notified(message);
+		vertx.eventBus().publish(ADDRESS, message);
+	}
+
+	/**
+	 * Receive a change published to {@link #ADDRESS}.
+	 * @param message the message body
+	 *          
+	 * {@link #ADDRESS} に publish された変更を受け取る.
+	 * @param message メッセージボディ
+	 */
+	public synchronized void notified(JsonObject message) {
+		JsonArray dealIds = message.getJsonArray("dealIds");
+		Long version = message.getLong("version");
+		if (version == null) {
+			if (log.isDebugEnabled()) log.debug("deal cache invalidated by " + dealIds);
+			invalidate_();
+		} else if (cachedVersion_ < version) {
+			// Changes up to cachedVersion_ are already reflected
+			// cachedVersion_ までの変更はすでに反映済み
+			if (dealIds != null) {
+				for (Object aDealId : dealIds) {
+					if (aDealId instanceof String) dirtyDealIds_.merge((String) aDealId, version, Math::max);
+				}
+			}
+			if (notifiedVersion_ < version) pendingVersions_.add(version);
+			advanceNotifiedVersion_();
+		}
+	}
+
+	////
+
+	private void valuesThroughCache_(Vertx vertx, AsyncMap<String, JsonObject> map, Function<DealIndex, List<JsonObject>> selector, Handler<AsyncResult<List<JsonObject>>> completionHandler) {
+		counter_(vertx, resCounter -> {
+			if (resCounter.succeeded()) {
+				resCounter.result().get(resGet -> {
+					if (resGet.succeeded()) {
+						long version = resGet.result();
+						List<JsonObject> cached = null;
+						List<String> dirtyDealIds = null;
+						long generation;
+						synchronized (this) {
+							if (valid_ && cachedVersion_ == version) {
+								// Nothing has changed
+								// 何も変わっていない
+								cached = copies_(selector);
+							} else if (valid_ && version <= notifiedVersion_) {
+								dirtyDealIds = new ArrayList<>(dirtyDealIds_.keySet());
+							}
+							// Dirty dealIds are kept until they are fetched again ; a change notified while the counter was read may be newer than version
+							// dirty な dealId は取得し直すまで残す. カウンタの読み出し中に通知された変更は version より新しいかもしれない
+							generation = generation_;
+						}
+						if (cached != null) {
+							completionHandler.handle(Future.succeededFuture(cached));
+						} else if (dirtyDealIds != null) {
+							refetch_(map, version, generation, dirtyDealIds, selector, completionHandler);
+						} else {
+							fetchAll_(map, version, generation, selector, completionHandler);
+						}
+					} else {
+						if (log.isWarnEnabled()) log.warn("failed to get " + counterName_ + " : " + resGet.cause());
+						valuesFromMap_(map, selector, completionHandler);
+					}
+				});
+			} else {
+				if (log.isWarnEnabled()) log.warn("failed to get " + counterName_ + " : " + resCounter.cause());
+				valuesFromMap_(map, selector, completionHandler);
+			}
+		});
+	}
+	/**
+	 * Read all DEAL objects from {@code map} through the cache, regardless of {@code POLICY.mediator.dealCache.enabled}.
+	 * For testing.
+	 * @param vertx a vertx object
+	 * @param map the shared map of DEAL objects
+	 * @param completionHandler the completion handler
+	 *          
+	 * {@code POLICY.mediator.dealCache.enabled} にかかわらず {@code map} から全ての DEAL オブジェクトをキャッシュ経由で読む.
+	 * テスト用.
+	 * @param vertx vertx オブジェクト
+	 * @param map DEAL オブジェクトの共有マップ
+	 * @param completionHandler the completion handler
+	 */
+	void valuesThroughCache(Vertx vertx, AsyncMap<String, JsonObject> map, Handler<AsyncResult<List<JsonObject>>> completionHandler) {
+		valuesThroughCache_(vertx, map, DealIndex::all, completionHandler);
+	}
+	private void refetch_(AsyncMap<String, JsonObject> map, long version, long generation, List<String> dealIds, Function<DealIndex, List<JsonObject>> selector, Handler<AsyncResult<List<JsonObject>>> completionHandler) {
+		@SuppressWarnings("rawtypes") List<Future> futures = new ArrayList<>(dealIds.size());
+		for (String aDealId : dealIds) {
+			Future<JsonObject> future = Future.future();
+			map.get(aDealId, future);
+			futures.add(future);
+		}
+		CompositeFuture.all(futures).setHandler(ar -> {
+			if (ar.succeeded()) {
+				List<JsonObject> result = null;
+				boolean invalidated = false;
+				synchronized (this) {
+					if (generation != generation_ || !valid_) {
+						// The cache has been invalidated during the fetch ; the DEAL objects not fetched again are unknown
+						// 取得中にキャッシュが無効化された. 取得し直していない DEAL オブジェクトはわからない
+						invalidated = true;
+					} else if (version < cachedVersion_) {
+						// A newer fetch has completed first ; what has been fetched here may be older than the cache
+						// より新しい取得が先に完了した. ここで取得したものはキャッシュより古いかもしれない
+						result = copies_(selector);
+					} else {
+						for (int i = 0; i < dealIds.size(); i++) {
+							JsonObject aDeal = ar.result().resultAt(i);
+							if (aDeal != null) {
+								deals_.put(dealIds.get(i), aDeal);
+							} else {
+								deals_.remove(dealIds.get(i));
+							}
+						}
+						index_ = null;
+						cleanDirtyDealIds_(dealIds, version);
+						setCachedVersion_(version);
+						result = copies_(selector);
+					}
+				}
+				if (invalidated) {
+					if (log.isDebugEnabled()) log.debug("deal cache refetch dropped : " + dealIds + ", version : " + version + " ; invalidated");
+					valuesFromMap_(map, selector, completionHandler);
+				} else {
+					if (log.isDebugEnabled()) log.debug("deal cache refetched : " + dealIds + ", version : " + version);
+					completionHandler.handle(Future.succeededFuture(result));
+				}
+			} else {
+				synchronized (this) {
+					invalidate_();
+				}
+				SharedMapUtil.fail(Error.Extent.GLOBAL, ar.cause(), completionHandler);
+			}
+		});
+	}
+	private void fetchAll_(AsyncMap<String, JsonObject> map, long version, long generation, Function<DealIndex, List<JsonObject>> selector, Handler<AsyncResult<List<JsonObject>>> completionHandler) {
+		map.values(resValues -> {
+			if (resValues.succeeded()) {
+				List<JsonObject> result = null;
+				synchronized (this) {
+					// Do not trust the result if the cache has been invalidated during the fetch
+					// 取得中にキャッシュが無効化されていたら結果を信用しない
+					if (generation == generation_) {
+						deals_.clear();
+						for (JsonObject aDeal : resValues.result()) {
+							deals_.put(Deal.dealId(aDeal), aDeal);
+						}
+						index_ = null;
+						valid_ = true;
+						cleanDirtyDealIds_(new ArrayList<>(dirtyDealIds_.keySet()), version);
+						// Everything up to version is reflected, whether notified or not
+						// 通知の有無にかかわらず version までは全て反映されている
+						if (notifiedVersion_ < version) notifiedVersion_ = version;
+						advanceNotifiedVersion_();
+						setCachedVersion_(version);
+						if (log.isDebugEnabled()) log.debug("deal cache fetched : " + deals_.size() + " deals, version : " + version);
+						// The fetched DEAL objects are now cached, so hand out copies
+						// 取得した DEAL オブジェクトはキャッシュされたのでコピーを渡す
+						result = copies_(selector);
+					}
+				}
+				if (result == null) result = selector.apply(new DealIndex(resValues.result()));
+				completionHandler.handle(Future.succeededFuture(result));
+			} else {
+				completionHandler.handle(Future.failedFuture(resValues.cause()));
+			}
+		});
+	}
+
+	private boolean isEnabled_() {
+		return PolicyKeeping.cache().getBoolean(Boolean.FALSE, "mediator", "dealCache", "enabled");
+	}
+	private void counter_(Vertx vertx, Handler<AsyncResult<Counter>> completionHandler) {
+		Counter counter = counter_;
+		if (counter != null) {
+			completionHandler.handle(Future.succeededFuture(counter));
+		} else {
+			vertx.sharedData().getCounter(counterName_, resCounter -> {
+				if (resCounter.succeeded()) counter_ = resCounter.result();
+				completionHandler.handle(resCounter);
+			});
+		}
+	}
+	private void valuesFromMap_(AsyncMap<String, JsonObject> map, Function<DealIndex, List<JsonObject>> selector, Handler<AsyncResult<List<JsonObject>>> completionHandler) {
+		map.values(resValues -> {
+			if (resValues.succeeded()) {
+				completionHandler.handle(Future.succeededFuture(selector.apply(new DealIndex(resValues.result()))));
+			} else {
+				completionHandler.handle(Future.failedFuture(resValues.cause()));
+			}
+		});
+	}
+	private List<JsonObject> copies_(Function<DealIndex, List<JsonObject>> selector) {
+		if (index_ == null) index_ = new DealIndex(new ArrayList<>(deals_.values()));
+		List<JsonObject> selected = selector.apply(index_);
+		List<JsonObject> result = new ArrayList<>(selected.size());
+		for (JsonObject aDeal : selected) {
+			result.add(aDeal.copy());
+		}
+		return result;
+	}
+	/**
+	 * Forget the dirty dealIds that have been fetched again at {@code version}.
+	 * Those notified as changed in a newer version are kept.
+	 * @param dealIds the dealIds fetched again
+	 * @param version the version of the fetch
+	 *          
+	 * {@code version} で取得し直した dirty な dealId を忘れる.
+	 * より新しい version で変更が通知されたものは残す.
+	 * @param dealIds 取得し直した dealId のリスト
+	 * @param version 取得時の version
+	 */
+	private void cleanDirtyDealIds_(List<String> dealIds, long version) {
+		for (String aDealId : dealIds) {
+			Long dirtyVersion = dirtyDealIds_.get(aDealId);
+			if (dirtyVersion != null && dirtyVersion <= version) dirtyDealIds_.remove(aDealId);
+		}
+	}
+	private void setCachedVersion_(long version) {
+		if (cachedVersion_ < version) cachedVersion_ = version;
+	}
+	private void advanceNotifiedVersion_() {
+		pendingVersions_.headSet(notifiedVersion_, true).clear();
+		while (!pendingVersions_.isEmpty() && pendingVersions_.first() == notifiedVersion_ + 1) {
+			notifiedVersion_ = pendingVersions_.pollFirst();
+		}
+	}
+	private void invalidate_() {
+		generation_++;
+		valid_ = false;
+		deals_.clear();
+		index_ = null;
+		dirtyDealIds_.clear();
+	}
+
+}
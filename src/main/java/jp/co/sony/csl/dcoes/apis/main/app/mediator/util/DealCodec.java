@@ -0,0 +1,488 @@
+package jp.co.sony.csl.dcoes.apis.main.app.mediator.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.shareddata.AsyncMap;
+import jp.co.sony.csl.dcoes.apis.common.Deal;
+import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
+import jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping;
+import jp.co.sony.csl.dcoes.apis.main.util.BinaryJsonCodec;
+import jp.co.sony.csl.dcoes.apis.main.util.SharedMapUtil;
+
+/**
+ * A tool for converting DEAL objects to and from the values stored in shared memory.
+ * DEAL objects have been stored as {@link JsonObject}, which is encoded to JSON text and encrypted on every access.
+ * With {@code POLICY.mediator.dealCodec.format} set to {@code binary}, they are stored as a compact binary form instead ( a Base64 string of {@link BinaryJsonCodec} ).
+ * Smaller values mean less encryption work and smaller backups of the cluster.
+ * Values of both forms are read regardless of the setting, so the setting can be changed during a rolling upgrade :
+ * first deploy this version everywhere with {@code json}, then switch POLICY to {@code binary}.
+ * {@code POLICY.mediator.dealCodec.version} keeps writing an older binary format version until every node knows the latest one.
+ * @author OES Project
+ *          
+ * DEAL オブジェクトと共有メモリに格納する値とを相互に変換するツール.
+ * DEAL オブジェクトはこれまで {@link JsonObject} として格納しておりアクセスのたびに JSON テキストへのエンコードと暗号化が行われていた.
+ * {@code POLICY.mediator.dealCodec.format} を {@code binary} にすると代わりにコンパクトなバイナリ形式 ( {@link BinaryJsonCodec} の Base64 文字列 ) で格納する.
+ * 値が小さいほど暗号化の処理が減りクラスタのバックアップも小さくなる.
+ * 設定にかかわらずどちらの形式の値も読めるのでローリングアップグレード中に設定を変更できる :
+ * まず {@code json} のまま全ノードにこのバージョンを配備し, その後 POLICY を {@code binary} に切り替える.
+ * {@code POLICY.mediator.dealCodec.version} で全ノードが最新のフォーマットバージョンを知るまで古いバイナリフォーマットバージョンで書き込み続けられる.
+ * @author OES Project
+ */
+public class DealCodec {
+	private static final Logger log = LoggerFactory.getLogger(DealCodec.class);
+
+	/**
+	 * The form of DEAL objects in shared memory.
+	 *          
+	 * 共有メモリ上の DEAL オブジェクトの形式.
+	 */
+	public enum Format {
+		/**
+		 * {@link JsonObject} as before.
+		 *          
+		 * これまで通り {@link JsonObject}.
+		 */
+		JSON,
+		/**
+		 * A Base64 string of {@link BinaryJsonCodec}.
+		 *          
+		 * {@link BinaryJsonCodec} の Base64 文字列.
+		 */
+		BINARY,
+	}
+
+	/**
+	 * Default form of DEAL objects in shared memory.
+	 * Value: {@value}.
+	 *          
+	 * 共有メモリ上の DEAL オブジェクトの形式のデフォルト値.
+	 * 値は {@value}.
+	 */
+	private static final JsonObjectUtil.DefaultString DEFAULT_FORMAT = new JsonObjectUtil.DefaultString("json");
+
+	/**
+	 * Keys of DEAL objects added in each binary format version.
+	 * Append-only : add a new list for new keys instead of changing existing ones.
+	 *          
+	 * 各バイナリフォーマットバージョンで追加した DEAL オブジェクトのキー.
+	 * 追記のみ : 既存のものは変更せず新しいキーは新しいリストとして追加すること.
+	 */
+	private static final List<List<String>> DICTIONARIES_ = Collections.singletonList(Arrays.asList(
+			"dealId", "type", "unitId", "negotiationId", "requestUnitId", "acceptUnitId", "requestDateTime", "acceptDateTime",
+			"requestPointPerWh", "acceptPointPerWh", "requestDealGridCurrentA", "acceptDealGridCurrentA",
+			"chargeUnitId", "dischargeUnitId", "pointPerWh", "chargeUnitEfficientGridVoltageV", "dischargeUnitEfficientGridVoltageV",
+			"dealGridCurrentA", "requestAmountWh", "acceptAmountWh", "dealAmountWh", "requestPairUnitId", "acceptPairUnitId",
+			"createDateTime", "activateDateTime", "rampUpDateTime", "warmUpDateTime", "startDateTime", "cumulateDateTime", "cumulateAmountWh",
+			"stopDateTime", "deactivateDateTime", "abortDateTime", "abortReason", "scramDateTime", "scramReason",
+			"isMaster", "reset", "abort", "dateTime", "reason", "needToStopReasons", "revision",
+			"chargeUnitCompensatedGridCurrentA", "dischargeUnitCompensatedGridCurrentA", "compensationTargetVoltageReferenceGridCurrentA"
+	));
+
+	private static final BinaryJsonCodec codec_ = new BinaryJsonCodec(DICTIONARIES_);
+
+	private DealCodec() { }
+
+	/**
+	 * Get the binary codec of DEAL objects.
+	 * @return the binary codec
+	 *          
+	 * DEAL オブジェクトのバイナリコーデックを取得する.
+	 * @return バイナリコーデック
+	 */
+	public static BinaryJsonCodec codec() {
+		return codec_;
+	}
+
+	/**
+	 * Get the form of DEAL objects to write, from POLICY.
+	 * @return the form
+	 *          
+	 * 書き込む DEAL オブジェクトの形式を POLICY から取得する.
+	 * @return 形式
+	 */
+	public static Format format() {
+		String value = PolicyKeeping.cache().getString(DEFAULT_FORMAT, "mediator", "dealCodec", "format");
+		try {
+			return Format.valueOf(value.toUpperCase());
+		} catch (Exception e) {
+			if (log.isWarnEnabled()) log.warn("bad POLICY.mediator.dealCodec.format : " + value);
+			return Format.JSON;
+		}
+	}
+	/**
+	 * Get the binary format version to write, from POLICY.
+	 * @return the binary format version
+	 *          
+	 * 書き込むバイナリフォーマットバージョンを POLICY から取得する.
+	 * @return バイナリフォーマットバージョン
+	 */
+	public static int version() {
+		int latest = codec_.latestVersion();
+		Integer value = PolicyKeeping.cache().getInteger(latest, "mediator", "dealCodec", "version");
+		if (value < 1 || latest < value) {
+			if (log.isWarnEnabled()) log.warn("bad POLICY.mediator.dealCodec.version : " + value);
+			return latest;
+		}
+		return value;
+	}
+
+	/**
+	 * Convert a DEAL object to the value stored in shared memory, in the form specified by POLICY.
+	 * @param deal a DEAL object
+	 * @return the value to store
+	 *          
+	 * DEAL オブジェクトを POLICY で指定した形式の共有メモリに格納する値に変換する.
+	 * @param deal DEAL オブジェクト
+	 * @return 格納する値
+	 */
+	public static Object toStored(JsonObject deal) {
+		return toStored(deal, format(), version());
+	}
+	/**
+	 * Convert a DEAL object to the value stored in shared memory.
+	 * @param deal a DEAL object
+	 * @param format the form
+	 * @param version the binary format version. Ignored for {@link Format#JSON}
+	 * @return the value to store
+	 *          
+	 * DEAL オブジェクトを共有メモリに格納する値に変換する.
+	 * @param deal DEAL オブジェクト
+	 * @param format 形式
+	 * @param version バイナリフォーマットバージョン. {@link Format#JSON} では無視する
+	 * @return 格納する値
+	 */
+	public static Object toStored(JsonObject deal, Format format, int version) {
+		if (deal == null || Format.JSON == format) return deal;
+		return Base64.getEncoder().encodeToString(codec_.encode(deal, version));
+	}
+	/**
+	 * Convert a value stored in shared memory to a DEAL object.
+	 * Values of both forms are accepted.
+	 * @param value a value stored in shared memory
+	 * @return the DEAL object
+	 * @throws IllegalArgumentException if {@code value} cannot be converted
+	 *          
+	 * 共有メモリに格納された値を DEAL オブジェクトに変換する.
+	 * どちらの形式の値も受け付ける.
+	 * @param value 共有メモリに格納された値
+	 * @return DEAL オブジェクト
+	 * @throws IllegalArgumentException {@code value} を変換できない場合
+	 */
+	public static JsonObject fromStored(Object value) {
+		if (value == null) return null;
+		if (value instanceof JsonObject) return (JsonObject) value;
+		if (value instanceof String) return codec_.decode(Base64.getDecoder().decode((String) value));
+		throw new IllegalArgumentException("unsupported stored value : " + value.getClass().getName());
+	}
+	/**
+	 * Get the form of a value stored in shared memory.
+	 * @param value a value stored in shared memory
+	 * @return {@code 0} for {@link Format#JSON}, or the binary format version. {@code null} if {@code value} is {@code null} or not a stored value
+	 *          
+	 * 共有メモリに格納された値の形式を取得する.
+	 * @param value 共有メモリに格納された値
+	 * @return {@link Format#JSON} なら {@code 0}, そうでなければバイナリフォーマットバージョン. {@code value} が {@code null} か格納された値でなければ {@code null}
+	 */
+	static Integer storedVersion_(Object value) {
+		if (value instanceof JsonObject) return 0;
+		if (value instanceof String && 4 <= ((String) value).length()) {
+			// The first four characters of Base64 hold the first byte, which is the format version
+			// Base64 の先頭四文字に先頭バイトすなわちフォーマットバージョンが入っている
+			return BinaryJsonCodec.versionOf(Base64.getDecoder().decode(((String) value).substring(0, 4)));
+		}
+		return null;
+	}
+	/**
+	 * Convert a DEAL object to the value stored in shared memory, in the form returned by {@link #storedVersion_(Object)}.
+	 * @param deal a DEAL object
+	 * @param storedVersion {@code 0} for {@link Format#JSON}, or the binary format version
+	 * @return the value to store
+	 *          
+	 * DEAL オブジェクトを {@link #storedVersion_(Object)} が返す形式の共有メモリに格納する値に変換する.
+	 * @param deal DEAL オブジェクト
+	 * @param storedVersion {@link Format#JSON} なら {@code 0}, そうでなければバイナリフォーマットバージョン
+	 * @return 格納する値
+	 */
+	static Object toStored_(JsonObject deal, int storedVersion) {
+		return (storedVersion == 0) ? deal : toStored(deal, Format.BINARY, storedVersion);
+	}
+	private static int writtenVersion_() {
+		return (Format.JSON == format()) ? 0 : version();
+	}
+
+	////
+
+	/**
+	 * Get a cluster-wide map of DEAL objects.
+	 * Values are converted by {@link #toStored(JsonObject)} and {@link #fromStored(Object)} on the way to and from the encrypted cluster-wide map.
+	 * Results are received with the {@link AsyncResult#result()} method of completionHandler.
+	 * @param vertx a vertx object
+	 * @param name the name of the map
+	 * @param completionHandler the completion handler
+	 *          
+	 * DEAL オブジェクトのクラスタ全体のマップを取得する.
+	 * 値は暗号化されたクラスタ全体のマップとの間で {@link #toStored(JsonObject)} と {@link #fromStored(Object)} で変換する.
+	 * completionHandler の {@link AsyncResult#result()} で受け取る.
+	 * @param vertx vertx オブジェクト
+	 * @param name マップの名前
+	 * @param completionHandler the completion handler
+	 */
+	public static void getMap(Vertx vertx, String name, Handler<AsyncResult<AsyncMap<String, JsonObject>>> completionHandler) {
+		SharedMapUtil.<String, Object>getMap(vertx, name, resMap -> {
+			if (resMap.succeeded()) {
+				completionHandler.handle(Future.succeededFuture(new DealMap_(name, resMap.result())));
+			} else {
+				completionHandler.handle(Future.failedFuture(resMap.cause()));
+			}
+		});
+	}
+
+	/**
+	 * The form of the value last read or written on this node, for each map and key.
+	 * Compare-and-set uses the expected value in that form, since the stored value may have been written in another form during a rolling upgrade.
+	 * Keys absent from the result of {@code keys()}, {@code values()} or {@code entries()} are forgotten, so that keys removed by other nodes do not pile up.
+	 *          
+	 * マップとキーごとの, このノードで最後に読んだか書いた値の形式.
+	 * ローリングアップグレード中は格納された値が別の形式で書き込まれている可能性があるので compare-and-set はこの形式の期待値を使う.
+	 * 他のノードが削除したキーが溜まらないよう {@code keys()}, {@code values()}, {@code entries()} の結果にないキーは忘れる.
+	 */
+	private static final Map<String, Map<String, Integer>> storedVersions_ = new ConcurrentHashMap<>();
+
+	private static class DealMap_ implements AsyncMap<String, JsonObject> {
+		private final AsyncMap<String, Object> map_;
+		private final Map<String, Integer> storedVersions_;
+		private DealMap_(String name, AsyncMap<String, Object> map) {
+			map_ = map;
+			storedVersions_ = DealCodec.storedVersions_.computeIfAbsent(name, n -> new ConcurrentHashMap<>());
+		}
+		@Override public void get(String k, Handler<AsyncResult<JsonObject>> resultHandler) {
+			map_.get(k, r -> {
+				if (r.succeeded()) read_(k, r.result());
+				resultHandler.handle(decoded_(r));
+			});
+		}
+		@Override public void put(String k, JsonObject v, Handler<AsyncResult<Void>> completionHandler) {
+			int storedVersion = writtenVersion_();
+			map_.put(k, toStored_(v, storedVersion), r -> {
+				if (r.succeeded()) storedVersions_.put(k, storedVersion);
+				completionHandler.handle(r);
+			});
+		}
+		@Override public void put(String k, JsonObject v, long ttl, Handler<AsyncResult<Void>> completionHandler) {
+			int storedVersion = writtenVersion_();
+			map_.put(k, toStored_(v, storedVersion), ttl, r -> {
+				if (r.succeeded()) storedVersions_.put(k, storedVersion);
+				completionHandler.handle(r);
+			});
+		}
+		@Override public void putIfAbsent(String k, JsonObject v, Handler<AsyncResult<JsonObject>> completionHandler) {
+			int storedVersion = writtenVersion_();
+			map_.putIfAbsent(k, toStored_(v, storedVersion), r -> {
+				if (r.succeeded()) putIfAbsentDone_(k, storedVersion, r.result());
+				completionHandler.handle(decoded_(r));
+			});
+		}
+		@Override public void putIfAbsent(String k, JsonObject v, long ttl, Handler<AsyncResult<JsonObject>> completionHandler) {
+			int storedVersion = writtenVersion_();
+			map_.putIfAbsent(k, toStored_(v, storedVersion), ttl, r -> {
+				if (r.succeeded()) putIfAbsentDone_(k, storedVersion, r.result());
+				completionHandler.handle(decoded_(r));
+			});
+		}
+		private void putIfAbsentDone_(String k, int storedVersion, Object existingValue) {
+			if (existingValue == null) {
+				storedVersions_.put(k, storedVersion);
+			} else {
+				read_(k, existingValue);
+			}
+		}
+		@Override public void remove(String k, Handler<AsyncResult<JsonObject>> resultHandler) {
+			map_.remove(k, r -> {
+				if (r.succeeded()) storedVersions_.remove(k);
+				resultHandler.handle(decoded_(r));
+			});
+		}
+		@Override public void removeIfPresent(String k, JsonObject v, Handler<AsyncResult<Boolean>> resultHandler) {
+			compareAndSet_(k, v, (expected, h) -> map_.removeIfPresent(k, expected, h), r -> {
+				if (r.succeeded() && r.result()) storedVersions_.remove(k);
+				resultHandler.handle(r);
+			});
+		}
+		@Override public void replace(String k, JsonObject v, Handler<AsyncResult<JsonObject>> resultHandler) {
+			int storedVersion = writtenVersion_();
+			map_.replace(k, toStored_(v, storedVersion), r -> {
+				if (r.succeeded()) {
+					if (r.result() != null) {
+						storedVersions_.put(k, storedVersion);
+					} else {
+						storedVersions_.remove(k);
+					}
+				}
+				resultHandler.handle(decoded_(r));
+			});
+		}
+		@Override public void replaceIfPresent(String k, JsonObject oldValue, JsonObject newValue, Handler<AsyncResult<Boolean>> resultHandler) {
+			int storedVersion = writtenVersion_();
+			Object newStoredValue = toStored_(newValue, storedVersion);
+			compareAndSet_(k, oldValue, (expected, h) -> map_.replaceIfPresent(k, expected, newStoredValue, h), r -> {
+				if (r.succeeded() && r.result()) storedVersions_.put(k, storedVersion);
+				resultHandler.handle(r);
+			});
+		}
+		/**
+		 * Compare-and-set with the expected value in the form of the stored value.
+		 * The form is the one last read or written on this node, or is read from the map if unknown.
+		 * If the attempt with a known form fails, the stored value is read and tried once more only if it has been rewritten in another form.
+		 * @param k the key
+		 * @param expected the expected DEAL object
+		 * @param compareAndSet the operation, which receives the expected stored value
+		 * @param resultHandler the result handler
+		 *          
+		 * 格納された値の形式の期待値で compare-and-set する.
+		 * 形式はこのノードで最後に読んだか書いたもので, わからなければマップから読む.
+		 * 既知の形式で失敗した場合は格納された値を読み, 別の形式で書き直されていた場合に限りもう一度だけ試す.
+		 * @param k キー
+		 * @param expected 期待する DEAL オブジェクト
+		 * @param compareAndSet 格納された値の期待値を受け取る操作
+		 * @param resultHandler the result handler
+		 */
+		private void compareAndSet_(String k, JsonObject expected, BiConsumer<Object, Handler<AsyncResult<Boolean>>> compareAndSet, Handler<AsyncResult<Boolean>> resultHandler) {
+			Integer knownVersion = storedVersions_.get(k);
+			if (knownVersion == null) {
+				compareAndSetInStoredForm_(k, expected, null, compareAndSet, resultHandler);
+			} else {
+				compareAndSet.accept(toStored_(expected, knownVersion), r -> {
+					if (r.succeeded() && !r.result()) {
+						compareAndSetInStoredForm_(k, expected, knownVersion, compareAndSet, resultHandler);
+					} else {
+						resultHandler.handle(r);
+					}
+				});
+			}
+		}
+		private void compareAndSetInStoredForm_(String k, JsonObject expected, Integer triedVersion, BiConsumer<Object, Handler<AsyncResult<Boolean>>> compareAndSet, Handler<AsyncResult<Boolean>> resultHandler) {
+			map_.get(k, r -> {
+				if (r.succeeded()) {
+					read_(k, r.result());
+					Integer storedVersion = storedVersion_(r.result());
+					if (storedVersion == null || storedVersion.equals(triedVersion)) {
+						// Absent, or already tried in this form
+						// 存在しないかこの形式で試し済み
+						resultHandler.handle(Future.succeededFuture(Boolean.FALSE));
+					} else {
+						compareAndSet.accept(toStored_(expected, storedVersion), resultHandler);
+					}
+				} else {
+					resultHandler.handle(Future.failedFuture(r.cause()));
+				}
+			});
+		}
+		private void read_(String k, Object value) {
+			Integer storedVersion = storedVersion_(value);
+			if (storedVersion != null) {
+				storedVersions_.put(k, storedVersion);
+			} else {
+				storedVersions_.remove(k);
+			}
+		}
+		/**
+		 * Forget the forms of the keys no longer in the map.
+		 * A key written by this node after the map has been read may be forgotten as well, in which case the form is read from the map on the next compare-and-set.
+		 * @param keys the keys in the map
+		 *          
+		 * マップにもうないキーの形式を忘れる.
+		 * マップを読んだ後にこのノードが書いたキーも忘れるかもしれないが, その場合は次の compare-and-set で形式をマップから読む.
+		 * @param keys マップにあるキーたち
+		 */
+		private void retain_(Set<String> keys) {
+			storedVersions_.keySet().retainAll(keys);
+		}
+		@Override public void clear(Handler<AsyncResult<Void>> resultHandler) {
+			map_.clear(r -> {
+				if (r.succeeded()) storedVersions_.clear();
+				resultHandler.handle(r);
+			});
+		}
+		@Override public void size(Handler<AsyncResult<Integer>> resultHandler) {
+			map_.size(resultHandler);
+		}
+		@Override public void keys(Handler<AsyncResult<Set<String>>> resultHandler) {
+			map_.keys(r -> {
+				if (r.succeeded()) retain_(r.result());
+				resultHandler.handle(r);
+			});
+		}
+		@Override public void values(Handler<AsyncResult<List<JsonObject>>> resultHandler) {
+			map_.values(r -> {
+				if (r.succeeded()) {
+					try {
+						List<JsonObject> result = new ArrayList<>(r.result().size());
+						Set<String> keys = new HashSet<>(r.result().size());
+						for (Object aValue : r.result()) {
+							JsonObject aDeal = fromStored(aValue);
+							// The key of a DEAL object is its dealId
+							// DEAL オブジェクトのキーは dealId
+							String aKey = Deal.dealId(aDeal);
+							if (aKey != null) {
+								read_(aKey, aValue);
+								keys.add(aKey);
+							}
+							result.add(aDeal);
+						}
+						retain_(keys);
+						resultHandler.handle(Future.succeededFuture(result));
+					} catch (Exception e) {
+						resultHandler.handle(Future.failedFuture(e));
+					}
+				} else {
+					resultHandler.handle(Future.failedFuture(r.cause()));
+				}
+			});
+		}
+		@Override public void entries(Handler<AsyncResult<Map<String, JsonObject>>> resultHandler) {
+			map_.entries(r -> {
+				if (r.succeeded()) {
+					try {
+						Map<String, JsonObject> result = new LinkedHashMap<>(r.result().size());
+						for (Map.Entry<String, Object> anEntry : r.result().entrySet()) {
+							read_(anEntry.getKey(), anEntry.getValue());
+							result.put(anEntry.getKey(), fromStored(anEntry.getValue()));
+						}
+						retain_(r.result().keySet());
+						resultHandler.handle(Future.succeededFuture(result));
+					} catch (Exception e) {
+						resultHandler.handle(Future.failedFuture(e));
+					}
+				} else {
+					resultHandler.handle(Future.failedFuture(r.cause()));
+				}
+			});
+		}
+		private static AsyncResult<JsonObject> decoded_(AsyncResult<Object> r) {
+			if (r.failed()) return Future.failedFuture(r.cause());
+			try {
+				return Future.succeededFuture(fromStored(r.result()));
+			} catch (Exception e) {
+				return Future.failedFuture(e);
+			}
+		}
+	}
+
+}
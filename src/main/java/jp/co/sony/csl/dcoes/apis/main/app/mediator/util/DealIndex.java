@@ -0,0 +1,368 @@
+package jp.co.sony.csl.dcoes.apis.main.app.mediator.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.vertx.core.json.JsonObject;
+import jp.co.sony.csl.dcoes.apis.common.Deal;
+
+/**
+ * An in-memory index over a list of DEAL objects, by unit, by the Master Deal flag and by lifecycle state.
+ * Each index is built in a single pass over the list when it is used for the first time, so a lookup costs in proportion to the DEAL objects found rather than to all of them.
+ * The list is referred to as it is and must not be structurally modified while indexed.
+ * The DEAL objects themselves may be changed in place.
+ * - The units of a DEAL object never change, so the unit index is always exact.
+ * - The Master Deal flag is checked again when read, and the list is scanned again if the indexed Master Deal is no longer one.
+ * - Lifecycle states are indexed as they were when first used or when {@link #reindex(JsonObject)} was last called for the DEAL object.
+ * @author OES Project
+ *          
+ * DEAL オブジェクトのリストに対するユニット, Master Deal フラグ, ライフサイクル状態のメモリ上の索引.
+ * 各索引は初めて使われた時にリストを一度走査して構築するので検索のコストは全ての DEAL オブジェクトではなく見つかった DEAL オブジェクトに比例する.
+ * リストはそのまま参照するので索引中に構造を変更してはならない.
+ * DEAL オブジェクト自体はその場で変更されても良い.
+ * - DEAL オブジェクトのユニットは変わらないのでユニットの索引は常に正確である.
+ * - Master Deal フラグは読み出し時に確認し直し, 索引の Master Deal がもはやそうでなければリストを走査し直す.
+ * - ライフサイクル状態は初めて使われた時点か最後にその DEAL オブジェクトの {@link #reindex(JsonObject)} を呼んだ時点のものを索引する.
+ * @author OES Project
+ */
+public class DealIndex {
+
+	/**
+	 * Lifecycle states of an interchange.
+	 * A DEAL object is in the latest state it has reached.
+	 * @author OES Project
+	 *          
+	 * 融通のライフサイクル状態.
+	 * DEAL オブジェクトは到達した最も新しい状態にある.
+	 * @author OES Project
+	 */
+	public enum State {
+		/**
+		 * Not yet activated.
+		 *          
+		 * まだ activate されていない.
+		 */
+		NOT_ACTIVATED,
+		/**
+		 * Activated.
+		 *          
+		 * activate 済み.
+		 */
+		ACTIVATED,
+		/**
+		 * Ramped up ( master-side activation completed ).
+		 *          
+		 * rampUp 済み ( master 側起動完了 ).
+		 */
+		RAMPED_UP,
+		/**
+		 * Warmed up ( slave-side activation completed ).
+		 *          
+		 * warmUp 済み ( slave 側起動完了 ).
+		 */
+		WARMED_UP,
+		/**
+		 * Started ( adding up interchange power ).
+		 *          
+		 * start 済み ( 融通電力の積算中 ).
+		 */
+		STARTED,
+		/**
+		 * Stopped.
+		 *          
+		 * stop 済み.
+		 */
+		STOPPED,
+		/**
+		 * Deactivated.
+		 *          
+		 * deactivate 済み.
+		 */
+		DEACTIVATED,
+	}
+
+	/**
+	 * Get the lifecycle state of a DEAL object.
+	 * @param deal a DEAL object
+	 * @return the lifecycle state
+	 *          
+	 * DEAL オブジェクトのライフサイクル状態を取得する.
+	 * @param deal DEAL オブジェクト
+	 * @return ライフサイクル状態
+	 */
+	public static State stateOf(JsonObject deal) {
+		if (Deal.isDeactivated(deal)) return State.DEACTIVATED;
+		if (Deal.isStopped(deal)) return State.STOPPED;
+		if (Deal.isStarted(deal)) return State.STARTED;
+		if (Deal.isWarmedUp(deal)) return State.WARMED_UP;
+		if (Deal.isRampedUp(deal)) return State.RAMPED_UP;
+		if (Deal.isActivated(deal)) return State.ACTIVATED;
+		return State.NOT_ACTIVATED;
+	}
+
+	/**
+	 * Get the other DEAL objects as an indexed list.
+	 * If {@code deals} is already one, it is returned as it is ; otherwise a new index over {@code deals} is made.
+	 * @param deals a list of DEAL objects
+	 * @return an indexed list of the DEAL objects
+	 *          
+	 * 他の DEAL オブジェクトたちを索引付きのリストとして取得する.
+	 * {@code deals} がすでにそうならそのまま返す. そうでなければ {@code deals} に対する索引を新たに作る.
+	 * @param deals DEAL オブジェクトのリスト
+	 * @return 索引付きの DEAL オブジェクトのリスト
+	 */
+	public static OtherDeals otherDeals(List<JsonObject> deals) {
+		return (deals instanceof OtherDeals) ? (OtherDeals) deals : new DealIndex(deals).otherDeals((JsonObject) null);
+	}
+
+	private final List<JsonObject> deals_;
+	private Map<String, List<JsonObject>> byUnitId_ = null;
+	private Map<State, List<JsonObject>> byState_ = null;
+	private Map<JsonObject, State> states_ = null;
+	private List<JsonObject> masters_ = null;
+	private Map<JsonObject, Integer> positions_ = null;
+
+	/**
+	 * Create an instance.
+	 * @param deals a list of DEAL objects
+	 *          
+	 * インスタンスを生成する.
+	 * @param deals DEAL オブジェクトのリスト
+	 */
+	public DealIndex(List<JsonObject> deals) {
+		deals_ = deals;
+	}
+
+	/**
+	 * Get all DEAL objects.
+	 * @return a new list of all DEAL objects
+	 *          
+	 * 全ての DEAL オブジェクトを取得する.
+	 * @return 全ての DEAL オブジェクトの新しいリスト
+	 */
+	public List<JsonObject> all() {
+		return new ArrayList<>(deals_);
+	}
+	/**
+	 * Get the DEAL objects in which the unit specified by {@code unitId} participates.
+	 * @param unitId the unit ID
+	 * @return a new list of DEAL objects
+	 *          
+	 * {@code unitId} で指定したユニットが参加している DEAL オブジェクトを取得する.
+	 * @param unitId ユニット ID
+	 * @return DEAL オブジェクトの新しいリスト
+	 */
+	public synchronized List<JsonObject> withUnitId(String unitId) {
+		if (byUnitId_ == null) buildUnitIndex_();
+		List<JsonObject> candidates = byUnitId_.get(unitId);
+		if (candidates == null) return new ArrayList<>();
+		List<JsonObject> result = new ArrayList<>(candidates.size());
+		for (JsonObject aDeal : candidates) {
+			if (Deal.isInvolved(aDeal, unitId)) result.add(aDeal);
+		}
+		return result;
+	}
+	/**
+	 * Get the Master Deal.
+	 * @return the DEAL object which is the Master Deal, or {@code null} if none
+	 *          
+	 * Master Deal を取得する.
+	 * @return Master Deal である DEAL オブジェクト. なければ {@code null}
+	 */
+	public synchronized JsonObject master() {
+		if (masters_ != null) {
+			for (JsonObject aDeal : masters_) {
+				if (Deal.isMaster(aDeal)) return aDeal;
+			}
+		}
+		// Not indexed yet, or the Master Deal has changed
+		// まだ索引していないか Master Deal が変わった
+		buildMasterIndex_();
+		return (masters_.isEmpty()) ? null : masters_.get(0);
+	}
+	/**
+	 * Get the DEAL objects in the lifecycle state specified by {@code state}.
+	 * DEAL objects that have left the state are excluded, but those that have entered it since indexed are included only after {@link #reindex(JsonObject)}.
+	 * @param state a lifecycle state
+	 * @return a new list of DEAL objects
+	 *          
+	 * {@code state} で指定したライフサイクル状態にある DEAL オブジェクトを取得する.
+	 * その状態を抜けた DEAL オブジェクトは除くが索引後にその状態に入ったものは {@link #reindex(JsonObject)} の後でなければ含まれない.
+	 * @param state ライフサイクル状態
+	 * @return DEAL オブジェクトの新しいリスト
+	 */
+	public synchronized List<JsonObject> withState(State state) {
+		if (byState_ == null) buildStateIndex_();
+		List<JsonObject> candidates = byState_.get(state);
+		List<JsonObject> result = new ArrayList<>(candidates.size());
+		for (JsonObject aDeal : candidates) {
+			if (stateOf(aDeal) == state) result.add(aDeal);
+		}
+		return result;
+	}
+	/**
+	 * Index the DEAL object again after it has been changed in place.
+	 * @param deal a DEAL object in the list
+	 *          
+	 * その場で変更された DEAL オブジェクトを索引し直す.
+	 * @param deal リスト中の DEAL オブジェクト
+	 */
+	public synchronized void reindex(JsonObject deal) {
+		if (byState_ != null) {
+			State old = states_.get(deal);
+			State state = stateOf(deal);
+			if (old != null && old != state) {
+				removeByIdentity_(byState_.get(old), deal);
+				byState_.get(state).add(deal);
+				states_.put(deal, state);
+			}
+		}
+		if (masters_ != null && Deal.isMaster(deal) && !containsByIdentity_(masters_, deal)) {
+			masters_.add(deal);
+		}
+	}
+	/**
+	 * Get the DEAL objects other than {@code deal} as an indexed list.
+	 * @param deal a DEAL object in the list, or {@code null} to exclude nothing
+	 * @return a list view sharing this index
+	 *          
+	 * {@code deal} 以外の DEAL オブジェクトを索引付きのリストとして取得する.
+	 * @param deal リスト中の DEAL オブジェクト. 何も除かないなら {@code null}
+	 * @return この索引を共有するリストのビュー
+	 */
+	public synchronized OtherDeals otherDeals(JsonObject deal) {
+		if (deal == null) return new OtherDeals(this, null, -1);
+		if (positions_ == null) buildPositions_();
+		Integer position = positions_.get(deal);
+		return new OtherDeals(this, (position != null) ? deal : null, (position != null) ? position : -1);
+	}
+
+	////
+
+	private void buildUnitIndex_() {
+		byUnitId_ = new HashMap<>();
+		for (JsonObject aDeal : deals_) {
+			String requestUnitId = Deal.requestUnitId(aDeal);
+			String acceptUnitId = Deal.acceptUnitId(aDeal);
+			if (requestUnitId != null) byUnitId_.computeIfAbsent(requestUnitId, k -> new ArrayList<>()).add(aDeal);
+			if (acceptUnitId != null && !acceptUnitId.equals(requestUnitId)) byUnitId_.computeIfAbsent(acceptUnitId, k -> new ArrayList<>()).add(aDeal);
+		}
+	}
+	private void buildMasterIndex_() {
+		masters_ = new ArrayList<>(1);
+		for (JsonObject aDeal : deals_) {
+			if (Deal.isMaster(aDeal)) masters_.add(aDeal);
+		}
+	}
+	private void buildStateIndex_() {
+		byState_ = new EnumMap<>(State.class);
+		states_ = new IdentityHashMap<>(deals_.size());
+		for (State aState : State.values()) {
+			byState_.put(aState, new ArrayList<>());
+		}
+		for (JsonObject aDeal : deals_) {
+			State state = stateOf(aDeal);
+			byState_.get(state).add(aDeal);
+			states_.put(aDeal, state);
+		}
+	}
+	private void buildPositions_() {
+		positions_ = new IdentityHashMap<>(deals_.size());
+		for (int i = 0; i < deals_.size(); i++) {
+			positions_.put(deals_.get(i), i);
+		}
+	}
+	private static boolean containsByIdentity_(List<JsonObject> list, JsonObject deal) {
+		for (JsonObject anElement : list) {
+			if (anElement == deal) return true;
+		}
+		return false;
+	}
+	private static void removeByIdentity_(List<JsonObject> list, JsonObject deal) {
+		for (int i = 0; i < list.size(); i++) {
+			if (list.get(i) == deal) {
+				list.remove(i);
+				return;
+			}
+		}
+	}
+
+	////
+
+	/**
+	 * An unmodifiable view of the indexed DEAL objects other than one.
+	 * Made without copying the list, and lookups use the shared index.
+	 * @author OES Project
+	 *          
+	 * 索引付きの DEAL オブジェクトのうち一つを除いたものの変更不可なビュー.
+	 * リストをコピーせずに作られ, 検索は共有の索引を使う.
+	 * @author OES Project
+	 */
+	public static class OtherDeals extends AbstractList<JsonObject> {
+		private final DealIndex index_;
+		private final JsonObject excluded_;
+		private final int position_;
+		private OtherDeals(DealIndex index, JsonObject excluded, int position) {
+			index_ = index;
+			excluded_ = excluded;
+			position_ = position;
+		}
+		@Override public JsonObject get(int index) {
+			return index_.deals_.get((0 <= position_ && position_ <= index) ? index + 1 : index);
+		}
+		@Override public int size() {
+			return (0 <= position_) ? index_.deals_.size() - 1 : index_.deals_.size();
+		}
+		/**
+		 * Get the DEAL objects in which the unit specified by {@code unitId} participates.
+		 * See {@link DealIndex#withUnitId(String)}.
+		 * @param unitId the unit ID
+		 * @return a new list of DEAL objects
+		 *          
+		 * {@code unitId} で指定したユニットが参加している DEAL オブジェクトを取得する.
+		 * {@link DealIndex#withUnitId(String)} 参照.
+		 * @param unitId ユニット ID
+		 * @return DEAL オブジェクトの新しいリスト
+		 */
+		public List<JsonObject> withUnitId(String unitId) {
+			return exclude_(index_.withUnitId(unitId));
+		}
+		/**
+		 * Get the Master Deal.
+		 * See {@link DealIndex#master()}.
+		 * @return the DEAL object which is the Master Deal, or {@code null} if none
+		 *          
+		 * Master Deal を取得する.
+		 * {@link DealIndex#master()} 参照.
+		 * @return Master Deal である DEAL オブジェクト. なければ {@code null}
+		 */
+		public JsonObject master() {
+			JsonObject result = index_.master();
+			return (result != excluded_) ? result : null;
+		}
+		/**
+		 * Get the DEAL objects in the lifecycle state specified by {@code state}.
+		 * See {@link DealIndex#withState(State)}.
+		 * @param state a lifecycle state
+		 * @return a new list of DEAL objects
+		 *          
+		 * {@code state} で指定したライフサイクル状態にある DEAL オブジェクトを取得する.
+		 * {@link DealIndex#withState(State)} 参照.
+		 * @param state ライフサイクル状態
+		 * @return DEAL オブジェクトの新しいリスト
+		 */
+		public List<JsonObject> withState(State state) {
+			return exclude_(index_.withState(state));
+		}
+		private List<JsonObject> exclude_(List<JsonObject> deals) {
+			if (excluded_ != null) removeByIdentity_(deals, excluded_);
+			return deals;
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package jp.co.sony.csl.dcoes.apis.main.app.mediator.util;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -11,17 +12,23 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.shareddata.Counter;
 import jp.co.sony.csl.dcoes.apis.common.Deal;
 import jp.co.sony.csl.dcoes.apis.common.Error;
 import jp.co.sony.csl.dcoes.apis.common.ErrorException;
-import jp.co.sony.csl.dcoes.apis.common.util.vertx.EncryptedClusterWideMapUtil;
+import jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping;
+import jp.co.sony.csl.dcoes.apis.main.app.gridmaster.MainLoop;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorExceptionUtil;
+import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
+import jp.co.sony.csl.dcoes.apis.main.util.SharedMapUtil;
 
 /**
  * A tool that uses shared memory to manage interchange stop requests from units participating in an interchange.
+ * Every change increments a cluster-wide counter, so that {@link #copyToDeals(Vertx, List, Handler)} reads the whole map only when something has changed.
  * @author OES Project
  *          
  * 融通参加ユニットからの融通停止依頼を共有メモリ上に管理するツール.
+ * 変更のたびにクラスタ全体のカウンタを増やし, {@link #copyToDeals(Vertx, List, Handler)} は何か変わったときだけマップ全体を読む.
  * @author OES Project
  */
 public class DealNeedToStopUtil {
@@ -36,6 +43,26 @@ public class DealNeedToStopUtil {
 	 * 値は {@value}.
 	 */
 	private static final long TTL_MSEC = 30L * 60L * 1000L; // 30 min
+	/**
+	 * The maximum age of the stop requests cached on this node, in periods of the GridMaster main loop.
+	 * {@link #copyToDeals(Vertx, List, Handler)} runs once per cycle and the next cycle starts one period after the previous one ends, so the age must span more than one period for the cache to hit at all.
+	 * Entries expired by {@link #TTL_MSEC} do not increment the counter, so the cache is read again after this age even if the counter has not changed ; an expired stop request is thus copied for at most this age beyond its ttl.
+	 * The same bound applies to a change whose counter increment failed.
+	 * Value: {@value}.
+	 *          
+	 * このノードでキャッシュした停止要求の最大寿命. GridMaster のメインループの周期単位.
+	 * {@link #copyToDeals(Vertx, List, Handler)} は一周期に一度実行され次の周期は前の周期の終了から一周期後に始まるので, そもそもキャッシュが当たるには一周期より長くなければならない.
+	 * {@link #TTL_MSEC} で期限切れになったエントリはカウンタを増やさないのでカウンタが変わっていなくてもこの寿命が過ぎたら読み直す. 期限切れの停止要求が ttl を超えて転記されるのは高々この寿命の間である.
+	 * カウンタを増やせなかった変更にも同じ上限が適用される.
+	 * 値は {@value}.
+	 */
+	private static final long CACHE_MAX_AGE_PERIODS = 3L;
+
+	private static final String COUNTER_NAME = MAP_NAME + ".version";
+	private static Counter counter_ = null;
+	private static Map<String, JsonArray> cachedEntries_ = null;
+	private static long cachedVersion_ = -1L;
+	private static long cachedAtMsec_ = 0L;
 
 	private DealNeedToStopUtil() { }
 
@@ -102,7 +129,7 @@ public class DealNeedToStopUtil {
 		}
 	}
 	private static void add_(Vertx vertx, String dealId, JsonArray reasons, Handler<AsyncResult<Void>> completionHandler) {
-		EncryptedClusterWideMapUtil.<String, JsonArray>getEncryptedClusterWideMap(vertx, MAP_NAME, resMap -> {
+		SharedMapUtil.<String, JsonArray>getMap(vertx, MAP_NAME, resMap -> {
 			if (resMap.succeeded()) {
 				resMap.result().get(dealId, resGet -> {
 					if (resGet.succeeded()) {
@@ -139,7 +166,7 @@ public class DealNeedToStopUtil {
 										// Successful replacement → OK
 										// 差し替え成功 → OK
 										if (log.isDebugEnabled()) log.debug("needToStop added with dealId : " + dealId);
-										completionHandler.handle(Future.succeededFuture());
+										changed_(vertx, completionHandler);
 									} else {
 										// Replacement failed because the old value has changed → Must have been added during this process → NG
 										// old の値が変わっていたので差し替え失敗 → この処理中に追加されたに違いない → NG
@@ -147,7 +174,7 @@ public class DealNeedToStopUtil {
 										completionHandler.handle(Future.failedFuture(msg));
 									}
 								} else {
-									ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resReplaceIfPresent.cause(), completionHandler);
+									SharedMapUtil.fail(Error.Extent.GLOBAL, resReplaceIfPresent.cause(), completionHandler);
 								}
 							});
 						} else {
@@ -162,7 +189,7 @@ public class DealNeedToStopUtil {
 										// Saved successfully → OK
 										// 保存成功 → OK
 										if (log.isDebugEnabled()) log.debug("needToStop added with dealId : " + dealId);
-										completionHandler.handle(Future.succeededFuture());
+										changed_(vertx, completionHandler);
 									} else {
 										// Save failed → Found a value that should not have been there originally → Must have been added during this process → NG
 										// 保存失敗 → もともとなかったはずなのにあった → この処理中に追加されたに違いない → NG
@@ -170,16 +197,16 @@ public class DealNeedToStopUtil {
 										completionHandler.handle(Future.failedFuture(msg));
 									}
 								} else {
-									ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resPutIfAbsent.cause(), completionHandler);
+									SharedMapUtil.fail(Error.Extent.GLOBAL, resPutIfAbsent.cause(), completionHandler);
 								}
 							});
 						}
 					} else {
-						ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resGet.cause(), completionHandler);
+						SharedMapUtil.fail(Error.Extent.GLOBAL, resGet.cause(), completionHandler);
 					}
 				});
 			} else {
-				ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resMap.cause(), completionHandler);
+				SharedMapUtil.fail(Error.Extent.GLOBAL, resMap.cause(), completionHandler);
 			}
 		});
 	}
@@ -198,22 +225,25 @@ public class DealNeedToStopUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void remove(Vertx vertx, String dealId, Handler<AsyncResult<JsonArray>> completionHandler) {
-		EncryptedClusterWideMapUtil.<String, JsonArray>getEncryptedClusterWideMap(vertx, MAP_NAME, resMap -> {
+		SharedMapUtil.<String, JsonArray>getMap(vertx, MAP_NAME, resMap -> {
 			if (resMap.succeeded()) {
 				resMap.result().remove(dealId, resRemove -> {
 					if (resRemove.succeeded()) {
 						if (resRemove.result() != null) {
 							if (log.isDebugEnabled()) log.debug("needToStop removed with dealId : " + dealId);
+							changed_(vertx, resChanged -> {
+								completionHandler.handle(resRemove);
+							});
 						} else {
 							if (log.isDebugEnabled()) log.debug("no needToStop with dealId : " + dealId);
+							completionHandler.handle(resRemove);
 						}
-						completionHandler.handle(resRemove);
 					} else {
-						ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resRemove.cause(), completionHandler);
+						SharedMapUtil.fail(Error.Extent.GLOBAL, resRemove.cause(), completionHandler);
 					}
 				});
 			} else {
-				ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resMap.cause(), completionHandler);
+				SharedMapUtil.fail(Error.Extent.GLOBAL, resMap.cause(), completionHandler);
 			}
 		});
 	}
@@ -222,37 +252,141 @@ public class DealNeedToStopUtil {
 
 	/**
 	 * Transfer the recorded stop request to the DEAL object.
+	 * The stop requests are read with a single {@link io.vertx.core.shareddata.AsyncMap#entries(Handler)} only if the counter has changed since the last read on this node.
 	 * @param vertx a vertx object
 	 * @param deals a list of DEAL objects
 	 * @param completionHandler the completion handler
 	 *          
 	 * 記録してある停止要求を DEAL オブジェクトに転記する.
+	 * 停止要求はこのノードでの前回の読み出しからカウンタが変わっている場合だけ一度の {@link io.vertx.core.shareddata.AsyncMap#entries(Handler)} で読む.
 	 * @param vertx vertx オブジェクト
 	 * @param deals DEAL オブジェクトのリスト
 	 * @param completionHandler the completion handler
 	 */
 	public static void copyToDeals(Vertx vertx, List<JsonObject> deals, Handler<AsyncResult<Void>> completionHandler) {
-		EncryptedClusterWideMapUtil.<String, JsonArray>getEncryptedClusterWideMap(vertx, MAP_NAME, resMap -> {
+		counter_(vertx, resCounter -> {
+			if (resCounter.succeeded()) {
+				resCounter.result().get(resGet -> {
+					if (resGet.succeeded()) {
+						long version = resGet.result();
+						Map<String, JsonArray> entries = cachedEntries_(version);
+						if (entries != null) {
+							copyToDeals_(entries, deals);
+							completionHandler.handle(Future.succeededFuture());
+						} else {
+							entries_(vertx, version, deals, completionHandler);
+						}
+					} else {
+						if (log.isWarnEnabled()) log.warn("failed to get " + COUNTER_NAME + " : " + resGet.cause());
+						entries_(vertx, null, deals, completionHandler);
+					}
+				});
+			} else {
+				if (log.isWarnEnabled()) log.warn("failed to get " + COUNTER_NAME + " : " + resCounter.cause());
+				entries_(vertx, null, deals, completionHandler);
+			}
+		});
+	}
+	private static void entries_(Vertx vertx, Long version, List<JsonObject> deals, Handler<AsyncResult<Void>> completionHandler) {
+		SharedMapUtil.<String, JsonArray>getMap(vertx, MAP_NAME, resMap -> {
 			if (resMap.succeeded()) {
 				resMap.result().entries(resEntries -> {
 					if (resEntries.succeeded()) {
 						Map<String, JsonArray> entries = resEntries.result();
-						for (String aDealId : entries.keySet()) {
-							for (JsonObject aDeal : deals) {
-								if (aDealId.equals(Deal.dealId(aDeal))) {
-									aDeal.put("needToStopReasons", entries.get(aDealId));
-									break;
-								}
-							}
-						}
+						if (version != null) cache_(version, entries);
+						copyToDeals_(entries, deals);
 						completionHandler.handle(Future.succeededFuture());
 					} else {
-						ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resEntries.cause(), completionHandler);
+						SharedMapUtil.fail(Error.Extent.GLOBAL, resEntries.cause(), completionHandler);
 					}
 				});
 			} else {
-				ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resMap.cause(), completionHandler);
+				SharedMapUtil.fail(Error.Extent.GLOBAL, resMap.cause(), completionHandler);
 			}
 		});
 	}
+	private static void copyToDeals_(Map<String, JsonArray> entries, List<JsonObject> deals) {
+		if (entries.isEmpty()) return;
+		for (JsonObject aDeal : deals) {
+			JsonArray reasons = entries.get(Deal.dealId(aDeal));
+			if (reasons != null) {
+				// Copy so that DEAL objects do not share the cached value
+				// DEAL オブジェクトがキャッシュした値を共有しないようコピーする
+				aDeal.put("needToStopReasons", reasons.copy());
+			}
+		}
+	}
+
+	////
+
+	private static synchronized Map<String, JsonArray> cachedEntries_(long version) {
+		if (cachedEntries_ != null && cachedVersion_ == version && System.currentTimeMillis() - cachedAtMsec_ < cacheMaxAgeMsec_()) {
+			return cachedEntries_;
+		}
+		return null;
+	}
+	/**
+	 * Get the maximum age [ms] of the cache.
+	 * {@code POLICY.gridMaster.mainLoopPeriodMsec} (default: {@link MainLoop#DEFAULT_MAIN_LOOP_PERIOD_MSEC}) x {@link #CACHE_MAX_AGE_PERIODS}, and never longer than {@link #TTL_MSEC}.
+	 * @return the maximum age [ms]
+	 *          
+	 * キャッシュの最大寿命 [ms] を取得する.
+	 * {@code POLICY.gridMaster.mainLoopPeriodMsec} ( デフォルト値 {@link MainLoop#DEFAULT_MAIN_LOOP_PERIOD_MSEC} ) x {@link #CACHE_MAX_AGE_PERIODS} で, {@link #TTL_MSEC} より長くはしない.
+	 * @return 最大寿命 [ms]
+	 */
+	private static long cacheMaxAgeMsec_() {
+		Long mainLoopPeriodMsec = PolicyKeeping.cache().getLong(MainLoop.DEFAULT_MAIN_LOOP_PERIOD_MSEC, "gridMaster", "mainLoopPeriodMsec");
+		return Math.min(mainLoopPeriodMsec * CACHE_MAX_AGE_PERIODS, TTL_MSEC);
+	}
+	private static synchronized void cache_(long version, Map<String, JsonArray> entries) {
+		// The counter was read before the entries, so a change in between is seen as a newer version next time
+		// カウンタはエントリより先に読んだので間の変更は次回新しいバージョンとして見える
+		cachedEntries_ = new HashMap<>(entries);
+		cachedVersion_ = version;
+		cachedAtMsec_ = System.currentTimeMillis();
+	}
+	private static synchronized void invalidate_() {
+		cachedEntries_ = null;
+	}
+	/**
+	 * Increment the counter after a change.
+	 * Never fails, because the map has already been changed.
+	 * If the counter cannot be incremented, the failure is reported, only the cache on this node is discarded, and other nodes pick up the change within {@link #cacheMaxAgeMsec_()}.
+	 * @param vertx a vertx object
+	 * @param completionHandler the completion handler
+	 *          
+	 * 変更後にカウンタを増やす.
+	 * マップは既に変更されているので失敗しない.
+	 * カウンタを増やせなかった場合は失敗を報告してこのノードのキャッシュだけを捨て, 他のノードは {@link #cacheMaxAgeMsec_()} 以内に変更を拾う.
+	 * @param vertx vertx オブジェクト
+	 * @param completionHandler the completion handler
+	 */
+	private static void changed_(Vertx vertx, Handler<AsyncResult<Void>> completionHandler) {
+		invalidate_();
+		counter_(vertx, resCounter -> {
+			if (resCounter.succeeded()) {
+				resCounter.result().incrementAndGet(resIncrementAndGet -> {
+					if (resIncrementAndGet.failed()) {
+						ErrorUtil.report(vertx, Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.WARN, "failed to increment " + COUNTER_NAME, resIncrementAndGet.cause());
+					}
+					completionHandler.handle(Future.succeededFuture());
+				});
+			} else {
+				ErrorUtil.report(vertx, Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.WARN, "failed to get " + COUNTER_NAME, resCounter.cause());
+				completionHandler.handle(Future.succeededFuture());
+			}
+		});
+	}
+	private static void counter_(Vertx vertx, Handler<AsyncResult<Counter>> completionHandler) {
+		Counter counter = counter_;
+		if (counter != null) {
+			completionHandler.handle(Future.succeededFuture(counter));
+		} else {
+			vertx.sharedData().getCounter(COUNTER_NAME, resCounter -> {
+				if (resCounter.succeeded()) counter_ = resCounter.result();
+				completionHandler.handle(resCounter);
+			});
+		}
+	}
+
 }
@@ -3,9 +3,13 @@ package jp.co.sony.csl.dcoes.apis.main.app.mediator.util;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
@@ -15,10 +19,12 @@ import io.vertx.core.logging.LoggerFactory;
 import jp.co.sony.csl.dcoes.apis.common.Deal;
 import jp.co.sony.csl.dcoes.apis.common.Error;
 import jp.co.sony.csl.dcoes.apis.common.util.DateTimeUtil;
-import jp.co.sony.csl.dcoes.apis.common.util.vertx.EncryptedClusterWideMapUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.LocalExclusiveLock;
+import jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorExceptionUtil;
+import jp.co.sony.csl.dcoes.apis.main.util.SharedMapProfiler;
+import jp.co.sony.csl.dcoes.apis.main.util.SharedMapUtil;
 
 /**
  * A tool for managing interchange information in shared memory.
@@ -30,44 +36,278 @@ import jp.co.sony.csl.dcoes.apis.main.util.ErrorExceptionUtil;
 public class DealUtil {
 	private static final Logger log = LoggerFactory.getLogger(DealUtil.class);
 
-	private static final LocalExclusiveLock exclusiveLock_ = new LocalExclusiveLock(DealUtil.class.getName());
 	/**
-	 * Acquire an exclusive lock.
+	 * The number of stripes of the exclusive lock.
+	 * DEAL objects are assigned to a stripe by the hash of the dealId.
+	 * Value: {@value}.
+	 *          
+	 * 排他ロックのストライプ数.
+	 * DEAL オブジェクトは dealId のハッシュでストライプに割り当てる.
+	 * 値は {@value}.
+	 */
+	private static final int EXCLUSIVE_LOCK_STRIPES_ = 16;
+	/**
+	 * Default number of retries of a change to a DEAL object that conflicts with a change by someone else.
+	 * Value: {@value}.
+	 *          
+	 * 他者の変更と衝突した DEAL オブジェクトの変更のリトライ回数のデフォルト値.
+	 * 値は {@value}.
+	 */
+	private static final Integer DEFAULT_UPDATE_RETRY_LIMIT = 3;
+
+	private static final LocalExclusiveLock[] exclusiveLocks_ = new LocalExclusiveLock[EXCLUSIVE_LOCK_STRIPES_];
+	static {
+		for (int i = 0; i < EXCLUSIVE_LOCK_STRIPES_; i++) {
+			exclusiveLocks_[i] = new LocalExclusiveLock(DealUtil.class.getName() + '.' + i);
+		}
+	}
+	/**
+	 * Acquire the exclusive lock of the DEAL object specified by {@code dealId}.
+	 * Locks are striped by dealId, so updates of unrelated DEAL objects are not serialized behind a single lock.
 	 * Results are received with the {@link AsyncResult#result()} method of completionHandler.
 	 * @param vertx a vertx object
+	 * @param dealId an interchange ID
 	 * @param completionHandler the completion handler
 	 *          
-	 * 排他ロックを獲得する.
+	 * {@code dealId} で指定する DEAL オブジェクトの排他ロックを獲得する.
+	 * ロックは dealId でストライプされるので無関係な DEAL オブジェクトの更新が一つのロックで直列化されることはない.
 	 * completionHandler の {@link AsyncResult#result()} で受け取る.
 	 * @param vertx vertx オブジェクト
+	 * @param dealId 融通 ID
 	 * @param completionHandler the completion handler
 	 */
-	public static void acquireExclusiveLock(Vertx vertx, Handler<AsyncResult<LocalExclusiveLock.Lock>> completionHandler) {
-		exclusiveLock_.acquire(vertx, completionHandler);
+	public static void acquireExclusiveLock(Vertx vertx, String dealId, Handler<AsyncResult<LocalExclusiveLock.Lock>> completionHandler) {
+		SharedMapProfiler.acquire(vertx, exclusiveLocks_[Math.floorMod(dealId.hashCode(), EXCLUSIVE_LOCK_STRIPES_)], DealUtil.class.getName(), completionHandler);
 	}
 	/**
-	 * Reset an exclusive lock.
+	 * Reset all the exclusive locks.
 	 * @param vertx a vertx object
 	 *          
-	 * 排他ロックをリセットする.
+	 * 全ての排他ロックをリセットする.
 	 * @param vertx vertx オブジェクト
 	 */
 	public static void resetExclusiveLock(Vertx vertx) {
-		exclusiveLock_.reset(vertx);
+		for (LocalExclusiveLock anExclusiveLock : exclusiveLocks_) {
+			anExclusiveLock.reset(vertx);
+		}
 	}
 
 	private static final String MAP_NAME = DealUtil.class.getName();
 
+	private static final DealCache cache_ = new DealCache(MAP_NAME);
+	/**
+	 * Get the near-cache of DEAL objects on this node.
+	 * @return the near-cache
+	 *          
+	 * このノードの DEAL オブジェクトのキャッシュを取得する.
+	 * @return キャッシュ
+	 */
+	public static DealCache cache() {
+		return cache_;
+	}
+
+	private static volatile DealBatch batch_ = null;
+
 	private DealUtil() { }
 
+	/**
+	 * Get the revision of the DEAL object.
+	 * The revision starts at {@code 0} when the DEAL object is stored and is increased by one every time it is updated in shared memory.
+	 * A DEAL object without a revision ( stored by an older version for example ) is regarded as revision {@code 0}.
+	 * @param deal a DEAL object
+	 * @return the revision
+	 *          
+	 * DEAL オブジェクトのリビジョンを取得する.
+	 * リビジョンは DEAL オブジェクトの格納時に {@code 0} で始まり共有メモリ上で更新されるたびに一つ増える.
+	 * リビジョンを持たない DEAL オブジェクト ( 旧バージョンで格納されたものなど ) はリビジョン {@code 0} とみなす.
+	 * @param deal DEAL オブジェクト
+	 * @return リビジョン
+	 */
+	public static long revision(JsonObject deal) {
+		Long result = deal.getLong("revision");
+		return (result != null) ? result : 0L;
+	}
+
+	/**
+	 * Open a batch of changes to DEAL objects.
+	 * Only one batch can be open at a time ; an open batch is replaced.
+	 * @return the batch
+	 *          
+	 * DEAL オブジェクトの変更のバッチを開く.
+	 * 同時に開けるバッチは一つだけ. 開いているバッチは置き換えられる.
+	 * @return バッチ
+	 */
+	public static DealBatch beginBatch() {
+		DealBatch result = new DealBatch();
+		batch_ = result;
+		return result;
+	}
+	/**
+	 * Track the DEAL object in the open batch.
+	 * To be called right after the DEAL object has been read from shared memory ; its content at this time is used as the expected value of the compare-and-set.
+	 * Nothing is done if no batch is open.
+	 * @param deal a DEAL object
+	 *          
+	 * 開いているバッチで DEAL オブジェクトを追跡する.
+	 * 共有メモリから読んだ直後に呼ぶこと. この時の内容を compare-and-set の期待値として使う.
+	 * バッチが開いていなければ何もしない.
+	 * @param deal DEAL オブジェクト
+	 */
+	public static void track(JsonObject deal) {
+		DealBatch batch = batch_;
+		if (batch != null) batch.track_(deal);
+	}
+	/**
+	 * Commit the changes staged in the open batch.
+	 * Each DEAL object is written with {@code replaceIfPresent} against the value read when tracked, without reading it again, and its revision is increased by one.
+	 * All of them are written concurrently without an exclusive lock, and other nodes are notified once.
+	 * The results of the DEAL objects are received by dealId with the {@link AsyncResult#result()} method of completionHandler.
+	 * A DEAL object that has been changed by someone else since it was tracked fails.
+	 * A DEAL object that no longer exists has already been disposed of, so its change is dropped without an error.
+	 * @param vertx a vertx object
+	 * @param completionHandler the completion handler
+	 *          
+	 * 開いているバッチに溜めた変更を書き込む.
+	 * 各 DEAL オブジェクトは読み直さずに追跡時に読んだ値に対する {@code replaceIfPresent} で書き込みリビジョンを一つ増やす.
+	 * 排他ロックを取らずに全てを並行して書き込み, 他のノードへは一度だけ通知する.
+	 * completionHandler の {@link AsyncResult#result()} で DEAL オブジェクトごとの結果を dealId をキーに受け取る.
+	 * 追跡後に他者に変更された DEAL オブジェクトは失敗する.
+	 * もう存在しない DEAL オブジェクトはすでに破棄されているので変更はエラーにせず捨てる.
+	 * @param vertx vertx オブジェクト
+	 * @param completionHandler the completion handler
+	 */
+	public static void commitBatch(Vertx vertx, Handler<AsyncResult<Map<String, AsyncResult<Void>>>> completionHandler) {
+		DealBatch batch = batch_;
+		List<JsonObject[]> staged = (batch != null) ? batch.takeStaged_() : new ArrayList<>();
+		commit_(vertx, batch, staged, completionHandler);
+	}
+	/**
+	 * Write the change to a DEAL object staged in the open batch and stop tracking it.
+	 * To be called before the DEAL object is disposed of, so that the disposal ( and the deal log ) sees all of its changes.
+	 * Later changes to {@code deal} are written immediately.
+	 * Nothing is done if {@code deal} is not tracked by the open batch.
+	 * @param vertx a vertx object
+	 * @param deal a DEAL object
+	 * @param completionHandler the completion handler
+	 *          
+	 * 開いているバッチに溜めた DEAL オブジェクトの変更を書き込み追跡をやめる.
+	 * 破棄 ( および融通ログ ) が全ての変更を見られるよう DEAL オブジェクトを破棄する前に呼ぶこと.
+	 * 以降の {@code deal} の変更はすぐに書き込まれる.
+	 * {@code deal} を開いているバッチで追跡していなければ何もしない.
+	 * @param vertx vertx オブジェクト
+	 * @param deal DEAL オブジェクト
+	 * @param completionHandler the completion handler
+	 */
+	public static void flush(Vertx vertx, JsonObject deal, Handler<AsyncResult<Void>> completionHandler) {
+		DealBatch batch = batch_;
+		JsonObject[] staged = (batch != null) ? batch.untrack_(deal) : null;
+		if (staged == null) {
+			completionHandler.handle(Future.succeededFuture());
+			return;
+		}
+		commit_(vertx, null, Collections.singletonList(staged), resCommit -> {
+			if (resCommit.succeeded()) {
+				AsyncResult<Void> result = resCommit.result().get(Deal.dealId(deal));
+				if (result != null && result.succeeded()) {
+					deal.put("revision", revision(staged[1]));
+				}
+				completionHandler.handle((result != null) ? result : Future.succeededFuture());
+			} else {
+				completionHandler.handle(Future.failedFuture(resCommit.cause()));
+			}
+		});
+	}
+	private static void commit_(Vertx vertx, DealBatch batch, List<JsonObject[]> staged, Handler<AsyncResult<Map<String, AsyncResult<Void>>>> completionHandler) {
+		if (staged.isEmpty()) {
+			completionHandler.handle(Future.succeededFuture(new LinkedHashMap<>()));
+			return;
+		}
+		DealCodec.getMap(vertx, MAP_NAME, resMap -> {
+			if (resMap.succeeded()) {
+				Map<String, AsyncResult<Void>> results = new LinkedHashMap<>();
+				List<String> dealIds = new ArrayList<>(staged.size());
+				@SuppressWarnings("rawtypes") List<Future> futures = new ArrayList<>(staged.size());
+				for (JsonObject[] anEntry : staged) {
+					JsonObject expected = anEntry[0];
+					JsonObject deal = anEntry[1];
+					String dealId = Deal.dealId(deal);
+					deal.put("revision", revision(expected) + 1);
+					Future<Void> future = Future.future();
+					futures.add(future);
+					resMap.result().replaceIfPresent(dealId, expected, deal, resReplaceIfPresent -> {
+						if (resReplaceIfPresent.succeeded()) {
+							if (resReplaceIfPresent.result()) {
+								if (log.isInfoEnabled()) log.info("deal updated : " + dealId);
+								if (batch != null) batch.committed_(expected, deal);
+								synchronized (dealIds) {
+									dealIds.add(dealId);
+								}
+								future.complete();
+							} else {
+								resMap.result().get(dealId, resGet -> {
+									if (resGet.failed()) {
+										SharedMapUtil.fail(Error.Extent.GLOBAL, resGet.cause(), future);
+									} else if (resGet.result() == null) {
+										// Already disposed of
+										// すでに破棄されていた
+										if (log.isInfoEnabled()) log.info("deal already disposed : " + dealId);
+										future.complete();
+									} else {
+										// Replacement failed because the value has been changed since it was tracked
+										// 追跡後に値が変わっていたので差し替え失敗
+										String msg = "DealUtil.commitBatch(); failed to replace with dealId : " + dealId;
+										ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, msg, future);
+									}
+								});
+							}
+						} else {
+							SharedMapUtil.fail(Error.Extent.GLOBAL, resReplaceIfPresent.cause(), future);
+						}
+					});
+					results.put(dealId, future);
+				}
+				// Wait for all of them regardless of failures
+				// 失敗にかかわらず全ての完了を待つ
+				CompositeFuture.join(futures).setHandler(resJoin -> {
+					if (dealIds.isEmpty()) {
+						completionHandler.handle(Future.succeededFuture(results));
+					} else {
+						cache_.changed(vertx, dealIds, resChanged -> completionHandler.handle(Future.succeededFuture(results)));
+					}
+				});
+			} else {
+				SharedMapUtil.fail(Error.Extent.GLOBAL, resMap.cause(), completionHandler);
+			}
+		});
+	}
+	/**
+	 * Commit the changes staged in the open batch and close it.
+	 * See {@link #commitBatch(Vertx, Handler)}.
+	 * @param vertx a vertx object
+	 * @param completionHandler the completion handler
+	 *          
+	 * 開いているバッチに溜めた変更を書き込みバッチを閉じる.
+	 * {@link #commitBatch(Vertx, Handler)} 参照.
+	 * @param vertx vertx オブジェクト
+	 * @param completionHandler the completion handler
+	 */
+	public static void endBatch(Vertx vertx, Handler<AsyncResult<Map<String, AsyncResult<Void>>>> completionHandler) {
+		commitBatch(vertx, res -> {
+			batch_ = null;
+			completionHandler.handle(res);
+		});
+	}
+
 	/**
 	 * Store DEAL information in shared memory.
+	 * The revision of {@code deal} is set to {@code 0}.
 	 * Global error if a DEAL with the same ID already exists.
 	 * @param vertx a vertx object
 	 * @param deal a DEAL object
 	 * @param completionHandler the completion handler
 	 *          
 	 * DEAL 情報を共有メモリに格納する.
+	 * {@code deal} のリビジョンを {@code 0} にする.
 	 * 同じ ID の DEAL がすでに存在していたらグローバルエラー.
 	 * @param vertx vertx オブジェクト
 	 * @param deal DEAL オブジェクト
@@ -76,24 +316,25 @@ public class DealUtil {
 	public static void add(Vertx vertx, JsonObject deal, Handler<AsyncResult<Void>> completionHandler) {
 		String dealId = Deal.dealId(deal);
 		if (dealId != null) {
-			EncryptedClusterWideMapUtil.<String, JsonObject>getEncryptedClusterWideMap(vertx, MAP_NAME, resMap -> {
+			deal.put("revision", 0L);
+			DealCodec.getMap(vertx, MAP_NAME, resMap -> {
 				if (resMap.succeeded()) {
 					resMap.result().putIfAbsent(dealId, deal, resPutIfAbsent -> {
 						if (resPutIfAbsent.succeeded()) {
 							JsonObject existingValue = resPutIfAbsent.result();
 							if (existingValue == null) {
 								if (log.isInfoEnabled()) log.info("deal created : " + dealId);
-								completionHandler.handle(Future.succeededFuture());
+								cache_.changed(vertx, dealId, completionHandler);
 							} else {
 								String msg = "DealUtil.add(); deal already exists with same id : " + dealId;
 								ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, msg, completionHandler);
 							}
 						} else {
-							ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resPutIfAbsent.cause(), completionHandler);
+							SharedMapUtil.fail(Error.Extent.GLOBAL, resPutIfAbsent.cause(), completionHandler);
 						}
 					});
 				} else {
-					ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resMap.cause(), completionHandler);
+					SharedMapUtil.fail(Error.Extent.GLOBAL, resMap.cause(), completionHandler);
 				}
 			});
 		} else {
@@ -103,60 +344,48 @@ public class DealUtil {
 
 	/**
 	 * Get all DEAL objects stored in shared memory.
+	 * Read through {@link DealCache} ( see {@link DealCache#values(Vertx, Handler)} ).
 	 * Results are received with the {@link AsyncResult#result()} method of completionHandler.
 	 * @param vertx a vertx object
 	 * @param completionHandler the completion handler
 	 *          
 	 * 共有メモリに格納されている DEAL オブジェクトを全て取得する.
+	 * {@link DealCache} を経由して読む ( {@link DealCache#values(Vertx, Handler)} 参照 ).
 	 * completionHandler の {@link AsyncResult#result()} で受け取る.
 	 * @param vertx vertx オブジェクト
 	 * @param completionHandler the completion handler
 	 */
 	public static void all(Vertx vertx, Handler<AsyncResult<List<JsonObject>>> completionHandler) {
-		EncryptedClusterWideMapUtil.<String, JsonObject>getEncryptedClusterWideMap(vertx, MAP_NAME, resMap -> {
-			if (resMap.succeeded()) {
-				resMap.result().values(completionHandler);
-			} else {
-				ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resMap.cause(), completionHandler);
-			}
-		});
+		cache_.values(vertx, completionHandler);
 	}
 
 	/**
 	 * Get the Master Deal from shared memory.
+	 * Read through {@link DealCache} ( see {@link DealCache#master(Vertx, Handler)} ).
 	 * Results are received with the {@link AsyncResult#result()} method of completionHandler.
 	 * @param vertx a vertx object
 	 * @param completionHandler the completion handler
 	 *          
 	 * 共有メモリから Master Deal を取得する.
+	 * {@link DealCache} を経由して読む ( {@link DealCache#master(Vertx, Handler)} 参照 ).
 	 * completionHandler の {@link AsyncResult#result()} で受け取る.
 	 * @param vertx vertx オブジェクト
 	 * @param completionHandler the completion handler
 	 */
 	public static void master(Vertx vertx, Handler<AsyncResult<JsonObject>> completionHandler) {
-		all(vertx, resAll -> {
-			if (resAll.succeeded()) {
-				for (JsonObject aDeal : resAll.result()) {
-					if (Deal.isMaster(aDeal)) {
-						completionHandler.handle(Future.succeededFuture(aDeal));
-						return;
-					}
-				}
-				completionHandler.handle(Future.succeededFuture());
-			} else {
-				completionHandler.handle(Future.failedFuture(resAll.cause()));
-			}
-		});
+		cache_.master(vertx, completionHandler);
 	}
 
 	/**
 	 * Get the DEAL object in which the unit specified by {@code unitId} participates from shared memory.
+	 * Read through {@link DealCache} ( see {@link DealCache#withUnitId(Vertx, String, Handler)} ).
 	 * Results are received with the {@link AsyncResult#result()} method of completionHandler.
 	 * @param vertx a vertx object
 	 * @param unitId the unit ID
 	 * @param completionHandler the completion handler
 	 *          
 	 * {@code unitId} で指定したユニットが参加している DEAL オブジェクトを共有メモリから取得する.
+	 * {@link DealCache} を経由して読む ( {@link DealCache#withUnitId(Vertx, String, Handler)} 参照 ).
 	 * completionHandler の {@link AsyncResult#result()} で受け取る.
 	 * @param vertx vertx オブジェクト
 	 * @param unitId ユニット ID
@@ -164,19 +393,7 @@ public class DealUtil {
 	 */
 	public static void withUnitId(Vertx vertx, String unitId, Handler<AsyncResult<List<JsonObject>>> completionHandler) {
 		if (unitId != null) {
-			all(vertx, resAll -> {
-				if (resAll.succeeded()) {
-					List<JsonObject> result = new ArrayList<JsonObject>();
-					for (JsonObject aDeal : resAll.result()) {
-						if (Deal.isInvolved(aDeal, unitId)) {
-							result.add(aDeal);
-						}
-					}
-					completionHandler.handle(Future.succeededFuture(result));
-				} else {
-					completionHandler.handle(Future.failedFuture(resAll.cause()));
-				}
-			});
+			cache_.withUnitId(vertx, unitId, completionHandler);
 		} else {
 			ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.withUnitId(); no unitId", completionHandler);
 		}
@@ -223,7 +440,7 @@ public class DealUtil {
 	 */
 	public static void get(Vertx vertx, String dealId, boolean ignoreNotExists, Handler<AsyncResult<JsonObject>> completionHandler) {
 		if (dealId != null) {
-			EncryptedClusterWideMapUtil.<String, JsonObject>getEncryptedClusterWideMap(vertx, MAP_NAME, resMap -> {
+			DealCodec.getMap(vertx, MAP_NAME, resMap -> {
 				if (resMap.succeeded()) {
 					resMap.result().get(dealId, resGet -> {
 						if (resGet.succeeded()) {
@@ -240,11 +457,11 @@ public class DealUtil {
 								}
 							}
 						} else {
-							ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resGet.cause(), completionHandler);
+							SharedMapUtil.fail(Error.Extent.GLOBAL, resGet.cause(), completionHandler);
 						}
 					});
 				} else {
-					ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resMap.cause(), completionHandler);
+					SharedMapUtil.fail(Error.Extent.GLOBAL, resMap.cause(), completionHandler);
 				}
 			});
 		} else {
@@ -271,6 +488,9 @@ public class DealUtil {
 	/**
 	 * Update shared memory with the contents of the DEAL object specified by {@code deal}.
 	 * If it doesn't exist, handle according to the state of {@code ignoreNotExists}.
+	 * The revision of {@code deal} must be the current one ; if it has been changed by someone else since {@code deal} was read, raise a global error.
+	 * On success the revision of {@code deal} is increased by one.
+	 * If {@code deal} is tracked by the open batch, the change is only staged and written by {@link #commitBatch(Vertx, Handler)}.
 	 * @param vertx a vertx object
 	 * @param deal a DEAL object
 	 * @param ignoreNotExists the action to take if the specified DEAL does not exist
@@ -280,6 +500,9 @@ public class DealUtil {
 	 *          
 	 * {@code deal} で指定する DEAL オブジェクトの内容で共有メモリを更新する.
 	 * 存在しない場合は {@code ignoreNotExists} に応じて対応する.
+	 * {@code deal} のリビジョンは現在のものでなければならない. {@code deal} を読んだ後に他者に変更されていたらグローバルエラーにする.
+	 * 成功すると {@code deal} のリビジョンが一つ増える.
+	 * {@code deal} を開いているバッチで追跡中なら変更は溜めるだけで {@link #commitBatch(Vertx, Handler)} で書き込まれる.
 	 * @param vertx vertx オブジェクト
 	 * @param deal DEAL オブジェクト
 	 * @param ignoreNotExists 指定した DEAL が存在しない場合の挙動
@@ -288,64 +511,120 @@ public class DealUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void update(Vertx vertx, JsonObject deal, boolean ignoreNotExists, Handler<AsyncResult<Void>> completionHandler) {
-		acquireExclusiveLock(vertx, resExclusiveLock -> {
-			if (resExclusiveLock.succeeded()) {
-				LocalExclusiveLock.Lock lock = resExclusiveLock.result();
-				doUpdateWithExclusiveLock_(vertx, deal, ignoreNotExists, resDoUpdateWithExclusiveLock -> {
-					lock.release();
-					completionHandler.handle(resDoUpdateWithExclusiveLock);
-				});
+		doUpdate_(vertx, deal, ignoreNotExists, resDoUpdate -> {
+			if (resDoUpdate.succeeded()) {
+				if (resDoUpdate.result()) {
+					completionHandler.handle(Future.succeededFuture());
+				} else {
+					String msg = "DealUtil.update(); revision conflict with dealId : " + Deal.dealId(deal) + ", revision : " + revision(deal);
+					ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, msg, completionHandler);
+				}
 			} else {
-				ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.WARN, resExclusiveLock.cause(), completionHandler);
+				completionHandler.handle(Future.failedFuture(resDoUpdate.cause()));
 			}
 		});
 	}
-	private static void doUpdateWithExclusiveLock_(Vertx vertx, JsonObject deal, boolean ignoreNotExists, Handler<AsyncResult<Void>> completionHandler) {
+	/**
+	 * Update shared memory with the contents of the DEAL object specified by {@code deal} if its revision is the current one.
+	 * Results are received with the {@link AsyncResult#result()} method of completionHandler.
+	 * {@code false} if it has been changed by someone else since {@code deal} was read ; nothing is written and {@code deal} is left as it is.
+	 * @param vertx a vertx object
+	 * @param deal a DEAL object
+	 * @param ignoreNotExists the action to take if the specified DEAL does not exist
+	 * @param completionHandler the completion handler
+	 *          
+	 * {@code deal} のリビジョンが現在のものなら {@code deal} で指定する DEAL オブジェクトの内容で共有メモリを更新する.
+	 * completionHandler の {@link AsyncResult#result()} で受け取る.
+	 * {@code deal} を読んだ後に他者に変更されていたら {@code false}. 何も書き込まず {@code deal} もそのまま.
+	 * @param vertx vertx オブジェクト
+	 * @param deal DEAL オブジェクト
+	 * @param ignoreNotExists 指定した DEAL が存在しない場合の挙動
+	 * @param completionHandler the completion handler
+	 */
+	private static void doUpdate_(Vertx vertx, JsonObject deal, boolean ignoreNotExists, Handler<AsyncResult<Boolean>> completionHandler) {
+		DealBatch batch = batch_;
+		if (batch != null && batch.stage_(deal)) {
+			// Tracked by the open batch ; only stage it
+			// 開いているバッチで追跡中. 溜めるだけ
+			if (log.isDebugEnabled()) log.debug("deal staged : " + Deal.dealId(deal));
+			completionHandler.handle(Future.succeededFuture(Boolean.TRUE));
+			return;
+		}
 		String dealId = Deal.dealId(deal);
 		if (dealId != null) {
-			EncryptedClusterWideMapUtil.<String, JsonObject>getEncryptedClusterWideMap(vertx, MAP_NAME, resMap -> {
-				if (resMap.succeeded()) {
-					resMap.result().get(dealId, resGet -> {
-						if (resGet.succeeded()) {
-							JsonObject old = resGet.result();
-							if (old != null) {
-								resMap.result().replaceIfPresent(dealId, old, deal, resReplaceIfPresent -> {
-									if (resReplaceIfPresent.succeeded()) {
-										Boolean replaced = resReplaceIfPresent.result();
-										if (replaced) {
-											if (log.isInfoEnabled()) log.info("deal updated : " + dealId);
-											completionHandler.handle(Future.succeededFuture());
-										} else {
-											// Replacement failed because the old value has changed
-											// old の値が変わっていたので差し替え失敗
-											String msg = "DealUtil.update(); failed to replace with dealId : " + dealId;
-											ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, msg, completionHandler);
-										}
-									} else {
-										ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resReplaceIfPresent.cause(), completionHandler);
-									}
-								});
-							} else {
-								String msg = "DealUtil.update(); no deal found with dealId : " + dealId;
-								if (ignoreNotExists) {
-									ErrorExceptionUtil.log(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.WARN, msg);
-									completionHandler.handle(Future.succeededFuture());
-								} else {
-									ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, msg, completionHandler);
-								}
-							}
-						} else {
-							ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resGet.cause(), completionHandler);
-						}
+			acquireExclusiveLock(vertx, dealId, resExclusiveLock -> {
+				if (resExclusiveLock.succeeded()) {
+					LocalExclusiveLock.Lock lock = resExclusiveLock.result();
+					doUpdateWithExclusiveLock_(vertx, dealId, deal, ignoreNotExists, resDoUpdateWithExclusiveLock -> {
+						lock.release();
+						completionHandler.handle(resDoUpdateWithExclusiveLock);
 					});
 				} else {
-					ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resMap.cause(), completionHandler);
+					ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.WARN, resExclusiveLock.cause(), completionHandler);
 				}
 			});
 		} else {
 			ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.update(); no dealId in deal : " + deal, completionHandler);
 		}
 	}
+	private static void doUpdateWithExclusiveLock_(Vertx vertx, String dealId, JsonObject deal, boolean ignoreNotExists, Handler<AsyncResult<Boolean>> completionHandler) {
+		DealCodec.getMap(vertx, MAP_NAME, resMap -> {
+			if (resMap.succeeded()) {
+				resMap.result().get(dealId, resGet -> {
+					if (resGet.succeeded()) {
+						JsonObject old = resGet.result();
+						if (old != null) {
+							long revision = revision(deal);
+							if (revision(old) != revision) {
+								// Changed by someone else since deal was read
+								// deal を読んだ後に他者に変更されていた
+								if (log.isInfoEnabled()) log.info("deal revision conflict : " + dealId + ", revision : " + revision + ", current revision : " + revision(old));
+								completionHandler.handle(Future.succeededFuture(Boolean.FALSE));
+								return;
+							}
+							deal.put("revision", revision + 1);
+							resMap.result().replaceIfPresent(dealId, old, deal, resReplaceIfPresent -> {
+								if (resReplaceIfPresent.succeeded()) {
+									Boolean replaced = resReplaceIfPresent.result();
+									if (replaced) {
+										if (log.isInfoEnabled()) log.info("deal updated : " + dealId + ", revision : " + (revision + 1));
+										cache_.changed(vertx, dealId, resChanged -> {
+											if (resChanged.succeeded()) {
+												completionHandler.handle(Future.succeededFuture(Boolean.TRUE));
+											} else {
+												completionHandler.handle(Future.failedFuture(resChanged.cause()));
+											}
+										});
+									} else {
+										// Replacement failed because the old value has been changed by someone else in the meantime
+										// その間に old の値が他者に変更されていたので差し替え失敗
+										deal.put("revision", revision);
+										if (log.isInfoEnabled()) log.info("deal revision conflict : " + dealId + ", revision : " + revision);
+										completionHandler.handle(Future.succeededFuture(Boolean.FALSE));
+									}
+								} else {
+									deal.put("revision", revision);
+									SharedMapUtil.fail(Error.Extent.GLOBAL, resReplaceIfPresent.cause(), completionHandler);
+								}
+							});
+						} else {
+							String msg = "DealUtil.update(); no deal found with dealId : " + dealId;
+							if (ignoreNotExists) {
+								ErrorExceptionUtil.log(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.WARN, msg);
+								completionHandler.handle(Future.succeededFuture(Boolean.TRUE));
+							} else {
+								ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, msg, completionHandler);
+							}
+						}
+					} else {
+						SharedMapUtil.fail(Error.Extent.GLOBAL, resGet.cause(), completionHandler);
+					}
+				});
+			} else {
+				SharedMapUtil.fail(Error.Extent.GLOBAL, resMap.cause(), completionHandler);
+			}
+		});
+	}
 
 	/**
 	 * Delete the DEAL object specified by {@code dealId} from shared memory.
@@ -388,7 +667,7 @@ public class DealUtil {
 	 */
 	public static void remove(Vertx vertx, String dealId, boolean ignoreNotExists, Handler<AsyncResult<JsonObject>> completionHandler) {
 		if (dealId != null) {
-			EncryptedClusterWideMapUtil.<String, JsonObject>getEncryptedClusterWideMap(vertx, MAP_NAME, resMap -> {
+			DealCodec.getMap(vertx, MAP_NAME, resMap -> {
 				if (resMap.succeeded()) {
 					resMap.result().get(dealId, resGet -> {
 						if (resGet.succeeded()) {
@@ -399,13 +678,13 @@ public class DealUtil {
 										Boolean removed = resRemoveIfPresent.result();
 										if (removed) {
 											if (log.isInfoEnabled()) log.info("deal removed : " + dealId);
-											completionHandler.handle(Future.succeededFuture());
+											cache_.changed(vertx, dealId, resChanged -> completionHandler.handle(Future.succeededFuture()));
 										} else {
 											String msg = "DealUtil.remove(); failed to remove with dealId : " + dealId;
 											ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, msg, completionHandler);
 										}
 									} else {
-										ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resRemoveIfPresent.cause(), completionHandler);
+										SharedMapUtil.fail(Error.Extent.GLOBAL, resRemoveIfPresent.cause(), completionHandler);
 									}
 								});
 							} else {
@@ -418,11 +697,11 @@ public class DealUtil {
 								}
 							}
 						} else {
-							ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resGet.cause(), completionHandler);
+							SharedMapUtil.fail(Error.Extent.GLOBAL, resGet.cause(), completionHandler);
 						}
 					});
 				} else {
-					ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.GLOBAL, Error.Level.ERROR, "Communication failed on SharedData", resMap.cause(), completionHandler);
+					SharedMapUtil.fail(Error.Extent.GLOBAL, resMap.cause(), completionHandler);
 				}
 			});
 		} else {
@@ -432,6 +711,65 @@ public class DealUtil {
 
 	////
 
+	/**
+	 * Apply a change to the DEAL object specified by {@code deal} and update shared memory.
+	 * {@code mutation} validates {@code deal} and changes it, then completes with {@code true}, or with {@code false} if there is nothing to do.
+	 * If the update conflicts with a change by someone else, {@code deal} is read again from shared memory and {@code mutation} is applied again up to POLICY.mediator.dealUpdate.retryLimit times.
+	 * @param vertx a vertx object
+	 * @param deal a DEAL object
+	 * @param mutation the change
+	 * @param completionHandler the completion handler
+	 *          
+	 * {@code deal} で指定する DEAL オブジェクトに変更を適用し共有メモリを更新する.
+	 * {@code mutation} は {@code deal} を検査して変更し {@code true} で, 何もすることがなければ {@code false} で完了する.
+	 * 更新が他者の変更と衝突したら {@code deal} を共有メモリから読み直し POLICY.mediator.dealUpdate.retryLimit 回まで {@code mutation} を適用し直す.
+	 * @param vertx vertx オブジェクト
+	 * @param deal DEAL オブジェクト
+	 * @param mutation 変更
+	 * @param completionHandler the completion handler
+	 */
+	private static void mutate_(Vertx vertx, JsonObject deal, Handler<Future<Boolean>> mutation, Handler<AsyncResult<Void>> completionHandler) {
+		Integer retryLimit = PolicyKeeping.cache().getInteger(DEFAULT_UPDATE_RETRY_LIMIT, "mediator", "dealUpdate", "retryLimit");
+		doMutate_(vertx, deal, mutation, retryLimit, completionHandler);
+	}
+	private static void doMutate_(Vertx vertx, JsonObject deal, Handler<Future<Boolean>> mutation, int retryLimit, Handler<AsyncResult<Void>> completionHandler) {
+		Future<Boolean> future = Future.future();
+		future.setHandler(resMutation -> {
+			if (resMutation.succeeded()) {
+				if (resMutation.result()) {
+					doUpdate_(vertx, deal, false, resDoUpdate -> {
+						if (resDoUpdate.succeeded()) {
+							if (resDoUpdate.result()) {
+								completionHandler.handle(Future.succeededFuture());
+							} else if (0 < retryLimit) {
+								// Read it again and apply the change again
+								// 読み直して変更を適用し直す
+								get(vertx, Deal.dealId(deal), resGet -> {
+									if (resGet.succeeded()) {
+										deal.clear().mergeIn(resGet.result());
+										doMutate_(vertx, deal, mutation, retryLimit - 1, completionHandler);
+									} else {
+										completionHandler.handle(Future.failedFuture(resGet.cause()));
+									}
+								});
+							} else {
+								String msg = "DealUtil.update(); revision conflict with dealId : " + Deal.dealId(deal) + ", revision : " + revision(deal);
+								ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, msg, completionHandler);
+							}
+						} else {
+							completionHandler.handle(Future.failedFuture(resDoUpdate.cause()));
+						}
+					});
+				} else {
+					completionHandler.handle(Future.succeededFuture());
+				}
+			} else {
+				completionHandler.handle(Future.failedFuture(resMutation.cause()));
+			}
+		});
+		mutation.handle(future);
+	}
+
 	/**
 	 * Put the DEAL object specified by {@code deal} into the "activated" state and update shared memory.
 	 * @param vertx a vertx object
@@ -446,13 +784,15 @@ public class DealUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void activate(Vertx vertx, JsonObject deal, String dateTime, Handler<AsyncResult<Void>> completionHandler) {
-		if (!Deal.isActivated(deal)) {
-			deal.put("activateDateTime", dateTime);
-			if (log.isInfoEnabled()) log.info("deal activated");
-			update(vertx, deal, completionHandler);
-		} else {
-			ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.activate(); already activated : " + Deal.activateDateTime(deal), completionHandler);
-		}
+		mutate_(vertx, deal, mutation -> {
+			if (!Deal.isActivated(deal)) {
+				deal.put("activateDateTime", dateTime);
+				if (log.isInfoEnabled()) log.info("deal activated");
+				mutation.complete(Boolean.TRUE);
+			} else {
+				ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.activate(); already activated : " + Deal.activateDateTime(deal), mutation);
+			}
+		}, completionHandler);
 	}
 	/**
 	 * Put the DEAL object specified by {@code deal} into the "rampUp" state (complete master-side activation), and update shared memory.
@@ -468,13 +808,15 @@ public class DealUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void rampUp(Vertx vertx, JsonObject deal, String dateTime, Handler<AsyncResult<Void>> completionHandler) {
-		if (!Deal.isRampedUp(deal)) {
-			deal.put("rampUpDateTime", dateTime);
-			if (log.isInfoEnabled()) log.info("deal ramped up");
-			update(vertx, deal, completionHandler);
-		} else {
-			ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.rampUp(); already ramped up : " + Deal.rampUpDateTime(deal), completionHandler);
-		}
+		mutate_(vertx, deal, mutation -> {
+			if (!Deal.isRampedUp(deal)) {
+				deal.put("rampUpDateTime", dateTime);
+				if (log.isInfoEnabled()) log.info("deal ramped up");
+				mutation.complete(Boolean.TRUE);
+			} else {
+				ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.rampUp(); already ramped up : " + Deal.rampUpDateTime(deal), mutation);
+			}
+		}, completionHandler);
 	}
 	/**
 	 * Put the DEAL object specified by {@code deal} into the "warmUp" state (complete slave-side activation), and update shared memory.
@@ -490,13 +832,15 @@ public class DealUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void warmUp(Vertx vertx, JsonObject deal, String dateTime, Handler<AsyncResult<Void>> completionHandler) {
-		if (!Deal.isWarmedUp(deal)) {
-			deal.put("warmUpDateTime", dateTime);
-			if (log.isInfoEnabled()) log.info("deal warmed up");
-			update(vertx, deal, completionHandler);
-		} else {
-			ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.warmUp(); already warmed up : " + Deal.warmUpDateTime(deal), completionHandler);
-		}
+		mutate_(vertx, deal, mutation -> {
+			if (!Deal.isWarmedUp(deal)) {
+				deal.put("warmUpDateTime", dateTime);
+				if (log.isInfoEnabled()) log.info("deal warmed up");
+				mutation.complete(Boolean.TRUE);
+			} else {
+				ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.warmUp(); already warmed up : " + Deal.warmUpDateTime(deal), mutation);
+			}
+		}, completionHandler);
 	}
 	/**
 	 * Put the DEAL object specified by {@code deal} into the "started" state (start summing) and update shared memory.
@@ -512,19 +856,21 @@ public class DealUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void start(Vertx vertx, JsonObject deal, String dateTime, Handler<AsyncResult<Void>> completionHandler) {
-		if (Deal.isActivated(deal)) {
-			if (!Deal.isStarted(deal)) {
-				deal.put("startDateTime", dateTime);
-				deal.put("cumulateDateTime", dateTime);
-				deal.put("cumulateAmountWh", 0);
-				if (log.isInfoEnabled()) log.info("deal started");
-				update(vertx, deal, completionHandler);
+		mutate_(vertx, deal, mutation -> {
+			if (Deal.isActivated(deal)) {
+				if (!Deal.isStarted(deal)) {
+					deal.put("startDateTime", dateTime);
+					deal.put("cumulateDateTime", dateTime);
+					deal.put("cumulateAmountWh", 0);
+					if (log.isInfoEnabled()) log.info("deal started");
+					mutation.complete(Boolean.TRUE);
+				} else {
+					ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.start(); already started : " + Deal.startDateTime(deal), mutation);
+				}
 			} else {
-				ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.start(); already started : " + Deal.startDateTime(deal), completionHandler);
+				ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.start(); not yet activated", mutation);
 			}
-		} else {
-			ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.start(); not yet activated", completionHandler);
-		}
+		}, completionHandler);
 	}
 	private static final int HOUR_IN_MILLISECOND_ = 60 * 60 * 1000;
 	/**
@@ -543,32 +889,34 @@ public class DealUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void cumulate(Vertx vertx, JsonObject deal, String dateTime, Float wb, Handler<AsyncResult<Void>> completionHandler) {
-		if (Deal.isActivated(deal)) {
-			if (Deal.isStarted(deal)) {
-				if (!Deal.isStopped(deal)) {
-					LocalDateTime currentDateTime = DateTimeUtil.toLocalDateTime(dateTime);
-					LocalDateTime lastCumulateDateTime = JsonObjectUtil.getLocalDateTime(deal, "cumulateDateTime");
-					Float lastCumulateAmountWh = deal.getFloat("cumulateAmountWh");
-					if (currentDateTime != null && lastCumulateDateTime != null && lastCumulateAmountWh != null && wb != null) {
-						Duration duration = Duration.between(lastCumulateDateTime, currentDateTime);
-						long milliseconds = duration.toMillis();
-						float cumulateAmountWh = wb * milliseconds / HOUR_IN_MILLISECOND_ + lastCumulateAmountWh;
-						deal.put("cumulateDateTime", dateTime);
-						deal.put("cumulateAmountWh", cumulateAmountWh);
-						if (log.isInfoEnabled()) log.info("deal cumulated : " + cumulateAmountWh + " / " + deal.getInteger("dealAmountWh"));
-						update(vertx, deal, completionHandler);
+		mutate_(vertx, deal, mutation -> {
+			if (Deal.isActivated(deal)) {
+				if (Deal.isStarted(deal)) {
+					if (!Deal.isStopped(deal)) {
+						LocalDateTime currentDateTime = DateTimeUtil.toLocalDateTime(dateTime);
+						LocalDateTime lastCumulateDateTime = JsonObjectUtil.getLocalDateTime(deal, "cumulateDateTime");
+						Float lastCumulateAmountWh = deal.getFloat("cumulateAmountWh");
+						if (currentDateTime != null && lastCumulateDateTime != null && lastCumulateAmountWh != null && wb != null) {
+							Duration duration = Duration.between(lastCumulateDateTime, currentDateTime);
+							long milliseconds = duration.toMillis();
+							float cumulateAmountWh = wb * milliseconds / HOUR_IN_MILLISECOND_ + lastCumulateAmountWh;
+							deal.put("cumulateDateTime", dateTime);
+							deal.put("cumulateAmountWh", cumulateAmountWh);
+							if (log.isInfoEnabled()) log.info("deal cumulated : " + cumulateAmountWh + " / " + deal.getInteger("dealAmountWh"));
+							mutation.complete(Boolean.TRUE);
+						} else {
+							ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.cumulate(); data deficiency; wb : " + wb + ", currentDateTime : " + currentDateTime + ", lastCumulateDateTime : " + lastCumulateDateTime + ", lastCumulateAmountWh : " + lastCumulateAmountWh, mutation);
+						}
 					} else {
-						ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.cumulate(); data deficiency; wb : " + wb + ", currentDateTime : " + currentDateTime + ", lastCumulateDateTime : " + lastCumulateDateTime + ", lastCumulateAmountWh : " + lastCumulateAmountWh, completionHandler);
+						ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.cumulate(); already stopped : " + Deal.stopDateTime(deal), mutation);
 					}
 				} else {
-					ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.cumulate(); already stopped : " + Deal.stopDateTime(deal), completionHandler);
+					ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.cumulate(); not yet started", mutation);
 				}
 			} else {
-				ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.cumulate(); not yet started", completionHandler);
+				ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.cumulate(); not yet activated", mutation);
 			}
-		} else {
-			ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.cumulate(); not yet activated", completionHandler);
-		}
+		}, completionHandler);
 	}
 	/**
 	 * Put the DEAL object specified by {@code deal} into the "stopped" state and update shared memory.
@@ -584,21 +932,23 @@ public class DealUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void stop(Vertx vertx, JsonObject deal, String dateTime, Handler<AsyncResult<Void>> completionHandler) {
-		if (Deal.isActivated(deal)) {
-			if (Deal.isStarted(deal)) {
-				if (!Deal.isStopped(deal)) {
-					deal.put("stopDateTime", dateTime);
-					if (log.isInfoEnabled()) log.info("deal stopped");
-					update(vertx, deal, completionHandler);
+		mutate_(vertx, deal, mutation -> {
+			if (Deal.isActivated(deal)) {
+				if (Deal.isStarted(deal)) {
+					if (!Deal.isStopped(deal)) {
+						deal.put("stopDateTime", dateTime);
+						if (log.isInfoEnabled()) log.info("deal stopped");
+						mutation.complete(Boolean.TRUE);
+					} else {
+						ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.stop(); already stopped : " + Deal.stopDateTime(deal), mutation);
+					}
 				} else {
-					ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.stop(); already stopped : " + Deal.stopDateTime(deal), completionHandler);
+					ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.stop(); not yet started", mutation);
 				}
 			} else {
-				ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.stop(); not yet started", completionHandler);
+				ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.stop(); not yet activated", mutation);
 			}
-		} else {
-			ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.stop(); not yet activated", completionHandler);
-		}
+		}, completionHandler);
 	}
 	/**
 	 * Put the DEAL object specified by {@code deal} into the "deactivated" state and update shared memory.
@@ -614,26 +964,28 @@ public class DealUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void deactivate(Vertx vertx, JsonObject deal, String dateTime, Handler<AsyncResult<Void>> completionHandler) {
-		if (Deal.isActivated(deal)) {
-			if (!Deal.isStarted(deal) || Deal.isStopped(deal)) {
-				if (!Deal.isDeactivated(deal)) {
-					deal.put("deactivateDateTime", dateTime);
-					if (!Deal.isStarted(deal)) {
-						deal.put("startDateTime", Deal.NULL_DATE_TIME_VALUE);
-						deal.put("stopDateTime", Deal.NULL_DATE_TIME_VALUE);
+		mutate_(vertx, deal, mutation -> {
+			if (Deal.isActivated(deal)) {
+				if (!Deal.isStarted(deal) || Deal.isStopped(deal)) {
+					if (!Deal.isDeactivated(deal)) {
+						deal.put("deactivateDateTime", dateTime);
+						if (!Deal.isStarted(deal)) {
+							deal.put("startDateTime", Deal.NULL_DATE_TIME_VALUE);
+							deal.put("stopDateTime", Deal.NULL_DATE_TIME_VALUE);
+						}
+						deal.remove("isMaster");
+						if (log.isInfoEnabled()) log.info("deal deactivated");
+						mutation.complete(Boolean.TRUE);
+					} else {
+						ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.deactivate(); already deactivated : " + Deal.deactivateDateTime(deal), mutation);
 					}
-					deal.remove("isMaster");
-					if (log.isInfoEnabled()) log.info("deal deactivated");
-					update(vertx, deal, completionHandler);
 				} else {
-					ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.deactivate(); already deactivated : " + Deal.deactivateDateTime(deal), completionHandler);
+					ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.deactivate(); started but not yet stopped : " + Deal.startDateTime(deal), mutation);
 				}
 			} else {
-				ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.deactivate(); started but not yet stopped : " + Deal.startDateTime(deal), completionHandler);
+				ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.deactivate(); not yet activated", mutation);
 			}
-		} else {
-			ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "DealUtil.deactivate(); not yet activated", completionHandler);
-		}
+		}, completionHandler);
 	}
 	/**
 	 * Put the DEAL object specified by {@code deal} into the "reset" state and update shared memory.
@@ -651,19 +1003,21 @@ public class DealUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void reset(Vertx vertx, JsonObject deal, String dateTime, String reason, Handler<AsyncResult<Void>> completionHandler) {
-		deal.remove("activateDateTime");
-		deal.remove("rampUpDateTime");
-		deal.remove("warmUpDateTime");
-		deal.remove("startDateTime");
-		deal.remove("stopDateTime");
-		deal.remove("deactivateDateTime");
-		deal.remove("isMaster");
-		JsonObject reset = new JsonObject();
-		reset.put("dateTime", dateTime);
-		reset.put("reason", reason);
-		JsonObjectUtil.add(deal, reset, "reset");
-		if (log.isInfoEnabled()) log.info("deal reset; reason : " + reason);
-		update(vertx, deal, completionHandler);
+		mutate_(vertx, deal, mutation -> {
+			deal.remove("activateDateTime");
+			deal.remove("rampUpDateTime");
+			deal.remove("warmUpDateTime");
+			deal.remove("startDateTime");
+			deal.remove("stopDateTime");
+			deal.remove("deactivateDateTime");
+			deal.remove("isMaster");
+			JsonObject reset = new JsonObject();
+			reset.put("dateTime", dateTime);
+			reset.put("reason", reason);
+			JsonObjectUtil.add(deal, reset, "reset");
+			if (log.isInfoEnabled()) log.info("deal reset; reason : " + reason);
+			mutation.complete(Boolean.TRUE);
+		}, completionHandler);
 	}
 	/**
 	 * Put the DEAL object specified by {@code deal} into the "aborted" state and update shared memory.
@@ -681,28 +1035,30 @@ public class DealUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void abort(Vertx vertx, JsonObject deal, String dateTime, String reason, Handler<AsyncResult<Void>> completionHandler) {
-		if (!Deal.isDeactivated(deal)) {
-			if (!Deal.isAborted(deal)) {
-				deal.put("abortDateTime", dateTime);
-				deal.put("abortReason", reason);
-			}
-			JsonObject abort = new JsonObject();
-			abort.put("dateTime", dateTime);
-			abort.put("reason", reason);
-			JsonObjectUtil.add(deal, abort, "abort");
-			if (!Deal.isActivated(deal)) {
-				deal.put("activateDateTime", Deal.NULL_DATE_TIME_VALUE);
-				deal.put("deactivateDateTime", Deal.NULL_DATE_TIME_VALUE);
-			}
-			if (!Deal.isStarted(deal)) {
-				deal.put("startDateTime", Deal.NULL_DATE_TIME_VALUE);
-				deal.put("stopDateTime", Deal.NULL_DATE_TIME_VALUE);
+		mutate_(vertx, deal, mutation -> {
+			if (!Deal.isDeactivated(deal)) {
+				if (!Deal.isAborted(deal)) {
+					deal.put("abortDateTime", dateTime);
+					deal.put("abortReason", reason);
+				}
+				JsonObject abort = new JsonObject();
+				abort.put("dateTime", dateTime);
+				abort.put("reason", reason);
+				JsonObjectUtil.add(deal, abort, "abort");
+				if (!Deal.isActivated(deal)) {
+					deal.put("activateDateTime", Deal.NULL_DATE_TIME_VALUE);
+					deal.put("deactivateDateTime", Deal.NULL_DATE_TIME_VALUE);
+				}
+				if (!Deal.isStarted(deal)) {
+					deal.put("startDateTime", Deal.NULL_DATE_TIME_VALUE);
+					deal.put("stopDateTime", Deal.NULL_DATE_TIME_VALUE);
+				}
+				if (log.isInfoEnabled()) log.info("deal aborted; reason : " + reason);
+				mutation.complete(Boolean.TRUE);
+			} else {
+				mutation.complete(Boolean.FALSE);
 			}
-			if (log.isInfoEnabled()) log.info("deal aborted; reason : " + reason);
-			update(vertx, deal, completionHandler);
-		} else {
-			completionHandler.handle(Future.succeededFuture());
-		}
+		}, completionHandler);
 	}
 	/**
 	 * Put the DEAL object specified by {@code deal} into the "SCRAM" state and update shared memory.
@@ -720,26 +1076,28 @@ public class DealUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void scram(Vertx vertx, JsonObject deal, String dateTime, String reason, Handler<AsyncResult<Void>> completionHandler) {
-		if (!Deal.isDeactivated(deal)) {
-			deal.put("scramDateTime", dateTime);
-			deal.put("scramReason", reason);
-			if (!Deal.isActivated(deal)) {
-				deal.put("activateDateTime", Deal.NULL_DATE_TIME_VALUE);
-				deal.put("deactivateDateTime", Deal.NULL_DATE_TIME_VALUE);
-			} else if (!Deal.isDeactivated(deal)) {
-				deal.put("deactivateDateTime", dateTime);
-			}
-			if (!Deal.isStarted(deal)) {
-				deal.put("startDateTime", Deal.NULL_DATE_TIME_VALUE);
-				deal.put("stopDateTime", Deal.NULL_DATE_TIME_VALUE);
-			} else if (!Deal.isStopped(deal)) {
-				deal.put("stopDateTime", dateTime);
+		mutate_(vertx, deal, mutation -> {
+			if (!Deal.isDeactivated(deal)) {
+				deal.put("scramDateTime", dateTime);
+				deal.put("scramReason", reason);
+				if (!Deal.isActivated(deal)) {
+					deal.put("activateDateTime", Deal.NULL_DATE_TIME_VALUE);
+					deal.put("deactivateDateTime", Deal.NULL_DATE_TIME_VALUE);
+				} else if (!Deal.isDeactivated(deal)) {
+					deal.put("deactivateDateTime", dateTime);
+				}
+				if (!Deal.isStarted(deal)) {
+					deal.put("startDateTime", Deal.NULL_DATE_TIME_VALUE);
+					deal.put("stopDateTime", Deal.NULL_DATE_TIME_VALUE);
+				} else if (!Deal.isStopped(deal)) {
+					deal.put("stopDateTime", dateTime);
+				}
+				if (log.isInfoEnabled()) log.info("deal scrammed; reason : " + reason);
+				mutation.complete(Boolean.TRUE);
+			} else {
+				mutation.complete(Boolean.FALSE);
 			}
-			if (log.isInfoEnabled()) log.info("deal scrammed; reason : " + reason);
-			update(vertx, deal, completionHandler);
-		} else {
-			completionHandler.handle(Future.succeededFuture());
-		}
+		}, completionHandler);
 	}
 	/**
 	 * Set the Master Deal flag of the DEAL object specified by {@code deal} and update shared memory.
@@ -755,17 +1113,19 @@ public class DealUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void isMaster(Vertx vertx, JsonObject deal, boolean flag, Handler<AsyncResult<Void>> completionHandler) {
-		if (Deal.isMaster(deal) != flag) {
-			if (flag) {
-				deal.put("isMaster", flag);
+		mutate_(vertx, deal, mutation -> {
+			if (Deal.isMaster(deal) != flag) {
+				if (flag) {
+					deal.put("isMaster", flag);
+				} else {
+					deal.remove("isMaster");
+				}
+				if (log.isInfoEnabled()) log.info("deal isMaster : " + flag);
+				mutation.complete(Boolean.TRUE);
 			} else {
-				deal.remove("isMaster");
+				mutation.complete(Boolean.FALSE);
 			}
-			if (log.isInfoEnabled()) log.info("deal isMaster : " + flag);
-			update(vertx, deal, completionHandler);
-		} else {
-			completionHandler.handle(Future.succeededFuture());
-		}
+		}, completionHandler);
 	}
 
 }
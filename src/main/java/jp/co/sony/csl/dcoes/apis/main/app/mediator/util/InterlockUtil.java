@@ -12,18 +12,24 @@ import io.vertx.core.shareddata.LocalMap;
 import java.util.Collection;
 
 import jp.co.sony.csl.dcoes.apis.common.Error;
-import jp.co.sony.csl.dcoes.apis.common.util.vertx.EncryptedClusterWideMapUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.LocalExclusiveLock;
+import jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorExceptionUtil;
+import jp.co.sony.csl.dcoes.apis.main.util.SharedMapProfiler;
+import jp.co.sony.csl.dcoes.apis.main.util.SharedMapUtil;
 
 /**
  * A tool for managing interlocks.
  * GridMaster interlocks are managed in shared memory.
+ * The GridMaster interlock value is also cached on each node for {@link #getGridMasterUnitId(Vertx, String, Handler)}.
+ * Changes are published to {@link #GRID_MASTER_UNIT_ID_CHANGED_ADDRESS} to invalidate the caches, and a cached value expires after {@code POLICY.mediator.gridMasterInterlockCache.ttlMsec} in case a notification is lost.
  * Interchange interlocks are managed in local memory.
  * @author OES Project
  *          
  * インタロックを管理するツール.
  * GridMaster インタロックは共有メモリ上に管理する.
+ * {@link #getGridMasterUnitId(Vertx, String, Handler)} のため GridMaster インタロック値は各ノードでキャッシュもする.
+ * 変更は {@link #GRID_MASTER_UNIT_ID_CHANGED_ADDRESS} に publish してキャッシュを無効にし, 通知が失われた場合に備えキャッシュした値は {@code POLICY.mediator.gridMasterInterlockCache.ttlMsec} で期限切れになる.
  * 融通インタロックはローカルメモリ上に管理する.
  * @author OES Project
  */
@@ -34,6 +40,29 @@ public class InterlockUtil {
 	private static final String MAP_KEY_GRID_MASTER_UNIT_ID = "gridMasterUnitId";
 	private static final String MAP_KEY_DEAL_ID = "dealId";
 
+	/**
+	 * The address to which changes of the GridMaster interlock are published.
+	 * Message body: none
+	 * Value: {@value}
+	 *          
+	 * GridMaster インタロックの変更を publish するアドレス.
+	 * メッセージボディ : なし
+	 * 値は {@value}
+	 */
+	public static final String GRID_MASTER_UNIT_ID_CHANGED_ADDRESS = "apis.main.Mediator.gridMasterInterlockChanged";
+	/**
+	 * Default lifetime of the cached GridMaster interlock value [ms].
+	 * Value: {@value}.
+	 *          
+	 * キャッシュした GridMaster インタロック値の寿命のデフォルト値 [ms].
+	 * 値は {@value}.
+	 */
+	private static final Long DEFAULT_GRID_MASTER_UNIT_ID_CACHE_TTL_MSEC = 1000L;
+
+	private static String cachedGridMasterUnitId_ = null;
+	private static long cachedGridMasterUnitIdExpiration_ = 0L;
+	private static long gridMasterUnitIdGeneration_ = 0L;
+
 	private static final LocalExclusiveLock exclusiveLock_ = new LocalExclusiveLock(InterlockUtil.class.getName());
 	/**
 	 * Acquire an exclusive lock.
@@ -47,7 +76,7 @@ public class InterlockUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void acquireExclusiveLock(Vertx vertx, Handler<AsyncResult<LocalExclusiveLock.Lock>> completionHandler) {
-		exclusiveLock_.acquire(vertx, completionHandler);
+		SharedMapProfiler.acquire(vertx, exclusiveLock_, InterlockUtil.class.getName(), completionHandler);
 	}
 	/**
 	 * Reset an exclusive lock.
@@ -80,7 +109,7 @@ public class InterlockUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void lockGridMasterUnitId(Vertx vertx, String value, boolean ignoreInconsistency, Handler<AsyncResult<Void>> completionHandler) {
-		lockClusterWide_(vertx, MAP_KEY_GRID_MASTER_UNIT_ID, value, ignoreInconsistency, completionHandler);
+		lockClusterWide_(vertx, MAP_KEY_GRID_MASTER_UNIT_ID, value, ignoreInconsistency, publishingGridMasterUnitIdChanged_(vertx, completionHandler));
 	}
 	/**
 	 * Release a GridMaster interlock.
@@ -98,7 +127,7 @@ public class InterlockUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void unlockGridMasterUnitId(Vertx vertx, String value, Handler<AsyncResult<Void>> completionHandler) {
-		unlockClusterWide_(vertx, MAP_KEY_GRID_MASTER_UNIT_ID, value, completionHandler);
+		unlockClusterWide_(vertx, MAP_KEY_GRID_MASTER_UNIT_ID, value, publishingGridMasterUnitIdChanged_(vertx, completionHandler));
 	}
 	/**
 	 * Get a GridMaster interlock value.
@@ -114,6 +143,77 @@ public class InterlockUtil {
 	public static void getGridMasterUnitId(Vertx vertx, Handler<AsyncResult<String>> completionHandler) {
 		getClusterWide_(vertx, MAP_KEY_GRID_MASTER_UNIT_ID, completionHandler);
 	}
+	/**
+	 * Get a GridMaster interlock value, expecting it to be {@code expected}.
+	 * If the value cached on this node is {@code expected} and has not expired, it is returned without accessing shared memory.
+	 * Otherwise the value is read from shared memory and cached, so a GridMaster that has just taken over is never rejected because of the cache.
+	 * Results are received with the {@link AsyncResult#result()} method of completionHandler.
+	 * @param vertx a vertx object
+	 * @param expected the expected value
+	 * @param completionHandler the completion handler
+	 *          
+	 * {@code expected} であることを期待して GridMaster インタロック値を取得する.
+	 * このノードでキャッシュした値が {@code expected} で期限切れでなければ共有メモリにアクセスせずに返す.
+	 * そうでなければ共有メモリから読んでキャッシュするので, 引き継いだばかりの GridMaster がキャッシュのせいで拒否されることはない.
+	 * completionHandler の {@link AsyncResult#result()} で受け取る.
+	 * @param vertx vertx オブジェクト
+	 * @param expected 期待する値
+	 * @param completionHandler the completion handler
+	 */
+	public static void getGridMasterUnitId(Vertx vertx, String expected, Handler<AsyncResult<String>> completionHandler) {
+		boolean hit;
+		long generation;
+		synchronized (InterlockUtil.class) {
+			hit = (expected != null && expected.equals(cachedGridMasterUnitId_) && System.currentTimeMillis() < cachedGridMasterUnitIdExpiration_);
+			generation = gridMasterUnitIdGeneration_;
+		}
+		if (hit) {
+			completionHandler.handle(Future.succeededFuture(expected));
+		} else {
+			getGridMasterUnitId(vertx, resGet -> {
+				if (resGet.succeeded()) {
+					cacheGridMasterUnitId_(generation, resGet.result());
+				}
+				completionHandler.handle(resGet);
+			});
+		}
+	}
+	/**
+	 * Discard the GridMaster interlock value cached on this node.
+	 * Called when a change is received from {@link #GRID_MASTER_UNIT_ID_CHANGED_ADDRESS}.
+	 *          
+	 * このノードでキャッシュした GridMaster インタロック値を捨てる.
+	 * {@link #GRID_MASTER_UNIT_ID_CHANGED_ADDRESS} から変更を受け取ったら呼ばれる.
+	 */
+	public static synchronized void gridMasterUnitIdChanged() {
+		// Reads in flight started before the change must not cache what they read
+		// 変更前に始まった読み出しが読んだ値をキャッシュしないようにする
+		gridMasterUnitIdGeneration_++;
+		cachedGridMasterUnitId_ = null;
+		cachedGridMasterUnitIdExpiration_ = 0L;
+	}
+	private static synchronized void cacheGridMasterUnitId_(long generation, String value) {
+		if (generation != gridMasterUnitIdGeneration_) return;
+		long ttlMsec = PolicyKeeping.cache().getLong(DEFAULT_GRID_MASTER_UNIT_ID_CACHE_TTL_MSEC, "mediator", "gridMasterInterlockCache", "ttlMsec");
+		if (value != null && 0 < ttlMsec) {
+			cachedGridMasterUnitId_ = value;
+			cachedGridMasterUnitIdExpiration_ = System.currentTimeMillis() + ttlMsec;
+		} else {
+			cachedGridMasterUnitId_ = null;
+			cachedGridMasterUnitIdExpiration_ = 0L;
+		}
+	}
+	private static Handler<AsyncResult<Void>> publishingGridMasterUnitIdChanged_(Vertx vertx, Handler<AsyncResult<Void>> completionHandler) {
+		return res -> {
+			if (res.succeeded()) {
+				// Reflect it locally first so that checks on this node that follow see the change without waiting for the message
+				// この後のこのノードでの確認がメッセージを待たずに変更を見るよう先にローカルに反映する
+				gridMasterUnitIdChanged();
+				vertx.eventBus().publish(GRID_MASTER_UNIT_ID_CHANGED_ADDRESS, null);
+			}
+			completionHandler.handle(res);
+		};
+	}
 	/**
 	 * Reset a GridMaster interlock.
 	 * @param vertx a vertx object
@@ -124,7 +224,7 @@ public class InterlockUtil {
 	 * @param completionHandler the completion handler
 	 */
 	public static void resetGridMasterUnitId(Vertx vertx, Handler<AsyncResult<Void>> completionHandler) {
-		resetClusterWide_(vertx, MAP_KEY_GRID_MASTER_UNIT_ID, completionHandler);
+		resetClusterWide_(vertx, MAP_KEY_GRID_MASTER_UNIT_ID, publishingGridMasterUnitIdChanged_(vertx, completionHandler));
 	}
 
 	/**
@@ -221,7 +321,7 @@ public class InterlockUtil {
 	 */
 	private static void lockClusterWide_(Vertx vertx, String key, String value, boolean ignoreInconsistency, Handler<AsyncResult<Void>> completionHandler) {
 		if (key != null && value != null && !key.isEmpty() && !value.isEmpty()) {
-			EncryptedClusterWideMapUtil.<String, String>getEncryptedClusterWideMap(vertx, MAP_NAME, resMap -> {
+			SharedMapUtil.<String, String>getMap(vertx, MAP_NAME, resMap -> {
 				if (resMap.succeeded()) {
 					AsyncMap<String, String> lockMap = resMap.result();
 					lockMap.putIfAbsent(key, value, resPutIfAbsent -> {
@@ -241,11 +341,11 @@ public class InterlockUtil {
 								}
 							}
 						} else {
-							ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR, "Communication failed on SharedData", resPutIfAbsent.cause(), completionHandler);
+							SharedMapUtil.fail(Error.Extent.LOCAL, resPutIfAbsent.cause(), completionHandler);
 						}
 					});
 				} else {
-					ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR, "Communication failed on SharedData", resMap.cause(), completionHandler);
+					SharedMapUtil.fail(Error.Extent.LOCAL, resMap.cause(), completionHandler);
 				}
 			});
 		} else {
@@ -271,7 +371,7 @@ public class InterlockUtil {
 	 */
 	private static void unlockClusterWide_(Vertx vertx, String key, String value, Handler<AsyncResult<Void>> completionHandler) {
 		if (key != null && value != null && !key.isEmpty() && !value.isEmpty()) {
-			EncryptedClusterWideMapUtil.<String, String>getEncryptedClusterWideMap(vertx, MAP_NAME, resMap -> {
+			SharedMapUtil.<String, String>getMap(vertx, MAP_NAME, resMap -> {
 				if (resMap.succeeded()) {
 					AsyncMap<String, String> lockMap = resMap.result();
 					lockMap.removeIfPresent(key, value, resRemoveIfPresent -> {
@@ -290,16 +390,16 @@ public class InterlockUtil {
 											ErrorExceptionUtil.logAndFail(Error.Category.LOGIC, Error.Extent.LOCAL, Error.Level.ERROR, msg, completionHandler);
 										}
 									} else {
-										ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR, "Communication failed on SharedData", resGet.cause(), completionHandler);
+										SharedMapUtil.fail(Error.Extent.LOCAL, resGet.cause(), completionHandler);
 									}
 								});
 							}
 						} else {
-							ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR, "Communication failed on SharedData", resRemoveIfPresent.cause(), completionHandler);
+							SharedMapUtil.fail(Error.Extent.LOCAL, resRemoveIfPresent.cause(), completionHandler);
 						}
 					});
 				} else {
-					ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR, "Communication failed on SharedData", resMap.cause(), completionHandler);
+					SharedMapUtil.fail(Error.Extent.LOCAL, resMap.cause(), completionHandler);
 				}
 			});
 		} else {
@@ -321,18 +421,18 @@ public class InterlockUtil {
 	 */
 	private static void getClusterWide_(Vertx vertx, String key, Handler<AsyncResult<String>> completionHandler) {
 		if (key != null && !key.isEmpty()) {
-			EncryptedClusterWideMapUtil.<String, String>getEncryptedClusterWideMap(vertx, MAP_NAME, resMap -> {
+			SharedMapUtil.<String, String>getMap(vertx, MAP_NAME, resMap -> {
 				if (resMap.succeeded()) {
 					AsyncMap<String, String> lockMap = resMap.result();
 					lockMap.get(key, resGet -> {
 						if (resGet.succeeded()) {
 							completionHandler.handle(Future.succeededFuture(resGet.result()));
 						} else {
-							ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR, "Communication failed on SharedData", resGet.cause(), completionHandler);
+							SharedMapUtil.fail(Error.Extent.LOCAL, resGet.cause(), completionHandler);
 						}
 					});
 				} else {
-					ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR, "Communication failed on SharedData", resMap.cause(), completionHandler);
+					SharedMapUtil.fail(Error.Extent.LOCAL, resMap.cause(), completionHandler);
 				}
 			});
 		} else {
@@ -352,18 +452,18 @@ public class InterlockUtil {
 	 */
 	private static void resetClusterWide_(Vertx vertx, String key, Handler<AsyncResult<Void>> completionHandler) {
 		if (key != null && !key.isEmpty()) {
-			EncryptedClusterWideMapUtil.<String, String>getEncryptedClusterWideMap(vertx, MAP_NAME, resMap -> {
+			SharedMapUtil.<String, String>getMap(vertx, MAP_NAME, resMap -> {
 				if (resMap.succeeded()) {
 					AsyncMap<String, String> lockMap = resMap.result();
 					lockMap.remove(key, resRemove -> {
 						if (resRemove.succeeded()) {
 							completionHandler.handle(Future.succeededFuture());
 						} else {
-							ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR, "Communication failed on SharedData", resRemove.cause(), completionHandler);
+							SharedMapUtil.fail(Error.Extent.LOCAL, resRemove.cause(), completionHandler);
 						}
 					});
 				} else {
-					ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, Error.Extent.LOCAL, Error.Level.ERROR, "Communication failed on SharedData", resMap.cause(), completionHandler);
+					SharedMapUtil.fail(Error.Extent.LOCAL, resMap.cause(), completionHandler);
 				}
 			});
 		} else {
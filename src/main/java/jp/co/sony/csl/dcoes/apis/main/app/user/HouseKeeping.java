@@ -136,17 +136,17 @@ public class HouseKeeping extends AbstractVerticle {
 						if (log.isInfoEnabled()) log.info("global error exists");
 						completionHandler.handle(Future.succeededFuture());
 					} else {
-						StateHandling.operationMode(vertx, resOperationMode -> {
+						StateHandling.operationModeAsEnum(vertx, resOperationMode -> {
 							if (resOperationMode.succeeded()) {
-								String operationMode = resOperationMode.result();
-								if ("autonomous".equals(operationMode)) {
+								StateHandling.OperationMode operationMode = resOperationMode.result();
+								if (StateHandling.OperationMode.AUTONOMOUS == operationMode) {
 									// Interchange mode is autonomous
 									// 融通モードが autonomous
 									doHouseKeeping__(completionHandler);
 								} else {
 									// Do nothing if the interchange mode is anything other than autonomous
 									// 融通モードが autonomous 以外なら何もしない
-									if (log.isInfoEnabled()) log.info("operationMode is not autonomous : " + operationMode);
+									if (log.isInfoEnabled()) log.info("operationMode is not autonomous : " + operationMode.value());
 									completionHandler.handle(Future.succeededFuture());
 								}
 							} else {
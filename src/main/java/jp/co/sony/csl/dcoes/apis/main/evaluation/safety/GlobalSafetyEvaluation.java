@@ -19,6 +19,7 @@ import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectWrapper;
 import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.DealUtil;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorExceptionUtil;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
+import jp.co.sony.csl.dcoes.apis.main.util.UnitDataTable;
 
 /**
  * Global safety check processing.
@@ -151,6 +152,7 @@ public class GlobalSafetyEvaluation {
 			// 全融通をループし融通参加ユニットの ig を加算する
 			DealUtil.all(vertx, resAll -> {
 				if (resAll.succeeded()) {
+					UnitDataTable table = UnitDataTable.of(unitData);
 					boolean failed = false;
 					int numberOfRunningDeals = 0;
 					float sumOfDealingUnitGridCurrentA = 0;
@@ -167,8 +169,8 @@ public class GlobalSafetyEvaluation {
 								if (dealingUnitIds.add(dischargeUnitId)) {
 									// If dischargeUnitId is not included in dealingUnitIds (so as not to add multiple times)
 									// ( 複数回加算しないように ) dischargeUnitId が dealingUnitIds に含まれていなければ
-									Float dischargeUnitIg = JsonObjectUtil.getFloat(unitData, dischargeUnitId, "dcdc", "meter", "ig");
-									if (dischargeUnitIg == null) {
+									float dischargeUnitIg = (table != null) ? table.ig(dischargeUnitId) : Float.NaN;
+									if (Float.isNaN(dischargeUnitIg)) {
 										ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "no dcdc.meter.ig value in discharging unit data : " + JsonObjectUtil.getJsonObject(unitData, dischargeUnitId));
 										failed = true;
 									} else {
@@ -178,8 +180,8 @@ public class GlobalSafetyEvaluation {
 								if (dealingUnitIds.add(chargeUnitId)) {
 									// If chargeUnitId is not included in dealingUnitIds (so as not to add multiple times)
 									// ( 複数回加算しないように ) chargeUnitId が dealingUnitIds に含まれていなければ
-									Float chargeUnitIg = JsonObjectUtil.getFloat(unitData, chargeUnitId, "dcdc", "meter", "ig");
-									if (chargeUnitIg == null) {
+									float chargeUnitIg = (table != null) ? table.ig(chargeUnitId) : Float.NaN;
+									if (Float.isNaN(chargeUnitIg)) {
 										ErrorUtil.report(vertx, Error.Category.LOGIC, Error.Extent.GLOBAL, Error.Level.ERROR, "no dcdc.meter.ig value in charging unit data : " + JsonObjectUtil.getJsonObject(unitData, chargeUnitId));
 										failed = true;
 									} else {
@@ -15,6 +15,7 @@ import jp.co.sony.csl.dcoes.apis.common.Deal;
 import jp.co.sony.csl.dcoes.apis.common.Error;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorUtil;
+import jp.co.sony.csl.dcoes.apis.main.util.UnitDataTable;
 
 /**
  * Judge whether or not an interchange is possible based on grid currents, and perform safety checks.
@@ -74,6 +75,7 @@ public class GridBranchCurrentCapacity {
 		JsonObject config = JsonObjectUtil.getJsonObject(policy, "safety", "gridTopologyBasedEvaluation");
 		List<String> branchIds = JsonObjectUtil.getStringList(config, "branchIds");
 		if (branchIds != null) {
+			UnitDataTable table = UnitDataTable.of(unitData);
 			for (String aBranchId : branchIds) {
 				if (log.isInfoEnabled()) log.info(aBranchId);
 				Float capacity = JsonObjectUtil.getFloat(config, "branchCurrentCapacityA", aBranchId);
@@ -86,8 +88,8 @@ public class GridBranchCurrentCapacity {
 					for (String aUnitId : forwardUnitIds) {
 						// Add the unit's ig
 						// ユニットの ig を加算する
-						Float ig = JsonObjectUtil.getFloat(unitData, aUnitId, "dcdc", "meter", "ig");
-						if (ig != null) {
+						float ig = (table != null) ? table.ig(aUnitId) : Float.NaN;
+						if (!Float.isNaN(ig)) {
 							sum += ig;
 						} else {
 							ErrorUtil.report(vertx, Error.Category.HARDWARE, Error.Extent.GLOBAL, Error.Level.WARN, "no " + aUnitId + ".dcdc.meter.ig");
@@ -18,7 +18,10 @@ import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectWrapper;
 import jp.co.sony.csl.dcoes.apis.main.app.HwConfigKeeping;
 import jp.co.sony.csl.dcoes.apis.main.app.StateHandling;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.DeviceControlling;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.DcdcDataAcquisition;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DDCon;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DcdcStatus;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverCircuitBreaker;
 import jp.co.sony.csl.dcoes.apis.main.app.mediator.util.DealUtil;
 import jp.co.sony.csl.dcoes.apis.main.util.ApisConfig;
 import jp.co.sony.csl.dcoes.apis.main.util.ErrorExceptionUtil;
@@ -77,6 +80,9 @@ public class LocalSafetyEvaluation {
 				if (!checkBatteryOperationStatus(vertx, apisOperationMode, unitData)) {
 					failed = true;
 				}
+				if (!checkDriverCircuitBreaker_(vertx, JsonObjectUtil.getJsonObject(unitData, "apis", "driver_circuit_breaker"))) {
+					failed = true;
+				}
 				if (!checkModeAndDeal_(vertx, apisOperationMode, unitData, policy)) {
 					failed = true;
 				}
@@ -109,6 +115,49 @@ public class LocalSafetyEvaluation {
 		});
 	}
 
+	/**
+	 * Check the circuit breakers of the device drivers only.
+	 * Evaluates the current states of the breakers rather than those in the unit data,
+	 * because the unit data cannot be acquired while a breaker is open.
+	 * @param vertx a vertx object
+	 * @param completionHandler the completion handler
+	 *          
+	 * デバイスドライバのサーキットブレーカだけをチェックする.
+	 * ブレーカが開いている間はユニットデータを取得できないため, ユニットデータ中のものではなくブレーカの現在の状態を評価する.
+	 * @param vertx vertx オブジェクト
+	 * @param completionHandler the completion handler
+	 */
+	public static void checkDriverCircuitBreaker(Vertx vertx, Handler<AsyncResult<Void>> completionHandler) {
+		if (checkDriverCircuitBreaker_(vertx, DriverCircuitBreaker.toJsonObject())) {
+			completionHandler.handle(Future.succeededFuture());
+		} else {
+			completionHandler.handle(Future.failedFuture("local safety evaluation failed"));
+		}
+	}
+
+	/**
+	 * Get a numeric value of the unit data.
+	 * Read from {@link DcdcDataAcquisition#dcdcStatus} when it was decoded along with {@code unitData.dcdc}, and from {@code unitData} otherwise.
+	 * @param unitData the unit data of this unit
+	 * @param valuePath the path to the value
+	 * @return the value. {@code null} if absent
+	 *          
+	 * ユニットデータの数値を取得する.
+	 * {@link DcdcDataAcquisition#dcdcStatus} が {@code unitData.dcdc} と一緒にデコードされたものならそこから, そうでなければ {@code unitData} から読む.
+	 * @param unitData 自ユニットのユニットデータ
+	 * @param valuePath 値へのパス
+	 * @return 値. 存在しなければ {@code null}
+	 */
+	private static Float getFloat_(JsonObject unitData, String... valuePath) {
+		if (3 == valuePath.length && "dcdc".equals(valuePath[0])) {
+			DcdcStatus.Value value = DcdcStatus.Value.of(valuePath[1], valuePath[2]);
+			if (value != null && DcdcDataAcquisition.dcdcStatus.isViewedAs(JsonObjectUtil.getJsonObject(unitData, "dcdc"))) {
+				return (DcdcDataAcquisition.dcdcStatus.has(value)) ? DcdcDataAcquisition.dcdcStatus.get(value) : null;
+			}
+		}
+		return JsonObjectUtil.getFloat(unitData, valuePath);
+	}
+
 	private static boolean checkAlarmState_(Vertx vertx, String apisOperationMode, JsonObject unitData) {
 		String alarmState = JsonObjectUtil.getString(unitData, "dcdc", "status", "alarmState");
 		if (DDCon.AlarmState.HEAVY_ALARM == DDCon.alarmStateFromCode(alarmState)) {
@@ -129,6 +178,20 @@ public class LocalSafetyEvaluation {
 		return true;
 	}
 
+	private static boolean checkDriverCircuitBreaker_(Vertx vertx, JsonObject breakers) {
+		boolean result = true;
+		if (breakers != null) {
+			for (String aName : breakers.fieldNames()) {
+				String state = JsonObjectUtil.getString(breakers, aName, "state");
+				if (DriverCircuitBreaker.State.OPEN.name().equals(state)) {
+					ErrorUtil.report(vertx, Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.WARN, "Device Driver circuit breaker open ; driver : " + aName);
+					result = false;
+				}
+			}
+		}
+		return result;
+	}
+
 	private static boolean checkModeAndDeal_(Vertx vertx, String apisOperationMode, JsonObject unitData, JsonObject policy) {
 		boolean result = true;
 		String mode_ = JsonObjectUtil.getString(unitData, "dcdc", "status", "status");
@@ -250,7 +313,7 @@ public class LocalSafetyEvaluation {
 	}
 
 	private static boolean checkFloatRange_(Vertx vertx, String apisOperationMode, JsonObject unitData, String[] valuePath, Error.Level level, boolean required) {
-		Float value = JsonObjectUtil.getFloat(unitData, valuePath);
+		Float value = getFloat_(unitData, valuePath);
 		if (value == null) {
 			if (required) {
 				ErrorUtil.report(vertx, Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.ERROR, "no " + String.join(".", valuePath) + " value in unit data : " + unitData);
@@ -290,8 +353,8 @@ public class LocalSafetyEvaluation {
 		if (mode == null) {
 			return false;
 		}
-		Float vg = JsonObjectUtil.getFloat(unitData, "dcdc", "meter", "vg");
-		Float ig = JsonObjectUtil.getFloat(unitData, "dcdc", "meter", "ig");
+		Float vg = getFloat_(unitData, "dcdc", "meter", "vg");
+		Float ig = getFloat_(unitData, "dcdc", "meter", "ig");
 		if (vg == null || ig == null) {
 			return false;
 		}
@@ -311,8 +374,8 @@ public class LocalSafetyEvaluation {
 			ErrorUtil.report(vertx, Error.Category.USER, Error.Extent.LOCAL, Error.Level.ERROR, "no gridCurrentAllowanceA value in hwConfig : " + HwConfigKeeping.CACHE.jsonObject());
 			return false;
 		}
-		Float dig = JsonObjectUtil.getFloat(unitData, "dcdc", "param", "dig");
-		Float dvg = JsonObjectUtil.getFloat(unitData, "dcdc", "vdis", "dvg");
+		Float dig = getFloat_(unitData, "dcdc", "param", "dig");
+		Float dvg = getFloat_(unitData, "dcdc", "vdis", "dvg");
 		if (dig == null || dvg == null) {
 			errors.add(Boolean.FALSE, ERROR_NO_DDCON_DIG_DVG);
 			String msg = "no dcdc.param.dig and/or dcdc.vdis.dvg value in unit data : " + unitData;
@@ -5,7 +5,9 @@ import jp.co.sony.csl.dcoes.apis.main.app.controller.DataResponding;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.DeviceControlling;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.DcdcDataResponding;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.emulator.DcdcEmulatorDataAcquisition;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.emulator.DcdcEmulatorPushDataAcquisition;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.emulator.DcdcEmulatorDeviceControlling;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverConnection;
 import jp.co.sony.csl.dcoes.apis.main.factory.ControllerFactory;
 
 /**
@@ -21,8 +23,15 @@ public class DcdcEmulatorControllerFactory implements ControllerFactory {
 
 	/**
 	 * {@inheritDoc}
+	 * Creates a {@link DcdcEmulatorPushDataAcquisition} if {@code CONFIG.connection.emulator.telemetry.enabled} is {@code true}.
+	 *          
+	 * {@inheritDoc}
+	 * {@code CONFIG.connection.emulator.telemetry.enabled} が {@code true} なら {@link DcdcEmulatorPushDataAcquisition} を生成する.
 	 */
 	@Override public DataAcquisition createDataAcquisition() {
+		if (DriverConnection.isTelemetryEnabled("emulator")) {
+			return new DcdcEmulatorPushDataAcquisition();
+		}
 		return new DcdcEmulatorDataAcquisition();
 	}
 
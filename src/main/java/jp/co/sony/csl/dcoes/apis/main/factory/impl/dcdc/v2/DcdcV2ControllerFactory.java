@@ -5,7 +5,9 @@ import jp.co.sony.csl.dcoes.apis.main.app.controller.DataResponding;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.DeviceControlling;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.DcdcDataResponding;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.v2.DcdcV2DataAcquisition;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.v2.DcdcV2PushDataAcquisition;
 import jp.co.sony.csl.dcoes.apis.main.app.controller.impl.dcdc.v2.DcdcV2DeviceControlling;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DriverConnection;
 import jp.co.sony.csl.dcoes.apis.main.factory.ControllerFactory;
 
 /**
@@ -21,8 +23,15 @@ public class DcdcV2ControllerFactory implements ControllerFactory {
 
 	/**
 	 * {@inheritDoc}
+	 * Creates a {@link DcdcV2PushDataAcquisition} if {@code CONFIG.connection.dcdc_controller.telemetry.enabled} is {@code true}.
+	 *          
+	 * {@inheritDoc}
+	 * {@code CONFIG.connection.dcdc_controller.telemetry.enabled} が {@code true} なら {@link DcdcV2PushDataAcquisition} を生成する.
 	 */
 	@Override public DataAcquisition createDataAcquisition() {
+		if (DriverConnection.isTelemetryEnabled("dcdc_controller")) {
+			return new DcdcV2PushDataAcquisition();
+		}
 		return new DcdcV2DataAcquisition();
 	}
 
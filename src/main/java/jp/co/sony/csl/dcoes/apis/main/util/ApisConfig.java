@@ -94,4 +94,21 @@ public class ApisConfig {
 		return VertxConfig.config.getBoolean(Boolean.FALSE, "batteryCapacityManagement", "enabled");
 	}
 
+	/**
+	 * Get the shared map profiler enabled flag from CONFIG.
+	 * {@code CONFIG.sharedMapProfiler.enabled}.
+	 * Whether or not to profile the operations on the shared maps and the waits on the exclusive locks ( see {@link SharedMapProfiler} ).
+	 * Default: {@code false}
+	 * @return valid flag
+	 *          
+	 * CONFIG から共有マッププロファイラの有効フラグを取得.
+	 * {@code CONFIG.sharedMapProfiler.enabled}.
+	 * 共有マップの操作と排他ロックの待ちをプロファイルするか否か ( {@link SharedMapProfiler} 参照 ).
+	 * デフォルト : {@code false}
+	 * @return 有効フラグ
+	 */
+	public static Boolean isSharedMapProfilerEnabled() {
+		return VertxConfig.config.getBoolean(Boolean.FALSE, "sharedMapProfiler", "enabled");
+	}
+
 }
@@ -0,0 +1,383 @@
+package jp.co.sony.csl.dcoes.apis.main.util;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary codec for {@link JsonObject}.
+ * The first byte of an encoded value is the format version, so that nodes of different versions can share values during a rolling upgrade.
+ * Keys known in advance are written as an index into a key dictionary, other keys are written literally.
+ * The key dictionary is append-only : each format version adds keys to the end of the previous one.
+ * A value can be decoded by any codec whose latest version is not older than the version of the value.
+ * Numbers keep their Java types, and date-times of the form {@code yyyy/MM/dd-HH:mm:ss} are packed into a number.
+ * Decoding and encoding again gives exactly the same bytes, so that encoded values can be used for compare-and-set.
+ * @author OES Project
+ *          
+ * {@link JsonObject} のコンパクトなバイナリコーデック.
+ * ローリングアップグレード中に異なるバージョンのノードが値を共有できるようエンコードした値の先頭バイトはフォーマットのバージョン.
+ * あらかじめわかっているキーはキー辞書のインデクスで書き込みそれ以外のキーはそのまま書き込む.
+ * キー辞書は追記のみ : 各フォーマットバージョンは前のバージョンの末尾にキーを追加する.
+ * 最新バージョンが値のバージョン以上のコーデックなら値をデコードできる.
+ * 数値は Java の型を保持し {@code yyyy/MM/dd-HH:mm:ss} 形式の日時は数値に詰める.
+ * デコードして再びエンコードすると全く同じバイト列になるのでエンコードした値を compare-and-set に使える.
+ * @author OES Project
+ */
+public class BinaryJsonCodec {
+
+	private static final int NULL_ = 0;
+	private static final int TRUE_ = 1;
+	private static final int FALSE_ = 2;
+	private static final int INTEGER_ = 3;
+	private static final int LONG_ = 4;
+	private static final int FLOAT_ = 5;
+	private static final int DOUBLE_ = 6;
+	private static final int STRING_ = 7;
+	private static final int DATE_TIME_ = 8;
+	private static final int OBJECT_ = 9;
+	private static final int ARRAY_ = 10;
+
+	private static final int DATE_TIME_LENGTH_ = "yyyy/MM/dd-HH:mm:ss".length();
+
+	private final List<String> keys_;
+	private final int[] numberOfKeys_;
+	private final Map<String, Integer> ids_ = new HashMap<>();
+
+	/**
+	 * Create an instance.
+	 * The {@code i}-th element of {@code dictionaries} is the list of keys added in format version {@code i + 1}.
+	 * @param dictionaries lists of keys added in each format version
+	 * @throws IllegalArgumentException if there is no version, too many versions, or a key appears twice
+	 *          
+	 * インスタンスを作成する.
+	 * {@code dictionaries} の {@code i} 番目の要素はフォーマットバージョン {@code i + 1} で追加したキーのリスト.
+	 * @param dictionaries 各フォーマットバージョンで追加したキーのリスト
+	 * @throws IllegalArgumentException バージョンがない, バージョンが多すぎる, あるいはキーが重複する場合
+	 */
+	public BinaryJsonCodec(List<List<String>> dictionaries) {
+		if (dictionaries.isEmpty() || 0xff < dictionaries.size()) throw new IllegalArgumentException("bad number of format versions : " + dictionaries.size());
+		List<String> keys = new ArrayList<>();
+		numberOfKeys_ = new int[dictionaries.size()];
+		for (int i = 0; i < dictionaries.size(); i++) {
+			for (String aKey : dictionaries.get(i)) {
+				if (ids_.put(aKey, keys.size()) != null) throw new IllegalArgumentException("duplicate key : " + aKey);
+				keys.add(aKey);
+			}
+			numberOfKeys_[i] = keys.size();
+		}
+		keys_ = Collections.unmodifiableList(keys);
+	}
+
+	/**
+	 * Get the latest format version.
+	 * @return the latest format version
+	 *          
+	 * 最新のフォーマットバージョンを取得する.
+	 * @return 最新のフォーマットバージョン
+	 */
+	public int latestVersion() {
+		return numberOfKeys_.length;
+	}
+	/**
+	 * Get the format version of an encoded value.
+	 * @param bytes an encoded value
+	 * @return the format version
+	 * @throws IllegalArgumentException if {@code bytes} is empty
+	 *          
+	 * エンコードした値のフォーマットバージョンを取得する.
+	 * @param bytes エンコードした値
+	 * @return フォーマットバージョン
+	 * @throws IllegalArgumentException {@code bytes} が空の場合
+	 */
+	public static int versionOf(byte[] bytes) {
+		if (bytes.length == 0) throw new IllegalArgumentException("empty value");
+		return bytes[0] & 0xff;
+	}
+
+	/**
+	 * Encode in the latest format version.
+	 * @param json the object to encode
+	 * @return the encoded value
+	 * @throws IllegalArgumentException if {@code json} contains a value of an unsupported type
+	 *          
+	 * 最新のフォーマットバージョンでエンコードする.
+	 * @param json エンコードするオブジェクト
+	 * @return エンコードした値
+	 * @throws IllegalArgumentException {@code json} に未対応の型の値が含まれる場合
+	 */
+	public byte[] encode(JsonObject json) {
+		return encode(json, latestVersion());
+	}
+	/**
+	 * Encode in the specified format version.
+	 * Only keys known in that version are written as an index.
+	 * @param json the object to encode
+	 * @param version the format version
+	 * @return the encoded value
+	 * @throws IllegalArgumentException if {@code version} is not supported or {@code json} contains a value of an unsupported type
+	 *          
+	 * 指定したフォーマットバージョンでエンコードする.
+	 * そのバージョンで既知のキーだけをインデクスで書き込む.
+	 * @param json エンコードするオブジェクト
+	 * @param version フォーマットバージョン
+	 * @return エンコードした値
+	 * @throws IllegalArgumentException {@code version} に対応していないか {@code json} に未対応の型の値が含まれる場合
+	 */
+	public byte[] encode(JsonObject json, int version) {
+		int numberOfKeys = numberOfKeys_(version);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+		out.write(version);
+		writeObject_(out, json, numberOfKeys);
+		return out.toByteArray();
+	}
+	/**
+	 * Decode.
+	 * @param bytes an encoded value
+	 * @return the decoded object
+	 * @throws IllegalArgumentException if the format version is not supported or {@code bytes} is broken
+	 *          
+	 * デコードする.
+	 * @param bytes エンコードした値
+	 * @return デコードしたオブジェクト
+	 * @throws IllegalArgumentException フォーマットバージョンに対応していないか {@code bytes} が壊れている場合
+	 */
+	public JsonObject decode(byte[] bytes) {
+		int numberOfKeys = numberOfKeys_(versionOf(bytes));
+		Reader_ in = new Reader_(bytes);
+		try {
+			if (in.readByte_() != OBJECT_) throw new IllegalArgumentException("not an object");
+			JsonObject result = readObject_(in, numberOfKeys);
+			if (in.pos_ != bytes.length) throw new IllegalArgumentException("trailing bytes : " + (bytes.length - in.pos_));
+			return result;
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("truncated value", e);
+		}
+	}
+
+	private int numberOfKeys_(int version) {
+		if (version < 1 || numberOfKeys_.length < version) throw new IllegalArgumentException("unsupported format version : " + version);
+		return numberOfKeys_[version - 1];
+	}
+
+	////
+
+	private void writeObject_(ByteArrayOutputStream out, JsonObject json, int numberOfKeys) {
+		out.write(OBJECT_);
+		writeVarint_(out, json.size());
+		for (Map.Entry<String, Object> anEntry : json) {
+			Integer id = ids_.get(anEntry.getKey());
+			if (id != null && id < numberOfKeys) {
+				writeVarint_(out, id + 1);
+			} else {
+				writeVarint_(out, 0);
+				writeString_(out, anEntry.getKey());
+			}
+			writeValue_(out, anEntry.getValue(), numberOfKeys);
+		}
+	}
+	private void writeValue_(ByteArrayOutputStream out, Object value, int numberOfKeys) {
+		if (value == null) {
+			out.write(NULL_);
+		} else if (value instanceof Boolean) {
+			out.write(((Boolean) value) ? TRUE_ : FALSE_);
+		} else if (value instanceof Integer) {
+			out.write(INTEGER_);
+			writeVarint_(out, zigzag_((Integer) value));
+		} else if (value instanceof Long) {
+			out.write(LONG_);
+			writeVarint_(out, zigzag_((Long) value));
+		} else if (value instanceof Float) {
+			out.write(FLOAT_);
+			writeFixed_(out, Float.floatToRawIntBits((Float) value), 4);
+		} else if (value instanceof Double) {
+			out.write(DOUBLE_);
+			writeFixed_(out, Double.doubleToRawLongBits((Double) value), 8);
+		} else if (value instanceof String) {
+			long packed = packDateTime_((String) value);
+			if (0 <= packed) {
+				out.write(DATE_TIME_);
+				writeVarint_(out, packed);
+			} else {
+				out.write(STRING_);
+				writeString_(out, (String) value);
+			}
+		} else if (value instanceof JsonObject) {
+			writeObject_(out, (JsonObject) value, numberOfKeys);
+		} else if (value instanceof JsonArray) {
+			JsonArray array = (JsonArray) value;
+			out.write(ARRAY_);
+			writeVarint_(out, array.size());
+			for (Object anElement : array) {
+				writeValue_(out, anElement, numberOfKeys);
+			}
+		} else {
+			throw new IllegalArgumentException("unsupported type : " + value.getClass().getName());
+		}
+	}
+	private static void writeString_(ByteArrayOutputStream out, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarint_(out, bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+	private static void writeVarint_(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7fL) != 0) {
+			out.write((int) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+	private static void writeFixed_(ByteArrayOutputStream out, long value, int length) {
+		for (int i = length - 1; 0 <= i; i--) {
+			out.write((int) (value >>> (i * 8)));
+		}
+	}
+	private static long zigzag_(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/**
+	 * Pack a date-time of the form {@code yyyy/MM/dd-HH:mm:ss} into a number.
+	 * Only strings that are restored exactly by {@link #unpackDateTime_(long)} are packed.
+	 * @param value a string
+	 * @return the packed number, or {@code -1} if not a date-time
+	 *          
+	 * {@code yyyy/MM/dd-HH:mm:ss} 形式の日時を数値に詰める.
+	 * {@link #unpackDateTime_(long)} で正確に元に戻る文字列だけを詰める.
+	 * @param value 文字列
+	 * @return 詰めた数値. 日時でなければ {@code -1}
+	 */
+	private static long packDateTime_(String value) {
+		if (value.length() != DATE_TIME_LENGTH_) return -1L;
+		if (value.charAt(4) != '/' || value.charAt(7) != '/' || value.charAt(10) != '-' || value.charAt(13) != ':' || value.charAt(16) != ':') return -1L;
+		int year = digits_(value, 0, 4);
+		int month = digits_(value, 5, 2);
+		int day = digits_(value, 8, 2);
+		int hour = digits_(value, 11, 2);
+		int minute = digits_(value, 14, 2);
+		int second = digits_(value, 17, 2);
+		if (year < 0 || month < 0 || 12 < month || day < 0 || 31 < day || hour < 0 || 23 < hour || minute < 0 || 59 < minute || second < 0 || 59 < second) return -1L;
+		return ((((year * 13L + month) * 32L + day) * 24L + hour) * 60L + minute) * 60L + second;
+	}
+	private static String unpackDateTime_(long packed) {
+		if (packed < 0) throw new IllegalArgumentException("bad date-time : " + packed);
+		int second = (int) (packed % 60); packed /= 60;
+		int minute = (int) (packed % 60); packed /= 60;
+		int hour = (int) (packed % 24); packed /= 24;
+		int day = (int) (packed % 32); packed /= 32;
+		int month = (int) (packed % 13); packed /= 13;
+		if (9999 < packed) throw new IllegalArgumentException("bad date-time year : " + packed);
+		return String.format("%04d/%02d/%02d-%02d:%02d:%02d", packed, month, day, hour, minute, second);
+	}
+	private static int digits_(String value, int offset, int length) {
+		int result = 0;
+		for (int i = offset; i < offset + length; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || '9' < c) return -1;
+			result = result * 10 + (c - '0');
+		}
+		return result;
+	}
+
+	////
+
+	private JsonObject readObject_(Reader_ in, int numberOfKeys) {
+		int size = in.readLength_();
+		JsonObject result = new JsonObject();
+		for (int i = 0; i < size; i++) {
+			long id = in.readVarint_();
+			String key;
+			if (id == 0) {
+				key = in.readString_();
+			} else if (id <= numberOfKeys) {
+				key = keys_.get((int) id - 1);
+			} else {
+				throw new IllegalArgumentException("unknown key id : " + id);
+			}
+			result.put(key, readValue_(in, numberOfKeys));
+		}
+		return result;
+	}
+	private Object readValue_(Reader_ in, int numberOfKeys) {
+		int type = in.readByte_();
+		switch (type) {
+		case NULL_:
+			return null;
+		case TRUE_:
+			return Boolean.TRUE;
+		case FALSE_:
+			return Boolean.FALSE;
+		case INTEGER_:
+			return (int) unzigzag_(in.readVarint_());
+		case LONG_:
+			return unzigzag_(in.readVarint_());
+		case FLOAT_:
+			return Float.intBitsToFloat((int) in.readFixed_(4));
+		case DOUBLE_:
+			return Double.longBitsToDouble(in.readFixed_(8));
+		case STRING_:
+			return in.readString_();
+		case DATE_TIME_:
+			return unpackDateTime_(in.readVarint_());
+		case OBJECT_:
+			return readObject_(in, numberOfKeys);
+		case ARRAY_:
+			int size = in.readLength_();
+			JsonArray result = new JsonArray(new ArrayList<>(size));
+			for (int i = 0; i < size; i++) {
+				result.add(readValue_(in, numberOfKeys));
+			}
+			return result;
+		default:
+			throw new IllegalArgumentException("unknown type : " + type);
+		}
+	}
+	private static long unzigzag_(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static class Reader_ {
+		private final byte[] bytes_;
+		private int pos_ = 1;
+		private Reader_(byte[] bytes) {
+			bytes_ = bytes;
+		}
+		private int readByte_() {
+			return bytes_[pos_++] & 0xff;
+		}
+		private long readVarint_() {
+			long result = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = readByte_();
+				result |= (long) (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) return result;
+			}
+			throw new IllegalArgumentException("bad varint");
+		}
+		private long readFixed_(int length) {
+			long result = 0;
+			for (int i = 0; i < length; i++) {
+				result = (result << 8) | readByte_();
+			}
+			return result;
+		}
+		private int readLength_() {
+			long result = readVarint_();
+			if (result < 0 || bytes_.length - pos_ < result) throw new IllegalArgumentException("bad length : " + result);
+			return (int) result;
+		}
+		private String readString_() {
+			int length = readLength_();
+			String result = new String(bytes_, pos_, length, StandardCharsets.UTF_8);
+			pos_ += length;
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+package jp.co.sony.csl.dcoes.apis.main.util;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A low-overhead latency histogram.
+ * Latencies are counted in buckets whose width doubles every step in microseconds ( bucket {@code i} holds values less than {@code 2^i} [us] ).
+ * Percentiles are therefore approximate and are reported as the upper bound of the bucket.
+ * @author OES Project
+ *          
+ * 低負荷なレイテンシのヒストグラム.
+ * レイテンシはマイクロ秒単位で幅が一段ごとに倍になるバケツで数える ( バケツ {@code i} は {@code 2^i} [us] 未満の値を保持する ).
+ * そのためパーセンタイルは近似値でありバケツの上限値を返す.
+ * @author OES Project
+ */
+public class LatencyHistogram {
+
+	private static final int NUMBER_OF_BUCKETS_ = 40;
+
+	private final long[] buckets_ = new long[NUMBER_OF_BUCKETS_];
+	private long count_ = 0L;
+	private long sumNanos_ = 0L;
+	private long maxNanos_ = 0L;
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public LatencyHistogram() {
+	}
+
+	/**
+	 * Record a latency.
+	 * @param nanos latency [ns]
+	 *          
+	 * レイテンシを記録する.
+	 * @param nanos レイテンシ [ns]
+	 */
+	public synchronized void record(long nanos) {
+		if (nanos < 0L) nanos = 0L;
+		long micros = nanos / 1000L;
+		int i = 64 - Long.numberOfLeadingZeros(micros);
+		if (NUMBER_OF_BUCKETS_ <= i) i = NUMBER_OF_BUCKETS_ - 1;
+		buckets_[i]++;
+		count_++;
+		sumNanos_ += nanos;
+		if (maxNanos_ < nanos) maxNanos_ = nanos;
+	}
+
+	/**
+	 * Get the number of recorded latencies.
+	 * @return the number of records
+	 *          
+	 * 記録したレイテンシの数を取得する.
+	 * @return 記録数
+	 */
+	public synchronized long count() {
+		return count_;
+	}
+
+	/**
+	 * Get the approximate percentile.
+	 * @param percent percentile. 0 to 100
+	 * @return the upper bound of the bucket containing the percentile [ms]. {@code 0} if nothing is recorded
+	 *          
+	 * パーセンタイルの近似値を取得する.
+	 * @param percent パーセンタイル. 0 から 100
+	 * @return パーセンタイルを含むバケツの上限値 [ms]. 記録がなければ {@code 0}
+	 */
+	public synchronized float percentileMsec(double percent) {
+		if (count_ == 0L) return 0F;
+		long rank = (long) Math.ceil(count_ * percent / 100D);
+		if (rank < 1L) rank = 1L;
+		long n = 0L;
+		for (int i = 0; i < NUMBER_OF_BUCKETS_; i++) {
+			n += buckets_[i];
+			if (rank <= n) {
+				// No value exceeds the max value
+				// 最大値を超える値はない
+				return Math.min((1L << i) / 1000F, maxNanos_ / 1000000F);
+			}
+		}
+		return maxNanos_ / 1000000F;
+	}
+
+	/**
+	 * Get the statistics as a {@link JsonObject}.
+	 * - count: the number of records
+	 * - meanMsec: the mean value [ms]
+	 * - maxMsec: the max value [ms]
+	 * - p50Msec, p90Msec, p99Msec: the approximate percentiles [ms]
+	 * @return the statistics
+	 *          
+	 * 統計値を {@link JsonObject} で取得する.
+	 * - count : 記録数
+	 * - meanMsec : 平均値 [ms]
+	 * - maxMsec : 最大値 [ms]
+	 * - p50Msec, p90Msec, p99Msec : パーセンタイルの近似値 [ms]
+	 * @return 統計値
+	 */
+	public synchronized JsonObject toJsonObject() {
+		JsonObject result = new JsonObject();
+		result.put("count", count_);
+		result.put("meanMsec", (0L < count_) ? sumNanos_ / count_ / 1000000F : 0F);
+		result.put("maxMsec", maxNanos_ / 1000000F);
+		result.put("p50Msec", percentileMsec(50));
+		result.put("p90Msec", percentileMsec(90));
+		result.put("p99Msec", percentileMsec(99));
+		return result;
+	}
+
+	/**
+	 * Clear all records.
+	 *          
+	 * 記録を全て消去する.
+	 */
+	public synchronized void reset() {
+		for (int i = 0; i < NUMBER_OF_BUCKETS_; i++) buckets_[i] = 0L;
+		count_ = 0L;
+		sumNanos_ = 0L;
+		maxNanos_ = 0L;
+	}
+
+}
@@ -0,0 +1,112 @@
+package jp.co.sony.csl.dcoes.apis.main.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estimator of the reply latency of each unit.
+ * The mean and the mean deviation of the latency are tracked as EWMA ( exponentially weighted moving average ) in the same way as the TCP retransmission timeout.
+ * The estimate of a unit is {@code mean + 4 * deviation}.
+ * @author OES Project
+ *          
+ * ユニットごとの返信レイテンシの推定器.
+ * TCP の再送タイムアウトと同じやり方でレイテンシの平均と平均偏差を EWMA ( 指数加重移動平均 ) で追跡する.
+ * ユニットの推定値は {@code 平均 + 4 * 偏差}.
+ * @author OES Project
+ */
+public class ReplyLatencyEstimator {
+
+	private static final float MEAN_GAIN_ = 0.125F;
+	private static final float DEVIATION_GAIN_ = 0.25F;
+	private static final float DEVIATION_FACTOR_ = 4F;
+
+	private final Map<String, float[]> stats_ = new HashMap<>();
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public ReplyLatencyEstimator() {
+	}
+
+	/**
+	 * Record a reply latency of a unit.
+	 * @param unitId unit ID
+	 * @param msec latency [ms]
+	 *          
+	 * ユニットの返信レイテンシを記録する.
+	 * @param unitId ユニット ID
+	 * @param msec レイテンシ [ms]
+	 */
+	public synchronized void record(String unitId, long msec) {
+		float sample = (0L < msec) ? msec : 0F;
+		float[] stat = stats_.get(unitId);
+		if (stat == null) {
+			// The first sample ; the deviation starts at half of the sample
+			// 最初のサンプル. 偏差はサンプルの半分から始める
+			stats_.put(unitId, new float[] {sample, sample / 2F});
+		} else {
+			stat[1] += DEVIATION_GAIN_ * (Math.abs(sample - stat[0]) - stat[1]);
+			stat[0] += MEAN_GAIN_ * (sample - stat[0]);
+		}
+	}
+
+	/**
+	 * Get the estimated latency of a unit.
+	 * @param unitId unit ID
+	 * @return the estimate [ms]. {@code null} if nothing is recorded
+	 *          
+	 * ユニットのレイテンシ推定値を取得する.
+	 * @param unitId ユニット ID
+	 * @return 推定値 [ms]. 記録がなければ {@code null}
+	 */
+	public synchronized Float estimateMsec(String unitId) {
+		float[] stat = stats_.get(unitId);
+		return (stat != null) ? stat[0] + DEVIATION_FACTOR_ * stat[1] : null;
+	}
+
+	/**
+	 * Get the percentile of the estimates of units.
+	 * Units without records are ignored.
+	 * @param unitIds a collection of unit IDs
+	 * @param percent percentile. 0 to 100
+	 * @param defaultMsec the value returned if none of the units has records [ms]
+	 * @return the percentile of the estimates rounded up [ms]
+	 *          
+	 * ユニット群の推定値のパーセンタイルを取得する.
+	 * 記録のないユニットは無視する.
+	 * @param unitIds ユニット ID のコレクション
+	 * @param percent パーセンタイル. 0 から 100
+	 * @param defaultMsec どのユニットにも記録がない場合に返す値 [ms]
+	 * @return 推定値のパーセンタイルの切り上げ値 [ms]
+	 */
+	public synchronized long percentileMsec(Collection<String> unitIds, double percent, long defaultMsec) {
+		float[] estimates = new float[unitIds.size()];
+		int n = 0;
+		for (String aUnitId : unitIds) {
+			Float anEstimate = estimateMsec(aUnitId);
+			if (anEstimate != null) estimates[n++] = anEstimate;
+		}
+		if (n == 0) return defaultMsec;
+		Arrays.sort(estimates, 0, n);
+		int rank = (int) Math.ceil(n * percent / 100D);
+		if (rank < 1) rank = 1;
+		if (n < rank) rank = n;
+		return (long) Math.ceil(estimates[rank - 1]);
+	}
+
+	/**
+	 * Forget the records of units not included in {@code unitIds}.
+	 * @param unitIds a collection of unit IDs to keep
+	 *          
+	 * {@code unitIds} に含まれないユニットの記録を忘れる.
+	 * @param unitIds 残すユニット ID のコレクション
+	 */
+	public synchronized void retainAll(Collection<String> unitIds) {
+		stats_.keySet().retainAll(unitIds);
+	}
+
+}
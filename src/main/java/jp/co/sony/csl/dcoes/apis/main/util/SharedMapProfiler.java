@@ -0,0 +1,305 @@
+package jp.co.sony.csl.dcoes.apis.main.util;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jp.co.sony.csl.dcoes.apis.common.util.vertx.LocalExclusiveLock;
+import jp.co.sony.csl.dcoes.apis.common.util.vertx.VertxConfig;
+
+/**
+ * An opt-in profiler of the shared maps.
+ * Enabled by {@code CONFIG.sharedMapProfiler.enabled} ( see {@link ApisConfig#isSharedMapProfilerEnabled()} ).
+ * In addition to the latencies always kept by {@link SharedMapUtil}, records the following.
+ * - the payload size of each operation for each map name. The size is that of the plain value before encryption
+ * - the number of conflicts for each map name. A conflict is a {@code putIfAbsent} which found a value, or a {@code replaceIfPresent} or {@code removeIfPresent} which returned {@code false}
+ * - the time spent waiting on {@link LocalExclusiveLock} for each lock name
+ * The profile is written to the log every {@code CONFIG.sharedMapProfiler.loggingPeriodMsec} and can be queried on {@link #ADDRESS}.
+ * @author OES Project
+ *          
+ * 共有マップのオプトインのプロファイラ.
+ * {@code CONFIG.sharedMapProfiler.enabled} で有効にする ( {@link ApisConfig#isSharedMapProfilerEnabled()} 参照 ).
+ * {@link SharedMapUtil} が常に保持するレイテンシに加え以下を記録する.
+ * - マップ名ごとの各操作のペイロードサイズ. サイズは暗号化前の値のもの
+ * - マップ名ごとの競合数. 競合とは値があった {@code putIfAbsent} および {@code false} を返した {@code replaceIfPresent} と {@code removeIfPresent}
+ * - ロック名ごとの {@link LocalExclusiveLock} の待ち時間
+ * プロファイルは {@code CONFIG.sharedMapProfiler.loggingPeriodMsec} ごとにログに出力し {@link #ADDRESS} で問い合わせることができる.
+ * @author OES Project
+ */
+public class SharedMapProfiler {
+	private static final Logger log = LoggerFactory.getLogger(SharedMapProfiler.class);
+
+	/**
+	 * EventBus address of the profile service.
+	 * Scope: local
+	 * Value: {@value}
+	 *          
+	 * プロファイルサービスの EventBus アドレス.
+	 * 範囲 : ローカル
+	 * 値は {@value}
+	 */
+	public static final String ADDRESS = "apis.main.SharedMap.profile";
+
+	/**
+	 * Default logging period [ms].
+	 * Value: {@value}.
+	 *          
+	 * ログ出力周期のデフォルト値 [ms].
+	 * 値は {@value}.
+	 */
+	private static final Long DEFAULT_LOGGING_PERIOD_MSEC = 60000L;
+
+	private static volatile boolean enabled_ = false;
+	private static final Map<String, Map<String, Payload_>> payloads_ = new LinkedHashMap<>();
+	private static final Map<String, Map<String, Long>> conflicts_ = new LinkedHashMap<>();
+	private static final Map<String, LatencyHistogram> lockWaits_ = new LinkedHashMap<>();
+
+	private SharedMapProfiler() { }
+
+	/**
+	 * Find out if the profiler is enabled.
+	 * @return {@code true} if enabled
+	 *          
+	 * プロファイラが有効か否かを取得する.
+	 * @return 有効なら {@code true}
+	 */
+	public static boolean enabled() {
+		return enabled_;
+	}
+
+	/**
+	 * Start the profiler if it is enabled.
+	 * Starts the {@link io.vertx.core.eventbus.EventBus} service and the logging timer.
+	 * Address: {@link #ADDRESS}
+	 * Scope: local
+	 * Function: Get the profile of the shared maps.
+	 * Message body: Reset flag [{@link Boolean}]. If {@code true}, the profile is cleared after replying
+	 * Message header: none
+	 * Response: Profile [{@link JsonObject}] ( see {@link #toJsonObject()} )
+	 * @param vertx a vertx object
+	 * @param completionHandler the completion handler
+	 *          
+	 * 有効ならプロファイラを起動する.
+	 * {@link io.vertx.core.eventbus.EventBus} サービスとログ出力タイマを起動する.
+	 * アドレス : {@link #ADDRESS}
+	 * 範囲 : ローカル
+	 * 処理 : 共有マップのプロファイルを取得する.
+	 * メッセージボディ : リセットフラグ [{@link Boolean}]. {@code true} なら返した後でプロファイルを消去する
+	 * メッセージヘッダ : なし
+	 * レスポンス : プロファイル [{@link JsonObject}] ( {@link #toJsonObject()} 参照 )
+	 * @param vertx vertx オブジェクト
+	 * @param completionHandler the completion handler
+	 */
+	public static void start(Vertx vertx, Handler<AsyncResult<Void>> completionHandler) {
+		if (!ApisConfig.isSharedMapProfilerEnabled()) {
+			completionHandler.handle(Future.succeededFuture());
+			return;
+		}
+		vertx.eventBus().<Boolean>localConsumer(ADDRESS, req -> {
+			req.reply(toJsonObject());
+			if (Boolean.TRUE.equals(req.body())) reset();
+		}).completionHandler(res -> {
+			if (res.succeeded()) {
+				enabled_ = true;
+				if (log.isInfoEnabled()) log.info("shared map profiler enabled");
+				setLoggingTimer_(vertx);
+			}
+			completionHandler.handle(res);
+		});
+	}
+	private static void setLoggingTimer_(Vertx vertx) {
+		Long delay = VertxConfig.config.getLong(DEFAULT_LOGGING_PERIOD_MSEC, "sharedMapProfiler", "loggingPeriodMsec");
+		vertx.setTimer(delay, timerId -> {
+			if (log.isInfoEnabled()) log.info("shared map profile : " + toJsonObject().encode());
+			setLoggingTimer_(vertx);
+		});
+	}
+
+	////
+
+	/**
+	 * Acquire an exclusive lock recording the time spent waiting.
+	 * Just acquires the lock if the profiler is disabled.
+	 * @param vertx a vertx object
+	 * @param lock the lock to acquire
+	 * @param name the name of the lock in the profile
+	 * @param completionHandler the completion handler
+	 *          
+	 * 待ち時間を記録しながら排他ロックを獲得する.
+	 * プロファイラが無効ならロックを獲得するだけ.
+	 * @param vertx vertx オブジェクト
+	 * @param lock 獲得するロック
+	 * @param name プロファイル上のロックの名前
+	 * @param completionHandler the completion handler
+	 */
+	public static void acquire(Vertx vertx, LocalExclusiveLock lock, String name, Handler<AsyncResult<LocalExclusiveLock.Lock>> completionHandler) {
+		if (!enabled_) {
+			lock.acquire(vertx, completionHandler);
+			return;
+		}
+		long startNanos = System.nanoTime();
+		lock.acquire(vertx, res -> {
+			lockWait_(name).record(System.nanoTime() - startNanos);
+			completionHandler.handle(res);
+		});
+	}
+
+	/**
+	 * Record the payload size of an operation.
+	 * @param name the name of the map
+	 * @param operation the name of the operation
+	 * @param value the value written or read
+	 *          
+	 * 操作のペイロードサイズを記録する.
+	 * @param name マップの名前
+	 * @param operation 操作の名前
+	 * @param value 書き込んだ値もしくは読み込んだ値
+	 */
+	static void recordPayload(String name, String operation, Object value) {
+		if (value == null) return;
+		long size = size_(value);
+		synchronized (SharedMapProfiler.class) {
+			Map<String, Payload_> map = payloads_.get(name);
+			if (map == null) {
+				map = new LinkedHashMap<>();
+				payloads_.put(name, map);
+			}
+			Payload_ payload = map.get(operation);
+			if (payload == null) {
+				payload = new Payload_();
+				map.put(operation, payload);
+			}
+			payload.count_++;
+			payload.totalBytes_ += size;
+			if (payload.maxBytes_ < size) payload.maxBytes_ = size;
+		}
+	}
+	/**
+	 * Count a conflict of an operation.
+	 * @param name the name of the map
+	 * @param operation the name of the operation
+	 *          
+	 * 操作の競合を数える.
+	 * @param name マップの名前
+	 * @param operation 操作の名前
+	 */
+	static synchronized void recordConflict(String name, String operation) {
+		Map<String, Long> map = conflicts_.get(name);
+		if (map == null) {
+			map = new LinkedHashMap<>();
+			conflicts_.put(name, map);
+		}
+		Long count = map.get(operation);
+		map.put(operation, (count != null) ? count + 1L : 1L);
+	}
+
+	private static long size_(Object value) {
+		if (value instanceof String) {
+			return ((String) value).length();
+		} else if (value instanceof JsonObject) {
+			return ((JsonObject) value).encode().length();
+		} else if (value instanceof JsonArray) {
+			return ((JsonArray) value).encode().length();
+		} else if (value instanceof Buffer) {
+			return ((Buffer) value).length();
+		} else if (value instanceof byte[]) {
+			return ((byte[]) value).length;
+		} else if (value instanceof Map) {
+			long result = 0L;
+			for (Object aValue : ((Map<?, ?>) value).values()) {
+				if (aValue != null) result += size_(aValue);
+			}
+			return result;
+		} else if (value instanceof Collection) {
+			long result = 0L;
+			for (Object aValue : (Collection<?>) value) {
+				if (aValue != null) result += size_(aValue);
+			}
+			return result;
+		}
+		return String.valueOf(value).length();
+	}
+
+	private static synchronized LatencyHistogram lockWait_(String name) {
+		LatencyHistogram result = lockWaits_.get(name);
+		if (result == null) {
+			result = new LatencyHistogram();
+			lockWaits_.put(name, result);
+		}
+		return result;
+	}
+
+	private static class Payload_ {
+		private long count_ = 0L;
+		private long totalBytes_ = 0L;
+		private long maxBytes_ = 0L;
+		private JsonObject toJsonObject() {
+			return new JsonObject().put("count", count_).put("meanBytes", (0L < count_) ? totalBytes_ / count_ : 0L).put("maxBytes", maxBytes_);
+		}
+	}
+
+	////
+
+	/**
+	 * Get the profile as a {@link JsonObject}.
+	 * - latencies: the statistics kept by {@link SharedMapUtil} ( see {@link SharedMapUtil#toJsonObject()} )
+	 * - payloads: count, meanBytes and maxBytes of each operation for each map name
+	 * - conflicts: the number of conflicts of each operation for each map name
+	 * - lockWaits: the time spent waiting for each lock name ( see {@link LatencyHistogram#toJsonObject()} )
+	 * @return the profile
+	 *          
+	 * プロファイルを {@link JsonObject} で取得する.
+	 * - latencies : {@link SharedMapUtil} が保持する統計値 ( {@link SharedMapUtil#toJsonObject()} 参照 )
+	 * - payloads : マップ名ごとの各操作の count, meanBytes, maxBytes
+	 * - conflicts : マップ名ごとの各操作の競合数
+	 * - lockWaits : ロック名ごとの待ち時間 ( {@link LatencyHistogram#toJsonObject()} 参照 )
+	 * @return プロファイル
+	 */
+	public static JsonObject toJsonObject() {
+		JsonObject result = new JsonObject().put("latencies", SharedMapUtil.toJsonObject());
+		synchronized (SharedMapProfiler.class) {
+			JsonObject payloads = new JsonObject();
+			for (Map.Entry<String, Map<String, Payload_>> anEntry : payloads_.entrySet()) {
+				JsonObject operations = new JsonObject();
+				for (Map.Entry<String, Payload_> anOperation : anEntry.getValue().entrySet()) {
+					operations.put(anOperation.getKey(), anOperation.getValue().toJsonObject());
+				}
+				payloads.put(anEntry.getKey(), operations);
+			}
+			JsonObject conflicts = new JsonObject();
+			for (Map.Entry<String, Map<String, Long>> anEntry : conflicts_.entrySet()) {
+				conflicts.put(anEntry.getKey(), new JsonObject(new LinkedHashMap<>(anEntry.getValue())));
+			}
+			JsonObject lockWaits = new JsonObject();
+			for (Map.Entry<String, LatencyHistogram> anEntry : lockWaits_.entrySet()) {
+				lockWaits.put(anEntry.getKey(), anEntry.getValue().toJsonObject());
+			}
+			result.put("payloads", payloads).put("conflicts", conflicts).put("lockWaits", lockWaits);
+		}
+		return result;
+	}
+	/**
+	 * Clear the profile, including the statistics kept by {@link SharedMapUtil}.
+	 *          
+	 * {@link SharedMapUtil} が保持する統計値も含めプロファイルを消去する.
+	 */
+	public static void reset() {
+		SharedMapUtil.reset();
+		synchronized (SharedMapProfiler.class) {
+			payloads_.clear();
+			conflicts_.clear();
+			lockWaits_.clear();
+		}
+	}
+
+}
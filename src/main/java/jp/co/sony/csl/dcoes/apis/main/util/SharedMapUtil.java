@@ -0,0 +1,377 @@
+package jp.co.sony.csl.dcoes.apis.main.util;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.shareddata.AsyncMap;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import jp.co.sony.csl.dcoes.apis.common.Error;
+import jp.co.sony.csl.dcoes.apis.common.ErrorException;
+import jp.co.sony.csl.dcoes.apis.common.util.vertx.EncryptedClusterWideMapUtil;
+
+/**
+ * The access layer of the encrypted cluster-wide maps.
+ * - The map handle is obtained by {@link EncryptedClusterWideMapUtil#getEncryptedClusterWideMap(Vertx, String, Handler)} once per map name and reused.
+ *   A handle is discarded when an operation on it fails and is obtained again at the next access.
+ * - Read operations ( {@code get}, {@code size}, {@code keys}, {@code values}, {@code entries} ) are retried up to {@link #READ_RETRY_LIMIT} times.
+ *   Write operations are not retried because their results depend on the state at the time ( e.g. {@code putIfAbsent} ).
+ * - The latency of each operation is recorded for each map name.
+ *   Payload sizes and conflicts are also recorded if {@link SharedMapProfiler} is enabled.
+ * - Failures are turned into {@link ErrorException} by {@link #fail(Error.Extent, Throwable, Handler)} or {@link #reportAndFail(Vertx, Error.Extent, Throwable, Handler)}.
+ * @author OES Project
+ *          
+ * 暗号化されたクラスタ全体のマップへのアクセス層.
+ * - マップのハンドルはマップ名ごとに一度だけ {@link EncryptedClusterWideMapUtil#getEncryptedClusterWideMap(Vertx, String, Handler)} で取得し使い回す.
+ *   ハンドルに対する操作が失敗したらハンドルを捨て次のアクセスで取得し直す.
+ * - 読み出し操作 ( {@code get}, {@code size}, {@code keys}, {@code values}, {@code entries} ) は {@link #READ_RETRY_LIMIT} 回までリトライする.
+ *   書き込み操作は結果がその時点の状態に依存する ( 例えば {@code putIfAbsent} ) のでリトライしない.
+ * - 操作ごとのレイテンシをマップ名ごとに記録する.
+ *   {@link SharedMapProfiler} が有効ならペイロードサイズと競合も記録する.
+ * - 失敗は {@link #fail(Error.Extent, Throwable, Handler)} または {@link #reportAndFail(Vertx, Error.Extent, Throwable, Handler)} で {@link ErrorException} にする.
+ * @author OES Project
+ */
+public class SharedMapUtil {
+	private static final Logger log = LoggerFactory.getLogger(SharedMapUtil.class);
+
+	/**
+	 * EventBus address of the statistics service.
+	 * Scope: local
+	 * Value: {@value}
+	 *          
+	 * 統計サービスの EventBus アドレス.
+	 * 範囲 : ローカル
+	 * 値は {@value}
+	 */
+	public static final String STATISTICS_ADDRESS = "apis.main.SharedMap.statistics";
+
+	/**
+	 * The error message of a failed operation.
+	 * Value: {@value}.
+	 *          
+	 * 操作が失敗した際のエラーメッセージ.
+	 * 値は {@value}.
+	 */
+	public static final String FAILURE_MESSAGE = "Communication failed on SharedData";
+
+	/**
+	 * The maximum number of retries of a read operation.
+	 * Not read from POLICY because {@link jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping} itself uses this class.
+	 * Value: {@value}.
+	 *          
+	 * 読み出し操作のリトライ回数の上限.
+	 * {@link jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping} 自身がこのクラスを使うので POLICY からは読まない.
+	 * 値は {@value}.
+	 */
+	public static final int READ_RETRY_LIMIT = 2;
+	/**
+	 * The delay [ms] before retrying a read operation.
+	 * Doubled at every retry.
+	 * Value: {@value}.
+	 *          
+	 * 読み出し操作をリトライするまでの待ち時間 [ms].
+	 * リトライごとに倍にする.
+	 * 値は {@value}.
+	 */
+	public static final long RETRY_DELAY_MSEC = 100L;
+
+	private static final Map<String, AsyncMap<Object, Object>> maps_ = new ConcurrentHashMap<>();
+	private static final Map<String, Statistics_> statistics_ = new LinkedHashMap<>();
+
+	private SharedMapUtil() { }
+
+	/**
+	 * Get the encrypted cluster-wide map.
+	 * Results are received with the {@link AsyncResult#result()} method of completionHandler.
+	 * @param <K> the type of the keys
+	 * @param <V> the type of the values
+	 * @param vertx a vertx object
+	 * @param name the name of the map
+	 * @param completionHandler the completion handler
+	 *          
+	 * 暗号化されたクラスタ全体のマップを取得する.
+	 * completionHandler の {@link AsyncResult#result()} で受け取る.
+	 * @param <K> キーの型
+	 * @param <V> 値の型
+	 * @param vertx vertx オブジェクト
+	 * @param name マップの名前
+	 * @param completionHandler the completion handler
+	 */
+	@SuppressWarnings("unchecked") public static <K, V> void getMap(Vertx vertx, String name, Handler<AsyncResult<AsyncMap<K, V>>> completionHandler) {
+		AsyncMap<Object, Object> map = maps_.get(name);
+		if (map != null) {
+			completionHandler.handle(Future.succeededFuture((AsyncMap<K, V>) map));
+		} else {
+			long startNanos = System.nanoTime();
+			EncryptedClusterWideMapUtil.<Object, Object>getEncryptedClusterWideMap(vertx, name, resMap -> {
+				statistics_(name).record("getMap", startNanos, resMap.succeeded(), false);
+				if (resMap.succeeded()) {
+					AsyncMap<Object, Object> result = new Map_(vertx, name, resMap.result());
+					AsyncMap<Object, Object> previous = maps_.putIfAbsent(name, result);
+					completionHandler.handle(Future.succeededFuture((AsyncMap<K, V>) ((previous != null) ? previous : result)));
+				} else {
+					completionHandler.handle(Future.failedFuture(resMap.cause()));
+				}
+			});
+		}
+	}
+
+	/**
+	 * Log a failure and set {@code completionHandler} to fail.
+	 * A cause which is already an {@link ErrorException} is passed through as is.
+	 * @param <T> the type of the completionHandler object's {@link AsyncResult#result()}
+	 * @param extent an {@link Error.Extent} object
+	 * @param cause the cause of the failure
+	 * @param completionHandler a failed completionHandler object
+	 *          
+	 * 失敗をログ出力し {@code completionHandler} を fail させる.
+	 * すでに {@link ErrorException} である原因はそのまま渡す.
+	 * @param <T> completionHandler オブジェクトの {@link AsyncResult#result()} の型
+	 * @param extent {@link Error.Extent} オブジェクト
+	 * @param cause 失敗の原因
+	 * @param completionHandler fail させる completionHandler オブジェクト
+	 */
+	public static <T> void fail(Error.Extent extent, Throwable cause, Handler<AsyncResult<T>> completionHandler) {
+		if (cause instanceof ErrorException) {
+			completionHandler.handle(Future.failedFuture(cause));
+		} else {
+			ErrorExceptionUtil.logAndFail(Error.Category.FRAMEWORK, extent, Error.Level.ERROR, FAILURE_MESSAGE, cause, completionHandler);
+		}
+	}
+	/**
+	 * Report a failure and set {@code completionHandler} to fail.
+	 * A cause which is already an {@link ErrorException} is reported as is.
+	 * @param <T> the type of the completionHandler object's {@link AsyncResult#result()}
+	 * @param vertx a vertx object
+	 * @param extent an {@link Error.Extent} object
+	 * @param cause the cause of the failure
+	 * @param completionHandler a failed completionHandler object
+	 *          
+	 * 失敗を送出し {@code completionHandler} を fail させる.
+	 * すでに {@link ErrorException} である原因はそのまま送出する.
+	 * @param <T> completionHandler オブジェクトの {@link AsyncResult#result()} の型
+	 * @param vertx vertx オブジェクト
+	 * @param extent {@link Error.Extent} オブジェクト
+	 * @param cause 失敗の原因
+	 * @param completionHandler fail させる completionHandler オブジェクト
+	 */
+	public static <T> void reportAndFail(Vertx vertx, Error.Extent extent, Throwable cause, Handler<AsyncResult<T>> completionHandler) {
+		if (cause instanceof ErrorException) {
+			ErrorExceptionUtil.reportIfNeedAndFail(vertx, cause, completionHandler);
+		} else {
+			ErrorUtil.reportAndFail(vertx, Error.Category.FRAMEWORK, extent, Error.Level.ERROR, FAILURE_MESSAGE, cause, completionHandler);
+		}
+	}
+
+	////
+
+	/**
+	 * Get the statistics as a {@link JsonObject}.
+	 * Keyed by the map name.
+	 * - failures: the number of failed operations
+	 * - retries: the number of retried read operations
+	 * - operations: statistics of each operation ( see {@link LatencyHistogram#toJsonObject()} )
+	 * @return the statistics
+	 *          
+	 * 統計値を {@link JsonObject} で取得する.
+	 * マップ名がキー.
+	 * - failures : 失敗した操作の数
+	 * - retries : リトライした読み出し操作の数
+	 * - operations : 操作ごとの統計値 ( {@link LatencyHistogram#toJsonObject()} 参照 )
+	 * @return 統計値
+	 */
+	public static synchronized JsonObject toJsonObject() {
+		JsonObject result = new JsonObject();
+		for (Map.Entry<String, Statistics_> anEntry : statistics_.entrySet()) {
+			result.put(anEntry.getKey(), anEntry.getValue().toJsonObject());
+		}
+		return result;
+	}
+	/**
+	 * Clear all statistics.
+	 *          
+	 * 統計を全て消去する.
+	 */
+	public static synchronized void reset() {
+		statistics_.clear();
+	}
+	/**
+	 * Start the statistics service on {@link io.vertx.core.eventbus.EventBus}.
+	 * Address: {@link #STATISTICS_ADDRESS}
+	 * Scope: local
+	 * Function: Get the statistics of the shared maps.
+	 * Message body: Reset flag [{@link Boolean}]. If {@code true}, the statistics are cleared after replying
+	 * Message header: none
+	 * Response: Statistics [{@link JsonObject}] ( see {@link #toJsonObject()} )
+	 * @param vertx a vertx object
+	 * @param completionHandler the completion handler
+	 *          
+	 * {@link io.vertx.core.eventbus.EventBus} サービス起動.
+	 * アドレス : {@link #STATISTICS_ADDRESS}
+	 * 範囲 : ローカル
+	 * 処理 : 共有マップの統計を取得する.
+	 * メッセージボディ : リセットフラグ [{@link Boolean}]. {@code true} なら返した後で統計を消去する
+	 * メッセージヘッダ : なし
+	 * レスポンス : 統計値 [{@link JsonObject}] ( {@link #toJsonObject()} 参照 )
+	 * @param vertx vertx オブジェクト
+	 * @param completionHandler the completion handler
+	 */
+	public static void startStatisticsService(Vertx vertx, Handler<AsyncResult<Void>> completionHandler) {
+		vertx.eventBus().<Boolean>localConsumer(STATISTICS_ADDRESS, req -> {
+			req.reply(toJsonObject());
+			if (Boolean.TRUE.equals(req.body())) reset();
+		}).completionHandler(completionHandler);
+	}
+
+	private static synchronized Statistics_ statistics_(String name) {
+		Statistics_ result = statistics_.get(name);
+		if (result == null) {
+			result = new Statistics_();
+			statistics_.put(name, result);
+		}
+		return result;
+	}
+
+	private static class Statistics_ {
+		private final Map<String, LatencyHistogram> operations_ = new LinkedHashMap<>();
+		private long failures_ = 0L;
+		private long retries_ = 0L;
+		private synchronized void record(String operation, long startNanos, boolean succeeded, boolean retry) {
+			LatencyHistogram histogram = operations_.get(operation);
+			if (histogram == null) {
+				histogram = new LatencyHistogram();
+				operations_.put(operation, histogram);
+			}
+			histogram.record(System.nanoTime() - startNanos);
+			if (!succeeded) failures_++;
+			if (retry) retries_++;
+		}
+		private synchronized JsonObject toJsonObject() {
+			JsonObject operations = new JsonObject();
+			for (Map.Entry<String, LatencyHistogram> anEntry : operations_.entrySet()) {
+				operations.put(anEntry.getKey(), anEntry.getValue().toJsonObject());
+			}
+			return new JsonObject().put("failures", failures_).put("retries", retries_).put("operations", operations);
+		}
+	}
+
+	////
+
+	/**
+	 * The cached map handle.
+	 * Records the latency of every operation, retries read operations and discards itself from the cache on failure.
+	 * @author OES Project
+	 *          
+	 * キャッシュするマップのハンドル.
+	 * 全ての操作のレイテンシを記録し, 読み出し操作をリトライし, 失敗したら自身をキャッシュから捨てる.
+	 * @author OES Project
+	 */
+	private static class Map_ implements AsyncMap<Object, Object> {
+		private final Vertx vertx_;
+		private final String name_;
+		private final AsyncMap<Object, Object> delegate_;
+		private Map_(Vertx vertx, String name, AsyncMap<Object, Object> delegate) {
+			vertx_ = vertx;
+			name_ = name;
+			delegate_ = delegate;
+		}
+		private <T> Handler<AsyncResult<T>> metered_(String operation, Object payload, Handler<AsyncResult<T>> completionHandler) {
+			long startNanos = System.nanoTime();
+			if (SharedMapProfiler.enabled()) SharedMapProfiler.recordPayload(name_, operation, payload);
+			return res -> {
+				statistics_(name_).record(operation, startNanos, res.succeeded(), false);
+				if (res.failed()) {
+					invalidate_();
+				} else if (SharedMapProfiler.enabled() && isConflict_(operation, res.result())) {
+					SharedMapProfiler.recordConflict(name_, operation);
+				}
+				completionHandler.handle(res);
+			};
+		}
+		private boolean isConflict_(String operation, Object result) {
+			if ("putIfAbsent".equals(operation)) return (result != null);
+			if ("replaceIfPresent".equals(operation) || "removeIfPresent".equals(operation)) return Boolean.FALSE.equals(result);
+			return false;
+		}
+		private <T> void read_(String operation, Consumer<Handler<AsyncResult<T>>> action, Handler<AsyncResult<T>> completionHandler) {
+			read_(operation, action, 0, completionHandler);
+		}
+		private <T> void read_(String operation, Consumer<Handler<AsyncResult<T>>> action, int retry, Handler<AsyncResult<T>> completionHandler) {
+			long startNanos = System.nanoTime();
+			action.accept(res -> {
+				statistics_(name_).record(operation, startNanos, res.succeeded(), 0 < retry);
+				if (res.succeeded() || res.cause() instanceof ErrorException || READ_RETRY_LIMIT <= retry) {
+					if (res.failed()) {
+						invalidate_();
+					} else if (SharedMapProfiler.enabled()) {
+						SharedMapProfiler.recordPayload(name_, operation, res.result());
+					}
+					completionHandler.handle(res);
+				} else {
+					if (log.isWarnEnabled()) log.warn(operation + " on " + name_ + " failed ; retrying : " + res.cause());
+					vertx_.setTimer(RETRY_DELAY_MSEC << retry, timerId -> {
+						read_(operation, action, retry + 1, completionHandler);
+					});
+				}
+			});
+		}
+		private void invalidate_() {
+			// Only if this handle is still the cached one
+			// このハンドルがまだキャッシュされているものである場合のみ
+			maps_.remove(name_, this);
+		}
+		@Override public void get(Object k, Handler<AsyncResult<Object>> resultHandler) {
+			read_("get", h -> delegate_.get(k, h), resultHandler);
+		}
+		@Override public void put(Object k, Object v, Handler<AsyncResult<Void>> completionHandler) {
+			delegate_.put(k, v, metered_("put", v, completionHandler));
+		}
+		@Override public void put(Object k, Object v, long ttl, Handler<AsyncResult<Void>> completionHandler) {
+			delegate_.put(k, v, ttl, metered_("put", v, completionHandler));
+		}
+		@Override public void putIfAbsent(Object k, Object v, Handler<AsyncResult<Object>> completionHandler) {
+			delegate_.putIfAbsent(k, v, metered_("putIfAbsent", v, completionHandler));
+		}
+		@Override public void putIfAbsent(Object k, Object v, long ttl, Handler<AsyncResult<Object>> completionHandler) {
+			delegate_.putIfAbsent(k, v, ttl, metered_("putIfAbsent", v, completionHandler));
+		}
+		@Override public void remove(Object k, Handler<AsyncResult<Object>> resultHandler) {
+			delegate_.remove(k, metered_("remove", null, resultHandler));
+		}
+		@Override public void removeIfPresent(Object k, Object v, Handler<AsyncResult<Boolean>> resultHandler) {
+			delegate_.removeIfPresent(k, v, metered_("removeIfPresent", v, resultHandler));
+		}
+		@Override public void replace(Object k, Object v, Handler<AsyncResult<Object>> resultHandler) {
+			delegate_.replace(k, v, metered_("replace", v, resultHandler));
+		}
+		@Override public void replaceIfPresent(Object k, Object oldValue, Object newValue, Handler<AsyncResult<Boolean>> resultHandler) {
+			delegate_.replaceIfPresent(k, oldValue, newValue, metered_("replaceIfPresent", newValue, resultHandler));
+		}
+		@Override public void clear(Handler<AsyncResult<Void>> resultHandler) {
+			delegate_.clear(metered_("clear", null, resultHandler));
+		}
+		@Override public void size(Handler<AsyncResult<Integer>> resultHandler) {
+			read_("size", h -> delegate_.size(h), resultHandler);
+		}
+		@Override public void keys(Handler<AsyncResult<Set<Object>>> resultHandler) {
+			read_("keys", h -> delegate_.keys(h), resultHandler);
+		}
+		@Override public void values(Handler<AsyncResult<List<Object>>> resultHandler) {
+			read_("values", h -> delegate_.values(h), resultHandler);
+		}
+		@Override public void entries(Handler<AsyncResult<Map<Object, Object>>> resultHandler) {
+			read_("entries", h -> delegate_.entries(h), resultHandler);
+		}
+	}
+
+}
@@ -0,0 +1,461 @@
+package jp.co.sony.csl.dcoes.apis.main.util;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Delta encoding tool for unit data collection.
+ * Unit data is handled per field group (the top-level keys such as {@code oesunit}, {@code apis}, {@code dcdc}, {@code battery} ...).
+ * The unit side ({@link Sender}) keeps a revision number for each field group and sends only the groups changed since the revision it last sent to the same GridMaster session.
+ * The GridMaster side ({@link Receiver}) merges the received groups into the unit data it already holds.
+ * If the revision on which a delta is based does not match the one held by GridMaster, the delta is discarded and the whole unit data is requested in the next request.
+ * Only a session ID and a (usually empty) list of units to resync are added to the broadcast request, so the request size does not grow with the number of units.
+ * @author OES Project
+ *          
+ * ユニットデータ収集の差分エンコードツール.
+ * ユニットデータをフィールドグループ ( {@code oesunit}, {@code apis}, {@code dcdc}, {@code battery} ... などトップレベルのキー ) 単位で扱う.
+ * ユニット側 ( {@link Sender} ) はフィールドグループごとにリビジョン番号を保持し同じ GridMaster セッションに前回送ったリビジョン以降に変化したグループだけを送る.
+ * GridMaster 側 ( {@link Receiver} ) は受け取ったグループを保持しているユニットデータにマージする.
+ * 差分の基準リビジョンが GridMaster で保持しているものと一致しなければその差分は破棄し次回の要求でユニットデータ全体を要求する.
+ * ブロードキャストする要求に追加するのはセッション ID と ( 通常は空の ) 再同期対象ユニットのリストだけなのでユニット数が増えても要求のサイズは増えない.
+ * @author OES Project
+ */
+public class UnitDataDelta {
+
+	private UnitDataDelta() { }
+
+	/**
+	 * Request header name for the session ID of the GridMaster side.
+	 * Value: {@value}
+	 *          
+	 * GridMaster 側のセッション ID を載せるリクエストヘッダ名.
+	 * 値は {@value}
+	 */
+	public static final String HEADER_SESSION = "deltaSession";
+	/**
+	 * Request header name for the list of unit IDs from which the whole unit data is requested.
+	 * Value: {@value}
+	 *          
+	 * ユニットデータ全体を要求するユニット ID のリストを載せるリクエストヘッダ名.
+	 * 値は {@value}
+	 */
+	public static final String HEADER_RESYNC = "deltaResync";
+	/**
+	 * Reply header name for the unit ID.
+	 * Value: {@value}
+	 *          
+	 * ユニット ID を載せる返信ヘッダ名.
+	 * 値は {@value}
+	 */
+	public static final String HEADER_UNIT_ID = "unitId";
+	/**
+	 * Reply header name for the epoch of the sender.
+	 * Value: {@value}
+	 *          
+	 * 送信側のエポックを載せる返信ヘッダ名.
+	 * 値は {@value}
+	 */
+	public static final String HEADER_EPOCH = "deltaEpoch";
+	/**
+	 * Reply header name for the revision on which the delta is based.
+	 * Value: {@value}
+	 *          
+	 * 差分の基準となるリビジョンを載せる返信ヘッダ名.
+	 * 値は {@value}
+	 */
+	public static final String HEADER_BASE_REVISION = "deltaBaseRevision";
+	/**
+	 * Reply header name for the revision of the data being sent.
+	 * Value: {@value}
+	 *          
+	 * 送るデータのリビジョンを載せる返信ヘッダ名.
+	 * 値は {@value}
+	 */
+	public static final String HEADER_REVISION = "deltaRevision";
+	/**
+	 * Reply header name for the flag indicating that the whole unit data is being sent.
+	 * Value: {@value}
+	 *          
+	 * ユニットデータ全体を送っていることを示すフラグを載せる返信ヘッダ名.
+	 * 値は {@value}
+	 */
+	public static final String HEADER_FULL = "deltaFull";
+	/**
+	 * Reply header name for the list of removed field groups.
+	 * Value: {@value}
+	 *          
+	 * 削除されたフィールドグループのリストを載せる返信ヘッダ名.
+	 * 値は {@value}
+	 */
+	public static final String HEADER_REMOVED = "deltaRemoved";
+
+	private static Object copy_(Object value) {
+		if (value instanceof JsonObject) {
+			return ((JsonObject) value).copy();
+		} else if (value instanceof JsonArray) {
+			return ((JsonArray) value).copy();
+		}
+		return value;
+	}
+
+	////
+
+	/**
+	 * Unit side delta encoder.
+	 * One instance per unit.
+	 * Sends the whole unit data to a GridMaster session for the first time, and only the changed field groups after that.
+	 * Not thread safe; use it from a single Verticle.
+	 * @author OES Project
+	 *          
+	 * ユニット側の差分エンコーダ.
+	 * ユニットごとに一つ.
+	 * GridMaster のセッションに対し初回はユニットデータ全体を, 以降は変化したフィールドグループだけを送る.
+	 * スレッドセーフではないので単一の Verticle から使うこと.
+	 * @author OES Project
+	 */
+	public static class Sender {
+		private final String epoch_ = UUID.randomUUID().toString();
+		private long revision_ = 0L;
+		private final Map<String, Object> groups_ = new HashMap<>();
+		private final Map<String, Long> groupRevisions_ = new HashMap<>();
+		private final Map<String, Long> removedRevisions_ = new HashMap<>();
+		private String session_ = null;
+		private long sentRevision_ = 0L;
+
+		/**
+		 * Make an instance.
+		 *          
+		 * インスタンス作成.
+		 */
+		public Sender() {
+		}
+
+		/**
+		 * Reflect the latest unit data.
+		 * Compare each field group with the previous one and advance the revision if anything changed.
+		 * @param unitData the latest unit data
+		 *          
+		 * 最新のユニットデータを反映する.
+		 * フィールドグループごとに前回と比較し変化があればリビジョンを進める.
+		 * @param unitData 最新のユニットデータ
+		 */
+		public void update(JsonObject unitData) {
+			if (unitData == null) return;
+			boolean changed = false;
+			for (String aKey : unitData.fieldNames()) {
+				Object aValue = unitData.getValue(aKey);
+				if (!groups_.containsKey(aKey) || !Objects.equals(groups_.get(aKey), aValue)) {
+					if (!changed) {
+						changed = true;
+						revision_++;
+					}
+					// Keep a copy because the cache may be modified in place
+					// キャッシュがその場で書き換えられることがあるのでコピーを保持する
+					groups_.put(aKey, copy_(aValue));
+					groupRevisions_.put(aKey, revision_);
+					removedRevisions_.remove(aKey);
+				}
+			}
+			for (Iterator<String> it = groups_.keySet().iterator(); it.hasNext();) {
+				String aKey = it.next();
+				if (!unitData.containsKey(aKey)) {
+					if (!changed) {
+						changed = true;
+						revision_++;
+					}
+					it.remove();
+					groupRevisions_.remove(aKey);
+					removedRevisions_.put(aKey, revision_);
+				}
+			}
+		}
+
+		/**
+		 * Build the data to be sent.
+		 * The delta is based on the revision last sent to the same session.
+		 * If the session is different or a resync is requested, the whole unit data is sent.
+		 * @param unitData the latest unit data
+		 * @param session session ID of the GridMaster side
+		 * @param resync {@code true} if the whole unit data is requested
+		 * @return the data to be sent
+		 *          
+		 * 送信するデータを組み立てる.
+		 * 同じセッションに前回送ったリビジョンを基準に差分をとる.
+		 * セッションが異なる場合や再同期が要求された場合はユニットデータ全体を送る.
+		 * @param unitData 最新のユニットデータ
+		 * @param session GridMaster 側のセッション ID
+		 * @param resync ユニットデータ全体が要求されていれば {@code true}
+		 * @return 送信するデータ
+		 */
+		public Delta build(JsonObject unitData, String session, boolean resync) {
+			update(unitData);
+			Delta result;
+			if (resync || session_ == null || !session_.equals(session)) {
+				result = new Delta(epoch_, 0L, revision_, true, unitData, new JsonArray());
+			} else {
+				JsonObject body = new JsonObject();
+				for (Map.Entry<String, Long> anEntry : groupRevisions_.entrySet()) {
+					if (sentRevision_ < anEntry.getValue()) {
+						body.put(anEntry.getKey(), unitData.getValue(anEntry.getKey()));
+					}
+				}
+				JsonArray removed = new JsonArray();
+				for (Map.Entry<String, Long> anEntry : removedRevisions_.entrySet()) {
+					if (sentRevision_ < anEntry.getValue()) {
+						removed.add(anEntry.getKey());
+					}
+				}
+				result = new Delta(epoch_, sentRevision_, revision_, false, body, removed);
+			}
+			session_ = session;
+			sentRevision_ = revision_;
+			return result;
+		}
+	}
+
+	/**
+	 * Data to be sent by {@link Sender}.
+	 * @author OES Project
+	 *          
+	 * {@link Sender} が送信するデータ.
+	 * @author OES Project
+	 */
+	public static class Delta {
+		private final String epoch_;
+		private final long baseRevision_;
+		private final long revision_;
+		private final boolean full_;
+		private final JsonObject body_;
+		private final JsonArray removed_;
+		private Delta(String epoch, long baseRevision, long revision, boolean full, JsonObject body, JsonArray removed) {
+			epoch_ = epoch;
+			baseRevision_ = baseRevision;
+			revision_ = revision;
+			full_ = full;
+			body_ = body;
+			removed_ = removed;
+		}
+		/**
+		 * Get the epoch.
+		 * It changes every time the unit restarts.
+		 * @return epoch
+		 *          
+		 * エポックを取得する.
+		 * ユニットが再起動するたびに変わる.
+		 * @return エポック
+		 */
+		public String epoch() {
+			return epoch_;
+		}
+		/**
+		 * Get the revision on which the delta is based.
+		 * @return base revision
+		 *          
+		 * 差分の基準となるリビジョンを取得する.
+		 * @return 基準リビジョン
+		 */
+		public long baseRevision() {
+			return baseRevision_;
+		}
+		/**
+		 * Get the revision.
+		 * @return revision
+		 *          
+		 * リビジョンを取得する.
+		 * @return リビジョン
+		 */
+		public long revision() {
+			return revision_;
+		}
+		/**
+		 * Find out whether the whole unit data is sent.
+		 * @return {@code true} if the whole unit data is sent
+		 *          
+		 * ユニットデータ全体を送るか否か.
+		 * @return ユニットデータ全体を送るなら {@code true}
+		 */
+		public boolean isFull() {
+			return full_;
+		}
+		/**
+		 * Get the body to be sent.
+		 * The whole unit data if {@link #isFull()}, otherwise the changed field groups only.
+		 * @return body
+		 *          
+		 * 送信するボディを取得する.
+		 * {@link #isFull()} ならユニットデータ全体, そうでなければ変化したフィールドグループだけ.
+		 * @return ボディ
+		 */
+		public JsonObject body() {
+			return body_;
+		}
+		/**
+		 * Get the list of removed field groups.
+		 * @return list of removed field groups
+		 *          
+		 * 削除されたフィールドグループのリストを取得する.
+		 * @return 削除されたフィールドグループのリスト
+		 */
+		public JsonArray removed() {
+			return removed_;
+		}
+	}
+
+	////
+
+	/**
+	 * GridMaster side delta decoder.
+	 * One instance is one session.
+	 * Not thread safe; use it from a single Verticle.
+	 * @author OES Project
+	 *          
+	 * GridMaster 側の差分デコーダ.
+	 * 一つのインスタンスが一つのセッション.
+	 * スレッドセーフではないので単一の Verticle から使うこと.
+	 * @author OES Project
+	 */
+	public static class Receiver {
+		private final String session_ = UUID.randomUUID().toString();
+		private final Map<String, Base> bases_ = new HashMap<>();
+		private final Set<String> resync_ = new HashSet<>();
+
+		/**
+		 * Make an instance.
+		 *          
+		 * インスタンス作成.
+		 */
+		public Receiver() {
+		}
+
+		/**
+		 * Get the session ID.
+		 * @return session ID
+		 *          
+		 * セッション ID を取得する.
+		 * @return セッション ID
+		 */
+		public String session() {
+			return session_;
+		}
+		/**
+		 * Get the list of unit IDs from which the whole unit data is requested.
+		 * Usually empty.
+		 * @return list of unit IDs
+		 *          
+		 * ユニットデータ全体を要求するユニット ID のリストを取得する.
+		 * 通常は空.
+		 * @return ユニット ID のリスト
+		 */
+		public JsonArray resync() {
+			return new JsonArray(new ArrayList<>(resync_));
+		}
+
+		/**
+		 * Merge the received data into the unit data held for the unit.
+		 * If the base revision does not match the revision held here, the data is discarded and the whole unit data is requested next time.
+		 * @param unitId unit ID
+		 * @param body the received body
+		 * @param epoch epoch of the sender
+		 * @param baseRevision revision on which the delta is based
+		 * @param revision revision of the received data
+		 * @param full whether the received body is the whole unit data
+		 * @param removed list of removed field groups. May be {@code null}
+		 * @return the merged unit data.
+		 *         {@code null} if it cannot be merged.
+		 *          
+		 * 受け取ったデータをそのユニットについて保持しているユニットデータにマージする.
+		 * 基準リビジョンがここで保持しているリビジョンと一致しなければ破棄し次回はユニットデータ全体を要求する.
+		 * @param unitId ユニット ID
+		 * @param body 受け取ったボディ
+		 * @param epoch 送信側のエポック
+		 * @param baseRevision 差分の基準となるリビジョン
+		 * @param revision 受け取ったデータのリビジョン
+		 * @param full 受け取ったボディがユニットデータ全体か否か
+		 * @param removed 削除されたフィールドグループのリスト. {@code null} 可
+		 * @return マージしたユニットデータ.
+		 *         マージできなければ {@code null}.
+		 */
+		public JsonObject apply(String unitId, JsonObject body, String epoch, long baseRevision, long revision, boolean full, JsonArray removed) {
+			JsonObject data;
+			if (full) {
+				data = body;
+				resync_.remove(unitId);
+			} else {
+				Base base = bases_.get(unitId);
+				if (base == null || !base.epoch_.equals(epoch) || base.revision_ != baseRevision) {
+					bases_.remove(unitId);
+					resync_.add(unitId);
+					return null;
+				}
+				// Do not modify the previous object because it may still be referenced
+				// 前回のオブジェクトは参照されている可能性があるので書き換えない
+				data = new JsonObject(new LinkedHashMap<>(base.data_.getMap()));
+				for (String aKey : body.fieldNames()) {
+					data.put(aKey, body.getValue(aKey));
+				}
+				if (removed != null) {
+					for (Object aKey : removed) {
+						data.remove(String.valueOf(aKey));
+					}
+				}
+			}
+			bases_.put(unitId, new Base(epoch, revision, data));
+			return data;
+		}
+
+		/**
+		 * Find out whether the unit data held for a unit is already as new as or newer than a revision.
+		 * Used to skip a reply that arrives after a newer one.
+		 * @param unitId unit ID
+		 * @param epoch epoch of the sender
+		 * @param revision revision of the received data
+		 * @return {@code true} if the held unit data has the same epoch and a revision not older than {@code revision}
+		 *          
+		 * ユニットについて保持しているユニットデータが既にあるリビジョン以上に新しいか否か.
+		 * 新しいものより後に届いた返信を読み飛ばすために使う.
+		 * @param unitId ユニット ID
+		 * @param epoch 送信側のエポック
+		 * @param revision 受け取ったデータのリビジョン
+		 * @return 保持しているユニットデータのエポックが同じでリビジョンが {@code revision} より古くなければ {@code true}
+		 */
+		public boolean isSuperseded(String unitId, String epoch, long revision) {
+			Base base = bases_.get(unitId);
+			return base != null && base.epoch_.equals(epoch) && revision <= base.revision_;
+		}
+
+		/**
+		 * Forget units other than those specified.
+		 * @param unitIds list of unit IDs to keep
+		 *          
+		 * 指定したもの以外のユニットを忘れる.
+		 * @param unitIds 残すユニット ID のリスト
+		 */
+		public void retainAll(Collection<String> unitIds) {
+			bases_.keySet().retainAll(unitIds);
+			resync_.retainAll(unitIds);
+		}
+
+		private static class Base {
+			private final String epoch_;
+			private final long revision_;
+			private final JsonObject data_;
+			private Base(String epoch, long revision, JsonObject data) {
+				epoch_ = epoch;
+				revision_ = revision;
+				data_ = data;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,201 @@
+package jp.co.sony.csl.dcoes.apis.main.util;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Statistics of the unit data of all units.
+ * The values of each column of {@link UnitDataTable} are compared with those of the previous update in a single pass.
+ * Each changed value updates the running sums and the sorted values of its column in place, so no column is scanned or sorted again.
+ * If nothing has changed, the previous result is returned as it is.
+ * Results are shared, so they must not be modified ; {@code unitIds} is unmodifiable.
+ * The following columns are aggregated.
+ * - rsoc: {@code battery.rsoc} [%]
+ * - remainingCapacityWh: {@code apis.remaining_capacity_wh} [Wh]
+ * - ig: {@code dcdc.meter.ig} [A]
+ * - wg: {@code dcdc.meter.vg} x {@code dcdc.meter.ig} [W]
+ * For each column, the following are calculated ( see {@link #update(UnitDataTable)} ).
+ * - count, total, average, min, max, stddev, p10, p50, p90
+ * @author OES Project
+ *          
+ * 全ユニットのユニットデータの統計.
+ * {@link UnitDataTable} の各列の値を前回の更新時の値と一度の走査で比較する.
+ * 変化した値ごとにその列の累計とソート済みの値をその場で更新するので, 列を走査し直したりソートし直したりしない.
+ * 何も変化していなければ前回の結果をそのまま返す.
+ * 結果は共有されるので変更してはならない. {@code unitIds} は変更不可.
+ * 以下の列を集計する.
+ * - rsoc : {@code battery.rsoc} [%]
+ * - remainingCapacityWh : {@code apis.remaining_capacity_wh} [Wh]
+ * - ig : {@code dcdc.meter.ig} [A]
+ * - wg : {@code dcdc.meter.vg} x {@code dcdc.meter.ig} [W]
+ * 列ごとに以下を算出する ( {@link #update(UnitDataTable)} 参照 ).
+ * - count, total, average, min, max, stddev, p10, p50, p90
+ * @author OES Project
+ */
+public class UnitDataStatistics {
+
+	private static final int RSOC_ = 0;
+	private static final int REMAINING_CAPACITY_WH_ = 1;
+	private static final int IG_ = 2;
+	private static final int WG_ = 3;
+	private static final String[] COLUMN_NAMES_ = new String[] {"rsoc", "remainingCapacityWh", "ig", "wg"};
+
+	private String[] unitIds_ = new String[0];
+	private JsonArray unitIdsJson_ = new JsonArray(Collections.emptyList());
+	private final Column_[] columns_ = new Column_[COLUMN_NAMES_.length];
+	private JsonObject result_ = null;
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public UnitDataStatistics() {
+		for (int c = 0; c < columns_.length; c++) columns_[c] = new Column_(0);
+	}
+
+	/**
+	 * Update the statistics with the table of unit data.
+	 * The result has the following form.
+	 * - unitIds: a list of unit IDs [{@link JsonArray}]
+	 * - rsoc, remainingCapacityWh, ig, wg: statistics of each column [{@link JsonObject}]
+	 *   - count: the number of units that have the value
+	 *   - total, average, min, max: the total, average, minimum and maximum values
+	 *   - stddev: the population standard deviation
+	 *   - p10, p50, p90: the nearest-rank percentiles
+	 *   Values other than count are {@link Float#NaN} if count is {@code 0}.
+	 * @param table the table of unit data
+	 * @return the statistics. The same object as the previous result if nothing has changed
+	 *          
+	 * ユニットデータのテーブルで統計を更新する.
+	 * 結果は以下の形.
+	 * - unitIds : ユニット ID のリスト [{@link JsonArray}]
+	 * - rsoc, remainingCapacityWh, ig, wg : 各列の統計 [{@link JsonObject}]
+	 *   - count : 値を持つユニットの数
+	 *   - total, average, min, max : 合計値, 平均値, 最小値, 最大値
+	 *   - stddev : 母標準偏差
+	 *   - p10, p50, p90 : 最近接順位法によるパーセンタイル
+	 *   count が {@code 0} なら count 以外の値は {@link Float#NaN}.
+	 * @param table ユニットデータのテーブル
+	 * @return 統計. 何も変化していなければ前回の結果と同じオブジェクト
+	 */
+	public synchronized JsonObject update(UnitDataTable table) {
+		int n = table.size();
+		boolean sameUnits = (unitIds_.length == n);
+		for (int i = 0; sameUnits && i < n; i++) {
+			sameUnits = unitIds_[i].equals(table.unitId(i));
+		}
+		if (!sameUnits) {
+			// The members have changed ; start over
+			// メンバが変わった. 最初からやり直す
+			unitIds_ = table.unitIds();
+			// Publish an unmodifiable copy because the result is shared
+			// 結果は共有されるので変更不可のコピーを公開する
+			unitIdsJson_ = new JsonArray(Collections.unmodifiableList(new ArrayList<>(Arrays.asList(unitIds_))));
+			for (int c = 0; c < columns_.length; c++) columns_[c] = new Column_(n);
+		}
+		boolean changed = !sameUnits;
+		for (int i = 0; i < n; i++) {
+			changed |= columns_[RSOC_].set_(i, table.rsoc(i));
+			changed |= columns_[REMAINING_CAPACITY_WH_].set_(i, table.remainingCapacityWh(i));
+			changed |= columns_[IG_].set_(i, table.ig(i));
+			changed |= columns_[WG_].set_(i, table.vg(i) * table.ig(i));
+		}
+		if (changed || result_ == null) {
+			JsonObject result = new JsonObject();
+			result.put("unitIds", unitIdsJson_);
+			for (int c = 0; c < columns_.length; c++) {
+				result.put(COLUMN_NAMES_[c], columns_[c].aggregate_());
+			}
+			result_ = result;
+		}
+		return result_;
+	}
+
+	////
+
+	/**
+	 * A column of values.
+	 * Keeps the count, the running sum and sum of squares, and the values other than {@link Float#NaN} in ascending order, updated for each changed value.
+	 * The aggregation is cached until a value changes.
+	 *          
+	 * 値の列.
+	 * 件数, 合計と二乗和の累計, {@link Float#NaN} 以外の値の昇順の並びを持ち, 値が変わるたびに更新する.
+	 * 値が変わるまで集計結果をキャッシュする.
+	 */
+	private static class Column_ {
+		private final float[] values_;
+		private final float[] sorted_;
+		private int count_ = 0;
+		private double total_ = 0D;
+		private double sumOfSquares_ = 0D;
+		private JsonObject aggregation_ = null;
+		private Column_(int size) {
+			values_ = new float[size];
+			sorted_ = new float[size];
+			Arrays.fill(values_, Float.NaN);
+		}
+		private boolean set_(int i, float value) {
+			float old = values_[i];
+			if (Float.floatToIntBits(old) == Float.floatToIntBits(value)) return false;
+			values_[i] = value;
+			if (!Float.isNaN(old)) remove_(old);
+			if (!Float.isNaN(value)) insert_(value);
+			aggregation_ = null;
+			return true;
+		}
+		private void remove_(float value) {
+			int index = Arrays.binarySearch(sorted_, 0, count_, value);
+			System.arraycopy(sorted_, index + 1, sorted_, index, count_ - index - 1);
+			if (--count_ == 0) {
+				// Drop the rounding error accumulated so far
+				// それまでに溜まった丸め誤差を捨てる
+				total_ = 0D;
+				sumOfSquares_ = 0D;
+			} else {
+				total_ -= value;
+				sumOfSquares_ -= (double) value * value;
+			}
+		}
+		private void insert_(float value) {
+			int index = Arrays.binarySearch(sorted_, 0, count_, value);
+			if (index < 0) index = -index - 1;
+			System.arraycopy(sorted_, index, sorted_, index + 1, count_ - index);
+			sorted_[index] = value;
+			count_++;
+			total_ += value;
+			sumOfSquares_ += (double) value * value;
+		}
+		private JsonObject aggregate_() {
+			if (aggregation_ == null) {
+				int count = count_;
+				double average = total_ / count;
+				// Clamp the rounding error of the running sums
+				// 累計の丸め誤差を抑える
+				double variance = Math.max(0D, sumOfSquares_ / count - average * average);
+				JsonObject result = new JsonObject();
+				result.put("count", count);
+				result.put("total", (0 < count) ? (float) total_ : Float.NaN);
+				result.put("average", (float) average);
+				result.put("min", (0 < count) ? sorted_[0] : Float.NaN);
+				result.put("max", (0 < count) ? sorted_[count - 1] : Float.NaN);
+				result.put("stddev", (float) Math.sqrt(variance));
+				result.put("p10", percentile_(sorted_, count, 10));
+				result.put("p50", percentile_(sorted_, count, 50));
+				result.put("p90", percentile_(sorted_, count, 90));
+				aggregation_ = result;
+			}
+			return aggregation_;
+		}
+		private static float percentile_(float[] sorted, int count, int percent) {
+			if (count == 0) return Float.NaN;
+			int rank = (int) Math.ceil(count * percent / 100D);
+			return sorted[Math.max(rank, 1) - 1];
+		}
+	}
+
+}
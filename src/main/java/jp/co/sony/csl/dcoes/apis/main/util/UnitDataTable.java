@@ -0,0 +1,360 @@
+package jp.co.sony.csl.dcoes.apis.main.util;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DDCon;
+
+/**
+ * A typed snapshot of the unit data of all units.
+ * Units are indexed by ordinal in unit ID order, and the values frequently referred to by the GridMaster main loop are held in primitive columns.
+ * Missing values are held as {@link Float#NaN} ( or {@link #NO_MODE} for the DDCon mode ).
+ * Units are also grouped by DDCon mode so that they can be looked up by mode without scanning.
+ * The table is built only once for the same unit data object ( see {@link #of(JsonObject)} ).
+ * When a part of the unit data is updated in place, reflect it with {@link #refresh(String)}.
+ * @author OES Project
+ *          
+ * 全ユニットのユニットデータの型付きスナップショット.
+ * ユニットをユニット ID 順の序数で索引し GridMaster のメインループで頻繁に参照する値をプリミティブの列で保持する.
+ * 値がない場合は {@link Float#NaN} ( DDCon のモードは {@link #NO_MODE} ) で保持する.
+ * 走査せずにモードで引けるようユニットを DDCon のモードごとにもまとめておく.
+ * 同じユニットデータオブジェクトに対しては一度だけ構築する ( {@link #of(JsonObject)} 参照 ).
+ * ユニットデータの一部がその場で更新された場合は {@link #refresh(String)} で反映する.
+ * @author OES Project
+ */
+public class UnitDataTable {
+
+	/**
+	 * A value of the DDCon mode column indicating that there is no mode.
+	 * Value: {@value}
+	 *          
+	 * モードがないことを示す DDCon モード列の値.
+	 * 値は {@value}
+	 */
+	public static final int NO_MODE = -1;
+
+	private static final DDCon.Mode[] MODES_ = DDCon.Mode.values();
+
+	private static volatile UnitDataTable latest_ = null;
+
+	private final JsonObject source_;
+	private final String[] unitIds_;
+	private final Map<String, Integer> ordinals_;
+	private final float[] rsoc_;
+	private final float[] remainingCapacityWh_;
+	private final float[] vg_;
+	private final float[] ig_;
+	private final float[] dvg_;
+	private final float[] dig_;
+	private final int[] ddconMode_;
+	private final BitSet[] ordinalsByMode_;
+
+	private UnitDataTable(JsonObject unitData) {
+		source_ = unitData;
+		unitIds_ = unitData.fieldNames().toArray(new String[unitData.size()]);
+		Arrays.sort(unitIds_);
+		int n = unitIds_.length;
+		ordinals_ = new HashMap<>(n * 2);
+		rsoc_ = new float[n];
+		remainingCapacityWh_ = new float[n];
+		vg_ = new float[n];
+		ig_ = new float[n];
+		dvg_ = new float[n];
+		dig_ = new float[n];
+		ddconMode_ = new int[n];
+		Arrays.fill(ddconMode_, NO_MODE);
+		ordinalsByMode_ = new BitSet[MODES_.length];
+		for (int m = 0; m < MODES_.length; m++) ordinalsByMode_[m] = new BitSet(n);
+		for (int i = 0; i < n; i++) {
+			ordinals_.put(unitIds_[i], i);
+			load_(i);
+		}
+	}
+
+	/**
+	 * Get the table of unit data.
+	 * If the table of the same unit data object has already been built, return it as it is.
+	 * @param unitData unit data of all units
+	 * @return a table. {@code null} if {@code unitData} is {@code null}
+	 *          
+	 * ユニットデータのテーブルを取得する.
+	 * 同じユニットデータオブジェクトのテーブルが構築済みならそのまま返す.
+	 * @param unitData 全ユニットのユニットデータ
+	 * @return テーブル. {@code unitData} が {@code null} なら {@code null}
+	 */
+	public static UnitDataTable of(JsonObject unitData) {
+		if (unitData == null) return null;
+		UnitDataTable result = latest_;
+		if (result == null || result.source_ != unitData) {
+			result = new UnitDataTable(unitData);
+			latest_ = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Build a new table of unit data.
+	 * Unlike {@link #of(JsonObject)}, the table is not shared; use this for unit data other than that of the GridMaster main loop.
+	 * @param unitData unit data of all units
+	 * @return a table. {@code null} if {@code unitData} is {@code null}
+	 *          
+	 * ユニットデータのテーブルを新しく構築する.
+	 * {@link #of(JsonObject)} と違いテーブルは共有しない. GridMaster メインループ以外のユニットデータにはこちらを使う.
+	 * @param unitData 全ユニットのユニットデータ
+	 * @return テーブル. {@code unitData} が {@code null} なら {@code null}
+	 */
+	public static UnitDataTable build(JsonObject unitData) {
+		return (unitData != null) ? new UnitDataTable(unitData) : null;
+	}
+
+	////
+
+	/**
+	 * Reload the row of the specified unit from the unit data.
+	 * Call this after a part of the unit data has been updated in place.
+	 * @param unitId the unit ID
+	 * @return {@code true} if the unit exists in the table
+	 *          
+	 * 指定したユニットの行をユニットデータから読み直す.
+	 * ユニットデータの一部をその場で更新した後に呼ぶ.
+	 * @param unitId ユニット ID
+	 * @return テーブルにユニットが存在すれば {@code true}
+	 */
+	public boolean refresh(String unitId) {
+		int i = ordinal(unitId);
+		if (0 <= i) {
+			load_(i);
+			return true;
+		}
+		return false;
+	}
+
+	private void load_(int i) {
+		JsonObject aUnitData = source_.getJsonObject(unitIds_[i]);
+		rsoc_[i] = float_(aUnitData, "battery", "rsoc");
+		remainingCapacityWh_[i] = float_(aUnitData, "apis", "remaining_capacity_wh");
+		vg_[i] = float_(aUnitData, "dcdc", "meter", "vg");
+		ig_[i] = float_(aUnitData, "dcdc", "meter", "ig");
+		dvg_[i] = float_(aUnitData, "dcdc", "vdis", "dvg");
+		dig_[i] = float_(aUnitData, "dcdc", "param", "dig");
+		DDCon.Mode mode = DDCon.modeFromCode(JsonObjectUtil.getString(aUnitData, "dcdc", "status", "status"));
+		// Move the unit from the group of the old mode to that of the new mode
+		// ユニットを古いモードのグループから新しいモードのグループに移す
+		if (ddconMode_[i] != NO_MODE) ordinalsByMode_[ddconMode_[i]].clear(i);
+		ddconMode_[i] = (mode != null) ? mode.ordinal() : NO_MODE;
+		if (ddconMode_[i] != NO_MODE) ordinalsByMode_[ddconMode_[i]].set(i);
+	}
+	private static float float_(JsonObject jsonObject, String... keys) {
+		Float result = JsonObjectUtil.getFloat(jsonObject, keys);
+		return (result != null) ? result : Float.NaN;
+	}
+
+	////
+
+	/**
+	 * Get the number of units.
+	 * @return the number of units
+	 *          
+	 * ユニット数を取得する.
+	 * @return ユニット数
+	 */
+	public int size() {
+		return unitIds_.length;
+	}
+	/**
+	 * Get the unit ID of the specified ordinal.
+	 * @param i the ordinal
+	 * @return the unit ID
+	 *          
+	 * 指定した序数のユニット ID を取得する.
+	 * @param i 序数
+	 * @return ユニット ID
+	 */
+	public String unitId(int i) {
+		return unitIds_[i];
+	}
+	/**
+	 * Get a list of the unit IDs in ordinal order.
+	 * @return a new array of unit IDs
+	 *          
+	 * 序数順のユニット ID のリストを取得する.
+	 * @return ユニット ID の新しい配列
+	 */
+	public String[] unitIds() {
+		return unitIds_.clone();
+	}
+	/**
+	 * Get the ordinal of the specified unit.
+	 * @param unitId the unit ID
+	 * @return the ordinal. {@code -1} if not found
+	 *          
+	 * 指定したユニットの序数を取得する.
+	 * @param unitId ユニット ID
+	 * @return 序数. 見つからなければ {@code -1}
+	 */
+	public int ordinal(String unitId) {
+		Integer result = (unitId != null) ? ordinals_.get(unitId) : null;
+		return (result != null) ? result : -1;
+	}
+
+	/**
+	 * Get the {@code battery.rsoc} value.
+	 * @param i the ordinal
+	 * @return the value. {@link Float#NaN} if not found
+	 *          
+	 * {@code battery.rsoc} の値を取得する.
+	 * @param i 序数
+	 * @return 値. なければ {@link Float#NaN}
+	 */
+	public float rsoc(int i) {
+		return rsoc_[i];
+	}
+	/**
+	 * Get the {@code apis.remaining_capacity_wh} value.
+	 * @param i the ordinal
+	 * @return the value. {@link Float#NaN} if not found
+	 *          
+	 * {@code apis.remaining_capacity_wh} の値を取得する.
+	 * @param i 序数
+	 * @return 値. なければ {@link Float#NaN}
+	 */
+	public float remainingCapacityWh(int i) {
+		return remainingCapacityWh_[i];
+	}
+	/**
+	 * Get the {@code dcdc.meter.vg} value.
+	 * @param i the ordinal
+	 * @return the value. {@link Float#NaN} if not found
+	 *          
+	 * {@code dcdc.meter.vg} の値を取得する.
+	 * @param i 序数
+	 * @return 値. なければ {@link Float#NaN}
+	 */
+	public float vg(int i) {
+		return vg_[i];
+	}
+	/**
+	 * Get the {@code dcdc.meter.ig} value.
+	 * @param i the ordinal
+	 * @return the value. {@link Float#NaN} if not found
+	 *          
+	 * {@code dcdc.meter.ig} の値を取得する.
+	 * @param i 序数
+	 * @return 値. なければ {@link Float#NaN}
+	 */
+	public float ig(int i) {
+		return ig_[i];
+	}
+	/**
+	 * Get the {@code dcdc.meter.ig} value of the specified unit.
+	 * @param unitId the unit ID
+	 * @return the value. {@link Float#NaN} if not found
+	 *          
+	 * 指定したユニットの {@code dcdc.meter.ig} の値を取得する.
+	 * @param unitId ユニット ID
+	 * @return 値. なければ {@link Float#NaN}
+	 */
+	public float ig(String unitId) {
+		int i = ordinal(unitId);
+		return (0 <= i) ? ig_[i] : Float.NaN;
+	}
+	/**
+	 * Get the {@code dcdc.vdis.dvg} value.
+	 * @param i the ordinal
+	 * @return the value. {@link Float#NaN} if not found
+	 *          
+	 * {@code dcdc.vdis.dvg} の値を取得する.
+	 * @param i 序数
+	 * @return 値. なければ {@link Float#NaN}
+	 */
+	public float dvg(int i) {
+		return dvg_[i];
+	}
+	/**
+	 * Get the {@code dcdc.param.dig} value.
+	 * @param i the ordinal
+	 * @return the value. {@link Float#NaN} if not found
+	 *          
+	 * {@code dcdc.param.dig} の値を取得する.
+	 * @param i 序数
+	 * @return 値. なければ {@link Float#NaN}
+	 */
+	public float dig(int i) {
+		return dig_[i];
+	}
+	/**
+	 * Get the ordinal of the DDCon mode ( {@code dcdc.status.status} ).
+	 * @param i the ordinal of the unit
+	 * @return the ordinal of {@link DDCon.Mode}. {@link #NO_MODE} if not found
+	 *          
+	 * DDCon のモード ( {@code dcdc.status.status} ) の序数を取得する.
+	 * @param i ユニットの序数
+	 * @return {@link DDCon.Mode} の序数. なければ {@link #NO_MODE}
+	 */
+	public int ddconModeOrdinal(int i) {
+		return ddconMode_[i];
+	}
+	/**
+	 * Get the DDCon mode ( {@code dcdc.status.status} ).
+	 * @param i the ordinal of the unit
+	 * @return the mode. {@code null} if not found
+	 *          
+	 * DDCon のモード ( {@code dcdc.status.status} ) を取得する.
+	 * @param i ユニットの序数
+	 * @return モード. なければ {@code null}
+	 */
+	public DDCon.Mode ddconMode(int i) {
+		int mode = ddconMode_[i];
+		return (mode != NO_MODE) ? MODES_[mode] : null;
+	}
+
+	/**
+	 * Get the ordinal of the first unit in the specified DDCon mode.
+	 * @param mode the DDCon mode
+	 * @return the ordinal. {@code -1} if not found
+	 *          
+	 * 指定した DDCon モードの最初のユニットの序数を取得する.
+	 * @param mode DDCon のモード
+	 * @return 序数. 見つからなければ {@code -1}
+	 */
+	public int firstOrdinalOf(DDCon.Mode mode) {
+		return ordinalsByMode_[mode.ordinal()].nextSetBit(0);
+	}
+	/**
+	 * Get the number of units in the specified DDCon mode.
+	 * @param mode the DDCon mode
+	 * @return the number of units
+	 *          
+	 * 指定した DDCon モードのユニット数を取得する.
+	 * @param mode DDCon のモード
+	 * @return ユニット数
+	 */
+	public int countOf(DDCon.Mode mode) {
+		return ordinalsByMode_[mode.ordinal()].cardinality();
+	}
+	/**
+	 * Get the IDs of the units in the specified DDCon mode.
+	 * @param mode the DDCon mode
+	 * @return a new list of unit IDs in ordinal order
+	 *          
+	 * 指定した DDCon モードのユニットの ID を取得する.
+	 * @param mode DDCon のモード
+	 * @return 序数順のユニット ID の新しいリスト
+	 */
+	public List<String> unitIdsOf(DDCon.Mode mode) {
+		BitSet ordinals = ordinalsByMode_[mode.ordinal()];
+		List<String> result = new ArrayList<>(ordinals.cardinality());
+		for (int i = ordinals.nextSetBit(0); 0 <= i; i = ordinals.nextSetBit(i + 1)) {
+			result.add(unitIds_[i]);
+		}
+		return result;
+	}
+
+}
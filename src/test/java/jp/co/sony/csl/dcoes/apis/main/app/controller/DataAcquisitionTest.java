@@ -0,0 +1,140 @@
+package jp.co.sony.csl.dcoes.apis.main.app.controller;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import jp.co.sony.csl.dcoes.apis.main.test.DriverStubServer;
+
+/**
+ * DataAcquisition test.
+ * @author OES Project
+ *          
+ * DataAcquisition のテスト.
+ * @author OES Project
+ */
+@RunWith(VertxUnitRunner.class)
+public class DataAcquisitionTest {
+
+	private Vertx vertx_;
+	private DriverStubServer server_;
+	private HttpClient client_;
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public DataAcquisitionTest() {
+		super();
+	}
+
+	/**
+	 * Start a device driver stub and create an HTTP client to it.
+	 * @param context a testcontext object
+	 *          
+	 * デバイスドライバのスタブを起動しそれへの HTTP クライアントを生成する.
+	 * @param context testcontext オブジェクト
+	 */
+	@Before public void before(TestContext context) {
+		vertx_ = Vertx.vertx();
+		server_ = new DriverStubServer(vertx_).data(new JsonObject().put("meter", new JsonObject().put("vg", 350.5)));
+		server_.listen(context.asyncAssertSuccess(port -> {
+			client_ = vertx_.createHttpClient(new HttpClientOptions().setDefaultHost("127.0.0.1").setDefaultPort(port));
+		}));
+	}
+
+	/**
+	 * Clean up.
+	 * @param context a testcontext object
+	 *          
+	 * 後始末する.
+	 * @param context testcontext オブジェクト
+	 */
+	@After public void after(TestContext context) {
+		vertx_.close(context.asyncAssertSuccess());
+	}
+
+	/**
+	 * Supports coalescing identical requests in flight into one, each caller receiving its own copy.
+	 * @param context a testcontext object
+	 *          
+	 * 送信中の同一リクエストを一つにまとめ, 呼び出し元がそれぞれ自分のコピーを受け取ることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void coalesce(TestContext context) {
+		Context vertxContext = vertx_.getOrCreateContext();
+		TestDataAcquisition_ acquisition = new TestDataAcquisition_();
+		acquisition.init(vertx_, vertxContext);
+		JsonObject[] results = new JsonObject[2];
+		Async async = context.async(2);
+		vertxContext.runOnContext(v -> {
+			for (int i = 0; i < 2; i++) {
+				int n = i;
+				acquisition.send(client_, "/dcdc", context.asyncAssertSuccess(result -> {
+					results[n] = result;
+					async.countDown();
+				}));
+			}
+		});
+		async.handler(context.asyncAssertSuccess(v -> {
+			context.assertEquals(1, server_.requests());
+			context.assertEquals(results[0], results[1]);
+			context.assertFalse(results[0] == results[1]);
+			results[0].getJsonObject("meter").put("vg", 0);
+			context.assertEquals(350.5, results[1].getJsonObject("meter").getDouble("vg"));
+		}));
+	}
+
+	/**
+	 * Supports sending a request again once the identical one has completed.
+	 * @param context a testcontext object
+	 *          
+	 * 同一リクエストが完了した後はもう一度送ることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void notCoalescedAfterCompletion(TestContext context) {
+		Context vertxContext = vertx_.getOrCreateContext();
+		TestDataAcquisition_ acquisition = new TestDataAcquisition_();
+		acquisition.init(vertx_, vertxContext);
+		Async async = context.async();
+		vertxContext.runOnContext(v -> {
+			acquisition.send(client_, "/dcdc", context.asyncAssertSuccess(first -> {
+				acquisition.send(client_, "/dcdc", context.asyncAssertSuccess(second -> {
+					context.assertEquals(2, server_.requests());
+					async.complete();
+				}));
+			}));
+		});
+	}
+
+	////
+
+	private static class TestDataAcquisition_ extends DataAcquisition {
+		@Override protected void init(Handler<AsyncResult<Void>> completionHandler) {
+			completionHandler.handle(Future.succeededFuture());
+		}
+		@Override protected void getData(Handler<AsyncResult<JsonObject>> completionHandler) {
+			completionHandler.handle(Future.failedFuture("not supported"));
+		}
+		@Override protected void getDeviceStatus(Handler<AsyncResult<JsonObject>> completionHandler) {
+			completionHandler.handle(Future.failedFuture("not supported"));
+		}
+		@Override protected JsonObject mergeDeviceStatus(JsonObject value) {
+			return value;
+		}
+	}
+
+}
@@ -0,0 +1,226 @@
+package jp.co.sony.csl.dcoes.apis.main.app.controller.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import jp.co.sony.csl.dcoes.apis.main.app.PolicyKeeping;
+
+/**
+ * DriverCircuitBreaker test.
+ * @author OES Project
+ *          
+ * DriverCircuitBreaker のテスト.
+ * @author OES Project
+ */
+@RunWith(VertxUnitRunner.class)
+public class DriverCircuitBreakerTest {
+
+	private Vertx vertx_;
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public DriverCircuitBreakerTest() {
+		super();
+	}
+
+	/**
+	 * Set a short failure threshold and open duration in POLICY.
+	 * @param context a testcontext object
+	 *          
+	 * POLICY に短い連続失敗回数と開いている時間を設定する.
+	 * @param context testcontext オブジェクト
+	 */
+	@Before public void before(TestContext context) {
+		vertx_ = Vertx.vertx();
+		PolicyKeeping.cache().setJsonObject(new JsonObject().put("controller", new JsonObject().put("circuitBreaker", new JsonObject().put("failureThreshold", 3).put("openMsec", 100))));
+	}
+
+	/**
+	 * Clean up and discard all the breakers.
+	 * @param context a testcontext object
+	 *          
+	 * 後始末し全てのブレーカを捨てる.
+	 * @param context testcontext オブジェクト
+	 */
+	@After public void after(TestContext context) {
+		PolicyKeeping.cache().setJsonObject(null);
+		DriverCircuitBreaker.reset();
+		vertx_.close(context.asyncAssertSuccess());
+	}
+
+	private DriverCircuitBreaker breaker_(String name) {
+		HttpClient client = vertx_.createHttpClient();
+		DriverCircuitBreaker.register(client, name);
+		return DriverCircuitBreaker.of(client);
+	}
+
+	private void open_(DriverCircuitBreaker breaker) {
+		for (int i = 0; i < 3; i++) {
+			breaker.record(vertx_, breaker.allowRequest(), false);
+		}
+	}
+
+	/**
+	 * Supports opening after consecutive failures.
+	 * @param context a testcontext object
+	 *          
+	 * 連続失敗で開くことをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void opensAfterThreshold(TestContext context) {
+		DriverCircuitBreaker breaker = breaker_("opensAfterThreshold");
+		context.assertEquals(DriverCircuitBreaker.State.CLOSED, breaker.state());
+		for (int i = 0; i < 2; i++) {
+			DriverCircuitBreaker.Permit permit = breaker.allowRequest();
+			context.assertNotNull(permit);
+			breaker.record(vertx_, permit, false);
+			context.assertEquals(DriverCircuitBreaker.State.CLOSED, breaker.state());
+		}
+		DriverCircuitBreaker.Permit permit = breaker.allowRequest();
+		context.assertNotNull(permit);
+		breaker.record(vertx_, permit, false);
+		context.assertEquals(DriverCircuitBreaker.State.OPEN, breaker.state());
+		context.assertNull(breaker.allowRequest());
+		context.assertTrue(DriverCircuitBreaker.isAnyOpen());
+		context.assertEquals("OPEN", DriverCircuitBreaker.toJsonObject().getJsonObject("opensAfterThreshold").getString("state"));
+		context.assertEquals(3, DriverCircuitBreaker.toJsonObject().getJsonObject("opensAfterThreshold").getInteger("failures"));
+	}
+
+	/**
+	 * Supports resetting the consecutive failures on a success.
+	 * @param context a testcontext object
+	 *          
+	 * 成功で連続失敗回数をリセットすることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void successResetsFailures(TestContext context) {
+		DriverCircuitBreaker breaker = breaker_("successResetsFailures");
+		breaker.record(vertx_, breaker.allowRequest(), false);
+		breaker.record(vertx_, breaker.allowRequest(), false);
+		breaker.record(vertx_, breaker.allowRequest(), true);
+		breaker.record(vertx_, breaker.allowRequest(), false);
+		breaker.record(vertx_, breaker.allowRequest(), false);
+		context.assertEquals(DriverCircuitBreaker.State.CLOSED, breaker.state());
+		context.assertNotNull(breaker.allowRequest());
+	}
+
+	/**
+	 * Supports a single trial in half-open, closing on its success.
+	 * @param context a testcontext object
+	 *          
+	 * 半開で試しを一つだけ送り, 成功したら閉じることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void halfOpenClosesOnSuccess(TestContext context) {
+		DriverCircuitBreaker breaker = breaker_("halfOpenClosesOnSuccess");
+		open_(breaker);
+		Async async = context.async();
+		vertx_.setTimer(150L, timerId -> {
+			DriverCircuitBreaker.Permit trial = breaker.allowRequest();
+			context.assertNotNull(trial);
+			context.assertEquals(DriverCircuitBreaker.State.HALF_OPEN, breaker.state());
+			context.assertNull(breaker.allowRequest());
+			breaker.record(vertx_, trial, true);
+			context.assertEquals(DriverCircuitBreaker.State.CLOSED, breaker.state());
+			context.assertNotNull(breaker.allowRequest());
+			context.assertNotNull(breaker.allowRequest());
+			async.complete();
+		});
+	}
+
+	/**
+	 * Supports opening again on the failure of the trial.
+	 * @param context a testcontext object
+	 *          
+	 * 試しが失敗したら再び開くことをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void halfOpenReopensOnFailure(TestContext context) {
+		DriverCircuitBreaker breaker = breaker_("halfOpenReopensOnFailure");
+		open_(breaker);
+		Async async = context.async();
+		vertx_.setTimer(150L, timerId -> {
+			DriverCircuitBreaker.Permit trial = breaker.allowRequest();
+			context.assertNotNull(trial);
+			breaker.record(vertx_, trial, false);
+			context.assertEquals(DriverCircuitBreaker.State.OPEN, breaker.state());
+			context.assertNull(breaker.allowRequest());
+			vertx_.setTimer(150L, id -> {
+				context.assertNotNull(breaker.allowRequest());
+				context.assertEquals(DriverCircuitBreaker.State.HALF_OPEN, breaker.state());
+				async.complete();
+			});
+		});
+	}
+
+	/**
+	 * Supports keeping the trial in flight when requests sent without asking end.
+	 * @param context a testcontext object
+	 *          
+	 * 許可を求めずに送ったリクエストが終わっても送信中の試しを保つことをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void bypassedRecordKeepsTrial(TestContext context) {
+		DriverCircuitBreaker breaker = breaker_("bypassedRecordKeepsTrial");
+		open_(breaker);
+		Async async = context.async();
+		vertx_.setTimer(150L, timerId -> {
+			DriverCircuitBreaker.Permit trial = breaker.allowRequest();
+			context.assertNotNull(trial);
+			// Requests sent without asking, as in WAIT mode, end while the trial is in flight
+			// WAIT モードのように許可を求めずに送ったリクエストが試しの送信中に終わる
+			breaker.record(vertx_, null, true);
+			breaker.record(vertx_, null, false);
+			context.assertEquals(DriverCircuitBreaker.State.HALF_OPEN, breaker.state());
+			context.assertNull(breaker.allowRequest());
+			breaker.record(vertx_, trial, false);
+			context.assertEquals(DriverCircuitBreaker.State.OPEN, breaker.state());
+			async.complete();
+		});
+	}
+
+	/**
+	 * Supports discarding a breaker when its last HTTP client is unregistered.
+	 * @param context a testcontext object
+	 *          
+	 * 最後の HTTP クライアントの登録を解除したらブレーカを捨てることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void unregister(TestContext context) {
+		HttpClient client = vertx_.createHttpClient();
+		HttpClient other = vertx_.createHttpClient();
+		DriverCircuitBreaker.register(client, "unregister");
+		DriverCircuitBreaker.register(other, "unregister");
+		DriverCircuitBreaker.unregister(client);
+		context.assertNull(DriverCircuitBreaker.of(client));
+		context.assertTrue(DriverCircuitBreaker.toJsonObject().containsKey("unregister"));
+		DriverCircuitBreaker.unregister(other);
+		context.assertFalse(DriverCircuitBreaker.toJsonObject().containsKey("unregister"));
+		DriverCircuitBreaker.unregister(null);
+	}
+
+	/**
+	 * Supports sharing a breaker by connection name.
+	 * @param context a testcontext object
+	 *          
+	 * 接続名でブレーカを共有することをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void sharedByName(TestContext context) {
+		DriverCircuitBreaker breaker = breaker_("sharedByName");
+		context.assertTrue(breaker == breaker_("sharedByName"));
+		context.assertFalse(breaker == breaker_("sharedByName2"));
+	}
+
+}
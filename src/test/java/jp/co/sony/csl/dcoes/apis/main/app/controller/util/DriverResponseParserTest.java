@@ -0,0 +1,146 @@
+package jp.co.sony.csl.dcoes.apis.main.app.controller.util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * DriverResponseParser test.
+ * @author OES Project
+ *          
+ * DriverResponseParser のテスト.
+ * @author OES Project
+ */
+@RunWith(VertxUnitRunner.class)
+public class DriverResponseParserTest {
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public DriverResponseParserTest() {
+		super();
+	}
+
+	private static JsonObject dcdc_() {
+		return new JsonObject()
+				.put("status", new JsonObject().put("status", "0x0000").put("alarmState", "No alarm").put("operationMode", "Waiting"))
+				.put("meter", new JsonObject().put("wg", -1.5).put("tmp", 30).put("vb", 52.1).put("wb", 0).put("vg", "350.2").put("ib", 0.1).put("ig", 0))
+				.put("vdis", new JsonObject().put("dvg", 350).put("drg", 0.1))
+				.put("param", new JsonObject().put("dig", 2.5).put("extra", "x"))
+				.put("powermeter", new JsonObject().put("p1", 1).put("list", new JsonArray().add(1).add(new JsonObject().put("meter", 1)).add((Object) null)))
+				.put("big", 12345678901L)
+				.put("flag", true);
+	}
+
+	/**
+	 * Supports parsing a DCDC response into the same JSON and the typed status.
+	 * @param context a testcontext object
+	 *          
+	 * DCDC のレスポンスを同じ JSON と型付きの状態に解析することをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void dcdc(TestContext context) {
+		DcdcStatus dcdcStatus = new DcdcStatus();
+		BatteryStatus batteryStatus = new BatteryStatus();
+		JsonObject expected = dcdc_();
+		JsonObject result = DriverResponseParser.parse(expected.toBuffer(), DriverResponseParser.Layout.DCDC, dcdcStatus, batteryStatus);
+		context.assertEquals(new JsonObject(expected.toBuffer()), result);
+		context.assertTrue(dcdcStatus.isViewedAs(result));
+		context.assertEquals("0x0000", dcdcStatus.status());
+		context.assertEquals("No alarm", dcdcStatus.alarmState());
+		context.assertEquals("Waiting", dcdcStatus.operationMode());
+		context.assertEquals(350.2F, dcdcStatus.get(DcdcStatus.Value.METER_VG));
+		context.assertEquals(30F, dcdcStatus.get(DcdcStatus.Value.METER_TMP));
+		context.assertEquals(2.5F, dcdcStatus.get(DcdcStatus.Value.PARAM_DIG));
+		context.assertTrue(dcdcStatus.has(DcdcStatus.Value.VDIS_DRG));
+		context.assertFalse(batteryStatus.hasRsoc());
+	}
+
+	/**
+	 * Supports separating the battery fields from a DCDC response.
+	 * @param context a testcontext object
+	 *          
+	 * DCDC のレスポンスからバッテリのフィールドを分けることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void dcdcWithBattery(TestContext context) {
+		DcdcStatus dcdcStatus = new DcdcStatus();
+		BatteryStatus batteryStatus = new BatteryStatus();
+		JsonObject body = dcdc_().put("rsoc", 57.5).put("battery_operation_status", 3);
+		body.getJsonObject("meter").remove("ig");
+		JsonObject result = DriverResponseParser.parse(body.toBuffer(), DriverResponseParser.Layout.DCDC_WITH_BATTERY, dcdcStatus, batteryStatus);
+		context.assertFalse(result.containsKey("rsoc"));
+		context.assertFalse(result.containsKey("battery_operation_status"));
+		context.assertFalse(dcdcStatus.has(DcdcStatus.Value.METER_IG));
+		context.assertEquals(57.5F, batteryStatus.rsoc());
+		context.assertEquals(3, batteryStatus.batteryOperationStatus());
+		context.assertEquals(new JsonObject().put("rsoc", 57.5).put("battery_operation_status", 3), batteryStatus.jsonObject());
+		context.assertEquals("{\"rsoc\":57.5,\"battery_operation_status\":3}", batteryStatus.jsonObject().encode());
+	}
+
+	/**
+	 * Supports parsing a whole unit response.
+	 * @param context a testcontext object
+	 *          
+	 * ユニット全体のレスポンスの解析をサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void unit(TestContext context) {
+		DcdcStatus dcdcStatus = new DcdcStatus();
+		BatteryStatus batteryStatus = new BatteryStatus();
+		JsonObject body = new JsonObject().put("dcdc", dcdc_()).put("emu", new JsonObject().put("rsoc", 80).put("pvc_charge_power", 0)).put("time", "2020/01/02-03:04:05");
+		JsonObject result = DriverResponseParser.parse(body.toBuffer(), DriverResponseParser.Layout.UNIT, dcdcStatus, batteryStatus);
+		context.assertEquals(new JsonObject(body.toBuffer()), result);
+		context.assertTrue(dcdcStatus.isViewedAs(result.getJsonObject("dcdc")));
+		context.assertEquals(80F, batteryStatus.rsoc());
+		context.assertFalse(batteryStatus.hasBatteryOperationStatus());
+		context.assertNull(batteryStatus.jsonObject().getValue("battery_operation_status"));
+	}
+
+	/**
+	 * Supports reusing the status objects without leftovers from the previous response.
+	 * @param context a testcontext object
+	 *          
+	 * 前のレスポンスの値を残さずに状態オブジェクトを再利用することをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void reuse(TestContext context) {
+		DcdcStatus dcdcStatus = new DcdcStatus();
+		BatteryStatus batteryStatus = new BatteryStatus();
+		DriverResponseParser.parse(dcdc_().toBuffer(), DriverResponseParser.Layout.DCDC, dcdcStatus, batteryStatus);
+		JsonObject result = DriverResponseParser.parse(Buffer.buffer("{\"meter\":{\"vg\":1}}"), DriverResponseParser.Layout.DCDC, dcdcStatus, batteryStatus);
+		context.assertTrue(dcdcStatus.isViewedAs(result));
+		context.assertEquals(1F, dcdcStatus.get(DcdcStatus.Value.METER_VG));
+		context.assertFalse(dcdcStatus.has(DcdcStatus.Value.METER_IG));
+		context.assertNull(dcdcStatus.status());
+	}
+
+	/**
+	 * Supports rejecting malformed responses.
+	 * @param context a testcontext object
+	 *          
+	 * 不正なレスポンスを拒否することをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void invalid(TestContext context) {
+		DcdcStatus dcdcStatus = new DcdcStatus();
+		BatteryStatus batteryStatus = new BatteryStatus();
+		for (String aBody : new String[] {"", "[]", "{\"a\":", "{\"a\":1}x", "{\"a\":1"}) {
+			try {
+				DriverResponseParser.parse(Buffer.buffer(aBody), DriverResponseParser.Layout.DCDC, dcdcStatus, batteryStatus);
+				context.fail("no exception : " + aBody);
+			} catch (DecodeException e) {
+				// expected
+			}
+		}
+	}
+
+}
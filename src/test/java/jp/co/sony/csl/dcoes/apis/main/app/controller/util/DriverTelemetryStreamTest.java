@@ -0,0 +1,171 @@
+package jp.co.sony.csl.dcoes.apis.main.app.controller.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import jp.co.sony.csl.dcoes.apis.main.test.DriverStubServer;
+
+/**
+ * DriverTelemetryStream test.
+ * @author OES Project
+ *          
+ * DriverTelemetryStream のテスト.
+ * @author OES Project
+ */
+@RunWith(VertxUnitRunner.class)
+public class DriverTelemetryStreamTest {
+
+	private Vertx vertx_;
+	private DriverStubServer server_;
+	private HttpClient client_;
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public DriverTelemetryStreamTest() {
+		super();
+	}
+
+	/**
+	 * Start a device driver stub and create an HTTP client to it.
+	 * @param context a testcontext object
+	 *          
+	 * デバイスドライバのスタブを起動しそれへの HTTP クライアントを生成する.
+	 * @param context testcontext オブジェクト
+	 */
+	@Before public void before(TestContext context) {
+		vertx_ = Vertx.vertx();
+		server_ = new DriverStubServer(vertx_);
+		server_.listen(context.asyncAssertSuccess(port -> {
+			client_ = vertx_.createHttpClient(new HttpClientOptions().setDefaultHost("127.0.0.1").setDefaultPort(port));
+		}));
+	}
+
+	/**
+	 * Clean up.
+	 * @param context a testcontext object
+	 *          
+	 * 後始末する.
+	 * @param context testcontext オブジェクト
+	 */
+	@After public void after(TestContext context) {
+		vertx_.close(context.asyncAssertSuccess());
+	}
+
+	private DriverTelemetryStream open_(long reconnectDelayMsec, long staleMsec, Handler<Buffer> handler) {
+		DriverTelemetryStream result = new DriverTelemetryStream(vertx_, client_, "/subscribe/unit/E001", reconnectDelayMsec, staleMsec).handler(handler);
+		vertx_.runOnContext(v -> result.open());
+		return result;
+	}
+
+	/**
+	 * Supports receiving pushed samples without polling.
+	 * @param context a testcontext object
+	 *          
+	 * ポーリングせずにプッシュされたサンプルを受け取ることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void push(TestContext context) {
+		JsonObject sample = new JsonObject().put("dcdc", new JsonObject().put("meter", new JsonObject().put("vg", 350.5))).put("emu", new JsonObject().put("rsoc", 42));
+		Async async = context.async();
+		server_.subscriptionHandler(webSocket -> server_.push(sample));
+		open_(100L, 0L, body -> {
+			DcdcStatus dcdcStatus = new DcdcStatus();
+			BatteryStatus batteryStatus = new BatteryStatus();
+			context.assertEquals(sample, DriverResponseParser.parse(body, DriverResponseParser.Layout.UNIT, dcdcStatus, batteryStatus));
+			context.assertEquals(350.5F, dcdcStatus.get(DcdcStatus.Value.METER_VG));
+			context.assertEquals(42F, batteryStatus.rsoc());
+			context.assertEquals(0, server_.requests());
+			async.complete();
+		});
+	}
+
+	/**
+	 * Supports reconnecting after a disconnection.
+	 * @param context a testcontext object
+	 *          
+	 * 切断後の再接続をサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void reconnect(TestContext context) {
+		Async async = context.async(2);
+		server_.subscriptionHandler(webSocket -> {
+			async.countDown();
+			if (server_.subscriptions() == 1) {
+				vertx_.setTimer(50L, timerId -> server_.disconnect());
+			}
+		});
+		open_(100L, 0L, body -> { });
+	}
+
+	/**
+	 * Supports reconnecting when no sample arrives.
+	 * @param context a testcontext object
+	 *          
+	 * サンプルが届かない場合の再接続をサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void stale(TestContext context) {
+		Async async = context.async(3);
+		server_.subscriptionHandler(webSocket -> async.countDown());
+		open_(50L, 200L, body -> { });
+	}
+
+	/**
+	 * Supports keeping the connection while samples arrive.
+	 * @param context a testcontext object
+	 *          
+	 * サンプルが届く間は接続を保つことをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void keptAliveBySamples(TestContext context) {
+		Async async = context.async();
+		server_.subscriptionHandler(webSocket -> {
+			long timerId = vertx_.setPeriodic(50L, id -> server_.push(new JsonObject()));
+			vertx_.setTimer(600L, id -> {
+				vertx_.cancelTimer(timerId);
+				context.assertEquals(1, server_.subscriptions());
+				async.complete();
+			});
+		});
+		open_(50L, 200L, body -> { });
+	}
+
+	/**
+	 * Supports closing without reconnecting.
+	 * @param context a testcontext object
+	 *          
+	 * 再接続せずに閉じることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void close(TestContext context) {
+		Async async = context.async();
+		DriverTelemetryStream stream = open_(50L, 0L, body -> { });
+		server_.subscriptionHandler(webSocket -> {
+			vertx_.setTimer(50L, timerId -> {
+				context.assertTrue(stream.isConnected());
+				stream.close();
+				context.assertFalse(stream.isConnected());
+				vertx_.setTimer(300L, id -> {
+					context.assertEquals(1, server_.subscriptions());
+					context.assertEquals(0, server_.subscribers());
+					async.complete();
+				});
+			});
+		});
+	}
+
+}
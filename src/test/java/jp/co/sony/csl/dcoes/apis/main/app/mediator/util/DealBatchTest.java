@@ -0,0 +1,127 @@
+package jp.co.sony.csl.dcoes.apis.main.app.mediator.util;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * DealBatch test.
+ * @author OES Project
+ *          
+ * DealBatch のテスト.
+ * @author OES Project
+ */
+@RunWith(VertxUnitRunner.class)
+public class DealBatchTest {
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public DealBatchTest() {
+		super();
+	}
+
+	/**
+	 * Supports staging the changes of tracked DEAL objects only.
+	 * @param context a testcontext object
+	 *          
+	 * 追跡している DEAL オブジェクトの変更だけを溜めることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void stage(TestContext context) {
+		DealBatch batch = new DealBatch();
+		JsonObject tracked = new JsonObject().put("dealId", "d1");
+		JsonObject untracked = new JsonObject().put("dealId", "d1");
+		batch.track_(tracked);
+		context.assertFalse(batch.stage_(untracked));
+		tracked.put("cumulateAmountWh", 10F);
+		context.assertTrue(batch.stage_(tracked));
+		context.assertEquals(1, batch.numberOfStaged());
+		List<JsonObject[]> staged = batch.takeStaged_();
+		context.assertEquals(1, staged.size());
+		context.assertFalse(staged.get(0)[0].containsKey("cumulateAmountWh"));
+		context.assertEquals(10F, staged.get(0)[1].getFloat("cumulateAmountWh"));
+		context.assertEquals(0, batch.numberOfStaged());
+	}
+
+	/**
+	 * Supports telling staged state transitions.
+	 * @param context a testcontext object
+	 *          
+	 * 溜めた状態遷移を見分けることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void transitions(TestContext context) {
+		DealBatch batch = new DealBatch();
+		JsonObject deal = new JsonObject().put("dealId", "d1").put("startDateTime", "2020/01/01-00:00:00");
+		batch.track_(deal);
+		deal.put("cumulateDateTime", "2020/01/01-00:00:05").put("cumulateAmountWh", 1F);
+		batch.stage_(deal);
+		context.assertFalse(batch.hasStagedTransitions());
+		deal.put("stopDateTime", "2020/01/01-00:00:05");
+		context.assertTrue(batch.hasStagedTransitions());
+		List<JsonObject[]> staged = batch.takeStaged_();
+		batch.committed_(staged.get(0)[0], staged.get(0)[1]);
+		batch.stage_(deal);
+		context.assertFalse(batch.hasStagedTransitions());
+	}
+
+	/**
+	 * Supports flushing the staged changes of a DEAL object when it is untracked.
+	 * @param context a testcontext object
+	 *          
+	 * 追跡をやめる DEAL オブジェクトの溜めた変更を書き出すことをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void stopDeactivateDispose(TestContext context) {
+		DealBatch batch = new DealBatch();
+		JsonObject deal = new JsonObject().put("dealId", "d1").put("startDateTime", "2020/01/01-00:00:00").put("revision", 3L);
+		JsonObject other = new JsonObject().put("dealId", "d2");
+		batch.track_(deal);
+		batch.track_(other);
+		deal.put("stopDateTime", "2020/01/01-00:00:05");
+		context.assertTrue(batch.stage_(deal));
+		deal.put("deactivateDateTime", "2020/01/01-00:00:06");
+		context.assertTrue(batch.stage_(deal));
+		other.put("cumulateAmountWh", 1F);
+		batch.stage_(other);
+		// Flushed before the disposal : both changes at once against the value read when tracked
+		// 破棄の前に書き込む : 追跡時に読んだ値に対し両方の変更をまとめて
+		JsonObject[] staged = batch.untrack_(deal);
+		context.assertNotNull(staged);
+		context.assertEquals(3L, staged[0].getLong("revision"));
+		context.assertFalse(staged[0].containsKey("stopDateTime"));
+		context.assertEquals("2020/01/01-00:00:05", staged[1].getString("stopDateTime"));
+		context.assertEquals("2020/01/01-00:00:06", staged[1].getString("deactivateDateTime"));
+		// No longer tracked : later changes are written immediately and the commit of the pass does not touch it
+		// もう追跡していない : 以降の変更はすぐに書き込まれ, ひと回しの書き込みは触らない
+		context.assertFalse(batch.stage_(deal));
+		context.assertNull(batch.untrack_(deal));
+		List<JsonObject[]> rest = batch.takeStaged_();
+		context.assertEquals(1, rest.size());
+		context.assertEquals("d2", rest.get(0)[1].getString("dealId"));
+	}
+
+	/**
+	 * Supports untracking a DEAL object with no staged change.
+	 * @param context a testcontext object
+	 *          
+	 * 変更を溜めていない DEAL オブジェクトの追跡をやめることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void untrackWithoutStaged(TestContext context) {
+		DealBatch batch = new DealBatch();
+		JsonObject deal = new JsonObject().put("dealId", "d1");
+		batch.track_(deal);
+		context.assertNull(batch.untrack_(deal));
+		context.assertFalse(batch.stage_(deal));
+	}
+
+}
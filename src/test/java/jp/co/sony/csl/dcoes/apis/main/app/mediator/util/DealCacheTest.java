@@ -0,0 +1,240 @@
+package jp.co.sony.csl.dcoes.apis.main.app.mediator.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.AsyncMap;
+import io.vertx.core.shareddata.Counter;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * DealCache test.
+ * @author OES Project
+ *          
+ * DealCache のテスト.
+ * @author OES Project
+ */
+@RunWith(VertxUnitRunner.class)
+public class DealCacheTest {
+
+	private Vertx vertx_;
+	private Map_ map_;
+	private Counter_ counter_;
+	private DealCache cache_;
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public DealCacheTest() {
+		super();
+	}
+
+	/**
+	 * Prepare a cache of two DEAL objects, read once.
+	 * @param context a testcontext object
+	 *          
+	 * 一度読んだ二つの DEAL オブジェクトのキャッシュを用意する.
+	 * @param context testcontext オブジェクト
+	 */
+	@Before public void before(TestContext context) {
+		vertx_ = Vertx.vertx();
+		map_ = new Map_();
+		counter_ = new Counter_();
+		cache_ = new DealCache("test.deals", counter_);
+		map_.deals_.put("d1", deal_("d1", 1));
+		map_.deals_.put("d2", deal_("d2", 1));
+		List<JsonObject> result = read_(context);
+		context.assertEquals(2, result.size());
+	}
+	/**
+	 * Clean up.
+	 * @param context a testcontext object
+	 *          
+	 * 後始末する.
+	 * @param context testcontext オブジェクト
+	 */
+	@After public void after(TestContext context) {
+		vertx_.close(context.asyncAssertSuccess());
+	}
+
+	/**
+	 * Supports dropping a refetch completed after a newer one.
+	 * @param context a testcontext object
+	 *          
+	 * より新しい取得し直しの後に完了した取得し直しを捨てることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void staleRefetchIsDropped(TestContext context) {
+		change_("d1", 2);
+		map_.holdGets_ = true;
+		List<AsyncResult<List<JsonObject>>> older = new ArrayList<>();
+		cache_.valuesThroughCache(vertx_, map_, older::add);
+		change_("d1", 3);
+		List<AsyncResult<List<JsonObject>>> newer = new ArrayList<>();
+		cache_.valuesThroughCache(vertx_, map_, newer::add);
+		map_.releaseLast_();
+		map_.releaseLast_();
+		context.assertEquals(3, revision_(newer.get(0).result(), "d1"));
+		// The older refetch hands out the newer cache
+		// 古い取得し直しは新しいキャッシュを渡す
+		context.assertEquals(3, revision_(older.get(0).result(), "d1"));
+		map_.holdGets_ = false;
+		context.assertEquals(3, revision_(read_(context), "d1"));
+	}
+	/**
+	 * Supports keeping a change notified during a refetch.
+	 * @param context a testcontext object
+	 *          
+	 * 取得し直し中に通知された変更を残すことをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void changeDuringRefetchIsKept(TestContext context) {
+		change_("d1", 2);
+		map_.holdGets_ = true;
+		List<AsyncResult<List<JsonObject>>> during = new ArrayList<>();
+		cache_.valuesThroughCache(vertx_, map_, during::add);
+		change_("d1", 3);
+		change_("d2", 2);
+		map_.releaseLast_();
+		context.assertEquals(2, revision_(during.get(0).result(), "d1"));
+		map_.holdGets_ = false;
+		List<JsonObject> result = read_(context);
+		context.assertEquals(3, revision_(result, "d1"));
+		context.assertEquals(2, revision_(result, "d2"));
+	}
+	/**
+	 * Supports dropping a refetch during which the cache has been invalidated.
+	 * @param context a testcontext object
+	 *          
+	 * 取得し直し中にキャッシュが無効化された取得し直しを捨てることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void invalidatedRefetchIsDropped(TestContext context) {
+		change_("d1", 2);
+		map_.holdGets_ = true;
+		List<AsyncResult<List<JsonObject>>> during = new ArrayList<>();
+		cache_.valuesThroughCache(vertx_, map_, during::add);
+		map_.deals_.put("d3", deal_("d3", 1));
+		cache_.notified(new JsonObject().put("dealIds", new JsonArray().add("d3")));
+		map_.releaseLast_();
+		context.assertEquals(3, during.get(0).result().size());
+		map_.holdGets_ = false;
+		context.assertEquals(3, read_(context).size());
+	}
+
+	////
+
+	private List<JsonObject> read_(TestContext context) {
+		List<AsyncResult<List<JsonObject>>> results = new ArrayList<>();
+		cache_.valuesThroughCache(vertx_, map_, results::add);
+		context.assertEquals(1, results.size());
+		context.assertTrue(results.get(0).succeeded());
+		return results.get(0).result();
+	}
+	private void change_(String dealId, int revision) {
+		map_.deals_.put(dealId, deal_(dealId, revision));
+		cache_.changed(vertx_, dealId, r -> { });
+	}
+	private static JsonObject deal_(String dealId, int revision) {
+		return new JsonObject().put("dealId", dealId).put("revision", revision);
+	}
+	private static int revision_(List<JsonObject> deals, String dealId) {
+		for (JsonObject aDeal : deals) {
+			if (dealId.equals(aDeal.getString("dealId"))) return aDeal.getInteger("revision");
+		}
+		return -1;
+	}
+
+	/**
+	 * A map that answers at once, or holds the answers to gets until released.
+	 * The value answered is the one at the time of the get.
+	 *          
+	 * すぐに応答する, もしくは解放するまで get への応答を保留するマップ.
+	 * 応答する値は get した時点のもの.
+	 */
+	private static class Map_ implements AsyncMap<String, JsonObject> {
+		private final Map<String, JsonObject> deals_ = new LinkedHashMap<>();
+		private boolean holdGets_ = false;
+		private final LinkedList<Runnable> held_ = new LinkedList<>();
+		private void releaseLast_() {
+			held_.removeLast().run();
+		}
+		@Override public void get(String k, Handler<AsyncResult<JsonObject>> resultHandler) {
+			JsonObject v = deals_.get(k);
+			Runnable answer = () -> resultHandler.handle(Future.succeededFuture(v));
+			if (holdGets_) {
+				held_.add(answer);
+			} else {
+				answer.run();
+			}
+		}
+		@Override public void values(Handler<AsyncResult<List<JsonObject>>> asyncResultHandler) {
+			asyncResultHandler.handle(Future.succeededFuture(new ArrayList<>(deals_.values())));
+		}
+		@Override public void entries(Handler<AsyncResult<Map<String, JsonObject>>> asyncResultHandler) {
+			asyncResultHandler.handle(Future.succeededFuture(new HashMap<>(deals_)));
+		}
+		@Override public void put(String k, JsonObject v, Handler<AsyncResult<Void>> completionHandler) { throw new UnsupportedOperationException(); }
+		@Override public void put(String k, JsonObject v, long ttl, Handler<AsyncResult<Void>> completionHandler) { throw new UnsupportedOperationException(); }
+		@Override public void putIfAbsent(String k, JsonObject v, Handler<AsyncResult<JsonObject>> completionHandler) { throw new UnsupportedOperationException(); }
+		@Override public void putIfAbsent(String k, JsonObject v, long ttl, Handler<AsyncResult<JsonObject>> completionHandler) { throw new UnsupportedOperationException(); }
+		@Override public void remove(String k, Handler<AsyncResult<JsonObject>> resultHandler) { throw new UnsupportedOperationException(); }
+		@Override public void removeIfPresent(String k, JsonObject v, Handler<AsyncResult<Boolean>> resultHandler) { throw new UnsupportedOperationException(); }
+		@Override public void replace(String k, JsonObject v, Handler<AsyncResult<JsonObject>> resultHandler) { throw new UnsupportedOperationException(); }
+		@Override public void replaceIfPresent(String k, JsonObject oldValue, JsonObject newValue, Handler<AsyncResult<Boolean>> resultHandler) { throw new UnsupportedOperationException(); }
+		@Override public void clear(Handler<AsyncResult<Void>> resultHandler) { throw new UnsupportedOperationException(); }
+		@Override public void size(Handler<AsyncResult<Integer>> resultHandler) { throw new UnsupportedOperationException(); }
+		@Override public void keys(Handler<AsyncResult<Set<String>>> resultHandler) { throw new UnsupportedOperationException(); }
+	}
+
+	/**
+	 * A counter that answers at once.
+	 *          
+	 * すぐに応答するカウンタ.
+	 */
+	private static class Counter_ implements Counter {
+		private final AtomicLong value_ = new AtomicLong();
+		@Override public void get(Handler<AsyncResult<Long>> resultHandler) {
+			resultHandler.handle(Future.succeededFuture(value_.get()));
+		}
+		@Override public void incrementAndGet(Handler<AsyncResult<Long>> resultHandler) {
+			resultHandler.handle(Future.succeededFuture(value_.incrementAndGet()));
+		}
+		@Override public void getAndIncrement(Handler<AsyncResult<Long>> resultHandler) {
+			resultHandler.handle(Future.succeededFuture(value_.getAndIncrement()));
+		}
+		@Override public void decrementAndGet(Handler<AsyncResult<Long>> resultHandler) {
+			resultHandler.handle(Future.succeededFuture(value_.decrementAndGet()));
+		}
+		@Override public void addAndGet(long value, Handler<AsyncResult<Long>> resultHandler) {
+			resultHandler.handle(Future.succeededFuture(value_.addAndGet(value)));
+		}
+		@Override public void getAndAdd(long value, Handler<AsyncResult<Long>> resultHandler) {
+			resultHandler.handle(Future.succeededFuture(value_.getAndAdd(value)));
+		}
+		@Override public void compareAndSet(long expected, long value, Handler<AsyncResult<Boolean>> resultHandler) {
+			resultHandler.handle(Future.succeededFuture(value_.compareAndSet(expected, value)));
+		}
+	}
+
+}
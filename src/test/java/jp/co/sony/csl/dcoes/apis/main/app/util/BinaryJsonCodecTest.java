@@ -0,0 +1,109 @@
+package jp.co.sony.csl.dcoes.apis.main.app.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import jp.co.sony.csl.dcoes.apis.main.util.BinaryJsonCodec;
+
+/**
+ * BinaryJsonCodec test.
+ * @author OES Project
+ *          
+ * BinaryJsonCodec のテスト.
+ * @author OES Project
+ */
+@RunWith(VertxUnitRunner.class)
+public class BinaryJsonCodecTest {
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public BinaryJsonCodecTest() {
+		super();
+	}
+
+	private static final BinaryJsonCodec v1_ = new BinaryJsonCodec(Collections.singletonList(Arrays.asList("dealId", "createDateTime")));
+	private static final BinaryJsonCodec v2_ = new BinaryJsonCodec(Arrays.asList(Arrays.asList("dealId", "createDateTime"), Arrays.asList("revision")));
+
+	private static JsonObject deal_() {
+		return new JsonObject()
+				.put("dealId", "deal-1")
+				.put("createDateTime", "2020/01/02-03:04:05")
+				.put("startDateTime", "2020/1/2-3:4:5")
+				.put("dealGridCurrentA", 2F)
+				.put("dealAmountWh", 100)
+				.put("revision", 12345678901L)
+				.put("pointPerWh", 0.25D)
+				.put("isMaster", true)
+				.put("reset", false)
+				.put("abortReason", (String) null)
+				.put("needToStopReasons", new JsonArray().add("reason").add(-1).add(new JsonObject().put("ä", "日本語")));
+	}
+
+	/**
+	 * Supports encoding and decoding without changing values or types.
+	 * @param context a testcontext object
+	 *          
+	 * 値や型を変えずに符号化し復号することをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void roundTrip(TestContext context) {
+		JsonObject deal = deal_();
+		byte[] bytes = v2_.encode(deal);
+		context.assertEquals(2, BinaryJsonCodec.versionOf(bytes));
+		JsonObject decoded = v2_.decode(bytes);
+		context.assertEquals(deal, decoded);
+		context.assertEquals(deal.encode(), decoded.encode());
+		context.assertTrue(decoded.getValue("dealGridCurrentA") instanceof Float);
+		context.assertTrue(decoded.getValue("revision") instanceof Long);
+		context.assertTrue(Arrays.equals(bytes, v2_.encode(decoded)));
+		context.assertTrue(bytes.length < deal.encode().length());
+	}
+
+	/**
+	 * Supports writing and reading an older version.
+	 * @param context a testcontext object
+	 *          
+	 * 古いバージョンの書き込みと読み出しをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void olderVersionIsReadable(TestContext context) {
+		JsonObject deal = deal_();
+		byte[] bytes = v2_.encode(deal, 1);
+		context.assertEquals(1, BinaryJsonCodec.versionOf(bytes));
+		context.assertEquals(deal, v1_.decode(bytes));
+		context.assertEquals(deal, v2_.decode(bytes));
+		context.assertTrue(Arrays.equals(bytes, v1_.encode(deal)));
+	}
+
+	/**
+	 * Supports rejecting a newer version and truncated bytes.
+	 * @param context a testcontext object
+	 *          
+	 * 新しいバージョンと途切れたバイト列を拒否することをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void newerVersionIsRejected(TestContext context) {
+		byte[] bytes = v2_.encode(deal_());
+		try {
+			v1_.decode(bytes);
+			context.fail();
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			v2_.decode(Arrays.copyOf(bytes, bytes.length - 1));
+			context.fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package jp.co.sony.csl.dcoes.apis.main.app.util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import jp.co.sony.csl.dcoes.apis.main.util.LatencyHistogram;
+
+/**
+ * LatencyHistogram test.
+ * @author OES Project
+ *          
+ * LatencyHistogram のテスト.
+ * @author OES Project
+ */
+@RunWith(VertxUnitRunner.class)
+public class LatencyHistogramTest {
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public LatencyHistogramTest() {
+		super();
+	}
+
+	/**
+	 * Supports percentiles, maximum and mean.
+	 * @param context a testcontext object
+	 *          
+	 * パーセンタイル, 最大値, 平均値をサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void percentiles(TestContext context) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		context.assertEquals(0F, histogram.percentileMsec(50));
+		for (int i = 0; i < 99; i++) histogram.record(1000000L);
+		histogram.record(100000000L);
+		context.assertEquals(100L, histogram.count());
+		context.assertTrue(histogram.percentileMsec(50) < 2.1F);
+		context.assertTrue(histogram.percentileMsec(99) < 2.1F);
+		context.assertEquals(100F, histogram.percentileMsec(100));
+		JsonObject json = histogram.toJsonObject();
+		context.assertEquals(100F, json.getFloat("maxMsec"));
+		context.assertEquals(1.99F, json.getFloat("meanMsec"));
+	}
+
+	/**
+	 * Supports resetting.
+	 * @param context a testcontext object
+	 *          
+	 * リセットをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void reset(TestContext context) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(5000000L);
+		histogram.reset();
+		context.assertEquals(0L, histogram.count());
+		context.assertEquals(0F, histogram.toJsonObject().getFloat("maxMsec"));
+	}
+
+}
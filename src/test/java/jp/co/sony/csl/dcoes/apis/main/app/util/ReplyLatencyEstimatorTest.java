@@ -0,0 +1,67 @@
+package jp.co.sony.csl.dcoes.apis.main.app.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import jp.co.sony.csl.dcoes.apis.main.util.ReplyLatencyEstimator;
+
+/**
+ * ReplyLatencyEstimator test.
+ * @author OES Project
+ *          
+ * ReplyLatencyEstimator のテスト.
+ * @author OES Project
+ */
+@RunWith(VertxUnitRunner.class)
+public class ReplyLatencyEstimatorTest {
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public ReplyLatencyEstimatorTest() {
+		super();
+	}
+
+	/**
+	 * Supports estimating the reply latency of a unit.
+	 * @param context a testcontext object
+	 *          
+	 * ユニットの返信遅延の推定をサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void estimate(TestContext context) {
+		ReplyLatencyEstimator estimator = new ReplyLatencyEstimator();
+		context.assertNull(estimator.estimateMsec("E001"));
+		estimator.record("E001", 100L);
+		context.assertEquals(300F, estimator.estimateMsec("E001"));
+		for (int i = 0; i < 100; i++) estimator.record("E001", 100L);
+		context.assertTrue(estimator.estimateMsec("E001") < 101F);
+	}
+
+	/**
+	 * Supports a percentile of the estimates over units, and forgetting units.
+	 * @param context a testcontext object
+	 *          
+	 * ユニットたちの推定値のパーセンタイルとユニットを忘れることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void percentile(TestContext context) {
+		ReplyLatencyEstimator estimator = new ReplyLatencyEstimator();
+		context.assertEquals(2000L, estimator.percentileMsec(Arrays.asList("E001", "E002"), 95, 2000L));
+		for (int i = 1; i <= 10; i++) {
+			for (int j = 0; j < 100; j++) estimator.record("E" + i, i * 10L);
+		}
+		context.assertEquals(50L, estimator.percentileMsec(Arrays.asList("E1", "E2", "E3", "E4", "E5", "E6", "E7", "E8", "E9", "E10"), 50, 2000L));
+		context.assertEquals(100L, estimator.percentileMsec(Arrays.asList("E1", "E2", "E3", "E4", "E5", "E6", "E7", "E8", "E9", "E10", "E11"), 95, 2000L));
+		estimator.retainAll(Collections.singletonList("E1"));
+		context.assertNull(estimator.estimateMsec("E2"));
+	}
+
+}
@@ -0,0 +1,168 @@
+package jp.co.sony.csl.dcoes.apis.main.app.util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import jp.co.sony.csl.dcoes.apis.main.util.UnitDataDelta;
+
+/**
+ * UnitDataDelta test.
+ * @author OES Project
+ *          
+ * UnitDataDelta のテスト.
+ * @author OES Project
+ */
+@RunWith(VertxUnitRunner.class)
+public class UnitDataDeltaTest {
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public UnitDataDeltaTest() {
+		super();
+	}
+
+	private static JsonObject unitData_(float rsoc) {
+		return new JsonObject("{\"oesunit\":{\"id\":\"E001\",\"ip\":\"192.168.0.1\"},\"apis\":{\"version\":\"3.0.0\"}}").put("battery", new JsonObject().put("rsoc", rsoc));
+	}
+
+	private static JsonObject apply_(UnitDataDelta.Receiver receiver, UnitDataDelta.Delta delta) {
+		return receiver.apply("E001", delta.body(), delta.epoch(), delta.baseRevision(), delta.revision(), delta.isFull(), delta.removed());
+	}
+
+	/**
+	 * Supports sending the whole unit data first.
+	 * @param context a testcontext object
+	 *          
+	 * 最初はユニットデータ全体を送ることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void firstReplyIsFull(TestContext context) {
+		UnitDataDelta.Sender sender = new UnitDataDelta.Sender();
+		UnitDataDelta.Receiver receiver = new UnitDataDelta.Receiver();
+		UnitDataDelta.Delta delta = sender.build(unitData_(50F), receiver.session(), false);
+		context.assertTrue(delta.isFull());
+		context.assertEquals(unitData_(50F), apply_(receiver, delta));
+	}
+
+	/**
+	 * Supports sending only the changed field groups.
+	 * @param context a testcontext object
+	 *          
+	 * 変化したフィールドグループだけを送ることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void onlyChangedGroupsAreSent(TestContext context) {
+		UnitDataDelta.Sender sender = new UnitDataDelta.Sender();
+		UnitDataDelta.Receiver receiver = new UnitDataDelta.Receiver();
+		apply_(receiver, sender.build(unitData_(50F), receiver.session(), false));
+		UnitDataDelta.Delta delta = sender.build(unitData_(51F), receiver.session(), false);
+		context.assertFalse(delta.isFull());
+		context.assertEquals(1, delta.body().size());
+		context.assertTrue(delta.body().containsKey("battery"));
+		context.assertEquals(unitData_(51F), apply_(receiver, delta));
+		delta = sender.build(unitData_(51F), receiver.session(), false);
+		context.assertTrue(delta.body().isEmpty());
+		context.assertEquals(unitData_(51F), apply_(receiver, delta));
+	}
+
+	/**
+	 * Supports removing the removed field groups.
+	 * @param context a testcontext object
+	 *          
+	 * なくなったフィールドグループを削除することをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void removedGroupsAreRemoved(TestContext context) {
+		UnitDataDelta.Sender sender = new UnitDataDelta.Sender();
+		UnitDataDelta.Receiver receiver = new UnitDataDelta.Receiver();
+		apply_(receiver, sender.build(unitData_(50F), receiver.session(), false));
+		JsonObject unitData = unitData_(50F);
+		unitData.remove("apis");
+		UnitDataDelta.Delta delta = sender.build(unitData, receiver.session(), false);
+		context.assertTrue(delta.removed().contains("apis"));
+		context.assertEquals(unitData, apply_(receiver, delta));
+	}
+
+	/**
+	 * Supports detecting a modification in place.
+	 * @param context a testcontext object
+	 *          
+	 * その場での変更を検出することをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void inPlaceModificationIsDetected(TestContext context) {
+		UnitDataDelta.Sender sender = new UnitDataDelta.Sender();
+		UnitDataDelta.Receiver receiver = new UnitDataDelta.Receiver();
+		JsonObject unitData = unitData_(50F);
+		apply_(receiver, sender.build(unitData, receiver.session(), false));
+		unitData.getJsonObject("battery").put("rsoc", 60F);
+		UnitDataDelta.Delta delta = sender.build(unitData, receiver.session(), false);
+		context.assertTrue(delta.body().containsKey("battery"));
+		context.assertEquals(unitData_(60F), apply_(receiver, delta));
+	}
+
+	/**
+	 * Supports resynchronizing after a lost reply.
+	 * @param context a testcontext object
+	 *          
+	 * 返信が失われた後の再同期をサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void lostReplyLeadsToResync(TestContext context) {
+		UnitDataDelta.Sender sender = new UnitDataDelta.Sender();
+		UnitDataDelta.Receiver receiver = new UnitDataDelta.Receiver();
+		apply_(receiver, sender.build(unitData_(50F), receiver.session(), false));
+		// this reply is lost
+		// この返信は失われる
+		sender.build(unitData_(51F), receiver.session(), false);
+		context.assertNull(apply_(receiver, sender.build(unitData_(52F), receiver.session(), false)));
+		context.assertTrue(receiver.resync().contains("E001"));
+		UnitDataDelta.Delta delta = sender.build(unitData_(52F), receiver.session(), receiver.resync().contains("E001"));
+		context.assertTrue(delta.isFull());
+		context.assertEquals(unitData_(52F), apply_(receiver, delta));
+		context.assertTrue(receiver.resync().isEmpty());
+	}
+
+	/**
+	 * Supports applying a late reply without breaking the base of the next delta.
+	 * @param context a testcontext object
+	 *          
+	 * 次の差分の基準を壊さずに遅れた返信を適用することをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void lateReplyKeepsBase(TestContext context) {
+		UnitDataDelta.Sender sender = new UnitDataDelta.Sender();
+		UnitDataDelta.Receiver receiver = new UnitDataDelta.Receiver();
+		apply_(receiver, sender.build(unitData_(50F), receiver.session(), false));
+		// this reply arrives after its round has ended
+		// この返信はラウンド終了後に届く
+		UnitDataDelta.Delta late = sender.build(unitData_(51F), receiver.session(), false);
+		context.assertFalse(receiver.isSuperseded("E001", late.epoch(), late.revision()));
+		apply_(receiver, late);
+		context.assertTrue(receiver.isSuperseded("E001", late.epoch(), late.revision()));
+		context.assertEquals(unitData_(52F), apply_(receiver, sender.build(unitData_(52F), receiver.session(), false)));
+		context.assertTrue(receiver.resync().isEmpty());
+	}
+
+	/**
+	 * Supports sending the whole unit data to a new session.
+	 * @param context a testcontext object
+	 *          
+	 * 新しいセッションにはユニットデータ全体を送ることをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void newSessionLeadsToFull(TestContext context) {
+		UnitDataDelta.Sender sender = new UnitDataDelta.Sender();
+		apply_(new UnitDataDelta.Receiver(), sender.build(unitData_(50F), "old", false));
+		UnitDataDelta.Receiver receiver = new UnitDataDelta.Receiver();
+		UnitDataDelta.Delta delta = sender.build(unitData_(50F), receiver.session(), false);
+		context.assertTrue(delta.isFull());
+	}
+
+}
@@ -0,0 +1,131 @@
+package jp.co.sony.csl.dcoes.apis.main.app.util;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import jp.co.sony.csl.dcoes.apis.main.util.UnitDataStatistics;
+import jp.co.sony.csl.dcoes.apis.main.util.UnitDataTable;
+
+/**
+ * UnitDataStatistics test.
+ * @author OES Project
+ *          
+ * UnitDataStatistics のテスト.
+ * @author OES Project
+ */
+@RunWith(VertxUnitRunner.class)
+public class UnitDataStatisticsTest {
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public UnitDataStatisticsTest() {
+		super();
+	}
+
+	private static JsonObject unitData_() {
+		JsonObject result = new JsonObject();
+		for (int i = 1; i <= 4; i++) {
+			result.put("E00" + i, new JsonObject().put("battery", new JsonObject().put("rsoc", i * 10F)).put("dcdc", new JsonObject().put("meter", new JsonObject().put("vg", 350F).put("ig", i - 2F))));
+		}
+		return result;
+	}
+
+	/**
+	 * Supports aggregating unit data.
+	 * @param context a testcontext object
+	 *          
+	 * ユニットデータの集計をサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void aggregate(TestContext context) {
+		JsonObject result = new UnitDataStatistics().update(UnitDataTable.build(unitData_()));
+		context.assertEquals(4, result.getJsonArray("unitIds").size());
+		JsonObject rsoc = result.getJsonObject("rsoc");
+		context.assertEquals(4, rsoc.getInteger("count"));
+		context.assertEquals(100F, rsoc.getFloat("total"));
+		context.assertEquals(25F, rsoc.getFloat("average"));
+		context.assertEquals(10F, rsoc.getFloat("min"));
+		context.assertEquals(40F, rsoc.getFloat("max"));
+		context.assertEquals(20F, rsoc.getFloat("p50"));
+		context.assertEquals(40F, rsoc.getFloat("p90"));
+		context.assertTrue(Math.abs(rsoc.getFloat("stddev") - 11.18F) < 0.01F);
+		context.assertEquals(700F, result.getJsonObject("wg").getFloat("max"));
+		JsonObject remainingCapacityWh = result.getJsonObject("remainingCapacityWh");
+		context.assertEquals(0, remainingCapacityWh.getInteger("count"));
+		context.assertTrue(Float.isNaN(remainingCapacityWh.getFloat("average")));
+	}
+
+	/**
+	 * Supports updating only the changed statistics.
+	 * @param context a testcontext object
+	 *          
+	 * 変化した統計値だけを更新することをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void incremental(TestContext context) {
+		UnitDataStatistics statistics = new UnitDataStatistics();
+		JsonObject first = statistics.update(UnitDataTable.build(unitData_()));
+		context.assertTrue(first == statistics.update(UnitDataTable.build(unitData_())));
+		JsonObject unitData = unitData_();
+		unitData.getJsonObject("E002").getJsonObject("battery").put("rsoc", 90F);
+		JsonObject second = statistics.update(UnitDataTable.build(unitData));
+		context.assertFalse(first == second);
+		context.assertEquals(90F, second.getJsonObject("rsoc").getFloat("max"));
+		context.assertTrue(first.getJsonObject("ig") == second.getJsonObject("ig"));
+		unitData.remove("E004");
+		context.assertEquals(3, statistics.update(UnitDataTable.build(unitData)).getJsonObject("rsoc").getInteger("count"));
+	}
+
+	/**
+	 * Supports incremental updates matching a full aggregation.
+	 * @param context a testcontext object
+	 *          
+	 * 差分更新が全体の集計と一致することをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void incrementalMatchesFull(TestContext context) {
+		UnitDataStatistics statistics = new UnitDataStatistics();
+		JsonObject unitData = unitData_();
+		statistics.update(UnitDataTable.build(unitData));
+		Random random = new Random(1L);
+		for (int n = 0; n < 100; n++) {
+			JsonObject battery = unitData.getJsonObject("E00" + (1 + random.nextInt(4))).getJsonObject("battery");
+			if (random.nextInt(5) == 0) {
+				battery.remove("rsoc");
+			} else {
+				battery.put("rsoc", (float) random.nextInt(100));
+			}
+			JsonObject incremental = statistics.update(UnitDataTable.build(unitData)).getJsonObject("rsoc");
+			JsonObject full = new UnitDataStatistics().update(UnitDataTable.build(unitData)).getJsonObject("rsoc");
+			for (String aName : full.fieldNames()) {
+				if ("stddev".equals(aName) || "average".equals(aName)) {
+					float expected = full.getFloat(aName);
+					float actual = incremental.getFloat(aName);
+					context.assertTrue((Float.isNaN(expected) && Float.isNaN(actual)) || Math.abs(expected - actual) < 0.01F, aName + " : " + actual + " != " + expected);
+				} else {
+					context.assertEquals(full.getValue(aName), incremental.getValue(aName), aName);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Supports handing out the unit IDs unmodifiable.
+	 * @param context a testcontext object
+	 *          
+	 * ユニット ID のリストを変更不可で渡すことをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test(expected = UnsupportedOperationException.class) public void unitIdsUnmodifiable(TestContext context) {
+		new UnitDataStatistics().update(UnitDataTable.build(unitData_())).getJsonArray("unitIds").add("E005");
+	}
+
+}
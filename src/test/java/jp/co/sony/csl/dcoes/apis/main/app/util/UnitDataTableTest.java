@@ -0,0 +1,115 @@
+package jp.co.sony.csl.dcoes.apis.main.app.util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import jp.co.sony.csl.dcoes.apis.main.app.controller.util.DDCon;
+import jp.co.sony.csl.dcoes.apis.main.util.UnitDataTable;
+
+/**
+ * UnitDataTable test.
+ * @author OES Project
+ *          
+ * UnitDataTable のテスト.
+ * @author OES Project
+ */
+@RunWith(VertxUnitRunner.class)
+public class UnitDataTableTest {
+
+	/**
+	 * Create an instance.
+	 *          
+	 * インスタンスを生成する.
+	 */
+	public UnitDataTableTest() {
+		super();
+	}
+
+	private static JsonObject unitData_() {
+		return new JsonObject()
+				.put("E002", new JsonObject("{\"battery\":{\"rsoc\":40.5},\"dcdc\":{\"status\":{\"status\":\"0x0041\"},\"meter\":{\"vg\":350.0,\"ig\":-2.0}}}"))
+				.put("E001", new JsonObject("{\"battery\":{\"rsoc\":60.0},\"apis\":{\"remaining_capacity_wh\":1000},\"dcdc\":{\"status\":{\"status\":\"0x0014\"},\"meter\":{\"vg\":351.0,\"ig\":2.5},\"vdis\":{\"dvg\":350},\"param\":{\"dig\":3}}}"));
+	}
+
+	/**
+	 * Supports reading the columns by ordinal and by unit ID.
+	 * @param context a testcontext object
+	 *          
+	 * 序数とユニット ID による列の読み出しをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void columns(TestContext context) {
+		UnitDataTable table = UnitDataTable.of(unitData_());
+		context.assertEquals(2, table.size());
+		context.assertEquals("E001", table.unitId(0));
+		context.assertEquals(1, table.ordinal("E002"));
+		context.assertEquals(-1, table.ordinal("E003"));
+		context.assertEquals(60F, table.rsoc(0));
+		context.assertEquals(1000F, table.remainingCapacityWh(0));
+		context.assertTrue(Float.isNaN(table.remainingCapacityWh(1)));
+		context.assertEquals(-2F, table.ig("E002"));
+		context.assertTrue(Float.isNaN(table.ig("E003")));
+		context.assertEquals(350F, table.dvg(0));
+		context.assertEquals(3F, table.dig(0));
+		context.assertEquals(DDCon.Mode.CHARGE, table.ddconMode(1));
+		context.assertEquals(0, table.firstOrdinalOf(DDCon.Mode.VOLTAGE_REFERENCE));
+		context.assertEquals(-1, table.firstOrdinalOf(DDCon.Mode.DISCHARGE));
+	}
+
+	/**
+	 * Supports building a table only once per unit data.
+	 * @param context a testcontext object
+	 *          
+	 * ユニットデータごとに一度だけ表を構築することをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void builtOncePerUnitData(TestContext context) {
+		JsonObject unitData = unitData_();
+		UnitDataTable table = UnitDataTable.of(unitData);
+		context.assertTrue(table == UnitDataTable.of(unitData));
+		context.assertFalse(table == UnitDataTable.of(unitData_()));
+	}
+
+	/**
+	 * Supports reading a unit again after its unit data has changed.
+	 * @param context a testcontext object
+	 *          
+	 * ユニットデータが変わった後でユニットを読み直すことをサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void refresh(TestContext context) {
+		JsonObject unitData = unitData_();
+		UnitDataTable table = UnitDataTable.of(unitData);
+		unitData.getJsonObject("E001").getJsonObject("dcdc").put("status", new JsonObject().put("status", DDCon.MODE_CODE_WAIT));
+		context.assertEquals(DDCon.Mode.VOLTAGE_REFERENCE, table.ddconMode(0));
+		context.assertTrue(table.refresh("E001"));
+		context.assertEquals(DDCon.Mode.WAIT, table.ddconMode(0));
+		context.assertEquals(-1, table.firstOrdinalOf(DDCon.Mode.VOLTAGE_REFERENCE));
+		context.assertFalse(table.refresh("E003"));
+	}
+
+	/**
+	 * Supports the index by DDCon mode.
+	 * @param context a testcontext object
+	 *          
+	 * DDCon モードによる索引をサポートする.
+	 * @param context testcontext オブジェクト
+	 */
+	@Test public void modeIndex(TestContext context) {
+		JsonObject unitData = unitData_();
+		unitData.put("E003", new JsonObject().put("dcdc", new JsonObject().put("status", new JsonObject().put("status", DDCon.MODE_CODE_VOLTAGE_REFERENCE))));
+		UnitDataTable table = UnitDataTable.build(unitData);
+		context.assertEquals(2, table.countOf(DDCon.Mode.VOLTAGE_REFERENCE));
+		context.assertEquals("[E001, E003]", table.unitIdsOf(DDCon.Mode.VOLTAGE_REFERENCE).toString());
+		unitData.getJsonObject("E001").getJsonObject("dcdc").put("status", new JsonObject().put("status", DDCon.MODE_CODE_WAIT));
+		table.refresh("E001");
+		context.assertEquals(1, table.countOf(DDCon.Mode.VOLTAGE_REFERENCE));
+		context.assertEquals(2, table.firstOrdinalOf(DDCon.Mode.VOLTAGE_REFERENCE));
+		context.assertEquals("[E001]", table.unitIdsOf(DDCon.Mode.WAIT).toString());
+		context.assertEquals(0, table.countOf(DDCon.Mode.DISCHARGE));
+	}
+
+}
@@ -0,0 +1,152 @@
+package jp.co.sony.csl.dcoes.apis.main.test;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A local stub of a device driver.
+ * Answers any HTTP request with the current data and pushes samples to the WebSocket subscribers on any URI.
+ * @author OES Project
+ *          
+ * デバイスドライバのローカルスタブ.
+ * どの URI の HTTP リクエストにも現在のデータを返し, どの URI の WebSocket 購読者にもサンプルをプッシュする.
+ * @author OES Project
+ */
+public class DriverStubServer {
+
+	private final Vertx vertx_;
+	private HttpServer server_;
+	private JsonObject data_ = new JsonObject();
+	private final List<ServerWebSocket> subscribers_ = new ArrayList<>();
+	private int requests_ = 0;
+	private int subscriptions_ = 0;
+	private Handler<ServerWebSocket> subscriptionHandler_;
+
+	public DriverStubServer(Vertx vertx) {
+		vertx_ = vertx;
+	}
+
+	/**
+	 * Start listening on a free port.
+	 * @param completionHandler the completion handler which receives the port number
+	 *          
+	 * 空いているポートで待ち受けを開始する.
+	 * @param completionHandler ポート番号を受け取る completion handler
+	 */
+	public void listen(Handler<AsyncResult<Integer>> completionHandler) {
+		server_ = vertx_.createHttpServer().requestHandler(req -> {
+			requests_++;
+			req.response().putHeader("content-type", "application/json").end(data_.toBuffer());
+		}).websocketHandler(webSocket -> {
+			subscriptions_++;
+			subscribers_.add(webSocket);
+			webSocket.closeHandler(v -> subscribers_.remove(webSocket));
+			if (subscriptionHandler_ != null) subscriptionHandler_.handle(webSocket);
+		}).listen(0, "127.0.0.1", res -> {
+			if (res.succeeded()) {
+				completionHandler.handle(Future.succeededFuture(res.result().actualPort()));
+			} else {
+				completionHandler.handle(Future.failedFuture(res.cause()));
+			}
+		});
+	}
+	/**
+	 * Stop listening.
+	 * @param completionHandler the completion handler
+	 *          
+	 * 待ち受けを停止する.
+	 * @param completionHandler the completion handler
+	 */
+	public void close(Handler<AsyncResult<Void>> completionHandler) {
+		server_.close(completionHandler);
+	}
+
+	/**
+	 * Set the data answered to the HTTP requests.
+	 * @param data the data
+	 * @return this object
+	 *          
+	 * HTTP リクエストに返すデータを設定する.
+	 * @param data データ
+	 * @return このオブジェクト
+	 */
+	public DriverStubServer data(JsonObject data) {
+		data_ = data;
+		return this;
+	}
+	/**
+	 * Set the handler called when a subscriber connects.
+	 * @param handler the handler
+	 * @return this object
+	 *          
+	 * 購読者が接続したときに呼ばれるハンドラを設定する.
+	 * @param handler ハンドラ
+	 * @return このオブジェクト
+	 */
+	public DriverStubServer subscriptionHandler(Handler<ServerWebSocket> handler) {
+		subscriptionHandler_ = handler;
+		return this;
+	}
+	/**
+	 * Push a sample to all the subscribers.
+	 * @param sample the sample
+	 *          
+	 * 全ての購読者にサンプルをプッシュする.
+	 * @param sample サンプル
+	 */
+	public void push(JsonObject sample) {
+		for (ServerWebSocket aSubscriber : new ArrayList<>(subscribers_)) {
+			aSubscriber.writeTextMessage(sample.encode());
+		}
+	}
+	/**
+	 * Close the connections of all the subscribers.
+	 *          
+	 * 全ての購読者の接続を閉じる.
+	 */
+	public void disconnect() {
+		for (ServerWebSocket aSubscriber : new ArrayList<>(subscribers_)) {
+			aSubscriber.close();
+		}
+	}
+
+	/**
+	 * Get the number of HTTP requests received.
+	 * @return the number of requests
+	 *          
+	 * 受けた HTTP リクエストの数を取得する.
+	 * @return リクエスト数
+	 */
+	public int requests() {
+		return requests_;
+	}
+	/**
+	 * Get the number of subscriptions received, including the closed ones.
+	 * @return the number of subscriptions
+	 *          
+	 * 閉じたものも含め受けた購読の数を取得する.
+	 * @return 購読数
+	 */
+	public int subscriptions() {
+		return subscriptions_;
+	}
+	/**
+	 * Get the number of the connected subscribers.
+	 * @return the number of subscribers
+	 *          
+	 * 接続中の購読者の数を取得する.
+	 * @return 購読者数
+	 */
+	public int subscribers() {
+		return subscribers_.size();
+	}
+
+}